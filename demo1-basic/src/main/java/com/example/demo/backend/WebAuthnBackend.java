@@ -3,6 +3,7 @@ package com.example.demo.backend;
 import com.yubico.webauthn.data.ByteArray;
 import org.springframework.stereotype.Component;
 
+import java.util.Arrays;
 import java.util.List;
 import java.util.Optional;
 import java.util.concurrent.ConcurrentHashMap;
@@ -177,6 +178,30 @@ public class WebAuthnBackend {
         }
     }
 
+    /**
+     * 登録完了: ユーザー（いなければ userHandle で作成）と認証器をまとめて保存する。
+     * ユーザーの確認・作成と認証器の追加を users.compute の中で行うため、同じusernameの最初の登録が同時に完了しても、
+     * userHandleは1つになる（compute は同じusernameの更新だけを待たせる）。
+     *
+     * @param userHandle 登録開始時にクライアントへ送った userHandle
+     * @return 保存した場合はtrue。usernameが別のuserHandleで登録済みの場合はfalse（何も保存しない）
+     */
+    public boolean registerAuthenticator(byte[] userHandle, AuthenticatorInfo authenticator) {
+        boolean[] saved = new boolean[1];
+        users.compute(authenticator.getUsername(), (username, user) -> {
+            if (user == null) {
+                user = new UserInfo(username, userHandle);
+            } else if (!Arrays.equals(user.getUserHandle(), userHandle)) {
+                return user;
+            }
+            authenticators.put(new ByteArray(authenticator.getCredentialId()), authenticator);
+            user.getAuthenticators().add(authenticator);
+            saved[0] = true;
+            return user;
+        });
+        return saved[0];
+    }
+
     /**
      * 特定ユーザーの特定認証器を削除する。
      * 実際のバックエンドサーバーでは、認可チェック（削除者=所有者の確認）が必須。
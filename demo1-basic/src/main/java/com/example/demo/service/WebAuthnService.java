@@ -1,7 +1,6 @@
 package com.example.demo.service;
 
 import com.example.demo.backend.AuthenticatorInfo;
-import com.example.demo.backend.UserInfo;
 import com.example.demo.backend.WebAuthnBackend;
 import com.yubico.webauthn.*;
 import com.yubico.webauthn.data.*;
@@ -92,23 +91,6 @@ public class WebAuthnService implements CredentialRepository {
 
         RegistrationResult result = relyingParty.finishRegistration(options);
 
-        // 既存ユーザーがいなければ新規作成
-        UserInfo user = getUserHandleForUsername(username)
-                .map(userHandle -> {
-                    // 既存ユーザーは既に保存されているのでそのまま使う
-                    // ここでは何もしない（認証器だけ追加）
-                    return (UserInfo) null;
-                })
-                .orElseGet(() -> new UserInfo(
-                        username,
-                        request.getUser().getId().getBytes()
-                ));
-
-        // 新規ユーザーの場合のみ保存
-        if (user != null) {
-            backend.saveUser(user);
-        }
-
         AuthenticatorInfo authenticator = new AuthenticatorInfo(
                 result.getKeyId().getId().getBytes(),
                 result.getPublicKeyCose().getBytes(),
@@ -116,7 +98,12 @@ public class WebAuthnService implements CredentialRepository {
                 username
         );
 
-        backend.saveAuthenticator(authenticator);
+        // 既存ユーザーがいなければ新規作成し、認証器を追加する
+        // （確認と作成を分けると、同じusernameの同時の登録で後の方が上書きしてしまうため、1回の呼び出しで行う）
+        if (!backend.registerAuthenticator(request.getUser().getId().getBytes(), authenticator)) {
+            throw new RegistrationFailedException(new IllegalArgumentException(
+                    "Username was registered concurrently with a different user handle; start registration again"));
+        }
     }
 
     /**
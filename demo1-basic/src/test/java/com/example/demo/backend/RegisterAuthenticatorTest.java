@@ -0,0 +1,110 @@
+package com.example.demo.backend;
+
+import com.yubico.webauthn.data.ByteArray;
+import org.junit.jupiter.api.Test;
+
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import static org.junit.jupiter.api.Assertions.assertArrayEquals;
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+/**
+ * 登録完了（registerAuthenticator）で、同じusernameの最初の登録が同時に完了してもuserHandleが1つになることの確認。
+ */
+class RegisterAuthenticatorTest {
+
+    private static final int USERNAMES = 500;
+    private static final int THREADS = 8;
+
+    @Test
+    void concurrentFirstRegistrationsCreateOneUserHandlePerUsername() throws InterruptedException {
+        WebAuthnBackend backend = new WebAuthnBackend();
+        ConcurrentHashMap<String, Set<ByteArray>> acceptedHandles = new ConcurrentHashMap<>();
+        Set<ByteArray> acceptedCredentials = ConcurrentHashMap.newKeySet();
+        Set<ByteArray> rejectedCredentials = ConcurrentHashMap.newKeySet();
+        AtomicInteger accepted = new AtomicInteger();
+        CountDownLatch start = new CountDownLatch(1);
+        Thread[] threads = new Thread[THREADS];
+
+        // 全てのスレッドが同じ順にusernameを登録し、同じusernameで競合させる（userHandleはスレッドごとに異なる）
+        for (int t = 0; t < THREADS; t++) {
+            threads[t] = Thread.ofPlatform().start(() -> {
+                awaitQuietly(start);
+                for (int i = 0; i < USERNAMES; i++) {
+                    byte[] userHandle = randomBytes(32);
+                    byte[] credentialId = randomBytes(16);
+                    AuthenticatorInfo authenticator =
+                            new AuthenticatorInfo(credentialId, new byte[]{1}, new byte[16], "user" + i);
+                    if (backend.registerAuthenticator(userHandle, authenticator)) {
+                        acceptedHandles.computeIfAbsent("user" + i, k -> ConcurrentHashMap.newKeySet())
+                                .add(new ByteArray(userHandle));
+                        acceptedCredentials.add(new ByteArray(credentialId));
+                        accepted.incrementAndGet();
+                    } else {
+                        rejectedCredentials.add(new ByteArray(credentialId));
+                    }
+                }
+            });
+        }
+        start.countDown();
+        for (Thread thread : threads) {
+            thread.join();
+        }
+
+        int stored = 0;
+        for (int i = 0; i < USERNAMES; i++) {
+            Set<ByteArray> handles = acceptedHandles.get("user" + i);
+            assertEquals(1, handles.size());
+            byte[] userHandle = handles.iterator().next().getBytes();
+            assertArrayEquals(userHandle, backend.findUserHandleByUsername("user" + i).orElseThrow());
+            assertEquals("user" + i, backend.findUsernameByUserHandle(userHandle).orElseThrow());
+
+            // 受け入れた認証器は全てユーザーの一覧にあり、同じuserHandleで検証できる
+            for (byte[] credentialId : backend.findCredentialIdsByUsername("user" + i)) {
+                assertTrue(acceptedCredentials.contains(new ByteArray(credentialId)));
+                assertTrue(backend.findCredentialData(credentialId, userHandle).isPresent());
+                stored++;
+            }
+        }
+        assertEquals(accepted.get(), stored);
+        // 拒否した認証器はどこにも保存されていない
+        for (ByteArray credentialId : rejectedCredentials) {
+            assertTrue(backend.findAuthenticatorByCredentialId(credentialId.getBytes()).isEmpty());
+        }
+    }
+
+    @Test
+    void sameUserHandleAddsAuthenticatorAndOtherHandleIsRejected() {
+        WebAuthnBackend backend = new WebAuthnBackend();
+        byte[] userHandle = {1, 2, 3};
+        assertTrue(backend.registerAuthenticator(userHandle,
+                new AuthenticatorInfo(new byte[]{10}, new byte[]{1}, null, "alice")));
+        assertTrue(backend.registerAuthenticator(userHandle,
+                new AuthenticatorInfo(new byte[]{11}, new byte[]{1}, null, "alice")));
+        assertFalse(backend.registerAuthenticator(new byte[]{4, 5, 6},
+                new AuthenticatorInfo(new byte[]{12}, new byte[]{1}, null, "alice")));
+
+        assertEquals(2, backend.findCredentialIdsByUsername("alice").size());
+        assertTrue(backend.findAuthenticatorByCredentialId(new byte[]{12}).isEmpty());
+    }
+
+    private static byte[] randomBytes(int length) {
+        byte[] bytes = new byte[length];
+        ThreadLocalRandom.current().nextBytes(bytes);
+        return bytes;
+    }
+
+    private static void awaitQuietly(CountDownLatch latch) {
+        try {
+            latch.await();
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+    }
+}
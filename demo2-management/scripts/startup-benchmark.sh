@@ -0,0 +1,87 @@
+#!/usr/bin/env bash
+#
+# 起動時間のベンチマーク: default / aot / aot-cds の各モードで起動し、以下を計測する。
+#
+#   first-ceremony: JVMの起動から、最初の登録・認証（ウォームアップの1回目）が成功するまでの時間
+#   ready:          プロセスの起動から、/actuator/health/readiness が UP を返すまでの時間
+#   rss:            ready 時点の常駐メモリ（/proc/<pid>/status の VmRSS）
+#
+# 事前に高速起動プロファイルでビルドしておくこと:
+#   ./mvnw -Pfast-startup package
+#
+# 使い方: scripts/startup-benchmark.sh [各モードの実行回数（既定: 5）]
+# Linux（/proc）と curl が必要。結果は各モードの中央値を表示する。
+
+set -euo pipefail
+cd "$(dirname "$0")/.."
+
+RUNS=${1:-5}
+PORT=${PORT:-18080}
+APP_DIR=target/app
+TIMEOUT_SECONDS=120
+
+JAR=$(ls "$APP_DIR"/*.jar 2>/dev/null | head -1 || true)
+if [[ -z "$JAR" || ! -f "$APP_DIR/application.jsa" ]]; then
+    echo "target/app がありません。先に ./mvnw -Pfast-startup package を実行してください" >&2
+    exit 1
+fi
+JAR=$(basename "$JAR")
+
+jvm_options() {
+    case "$1" in
+        default) ;;
+        aot)     echo "-Dspring.aot.enabled=true" ;;
+        aot-cds) echo "-XX:SharedArchiveFile=application.jsa -Dspring.aot.enabled=true" ;;
+    esac
+}
+
+# 1回起動して "first-ceremony(ms) ready(ms) rss(MB)" を出力する
+run_once() {
+    local mode=$1 start pid elapsed first_seconds rss_kb
+    start=$(date +%s%N)
+    # ウォームアップは1回だけ行う（最初の登録・認証の時刻を記録するため）
+    # shellcheck disable=SC2046
+    (cd "$APP_DIR" && exec java $(jvm_options "$mode") -jar "$JAR" \
+        --server.port="$PORT" \
+        --webauthn.warmup.iterations=1 \
+        --webauthn.warmup.target-millis=0 \
+        > /dev/null 2>&1) &
+    pid=$!
+
+    until curl -sf "http://localhost:$PORT/actuator/health/readiness" > /dev/null; do
+        elapsed=$(( ($(date +%s%N) - start) / 1000000000 ))
+        if (( elapsed > TIMEOUT_SECONDS )) || ! kill -0 "$pid" 2> /dev/null; then
+            echo "$mode: 起動に失敗しました" >&2
+            kill "$pid" 2> /dev/null || true
+            exit 1
+        fi
+        sleep 0.02
+    done
+    local ready_ms=$(( ($(date +%s%N) - start) / 1000000 ))
+
+    rss_kb=$(awk '/^VmRSS:/ {print $2}' "/proc/$pid/status")
+    first_seconds=$(curl -s "http://localhost:$PORT/actuator/metrics/webauthn.warmup.first-ceremony" \
+        | sed -E 's/.*"value":([-0-9.Ee]+).*/\1/')
+
+    kill "$pid"
+    wait "$pid" 2> /dev/null || true
+
+    awk -v f="$first_seconds" -v r="$ready_ms" -v m="$rss_kb" \
+        'BEGIN { printf "%d %d %d\n", f * 1000, r, m / 1024 }'
+}
+
+median() {
+    sort -n | awk '{ v[NR] = $1 } END { print (NR % 2) ? v[(NR + 1) / 2] : int((v[NR / 2] + v[NR / 2 + 1]) / 2) }'
+}
+
+printf "%-8s %4s %18s %10s %8s\n" mode runs "first-ceremony(ms)" "ready(ms)" "rss(MB)"
+for mode in default aot aot-cds; do
+    results=()
+    for ((i = 0; i < RUNS; i++)); do
+        results+=("$(run_once "$mode")")
+    done
+    printf "%-8s %4d %18s %10s %8s\n" "$mode" "$RUNS" \
+        "$(printf '%s\n' "${results[@]}" | cut -d' ' -f1 | median)" \
+        "$(printf '%s\n' "${results[@]}" | cut -d' ' -f2 | median)" \
+        "$(printf '%s\n' "${results[@]}" | cut -d' ' -f3 | median)"
+done
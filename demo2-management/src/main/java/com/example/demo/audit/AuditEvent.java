@@ -0,0 +1,31 @@
+package com.example.demo.audit;
+
+/**
+ * 監査ログの1件（JSON Lines の1行として書き出す）。
+ *
+ * @param timestamp    発生時刻（エポックミリ秒）
+ * @param type         種類
+ * @param tenant       テナントid
+ * @param username     対象のユーザー（不明な場合はnull）
+ * @param credentialId 対象の認証器（base64url。不明な場合はnull）
+ * @param remoteAddr   クライアントのIPアドレス
+ * @param detail       失敗の理由・削除の理由（deleted / expired / replicated）など（なければnull）
+ */
+public record AuditEvent(
+        long timestamp,
+        Type type,
+        String tenant,
+        String username,
+        String credentialId,
+        String remoteAddr,
+        String detail) {
+
+    public enum Type {
+        REGISTRATION,
+        REGISTRATION_FAILURE,
+        LOGIN,
+        LOGIN_FAILURE,
+        AUTHENTICATOR_DELETE,
+        AUTHENTICATOR_DELETE_FAILURE
+    }
+}
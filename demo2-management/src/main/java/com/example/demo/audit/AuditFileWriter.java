@@ -0,0 +1,133 @@
+package com.example.demo.audit;
+
+import java.io.Closeable;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.nio.channels.FileChannel;
+import java.nio.file.FileAlreadyExistsException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.zip.CRC32;
+import java.util.zip.Deflater;
+
+/**
+ * 監査ログのファイル書き込み（追記のみ・gzip圧縮・サイズでローテーション）。
+ *
+ * <p>【形式】
+ * 1回の{@link #write}（1バッチ）を1つの gzip メンバーとして FileChannel に追記する。
+ * 連結した gzip メンバーは1つの gzip ファイルとして読めるため、zcat などでそのまま展開できる。
+ * 書き込みの途中でプロセスが止まっても、それより前のバッチは読める状態で残る。
+ *
+ * <p>ファイル名は audit-&lt;作成時刻（エポックミリ秒）&gt;.jsonl.gz。
+ * サイズが maxFileBytes を超えたら、次のバッチから新しいファイルに書く。
+ *
+ * <p>スレッドセーフではない（監査ログのコンシューマースレッドだけが使う）。
+ */
+class AuditFileWriter implements Closeable {
+
+    private static final byte[] GZIP_HEADER = {0x1f, (byte) 0x8b, 8, 0, 0, 0, 0, 0, 0, (byte) 0xff};
+    private static final int OUTPUT_BUFFER_BYTES = 64 * 1024;
+
+    private final Path directory;
+    private final long maxFileBytes;
+    private final Deflater deflater = new Deflater(Deflater.DEFAULT_COMPRESSION, true);  // raw deflate（ヘッダーは自分で書く）
+    private final CRC32 crc = new CRC32();
+    private final ByteBuffer output = ByteBuffer.allocate(OUTPUT_BUFFER_BYTES).order(ByteOrder.LITTLE_ENDIAN);
+
+    private FileChannel channel;
+    private long fileBytes;
+
+    AuditFileWriter(Path directory, long maxFileBytes) throws IOException {
+        this.directory = Files.createDirectories(directory);
+        this.maxFileBytes = maxFileBytes;
+    }
+
+    /**
+     * data[0, length) を圧縮して1つの gzip メンバーとして追記する。
+     */
+    void write(byte[] data, int length) throws IOException {
+        if (channel == null || fileBytes >= maxFileBytes) {
+            rotate();
+        }
+        try {
+            output.clear();
+            output.put(GZIP_HEADER);
+
+            deflater.reset();
+            deflater.setInput(data, 0, length);
+            deflater.finish();
+            while (!deflater.finished()) {
+                if (!output.hasRemaining()) {
+                    flush();
+                }
+                int written = deflater.deflate(output.array(), output.position(), output.remaining());
+                output.position(output.position() + written);
+            }
+
+            crc.reset();
+            crc.update(data, 0, length);
+            if (output.remaining() < 8) {
+                flush();
+            }
+            output.putInt((int) crc.getValue());
+            output.putInt(length);  // ISIZE（元のサイズの下位32ビット）
+            flush();
+        } catch (IOException e) {
+            closeChannel();  // 途中まで書いたファイルには追記せず、次のバッチは新しいファイルに書く
+            throw e;
+        }
+    }
+
+    /**
+     * 書き込んだ内容をディスクに反映する（fsync）。
+     */
+    void force() throws IOException {
+        if (channel != null) {
+            channel.force(false);
+        }
+    }
+
+    @Override
+    public void close() throws IOException {
+        if (channel != null) {
+            channel.force(false);
+        }
+        closeChannel();
+        deflater.end();
+    }
+
+    private void flush() throws IOException {
+        output.flip();
+        while (output.hasRemaining()) {
+            fileBytes += channel.write(output);
+        }
+        output.clear();
+    }
+
+    private void rotate() throws IOException {
+        if (channel != null) {
+            channel.force(false);
+            closeChannel();
+        }
+        // 既存のファイル（同じミリ秒に作ったもの・書き込みに失敗したもの）には追記しない
+        for (long time = System.currentTimeMillis(); channel == null; time++) {
+            try {
+                channel = FileChannel.open(directory.resolve("audit-" + time + ".jsonl.gz"),
+                        StandardOpenOption.CREATE_NEW, StandardOpenOption.WRITE, StandardOpenOption.APPEND);
+            } catch (FileAlreadyExistsException e) {
+                // 次の時刻の名前で作り直す
+            }
+        }
+        fileBytes = 0;
+    }
+
+    private void closeChannel() throws IOException {
+        FileChannel current = channel;
+        channel = null;
+        if (current != null) {
+            current.close();
+        }
+    }
+}
@@ -0,0 +1,297 @@
+package com.example.demo.audit;
+
+import com.example.demo.backend.AuthenticatorRemovalListener;
+import com.fasterxml.jackson.annotation.JsonInclude;
+import com.fasterxml.jackson.core.JsonGenerator;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.fasterxml.jackson.databind.json.JsonMapper;
+import io.micrometer.core.instrument.FunctionCounter;
+import io.micrometer.core.instrument.MeterRegistry;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Component;
+import org.springframework.util.unit.DataSize;
+import org.springframework.web.context.request.RequestContextHolder;
+import org.springframework.web.context.request.ServletRequestAttributes;
+
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.nio.file.Path;
+import java.util.Base64;
+import java.util.Locale;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.concurrent.locks.LockSupport;
+import java.util.function.ToDoubleFunction;
+
+/**
+ * セキュリティ監査ログ: 登録・ログイン・それらの失敗・認証器の削除を、リクエストを待たせずにファイルへ記録する。
+ *
+ * <p>【非同期・バッチ書き込み】
+ * リクエストのスレッドは{@link AuditRingBuffer}に追加するだけで、I/Oを待たない（ロックも取らない）。
+ * 1つの書き込みスレッドが取り出して JSON Lines にし、batch-size 件たまるか flush-interval-ms 経つごとに
+ * {@link AuditFileWriter}（gzip圧縮・追記のみ・max-file-size でローテーション）に書き込む。
+ * 少ない件数ごとに書き込むと、圧縮が効かずシステムコールとfsyncも増えるため、まとめてから書き込む。
+ *
+ * <p>【バッファが満杯の場合（webauthn.audit.overflow）】
+ * <ul>
+ *   <li>drop: 記録を捨てて webauthn.audit.dropped を増やす（ログインのレイテンシを優先）</li>
+ *   <li>block: 空きができるまでリクエストのスレッドを待たせる（記録の欠落を許さない）</li>
+ * </ul>
+ *
+ * <p>【fsync（webauthn.audit.fsync-interval-ms）】
+ * 0ならバッチごと、正の値ならその間隔ごと、負の値なら行わない（OSに任せる）。
+ * fsyncの前にプロセスが落ちた場合、OSのページキャッシュ上の分は失われる可能性がある。
+ *
+ * <p>【認証器の削除】
+ * 削除は{@link #removalListener(String)}をテナントのWebAuthnBackendに設定して記録する。
+ * 画面・APIからの削除だけでなく、期限切れの削除・バイナリプロトコルでの削除・レプリケーションでの反映も記録される
+ * （リクエストのスレッド以外からの削除では remoteAddr は null）。
+ *
+ * <p>【停止】
+ * 停止後に追加しようとした記録は捨てて webauthn.audit.dropped を増やす。
+ * 停止と同時に追加中だった記録は、追加が終わるのを待ってから書き込みスレッドが書き切る（書き込まれずに published だけ増えることはない）。
+ *
+ * <p>webauthn.audit.enabled=false の場合は何も記録しない（書き込みスレッドも作らない）。
+ */
+@Component
+public class AuditLog implements AutoCloseable {
+
+    private static final Logger log = LoggerFactory.getLogger(AuditLog.class);
+
+    private static final long IDLE_PARK_NANOS = TimeUnit.MILLISECONDS.toNanos(10);  // バッファが空のときの待ち時間
+    private static final long BLOCK_PARK_NANOS = TimeUnit.MICROSECONDS.toNanos(50);  // block で空きを待つ間隔
+
+    enum OverflowPolicy {
+        DROP,
+        BLOCK
+    }
+
+    private final boolean enabled;
+    private final OverflowPolicy overflowPolicy;
+    private final int batchSize;
+    private final long flushIntervalNanos;
+    private final long fsyncIntervalNanos;
+    private final AuditRingBuffer<AuditEvent> buffer;
+    private final AuditFileWriter writer;
+    private final Thread consumer;
+    private volatile boolean running = true;  // false の後は新しい記録を受け付けない
+    private volatile boolean draining;  // 追加中の記録がなくなった（書き込みスレッドは残りを書き切って終わる）
+    private final AtomicInteger publishing = new AtomicInteger();  // publish の途中にあるスレッドの数
+
+    private final LongAdder published = new LongAdder();  // リクエストのスレッドが同時に更新する
+    private final LongAdder dropped = new LongAdder();
+    private final AtomicLong written = new AtomicLong();
+    private final AtomicLong batches = new AtomicLong();
+    private final AtomicLong failed = new AtomicLong();
+
+    public AuditLog(
+            MeterRegistry meterRegistry,
+            @Value("${webauthn.audit.enabled:false}") boolean enabled,
+            @Value("${webauthn.audit.directory:audit}") String directory,
+            @Value("${webauthn.audit.buffer-size:65536}") int bufferSize,
+            @Value("${webauthn.audit.overflow:drop}") String overflow,
+            @Value("${webauthn.audit.batch-size:1024}") int batchSize,
+            @Value("${webauthn.audit.flush-interval-ms:100}") long flushIntervalMillis,
+            @Value("${webauthn.audit.fsync-interval-ms:1000}") long fsyncIntervalMillis,
+            @Value("${webauthn.audit.max-file-size:64MB}") DataSize maxFileSize) throws IOException {
+        this.enabled = enabled;
+        this.overflowPolicy = OverflowPolicy.valueOf(overflow.toUpperCase(Locale.ROOT));
+        this.batchSize = batchSize;
+        this.flushIntervalNanos = TimeUnit.MILLISECONDS.toNanos(flushIntervalMillis);
+        this.fsyncIntervalNanos = fsyncIntervalMillis < 0 ? -1 : TimeUnit.MILLISECONDS.toNanos(fsyncIntervalMillis);
+
+        if (enabled) {
+            this.buffer = new AuditRingBuffer<>(bufferSize);
+            this.writer = new AuditFileWriter(Path.of(directory), maxFileSize.toBytes());
+            this.consumer = Thread.ofPlatform().name("audit-writer").daemon().start(this::run);
+        } else {
+            this.buffer = null;
+            this.writer = null;
+            this.consumer = null;
+        }
+
+        counter(meterRegistry, "webauthn.audit.published", published, LongAdder::sum, "Audit events accepted into the buffer");
+        counter(meterRegistry, "webauthn.audit.dropped", dropped, LongAdder::sum, "Audit events dropped because the buffer was full");
+        counter(meterRegistry, "webauthn.audit.written", written, AtomicLong::get, "Audit events written to the audit file");
+        counter(meterRegistry, "webauthn.audit.batches", batches, AtomicLong::get, "Batches written to the audit file");
+        counter(meterRegistry, "webauthn.audit.failed", failed, AtomicLong::get, "Audit events lost by write errors");
+    }
+
+    /**
+     * 監査イベントを記録する（リクエストのスレッドから呼ぶ。overflow=drop ならI/Oもロックも待たない）。
+     */
+    public void record(AuditEvent.Type type, String tenant, String username, String credentialId,
+                       String remoteAddr, String detail) {
+        if (!enabled) {
+            return;
+        }
+        publish(new AuditEvent(System.currentTimeMillis(), type, tenant, username, credentialId, remoteAddr, detail));
+    }
+
+    /**
+     * @return バッファに追加できた場合はtrue（無効な場合・drop で捨てた場合・停止後はfalse）
+     */
+    public boolean publish(AuditEvent event) {
+        if (!enabled) {
+            return false;
+        }
+        // close() は running を false にしてから publishing が0になるのを待つため、
+        // running を true と読んだスレッドの追加は、書き込みスレッドが終わる前にバッファに入る
+        publishing.incrementAndGet();
+        try {
+            if (!running) {
+                dropped.increment();  // 停止後
+                return false;
+            }
+            while (!buffer.offer(event)) {
+                if (overflowPolicy == OverflowPolicy.DROP || !running) {
+                    dropped.increment();
+                    return false;
+                }
+                LockSupport.parkNanos(BLOCK_PARK_NANOS);
+            }
+            published.increment();
+            return true;
+        } finally {
+            publishing.decrementAndGet();
+        }
+    }
+
+    /**
+     * テナントのWebAuthnBackendに設定する、認証器の削除を記録する通知先。
+     */
+    public AuthenticatorRemovalListener removalListener(String tenant) {
+        if (!enabled) {
+            return AuthenticatorRemovalListener.NONE;
+        }
+        return (username, credentialId, reason) -> record(AuditEvent.Type.AUTHENTICATOR_DELETE, tenant, username,
+                Base64.getUrlEncoder().withoutPadding().encodeToString(credentialId), currentRemoteAddr(),
+                reason.name().toLowerCase(Locale.ROOT));
+    }
+
+    private static String currentRemoteAddr() {
+        return RequestContextHolder.getRequestAttributes() instanceof ServletRequestAttributes attributes
+                ? attributes.getRequest().getRemoteAddr() : null;
+    }
+
+    /**
+     * 書き込みスレッド: batch-size 件たまるか、最初の1件から flush-interval-ms 経ったら書き込む。
+     * 停止後は残りを書き切ってから終わる。
+     */
+    private void run() {
+        ObjectMapper mapper = JsonMapper.builder()
+                .serializationInclusion(JsonInclude.Include.NON_NULL)
+                .disable(JsonGenerator.Feature.AUTO_CLOSE_TARGET)
+                .build();
+        BatchBuffer batch = new BatchBuffer();
+        int count = 0;
+        long firstEventAt = 0;
+        long lastForce = System.nanoTime();
+        boolean dirty = false;
+
+        while (true) {
+            boolean stopping = draining;  // 停止の判定を先に読み、その後に追加された分まで取り出す
+            boolean polled = false;
+            AuditEvent event;
+            while (count < batchSize && (event = buffer.poll()) != null) {
+                if (count == 0) {
+                    firstEventAt = System.nanoTime();
+                }
+                try {
+                    mapper.writeValue(batch, event);
+                } catch (IOException e) {
+                    throw new IllegalStateException(e);  // メモリ上への書き込みのため発生しない
+                }
+                batch.write('\n');
+                count++;
+                polled = true;
+            }
+
+            long now = System.nanoTime();
+            if (count > 0 && (count >= batchSize || stopping || now - firstEventAt >= flushIntervalNanos)) {
+                try {
+                    writer.write(batch.array(), batch.size());
+                    written.addAndGet(count);
+                    batches.incrementAndGet();
+                    dirty = true;
+                } catch (IOException e) {
+                    failed.addAndGet(count);
+                    log.error("Failed to write {} audit events", count, e);
+                }
+                batch.reset();
+                count = 0;
+            }
+
+            if (dirty && fsyncIntervalNanos >= 0 && (stopping || now - lastForce >= fsyncIntervalNanos)) {
+                try {
+                    writer.force();
+                } catch (IOException e) {
+                    log.error("Failed to fsync the audit file", e);
+                }
+                lastForce = now;
+                dirty = false;
+            }
+
+            if (!polled) {
+                if (stopping && count == 0) {
+                    return;
+                }
+                LockSupport.parkNanos(IDLE_PARK_NANOS);
+            }
+        }
+    }
+
+    /**
+     * 書き込みスレッドを止める（バッファに残っている分は書き込んでから閉じる）。
+     */
+    @Override
+    public void close() throws InterruptedException, IOException {
+        if (!enabled) {
+            return;
+        }
+        running = false;
+        while (publishing.get() > 0) {
+            LockSupport.parkNanos(BLOCK_PARK_NANOS);  // 停止と同時に追加中だった記録を待つ
+        }
+        draining = true;
+        consumer.join();
+        writer.close();
+    }
+
+    public long getPublished() {
+        return published.sum();
+    }
+
+    public long getDropped() {
+        return dropped.sum();
+    }
+
+    public long getWritten() {
+        return written.get();
+    }
+
+    private static <T> void counter(MeterRegistry registry, String name, T value, ToDoubleFunction<T> function,
+                                    String description) {
+        FunctionCounter.builder(name, value, function)
+                .description(description)
+                .register(registry);
+    }
+
+    /**
+     * 内部の配列を直接渡せる ByteArrayOutputStream（バッチごとにコピーしない）。
+     */
+    private static final class BatchBuffer extends ByteArrayOutputStream {
+
+        BatchBuffer() {
+            super(64 * 1024);
+        }
+
+        byte[] array() {
+            return buf;
+        }
+    }
+}
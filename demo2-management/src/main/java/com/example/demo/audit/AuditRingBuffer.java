@@ -0,0 +1,84 @@
+package com.example.demo.audit;
+
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicLongArray;
+
+/**
+ * 固定長のリングバッファ（複数のプロデューサー・1つのコンシューマー、ロックなし）。
+ *
+ * <p>【仕組み】
+ * スロットごとに通し番号（sequence）を持ち、プロデューサーとコンシューマーはそれを見て書き込み・読み込みの可否を判断する。
+ * <ul>
+ *   <li>書き込み: sequence == 位置 なら空き。tail をCASで1つ進めて確保し、値を書いてから sequence = 位置 + 1 にする</li>
+ *   <li>読み込み: sequence == 位置 + 1 なら書き込み済み。値を取り出してから sequence = 位置 + 容量 にする（次の周回で空き）</li>
+ * </ul>
+ * 満杯の場合、{@link #offer}は待たずにfalseを返す（待つかどうかは呼び出し元が決める）。
+ *
+ * <p>{@link #poll}は1つのスレッドからだけ呼ぶこと。
+ */
+class AuditRingBuffer<E> {
+
+    private final Object[] slots;
+    private final AtomicLongArray sequences;
+    private final int mask;
+    private final AtomicLong tail = new AtomicLong();  // 次に書き込む位置（プロデューサーが共有）
+    private long head;                                 // 次に読み込む位置（コンシューマーのみ）
+
+    /**
+     * @param capacity 容量（2のべき乗）
+     */
+    AuditRingBuffer(int capacity) {
+        if (capacity <= 0 || Integer.bitCount(capacity) != 1) {
+            throw new IllegalArgumentException("capacity must be a power of two: " + capacity);
+        }
+        this.slots = new Object[capacity];
+        this.sequences = new AtomicLongArray(capacity);
+        this.mask = capacity - 1;
+        for (int i = 0; i < capacity; i++) {
+            sequences.set(i, i);
+        }
+    }
+
+    /**
+     * 値を追加する（満杯ならfalse）。
+     */
+    boolean offer(E element) {
+        long position = tail.get();
+        while (true) {
+            int index = (int) position & mask;
+            long diff = sequences.get(index) - position;
+            if (diff == 0) {
+                if (tail.compareAndSet(position, position + 1)) {
+                    slots[index] = element;
+                    sequences.lazySet(index, position + 1);  // 値の書き込みを、sequenceの更新より前に見えるようにする
+                    return true;
+                }
+                position = tail.get();
+            } else if (diff < 0) {
+                return false;  // 1周前の値がまだ読まれていない
+            } else {
+                position = tail.get();  // 他のプロデューサーが先に確保した
+            }
+        }
+    }
+
+    /**
+     * 値を1つ取り出す（空、または確保済みでまだ書き込まれていなければnull）。
+     */
+    @SuppressWarnings("unchecked")
+    E poll() {
+        int index = (int) head & mask;
+        if (sequences.get(index) != head + 1) {
+            return null;
+        }
+        E element = (E) slots[index];
+        slots[index] = null;
+        sequences.lazySet(index, head + slots.length);
+        head++;
+        return element;
+    }
+
+    int capacity() {
+        return slots.length;
+    }
+}
@@ -0,0 +1,11 @@
+package com.example.demo.backend;
+
+/**
+ * ユーザーごとの認証器一覧（登録順のインデックス）の1エントリ。
+ *
+ * @param sequence           登録順の通し番号（ページングのカーソルとして使用）
+ * @param credentialIdBase64 credentialIdのbase64url表現（画面表示のたびにエンコードしないようキャッシュ）
+ * @param authenticator      認証器の情報
+ */
+public record AuthenticatorEntry(long sequence, String credentialIdBase64, AuthenticatorInfo authenticator) {
+}
@@ -2,6 +2,9 @@ package com.example.demo.backend;
 
 import lombok.AllArgsConstructor;
 import lombok.Data;
+import lombok.With;
+
+import java.util.concurrent.atomic.AtomicLongFieldUpdater;
 
 /**
  * WebAuthn認証器の情報。
@@ -11,6 +14,13 @@ import lombok.Data;
  * - AuthenticatorInfo.username → UserInfo: 認証時の逆引き
  *
  * <p>【前提】username は一意で不変な識別子
+ *
+ * <p>【最終使用時刻】
+ * lastUsedAt は認証のたびに更新する。認証は頻繁に行われるため、
+ * 前回の更新から一定時間経った場合だけ{@link #touch(long, long)}でロックを取らずに更新し、書き込みをまとめる。
+ *
+ * <p>【表示名の変更】
+ * 保存済みのインスタンスはロックなしで読まれるため、表示名は{@link #withNickname(String)}で作った別のインスタンスに差し替えて変更する。
  */
 @Data
 @AllArgsConstructor
@@ -19,5 +29,29 @@ public class AuthenticatorInfo {
     private byte[] publicKey;     // 必須：署名検証に使用する公開鍵（COSE形式、長さはアルゴリズム依存）
     private byte[] aaguid;        // 任意：認証器モデルのUUID（16バイト固定、FIDO MDS参照で名前取得可）
     private String username;      // 必須：credentialId → UserInfo の逆引き用
+    @With
     private String nickname;      // 任意：アプリケーション層の機能（ユーザーが設定する認証器の表示名）
+    private volatile long lastUsedAt;  // 最後に認証に使われた時刻（エポックミリ秒、未使用なら登録時刻）
+
+    private static final AtomicLongFieldUpdater<AuthenticatorInfo> LAST_USED_AT =
+            AtomicLongFieldUpdater.newUpdater(AuthenticatorInfo.class, "lastUsedAt");
+
+    /**
+     * 新しく登録した認証器（最終使用時刻は登録時刻）。
+     */
+    public AuthenticatorInfo(byte[] credentialId, byte[] publicKey, byte[] aaguid, String username, String nickname) {
+        this(credentialId, publicKey, aaguid, username, nickname, System.currentTimeMillis());
+    }
+
+    /**
+     * 最終使用時刻を更新する（前回の更新から intervalMillis 以上経っている場合のみ）。
+     *
+     * <p>CASで更新するため、同時に呼ばれても更新に成功するのは1スレッドだけ。
+     *
+     * @return 更新した場合はtrue
+     */
+    public boolean touch(long nowMillis, long intervalMillis) {
+        long previous = lastUsedAt;
+        return nowMillis - previous >= intervalMillis && LAST_USED_AT.compareAndSet(this, previous, nowMillis);
+    }
 }
@@ -0,0 +1,12 @@
+package com.example.demo.backend;
+
+import java.util.List;
+
+/**
+ * 認証器一覧の1ページ。
+ *
+ * @param items      このページの認証器（登録順）
+ * @param nextCursor 次のページを取得するためのカーソル（次のページがなければnull）
+ */
+public record AuthenticatorPage(List<AuthenticatorEntry> items, Long nextCursor) {
+}
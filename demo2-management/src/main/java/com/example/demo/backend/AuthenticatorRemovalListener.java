@@ -0,0 +1,24 @@
+package com.example.demo.backend;
+
+/**
+ * WebAuthnBackendから認証器が削除されたことの通知（監査ログ用）。
+ *
+ * <p>削除の経路（API・バイナリプロトコル・期限切れ・レプリケーション）によらず、削除した認証器ごとに1回呼ばれる。
+ * usernameのロックの中で呼ばれるため、重い処理はしないこと。
+ */
+@FunctionalInterface
+public interface AuthenticatorRemovalListener {
+
+    AuthenticatorRemovalListener NONE = (username, credentialId, reason) -> { };
+
+    /**
+     * 削除の理由。
+     */
+    enum Reason {
+        DELETED,     // 利用者・管理者の操作（deleteAuthenticator(s)）
+        EXPIRED,     // 長期間使われていない（expireAuthenticators）
+        REPLICATED   // リーダーでの削除をリードレプリカに反映した
+    }
+
+    void removed(String username, byte[] credentialId, Reason reason);
+}
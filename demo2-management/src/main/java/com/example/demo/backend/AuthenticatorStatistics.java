@@ -0,0 +1,190 @@
+package com.example.demo.backend;
+
+import com.yubico.webauthn.data.ByteArray;
+
+import java.util.HashMap;
+import java.util.Map;
+import java.util.concurrent.atomic.AtomicLongArray;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * 認証器の統計（管理画面のダッシュボード用）。
+ *
+ * <p>WebAuthnBackendが認証器を追加・削除するたびに差分で更新するため、
+ * 読み出しで認証器やユーザーを全件走査することはない。
+ *
+ * <ul>
+ *   <li>AAGUID（認証器モデル）ごとの認証器数</li>
+ *   <li>認証器数ごとのユーザー数（0, 1, 2, ... , USER_BUCKETS-1 以上）</li>
+ *   <li>1分ごとの新規登録数（直近 RATE_MINUTES 分のリングバッファ）</li>
+ *   <li>最終使用時刻の更新数（記録した数・間隔内のためまとめた数）と、期限切れで削除した認証器数</li>
+ * </ul>
+ *
+ * <p>AAGUIDごとのカウンターは{@link CredentialTable}に byte[] のまま格納し、認証器の追加・削除のたびに ByteArray を作らない。
+ *
+ * <p>カウンターはスレッド間の競合を避けるためLongAdderを使う。
+ * 複数のカウンターをまとめて読んだ値は、同じ瞬間のスナップショットとは限らない。
+ */
+public class AuthenticatorStatistics {
+
+    public static final int USER_BUCKETS = 6;
+    public static final int RATE_MINUTES = 60;
+
+    private static final byte[] UNKNOWN_AAGUID = new byte[0];  // AAGUIDがない認証器
+    private static final long MINUTE_MILLIS = 60_000;
+
+    private final LongAdder totalCredentials = new LongAdder();
+    private final CredentialTable<LongAdder> credentialsByAaguid = new CredentialTable<>();  // key: AAGUID
+    private final LongAdder[] usersByCredentialCount = new LongAdder[USER_BUCKETS];
+    private final AtomicLongArray registrations = new AtomicLongArray(RATE_MINUTES);
+    private final AtomicLongArray registrationMinutes = new AtomicLongArray(RATE_MINUTES);  // 各スロットが何分目のカウントか
+    private final LongAdder lastUseRecorded = new LongAdder();
+    private final LongAdder lastUseCoalesced = new LongAdder();
+    private final LongAdder expiredCredentials = new LongAdder();
+
+    AuthenticatorStatistics() {
+        for (int i = 0; i < usersByCredentialCount.length; i++) {
+            usersByCredentialCount[i] = new LongAdder();
+        }
+    }
+
+    // ===== 更新（WebAuthnBackendから呼び出す） =====
+
+    void userAdded() {
+        usersByCredentialCount[0].increment();
+    }
+
+    void userRemoved(int credentialCount) {
+        usersByCredentialCount[bucket(credentialCount)].decrement();
+    }
+
+    void credentialAdded(byte[] aaguid) {
+        totalCredentials.increment();
+        byte[] key = aaguidKey(aaguid);
+        LongAdder count = credentialsByAaguid.get(key);
+        if (count == null) {
+            LongAdder created = new LongAdder();
+            LongAdder existing = credentialsByAaguid.putIfAbsent(key, created);
+            count = existing != null ? existing : created;
+        }
+        count.increment();
+    }
+
+    void registered(long nowMillis) {
+        long minute = nowMillis / MINUTE_MILLIS;
+        int slot = (int) (minute % RATE_MINUTES);
+        if (registrationMinutes.get(slot) != minute) {
+            synchronized (registrationMinutes) {
+                if (registrationMinutes.get(slot) != minute) {
+                    registrations.set(slot, 0);
+                    registrationMinutes.set(slot, minute);
+                }
+            }
+        }
+        registrations.incrementAndGet(slot);
+    }
+
+    void credentialRemoved(byte[] aaguid) {
+        totalCredentials.decrement();
+        LongAdder count = credentialsByAaguid.get(aaguidKey(aaguid));
+        if (count != null) {
+            count.decrement();
+        }
+    }
+
+    void userCredentialCountChanged(int before, int after) {
+        if (bucket(before) != bucket(after)) {
+            usersByCredentialCount[bucket(before)].decrement();
+            usersByCredentialCount[bucket(after)].increment();
+        }
+    }
+
+    void lastUseRecorded() {
+        lastUseRecorded.increment();
+    }
+
+    void lastUseCoalesced() {
+        lastUseCoalesced.increment();
+    }
+
+    void credentialsExpired(int count) {
+        expiredCredentials.add(count);
+    }
+
+    // ===== 読み出し =====
+
+    /**
+     * 登録済みの認証器の総数。
+     */
+    public long getTotalCredentials() {
+        return totalCredentials.sum();
+    }
+
+    /**
+     * AAGUIDごとの認証器数（AAGUIDがない認証器は空のByteArrayをキーとする）。
+     */
+    public Map<ByteArray, Long> getCredentialsByAaguid() {
+        Map<ByteArray, Long> result = new HashMap<>();
+        credentialsByAaguid.forEach((aaguid, count) -> {
+            long sum = count.sum();
+            if (sum > 0) {
+                result.put(new ByteArray(aaguid), sum);
+            }
+        });
+        return result;
+    }
+
+    /**
+     * 認証器数ごとのユーザー数（添字が認証器数。最後の要素は USER_BUCKETS-1 個以上）。
+     */
+    public long[] getUsersByCredentialCount() {
+        long[] result = new long[USER_BUCKETS];
+        for (int i = 0; i < result.length; i++) {
+            result[i] = usersByCredentialCount[i].sum();
+        }
+        return result;
+    }
+
+    /**
+     * 直近 RATE_MINUTES 分の1分ごとの新規登録数（古い順。最後の要素が現在の分）。
+     */
+    public long[] getRegistrationsPerMinute(long nowMillis) {
+        long currentMinute = nowMillis / MINUTE_MILLIS;
+        long[] result = new long[RATE_MINUTES];
+        for (int i = 0; i < RATE_MINUTES; i++) {
+            long minute = currentMinute - (RATE_MINUTES - 1) + i;
+            int slot = (int) (minute % RATE_MINUTES);
+            result[i] = registrationMinutes.get(slot) == minute ? registrations.get(slot) : 0;
+        }
+        return result;
+    }
+
+    /**
+     * 最終使用時刻を更新して変更ログに記録した回数。
+     */
+    public long getLastUseRecorded() {
+        return lastUseRecorded.sum();
+    }
+
+    /**
+     * 前回の更新から間隔が空いていないため、最終使用時刻の更新を省いた回数。
+     */
+    public long getLastUseCoalesced() {
+        return lastUseCoalesced.sum();
+    }
+
+    /**
+     * 長期間使われていないため削除した認証器の数。
+     */
+    public long getExpiredCredentials() {
+        return expiredCredentials.sum();
+    }
+
+    private static byte[] aaguidKey(byte[] aaguid) {
+        return aaguid != null ? aaguid : UNKNOWN_AAGUID;
+    }
+
+    private static int bucket(int credentialCount) {
+        return Math.min(credentialCount, USER_BUCKETS - 1);
+    }
+}
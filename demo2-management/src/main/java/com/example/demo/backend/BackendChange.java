@@ -0,0 +1,48 @@
+package com.example.demo.backend;
+
+/**
+ * WebAuthnBackendへの1回の更新（変更ログの1エントリ）。
+ *
+ * <p>リードレプリカへ送るため、更新時点の値をコピーして保持する。
+ * position は変更ログ内の通し番号で、read-your-writes のトークンとしても使う。
+ */
+public record BackendChange(
+        long position,
+        long timestamp,       // 変更ログに追加された時刻（レプリケーション遅延の計測用）
+        Type type,
+        String username,
+        byte[] userHandle,    // SAVE_USER のみ
+        byte[] credentialId,  // SAVE_AUTHENTICATOR / DELETE_AUTHENTICATOR
+        byte[] publicKey,     // SAVE_AUTHENTICATOR のみ
+        byte[] aaguid,        // SAVE_AUTHENTICATOR のみ
+        String nickname,      // SAVE_AUTHENTICATOR のみ
+        long lastUsedAt       // SAVE_AUTHENTICATOR のみ
+) {
+
+    public enum Type {
+        SAVE_USER,
+        SAVE_AUTHENTICATOR,
+        DELETE_AUTHENTICATOR
+    }
+
+    static BackendChange saveUser(UserInfo user) {
+        return new BackendChange(0, 0, Type.SAVE_USER, user.getUsername(), user.getUserHandle(),
+                null, null, null, null, 0);
+    }
+
+    static BackendChange saveAuthenticator(AuthenticatorInfo authenticator) {
+        return new BackendChange(0, 0, Type.SAVE_AUTHENTICATOR, authenticator.getUsername(), null,
+                authenticator.getCredentialId(), authenticator.getPublicKey(), authenticator.getAaguid(),
+                authenticator.getNickname(), authenticator.getLastUsedAt());
+    }
+
+    static BackendChange deleteAuthenticator(String username, byte[] credentialId) {
+        return new BackendChange(0, 0, Type.DELETE_AUTHENTICATOR, username, null,
+                credentialId, null, null, null, 0);
+    }
+
+    BackendChange withPosition(long position, long timestamp) {
+        return new BackendChange(position, timestamp, type, username, userHandle,
+                credentialId, publicKey, aaguid, nickname, lastUsedAt);
+    }
+}
@@ -0,0 +1,23 @@
+package com.example.demo.backend;
+
+/**
+ * WebAuthnBackendの検索に遅延を加えるフック（負荷試験用）。
+ *
+ * <p>このデモのバックエンドはメモリ上のマップのため、検索はほぼ一瞬で終わる。
+ * 実際のプロジェクトではバックエンドサーバーへのAPI呼び出しになるため、
+ * その待ち時間を再現して負荷試験を行うときに使う（{@link SimulatedBackendDelay}）。
+ */
+@FunctionalInterface
+public interface BackendDelay {
+
+    /** 遅延なし（既定） */
+    BackendDelay NONE = operation -> {
+    };
+
+    /**
+     * 検索の前に呼ばれる。呼び出し元のスレッドを止めて遅延を再現する。
+     *
+     * @param operation 検索の種類（BackendLookupEvent の operation と同じ）
+     */
+    void pause(String operation);
+}
@@ -0,0 +1,96 @@
+package com.example.demo.backend;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentSkipListMap;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * WebAuthnBackendの更新を順番に記録する変更ログ。
+ *
+ * <p>【順序の保証】
+ * position は追加時に採番される通し番号（1から開始）。
+ * 並行して追加されると、番号の小さいエントリが後から格納されることがある。
+ * 読み出しは連続した番号の範囲だけを返し、欠番の手前で止まるため、エントリを読み飛ばすことはない。
+ *
+ * <p>【保持数】
+ * 古いエントリは retention 件を超えた分から捨てる。
+ * 捨てた範囲から読み出そうとしたリードレプリカは差分では追いつけないため、リーダーから全件のスナップショットを受け取り直す。
+ */
+public class ChangeLog {
+
+    private final int retention;
+    private final AtomicLong lastPosition = new AtomicLong();
+    private final ConcurrentSkipListMap<Long, BackendChange> entries = new ConcurrentSkipListMap<>();
+
+    public ChangeLog(int retention) {
+        this.retention = retention;
+    }
+
+    /**
+     * 変更を追加し、採番したpositionを返す。
+     */
+    long append(BackendChange change) {
+        long position = lastPosition.incrementAndGet();
+        entries.put(position, change.withPosition(position, System.currentTimeMillis()));
+        // size() は全件を数えるため使わない（保持数が大きいと追加のたびに全件を走査する）
+        Map.Entry<Long, BackendChange> first;
+        while ((first = entries.firstEntry()) != null && first.getKey() <= position - retention) {
+            entries.remove(first.getKey());
+        }
+        synchronized (this) {
+            notifyAll();
+        }
+        return position;
+    }
+
+    /**
+     * afterPosition より後の変更を、連続している範囲で最大 maxEntries 件返す。
+     */
+    public List<BackendChange> readAfter(long afterPosition, int maxEntries) {
+        List<BackendChange> batch = new ArrayList<>();
+        long next = afterPosition + 1;
+        while (batch.size() < maxEntries) {
+            BackendChange change = entries.get(next);
+            if (change == null) {
+                break;
+            }
+            batch.add(change);
+            next++;
+        }
+        return batch;
+    }
+
+    /**
+     * afterPosition より後の変更が追加されるまで、最大 timeoutMillis 待つ。
+     */
+    public synchronized void awaitAfter(long afterPosition, long timeoutMillis) throws InterruptedException {
+        if (!entries.containsKey(afterPosition + 1)) {
+            wait(timeoutMillis);
+        }
+    }
+
+    /**
+     * afterPosition より後を読み出せるか（必要なエントリが捨てられていないか）。
+     * afterPosition が最新のpositionより大きい場合（リーダーが再起動して番号が戻った）も false を返す。
+     */
+    public boolean canReadAfter(long afterPosition) {
+        long last = lastPosition.get();
+        if (afterPosition == last) {
+            return true;
+        }
+        if (afterPosition > last) {
+            return false;
+        }
+        var first = entries.firstEntry();
+        return first != null && first.getKey() <= afterPosition + 1;
+    }
+
+    /**
+     * 最後に採番したposition（まだ何も追加されていなければ0）。
+     */
+    public long lastPosition() {
+        return lastPosition.get();
+    }
+}
@@ -0,0 +1,41 @@
+package com.example.demo.backend;
+
+import com.example.demo.backend.WebAuthnBackend.CredentialData;
+
+import java.util.List;
+import java.util.Optional;
+
+/**
+ * CredentialRepository（WebAuthnService）が使う検索。
+ *
+ * <p>既定では{@link WebAuthnBackend}がそのまま実装する。
+ * 検索をリモートのバックエンドに送る場合は、ヘッジ・サーキットブレーカー・バルクヘッドを備えた
+ * com.example.demo.remote.ResilientCredentialLookup に差し替える。
+ */
+public interface CredentialLookup {
+
+    /**
+     * usernameからuserHandleを取得する。
+     */
+    Optional<byte[]> findUserHandleByUsername(String username);
+
+    /**
+     * userHandleからusernameを取得する。
+     */
+    Optional<String> findUsernameByUserHandle(byte[] userHandle);
+
+    /**
+     * usernameに紐づくcredentialIdのリストを取得する。
+     */
+    List<byte[]> findCredentialIdsByUsername(String username);
+
+    /**
+     * credentialIdとuserHandleから認証に必要な全データを取得する。
+     */
+    Optional<CredentialData> findCredentialData(byte[] credentialId, byte[] userHandle);
+
+    /**
+     * credentialIdから認証に必要な全データを取得する（userHandle検証なし）。
+     */
+    Optional<CredentialData> findCredentialDataByCredentialId(byte[] credentialId);
+}
@@ -0,0 +1,72 @@
+package com.example.demo.backend;
+
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * 登録・認証で使う検索と更新（バックエンドサービスが公開する操作）。
+ *
+ * <p>既定では{@link WebAuthnBackend}が実装する（全てヒープ上）。
+ * 利用頻度の低い認証器をディスクに置く場合は com.example.demo.tiered.TieredCredentialStore を使う。
+ */
+public interface CredentialStore extends CredentialLookup {
+
+    /**
+     * UserInfoを保存する。
+     */
+    void saveUser(UserInfo user);
+
+    /**
+     * AuthenticatorInfoを保存する（ユーザーの認証器一覧にも追加する）。
+     */
+    void saveAuthenticator(AuthenticatorInfo authenticator);
+
+    /**
+     * 登録完了: ユーザー（いなければ userHandle で作成）と認証器を、同じusernameのロックの中でまとめて保存する。
+     *
+     * @param userHandle 登録開始時にクライアントへ送った userHandle
+     * @return 保存した場合はtrue。usernameが別のuserHandleで登録済みの場合は何も保存せずfalse
+     */
+    boolean registerAuthenticator(byte[] userHandle, AuthenticatorInfo authenticator);
+
+    /**
+     * ユーザーの認証器を、登録順に1ページ分取得する。
+     *
+     * @param afterCursor 前のページの nextCursor（最初のページは0）
+     * @param limit       1ページの件数
+     */
+    AuthenticatorPage findAuthenticatorPage(String username, long afterCursor, int limit);
+
+    /**
+     * 特定ユーザーの認証器の表示名をまとめて変更する。
+     *
+     * @param nicknames credentialIdsと同じ順序の新しい表示名
+     * @return credentialIdsと同じ順序の結果（指定ユーザーの認証器として存在し、変更できた場合はtrue）
+     */
+    List<Boolean> renameAuthenticators(String username, List<byte[]> credentialIds, List<String> nicknames);
+
+    /**
+     * 認証器が認証に使われたことを記録する。
+     */
+    void recordUse(byte[] credentialId, long nowMillis);
+
+    /**
+     * 特定ユーザーの特定認証器を削除する。
+     *
+     * @return 指定ユーザーの認証器として存在し、削除できた場合はtrue
+     */
+    boolean deleteAuthenticator(String username, byte[] credentialId);
+
+    /**
+     * 特定ユーザーの認証器をまとめて削除する（既定では1件ずつ削除する。アトミックに適用できる実装は上書きする）。
+     *
+     * @return credentialIdsと同じ順序の結果
+     */
+    default List<Boolean> deleteAuthenticators(String username, List<byte[]> credentialIds) {
+        List<Boolean> results = new ArrayList<>(credentialIds.size());
+        for (byte[] credentialId : credentialIds) {
+            results.add(deleteAuthenticator(username, credentialId));
+        }
+        return results;
+    }
+}
@@ -0,0 +1,285 @@
+package com.example.demo.backend;
+
+import java.lang.invoke.MethodHandles;
+import java.lang.invoke.VarHandle;
+import java.nio.ByteOrder;
+import java.security.SecureRandom;
+import java.util.Arrays;
+import java.util.concurrent.locks.StampedLock;
+import java.util.function.BiConsumer;
+
+/**
+ * credentialId・AAGUID などの byte[] をキーにしたハッシュ表（オープンアドレス法・線形探索）。
+ *
+ * <p>【目的】
+ * ConcurrentHashMap&lt;ByteArray, V&gt; は、検索のたびに byte[] を ByteArray で包む必要がある。
+ * このクラスは byte[]（またはその一部の範囲）のまま、ハッシュ値の計算と比較を行い、検索時にオブジェクトを生成しない。
+ *
+ * <p>【並行性（seqlock）】
+ * {@link StampedLock}の楽観的読み込みを使う。
+ * <ul>
+ *   <li>更新: 書き込みロックを取り、1スレッドずつ行う</li>
+ *   <li>検索: ロックを取らずに探索し、その間に更新がなければ結果を採用する。
+ *       更新と重なった場合は探索し直し、続けて重なった場合は読み込みロックを取って探索する</li>
+ * </ul>
+ *
+ * <p>【ハッシュ値】
+ * credentialId はクライアントが選べる値のため、{@code 31 * h + b} のような鍵なしのハッシュでは、
+ * 同じハッシュ値になるキーを大量に登録して線形探索を長くさせられる（ハッシュ衝突によるDoS）。
+ * 表ごとに{@link SecureRandom}で選んだ秘密の値を混ぜ、8バイトずつ 64ビットの乗算と xorshift でかき混ぜる。
+ * 秘密の値を知らなければ、衝突するキーを前もって作れない。
+ *
+ * <p>キーは格納時にコピーするため、呼び出し元が後から配列を書き換えても影響しない。
+ * 値の null は格納できない。
+ */
+public class CredentialTable<V> {
+
+    private static final int INITIAL_CAPACITY = 64;
+    private static final int OPTIMISTIC_ATTEMPTS = 4;
+    private static final byte[] TOMBSTONE = new byte[0];  // 削除済みのスロット（探索はこの先へ続ける）
+    private static final long MULTIPLIER = 0x9E3779B97F4A7C15L;
+    private static final VarHandle LONGS = MethodHandles.byteArrayViewVarHandle(long[].class, ByteOrder.LITTLE_ENDIAN);
+    private static final SecureRandom SEEDS = new SecureRandom();
+
+    private final long seed = SEEDS.nextLong();  // ハッシュ値の鍵（表ごと）
+
+    private final StampedLock lock = new StampedLock();
+    private byte[][] keys = new byte[INITIAL_CAPACITY][];
+    private Object[] values = new Object[INITIAL_CAPACITY];
+    private int size;
+    private int tombstones;
+
+    /**
+     * キーに対応する値を返す（なければnull）。
+     */
+    public V get(byte[] key) {
+        return get(key, 0, key.length);
+    }
+
+    /**
+     * buffer[offset, offset+length) をキーとして検索する（範囲をコピーせずに検索できる）。
+     */
+    @SuppressWarnings("unchecked")
+    public V get(byte[] buffer, int offset, int length) {
+        int hash = hash(buffer, offset, length);
+        for (int attempt = 0; attempt < OPTIMISTIC_ATTEMPTS; attempt++) {
+            long stamp = lock.tryOptimisticRead();
+            if (stamp == 0) {
+                Thread.onSpinWait();  // 更新中
+                continue;
+            }
+            Object value = find(keys, values, hash, buffer, offset, length);
+            if (lock.validate(stamp)) {
+                return (V) value;
+            }
+        }
+        long stamp = lock.readLock();
+        try {
+            return (V) find(keys, values, hash, buffer, offset, length);
+        } finally {
+            lock.unlockRead(stamp);
+        }
+    }
+
+    /**
+     * 値を格納し、以前の値を返す（なければnull）。
+     */
+    public V put(byte[] key, V value) {
+        return insert(key, value, false);
+    }
+
+    /**
+     * キーに値がなければ格納してnullを返し、あれば格納せずに既存の値を返す。
+     */
+    public V putIfAbsent(byte[] key, V value) {
+        return insert(key, value, true);
+    }
+
+    /**
+     * 値を削除し、削除した値を返す（なければnull）。
+     */
+    @SuppressWarnings("unchecked")
+    public V remove(byte[] key) {
+        long stamp = lock.writeLock();
+        try {
+            int mask = keys.length - 1;
+            int index = hash(key, 0, key.length) & mask;
+            while (true) {
+                byte[] slot = keys[index];
+                if (slot == null) {
+                    return null;
+                }
+                if (slot != TOMBSTONE && Arrays.equals(slot, key)) {
+                    break;
+                }
+                index = (index + 1) & mask;
+            }
+            Object previous = values[index];
+            keys[index] = TOMBSTONE;
+            values[index] = null;
+            size--;
+            tombstones++;
+            return (V) previous;
+        } finally {
+            lock.unlockWrite(stamp);
+        }
+    }
+
+    public int size() {
+        long stamp = lock.readLock();
+        try {
+            return size;
+        } finally {
+            lock.unlockRead(stamp);
+        }
+    }
+
+    /**
+     * 全てのエントリを読み込みロックの中でたどる（キーの配列は表のものなので、変更しないこと）。
+     */
+    @SuppressWarnings("unchecked")
+    public void forEach(BiConsumer<byte[], V> action) {
+        long stamp = lock.readLock();
+        try {
+            for (int i = 0; i < keys.length; i++) {
+                byte[] key = keys[i];
+                if (key != null && key != TOMBSTONE) {
+                    action.accept(key, (V) values[i]);
+                }
+            }
+        } finally {
+            lock.unlockRead(stamp);
+        }
+    }
+
+    @SuppressWarnings("unchecked")
+    private V insert(byte[] key, V value, boolean onlyIfAbsent) {
+        if (value == null) {
+            throw new NullPointerException("value");
+        }
+        long stamp = lock.writeLock();
+        try {
+            if ((size + tombstones + 1) * 2 > keys.length) {
+                resize();
+            }
+            int mask = keys.length - 1;
+            int index = hash(key, 0, key.length) & mask;
+            int firstTombstone = -1;
+            while (true) {
+                byte[] slot = keys[index];
+                if (slot == null) {
+                    break;
+                }
+                if (slot == TOMBSTONE) {
+                    if (firstTombstone < 0) {
+                        firstTombstone = index;
+                    }
+                } else if (Arrays.equals(slot, key)) {
+                    Object previous = values[index];
+                    if (!onlyIfAbsent) {
+                        values[index] = value;
+                    }
+                    return (V) previous;
+                }
+                index = (index + 1) & mask;
+            }
+            if (firstTombstone >= 0) {
+                index = firstTombstone;
+                tombstones--;
+            }
+            values[index] = value;
+            keys[index] = key.clone();
+            size++;
+            return null;
+        } finally {
+            lock.unlockWrite(stamp);
+        }
+    }
+
+    /**
+     * 容量を2倍（削除済みが多い場合は同じ容量）にして、削除済みのスロットを取り除く。
+     */
+    private void resize() {
+        int capacity = size * 2 >= keys.length / 2 ? keys.length * 2 : keys.length;
+        byte[][] newKeys = new byte[capacity][];
+        Object[] newValues = new Object[capacity];
+        int mask = capacity - 1;
+        for (int i = 0; i < keys.length; i++) {
+            byte[] key = keys[i];
+            if (key == null || key == TOMBSTONE) {
+                continue;
+            }
+            int index = hash(key, 0, key.length) & mask;
+            while (newKeys[index] != null) {
+                index = (index + 1) & mask;
+            }
+            newKeys[index] = key;
+            newValues[index] = values[i];
+        }
+        keys = newKeys;
+        values = newValues;
+        tombstones = 0;
+    }
+
+    /**
+     * 表を探索する（ロックなしの探索では、更新中の表を読む可能性がある。結果は呼び出し元で検証する）。
+     */
+    private static Object find(byte[][] keys, Object[] values, int hash, byte[] buffer, int offset, int length) {
+        if (keys.length != values.length) {
+            return null;  // 拡張中（keys と values が別の世代）
+        }
+        int mask = keys.length - 1;
+        int index = hash & mask;
+        for (int probes = 0; probes <= mask; probes++) {
+            byte[] slot = keys[index];
+            if (slot == null) {
+                return null;
+            }
+            if (slot != TOMBSTONE && Arrays.equals(slot, 0, slot.length, buffer, offset, offset + length)) {
+                return values[index];
+            }
+            index = (index + 1) & mask;
+        }
+        return null;
+    }
+
+    /**
+     * 最も長い探索の長さ（格納位置とハッシュ値が指す位置の差の最大。テスト用）。
+     */
+    int longestProbe() {
+        long stamp = lock.readLock();
+        try {
+            int mask = keys.length - 1;
+            int longest = 0;
+            for (int i = 0; i < keys.length; i++) {
+                byte[] key = keys[i];
+                if (key != null && key != TOMBSTONE) {
+                    longest = Math.max(longest, (i - hash(key, 0, key.length)) & mask);
+                }
+            }
+            return longest;
+        } finally {
+            lock.unlockRead(stamp);
+        }
+    }
+
+    private int hash(byte[] buffer, int offset, int length) {
+        long h = seed ^ (length * MULTIPLIER);
+        int end = offset + length;
+        int i = offset;
+        for (; i + Long.BYTES <= end; i += Long.BYTES) {
+            h = mix(h ^ (long) LONGS.get(buffer, i));
+        }
+        long tail = 0;
+        for (int shift = 0; i < end; i++, shift += 8) {
+            tail |= (buffer[i] & 0xFFL) << shift;
+        }
+        h = mix(mix(h ^ tail) ^ seed);
+        return (int) (h ^ (h >>> 32));
+    }
+
+    private static long mix(long h) {
+        h *= MULTIPLIER;
+        return h ^ (h >>> 29);
+    }
+}
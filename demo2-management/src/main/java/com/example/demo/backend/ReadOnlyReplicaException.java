@@ -0,0 +1,14 @@
+package com.example.demo.backend;
+
+/**
+ * リードレプリカ（webauthn.replication.role=follower）のノードで更新が呼ばれた。
+ *
+ * <p>followerの更新はリーダーに届かず、次に同じusernameの変更をリーダーから受け取った時点で食い違うため、受け付けない。
+ * コントローラーは 421 Misdirected Request として返し、クライアント（ロードバランサー）にリーダーへ送り直させる。
+ */
+public class ReadOnlyReplicaException extends RuntimeException {
+
+    public ReadOnlyReplicaException() {
+        super("This node is a read replica; send writes to the leader", null, false, false);
+    }
+}
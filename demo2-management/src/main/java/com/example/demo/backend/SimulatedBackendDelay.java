@@ -0,0 +1,62 @@
+package com.example.demo.backend;
+
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.boot.autoconfigure.condition.ConditionalOnProperty;
+import org.springframework.stereotype.Component;
+
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.locks.LockSupport;
+
+/**
+ * 遅いバックエンドの代役: 既定テナントの WebAuthnBackend の検索に、ネットワーク越しのAPI呼び出し相当の遅延を加える。
+ *
+ * <p>【遅延】
+ * <ul>
+ *   <li>通常: latency-millis を中心に ±jitter-millis の一様分布</li>
+ *   <li>tail-probability の確率で tail-millis（GC停止やリトライなど、まれに起きる大きな遅延）</li>
+ * </ul>
+ *
+ * <p>負荷試験（テストの com.example.demo.loadtest.LoadGenerator）で、バックエンドの待ち時間がスループットや
+ * 同時実行数の制限に与える影響を確認するために使う。本番では有効にしないこと。
+ */
+@Component
+@ConditionalOnProperty(name = "webauthn.slow-backend.enabled", havingValue = "true")
+public class SimulatedBackendDelay implements BackendDelay {
+
+    private final long latencyNanos;
+    private final long jitterNanos;
+    private final double tailProbability;
+    private final long tailNanos;
+
+    public SimulatedBackendDelay(
+            WebAuthnBackend backend,
+            @Value("${webauthn.slow-backend.latency-millis:5}") double latencyMillis,
+            @Value("${webauthn.slow-backend.jitter-millis:2}") double jitterMillis,
+            @Value("${webauthn.slow-backend.tail-probability:0.01}") double tailProbability,
+            @Value("${webauthn.slow-backend.tail-millis:100}") double tailMillis) {
+        this.latencyNanos = toNanos(latencyMillis);
+        this.jitterNanos = toNanos(jitterMillis);
+        this.tailProbability = tailProbability;
+        this.tailNanos = toNanos(tailMillis);
+        backend.setDelay(this);
+    }
+
+    @Override
+    public void pause(String operation) {
+        ThreadLocalRandom random = ThreadLocalRandom.current();
+        long nanos = random.nextDouble() < tailProbability
+                ? tailNanos
+                : latencyNanos + (jitterNanos > 0 ? random.nextLong(-jitterNanos, jitterNanos + 1) : 0);
+        long deadline = System.nanoTime() + nanos;
+        // parkNanos は早く戻ることがあるため、期限まで待ち直す（割り込まれたら待つのをやめる）
+        for (long remaining = nanos; remaining > 0 && !Thread.currentThread().isInterrupted();
+             remaining = deadline - System.nanoTime()) {
+            LockSupport.parkNanos(remaining);
+        }
+    }
+
+    private static long toNanos(double millis) {
+        return (long) (millis * TimeUnit.MILLISECONDS.toNanos(1));
+    }
+}
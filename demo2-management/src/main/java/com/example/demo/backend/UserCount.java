@@ -0,0 +1,10 @@
+package com.example.demo.backend;
+
+/**
+ * usernameの前方一致で数えたユーザー数。
+ *
+ * @param count     一致したユーザー数（truncated の場合は数えた上限）
+ * @param truncated 上限で数えるのをやめた場合はtrue（実際の数は count 以上）
+ */
+public record UserCount(long count, boolean truncated) {
+}
@@ -0,0 +1,12 @@
+package com.example.demo.backend;
+
+import java.util.List;
+
+/**
+ * ユーザー一覧の1ページ。
+ *
+ * @param items      このページのユーザー（username順）
+ * @param nextCursor 次のページを取得するためのカーソル（このページ最後のusername。次のページがなければnull）
+ */
+public record UserPage(List<UserInfo> items, String nextCursor) {
+}
@@ -1,11 +1,28 @@
 package com.example.demo.backend;
 
+import com.example.demo.jfr.BackendLookupEvent;
 import com.yubico.webauthn.data.ByteArray;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
 import org.springframework.stereotype.Component;
 
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.Iterator;
 import java.util.List;
+import java.util.Map;
 import java.util.Optional;
+import java.util.Set;
 import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentSkipListMap;
+import java.util.concurrent.ConcurrentSkipListSet;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.function.Consumer;
+import java.util.function.ObjLongConsumer;
 
 /**
  * WebAuthn データアクセス層。
@@ -26,12 +43,52 @@ import java.util.concurrent.ConcurrentHashMap;
  *   <li>credentialId → AuthenticatorInfo → UserInfo: 認証時の署名検証に必要</li>
  * </ul>
  *
+ * <p>【認証器一覧のインデックス】
+ * 管理画面のページングのため、ユーザーごとに認証器を登録順で並べたインデックスを持つ。
+ * 1ページの取得コストは登録済みの認証器の総数によらず、ページサイズに比例する。
+ * credentialIdの表とインデックスは同じ{@link AuthenticatorEntry}を持ち、再保存では表のエントリから登録順の通し番号を引き継ぐ
+ * （通し番号のために別のマップを持たない）。
+ *
+ * <p>【ユーザーのインデックス】
+ * 管理者向けの検索のため、usernameを辞書順に並べたインデックスを持つ。
+ * 前方一致検索とページングは、インデックスの該当位置から必要な件数だけをたどる。
+ * 先頭 COUNTED_PREFIX_LENGTH 文字までの前方一致のユーザー数は、ユーザーの追加時に更新するカウンターから返す。
+ *
+ * <p>【最終使用時刻と期限切れ】
+ * 認証に使われた認証器は{@link #recordUse(byte[], long)}で最終使用時刻を更新する。
+ * 更新は LAST_USED_UPDATE_INTERVAL_MILLIS に1回までにまとめ、変更ログへの書き込みを抑える。
+ * 長期間使われていない認証器は{@link #expireAuthenticators(String, long)}で削除する。
+ *
+ * <p>【削除の通知】
+ * 削除した認証器は、経路（API・バイナリプロトコル・期限切れ・レプリケーション）によらず
+ * {@link AuthenticatorRemovalListener}に通知する（監査ログへの記録をここに集める）。
+ *
+ * <p>【JFRイベント】
+ * 登録・認証で使う検索は{@link BackendLookupEvent}として処理時間を記録する。
+ *
+ * <p>【統計】
+ * 認証器の追加・削除のたびに{@link AuthenticatorStatistics}を差分で更新する（読み出し時に全件を走査しない）。
+ *
  * <p>【Yubicoライブラリとの関係】
  * このクラスはYubicoライブラリのCredentialRepositoryインターフェースを実装していない。
  * WebAuthnServiceがCredentialRepositoryを実装し、このクラスのメソッドを呼び出す設計。
+ *
+ * <p>【変更ログとレプリケーション】
+ * リーダー（webauthn.replication.role=leader）のノードだけが{@link ChangeLog}を持ち、
+ * 更新（saveUser / saveAuthenticator / deleteAuthenticator(s) / renameAuthenticators / 最終使用時刻）を全て記録する。
+ * それ以外（単一ノード・テナントごとのバックエンド・ウォームアップ用）は変更ログを持たない（保持数分のコピーを溜めない）。
+ * 他ノードのリードレプリカは、変更ログを受け取って{@link #apply(BackendChange)}で反映する。
+ * 変更ログの保持範囲より遅れたリードレプリカは、{@link #snapshot}で全件を受け取り直す。
+ * 同じusernameへの更新は、マップへの反映と変更ログへの記録を同じロックの中で行い、順序を一致させる。
+ * リードレプリカ（{@link #startFollowing}の後）は更新を{@link ReadOnlyReplicaException}で拒否し、
+ * read-your-writes の待ち合わせはリーダーから反映済みのpositionだけで判定する。
+ *
+ * <p>【登録完了】
+ * {@link #registerAuthenticator}は、ユーザーの有無の確認・作成と認証器の追加を同じusernameのロックの中で行う。
+ * 同じusernameの最初の登録が同時に完了しても、userHandleは1つになる（ロックはusernameのハッシュで分けるため、別のusernameの登録は待たない）。
  */
 @Component
-public class WebAuthnBackend {
+public class WebAuthnBackend implements CredentialStore {
 
     /**
      * 認証器の検証に必要な全データ。
@@ -50,7 +107,67 @@ public class WebAuthnBackend {
     }
 
     private final ConcurrentHashMap<String, UserInfo> users = new ConcurrentHashMap<>();  // key: username
-    private final ConcurrentHashMap<ByteArray, AuthenticatorInfo> authenticators = new ConcurrentHashMap<>();  // key: credentialId
+    private final ConcurrentSkipListSet<String> usernameIndex = new ConcurrentSkipListSet<>();  // username順（管理者向けの検索用）
+    private final ConcurrentHashMap<String, LongAdder> prefixCounts = new ConcurrentHashMap<>();  // key: usernameの先頭1〜COUNTED_PREFIX_LENGTH文字
+    private final CredentialTable<AuthenticatorEntry> authenticators = new CredentialTable<>();  // key: credentialId（検索時にByteArrayを生成しない）
+    private final ConcurrentHashMap<String, ConcurrentSkipListMap<Long, AuthenticatorEntry>> authenticatorIndex =
+            new ConcurrentHashMap<>();  // key: username → 登録順の通し番号
+    private final AtomicLong registrationSequence = new AtomicLong();
+    private final AuthenticatorStatistics statistics = new AuthenticatorStatistics();
+
+    private static final int WRITE_LOCK_STRIPES = 64;
+    private static final int COUNTED_PREFIX_LENGTH = 2;
+    private static final long LAST_USED_UPDATE_INTERVAL_MILLIS = 60 * 60 * 1000;  // 最終使用時刻の更新間隔（1時間）
+
+    private final Object[] writeLocks = new Object[WRITE_LOCK_STRIPES];  // username単位の更新順序を保つためのロック
+    private final ChangeLog changeLog;  // リーダーのみ（それ以外はnull）
+    private final AtomicLong appliedPosition = new AtomicLong();  // リードレプリカとして反映済みのposition
+    private volatile boolean follower;  // リードレプリカ（更新はリーダーで行う）
+    private volatile ObjLongConsumer<byte[]> useForwarder;  // リードレプリカ: 最終使用時刻の更新をリーダーへ送る
+    private volatile BackendDelay delay = BackendDelay.NONE;  // 検索の遅延（負荷試験用）
+    private volatile AuthenticatorRemovalListener removalListener = AuthenticatorRemovalListener.NONE;
+
+    /**
+     * 変更ログを持たないバックエンド（レプリケーションしないノード・テナント・リードレプリカ）。
+     */
+    public WebAuthnBackend() {
+        this(0);
+    }
+
+    /**
+     * アプリケーションのバックエンド: リーダーのノードだけが変更ログを持つ。
+     */
+    @Autowired
+    public WebAuthnBackend(
+            @Value("${webauthn.replication.role:}") String role,
+            @Value("${webauthn.replication.change-log-retention:1000000}") int changeLogRetention) {
+        this("leader".equals(role) ? changeLogRetention : 0);
+    }
+
+    /**
+     * @param changeLogRetention 変更ログに保持する件数（0なら変更ログを持たない。
+     *                           ソーク試験では、保持数に達した後の状態を短時間で作るために小さくする）
+     */
+    public WebAuthnBackend(int changeLogRetention) {
+        this.changeLog = changeLogRetention > 0 ? new ChangeLog(changeLogRetention) : null;
+        for (int i = 0; i < writeLocks.length; i++) {
+            writeLocks[i] = new Object();
+        }
+    }
+
+    /**
+     * 検索に加える遅延を設定する（負荷試験用。通常は BackendDelay.NONE のまま）。
+     */
+    public void setDelay(BackendDelay delay) {
+        this.delay = delay;
+    }
+
+    /**
+     * 認証器を削除したときの通知先を設定する（監査ログ）。
+     */
+    public void setRemovalListener(AuthenticatorRemovalListener removalListener) {
+        this.removalListener = removalListener;
+    }
 
     /**
      * usernameからUserInfoを取得する。
@@ -62,45 +179,59 @@ public class WebAuthnBackend {
     /**
      * usernameからuserHandleを取得する。
      */
+    @Override
     public Optional<byte[]> findUserHandleByUsername(String username) {
-        return Optional.ofNullable(users.get(username))
+        BackendLookupEvent event = new BackendLookupEvent("findUserHandleByUsername");
+        delay.pause("findUserHandleByUsername");
+        Optional<byte[]> userHandle = Optional.ofNullable(users.get(username))
                 .map(UserInfo::getUserHandle);
+        event.finish(userHandle.isPresent());
+        return userHandle;
     }
 
     /**
      * userHandleからusernameを取得する。
      */
+    @Override
     public Optional<String> findUsernameByUserHandle(byte[] userHandle) {
-        ByteArray targetHandle = new ByteArray(userHandle);
-        return users.values().stream()
-                .filter(user -> targetHandle.equals(new ByteArray(user.getUserHandle())))
+        BackendLookupEvent event = new BackendLookupEvent("findUsernameByUserHandle");
+        delay.pause("findUsernameByUserHandle");
+        Optional<String> username = users.values().stream()
+                .filter(user -> Arrays.equals(userHandle, user.getUserHandle()))
                 .map(UserInfo::getUsername)
                 .findFirst();
+        event.finish(username.isPresent());
+        return username;
     }
 
     /**
      * usernameに紐づくcredentialIdのリストを取得する。
      */
+    @Override
     public List<byte[]> findCredentialIdsByUsername(String username) {
-        return Optional.ofNullable(users.get(username))
+        BackendLookupEvent event = new BackendLookupEvent("findCredentialIdsByUsername");
+        delay.pause("findCredentialIdsByUsername");
+        List<byte[]> credentialIds = Optional.ofNullable(users.get(username))
                 .map(user -> user.getAuthenticators().stream()
                         .map(AuthenticatorInfo::getCredentialId)
                         .toList())
                 .orElse(List.of());
+        event.finish(!credentialIds.isEmpty());
+        return credentialIds;
     }
 
     /**
      * credentialIdとuserHandleから認証に必要な全データを取得する。
      * 実際のバックエンドサーバーでは、1回のAPI呼び出し（データベースではJOIN）で取得される。
      */
+    @Override
     public Optional<CredentialData> findCredentialData(byte[] credentialId, byte[] userHandle) {
-        ByteArray credId = new ByteArray(credentialId);
-        ByteArray targetHandle = new ByteArray(userHandle);
-
-        return Optional.ofNullable(authenticators.get(credId))
+        BackendLookupEvent event = new BackendLookupEvent("findCredentialData");
+        delay.pause("findCredentialData");
+        Optional<CredentialData> data = Optional.ofNullable(authenticatorFor(credentialId))
                 .filter(auth -> {
                     UserInfo user = users.get(auth.getUsername());
-                    return user != null && targetHandle.equals(new ByteArray(user.getUserHandle()));
+                    return user != null && Arrays.equals(userHandle, user.getUserHandle());
                 })
                 .flatMap(auth -> {
                     UserInfo user = users.get(auth.getUsername());
@@ -113,19 +244,18 @@ public class WebAuthnBackend {
                             auth.getPublicKey()
                     ));
                 });
+        event.finish(data.isPresent());
+        return data;
     }
 
     /**
      * credentialIdとuserHandleからAuthenticatorInfoを取得する。
      */
     public Optional<AuthenticatorInfo> findAuthenticator(byte[] credentialId, byte[] userHandle) {
-        ByteArray credId = new ByteArray(credentialId);
-        ByteArray targetHandle = new ByteArray(userHandle);
-
-        return Optional.ofNullable(authenticators.get(credId))
+        return Optional.ofNullable(authenticatorFor(credentialId))
                 .filter(auth -> {
                     UserInfo user = users.get(auth.getUsername());
-                    return user != null && targetHandle.equals(new ByteArray(user.getUserHandle()));
+                    return user != null && Arrays.equals(userHandle, user.getUserHandle());
                 });
     }
 
@@ -133,8 +263,11 @@ public class WebAuthnBackend {
      * credentialIdから認証に必要な全データを取得する（userHandle検証なし）。
      * 実際のバックエンドサーバーでは、1回のAPI呼び出し（データベースではJOIN）で取得される。
      */
+    @Override
     public Optional<CredentialData> findCredentialDataByCredentialId(byte[] credentialId) {
-        return Optional.ofNullable(authenticators.get(new ByteArray(credentialId)))
+        BackendLookupEvent event = new BackendLookupEvent("findCredentialDataByCredentialId");
+        delay.pause("findCredentialDataByCredentialId");
+        Optional<CredentialData> data = Optional.ofNullable(authenticatorFor(credentialId))
                 .flatMap(auth -> {
                     UserInfo user = users.get(auth.getUsername());
                     if (user == null) {
@@ -146,34 +279,150 @@ public class WebAuthnBackend {
                             auth.getPublicKey()
                     ));
                 });
+        event.finish(data.isPresent());
+        return data;
     }
 
     /**
      * credentialIdからAuthenticatorInfoを取得する（userHandle検証なし）。
      */
     public Optional<AuthenticatorInfo> findAuthenticatorByCredentialId(byte[] credentialId) {
-        return Optional.ofNullable(authenticators.get(new ByteArray(credentialId)));
+        return Optional.ofNullable(authenticatorFor(credentialId));
+    }
+
+    @Override
+    public AuthenticatorPage findAuthenticatorPage(String username, long afterCursor, int limit) {
+        ConcurrentSkipListMap<Long, AuthenticatorEntry> index = authenticatorIndex.get(username);
+        if (index == null) {
+            return new AuthenticatorPage(List.of(), null);
+        }
+
+        List<AuthenticatorEntry> items = new ArrayList<>(limit);
+        Iterator<AuthenticatorEntry> it = index.tailMap(afterCursor, false).values().iterator();
+        while (items.size() < limit && it.hasNext()) {
+            items.add(it.next());
+        }
+        Long nextCursor = it.hasNext() ? items.get(items.size() - 1).sequence() : null;
+        return new AuthenticatorPage(items, nextCursor);
+    }
+
+    /**
+     * usernameが prefix で始まるユーザーを、username順に1ページ分取得する。
+     *
+     * @param prefix      前方一致の条件（空文字列なら全ユーザー）
+     * @param afterCursor 前のページの nextCursor（最初のページはnull）
+     * @param limit       1ページの件数
+     */
+    public UserPage findUsers(String prefix, String afterCursor, int limit) {
+        String from = afterCursor != null && afterCursor.compareTo(prefix) > 0 ? afterCursor : prefix;
+        boolean inclusive = !from.equals(afterCursor);
+
+        List<UserInfo> items = new ArrayList<>(limit);
+        String last = null;
+        boolean hasNext = false;
+        for (String username : usernameIndex.tailSet(from, inclusive)) {
+            if (!username.startsWith(prefix)) {
+                break;
+            }
+            if (items.size() == limit) {
+                hasNext = true;
+                break;
+            }
+            UserInfo user = users.get(username);
+            if (user != null) {
+                items.add(user);
+                last = username;
+            }
+        }
+        return new UserPage(items, hasNext ? last : null);
+    }
+
+    /**
+     * 登録済みのユーザー数を取得する（全件の走査はしない）。
+     */
+    public long countUsers() {
+        return users.size();
+    }
+
+    /**
+     * usernameが prefix で始まるユーザー数を数える。
+     *
+     * <p>prefix が COUNTED_PREFIX_LENGTH 文字以下ならカウンターから正確な数を返す（走査しない）。
+     * それより長い prefix はインデックスの該当範囲をたどって max 件まで数えるため、コストは一致した件数（最大 max）に比例する。
+     *
+     * @return 一致したユーザー数（max 件以上一致した場合は max 件で打ち切り、truncated=true）
+     */
+    public UserCount countUsersByPrefix(String prefix, long max) {
+        if (prefix.isEmpty()) {
+            return new UserCount(countUsers(), false);
+        }
+        if (prefix.length() <= COUNTED_PREFIX_LENGTH) {
+            LongAdder counter = prefixCounts.get(prefix);
+            return new UserCount(counter != null ? counter.sum() : 0, false);
+        }
+        long count = 0;
+        for (String username : usernameIndex.tailSet(prefix, true)) {
+            if (!username.startsWith(prefix)) {
+                break;
+            }
+            if (count == max) {
+                return new UserCount(max, true);
+            }
+            count++;
+        }
+        return new UserCount(count, false);
     }
 
     /**
      * UserInfoを保存する。
      */
+    @Override
     public void saveUser(UserInfo user) {
-        users.put(user.getUsername(), user);
+        checkWritable();
+        synchronized (writeLockFor(user.getUsername())) {
+            putUser(user);
+            logChange(BackendChange.saveUser(user));
+        }
     }
 
     /**
      * AuthenticatorInfoを保存する。
      * ユーザーの認証器リストにも自動的に追加される。
      */
+    @Override
     public void saveAuthenticator(AuthenticatorInfo authenticator) {
-        authenticators.put(new ByteArray(authenticator.getCredentialId()), authenticator);
+        checkWritable();
+        synchronized (writeLockFor(authenticator.getUsername())) {
+            putAuthenticator(authenticator);
+            logChange(BackendChange.saveAuthenticator(authenticator));
+        }
+    }
 
-        // ユーザーの認証器リストにも追加
-        UserInfo user = users.get(authenticator.getUsername());
-        if (user != null && user.getAuthenticators().stream()
-                .noneMatch(a -> new ByteArray(a.getCredentialId()).equals(new ByteArray(authenticator.getCredentialId())))) {
-            user.getAuthenticators().add(authenticator);
+    /**
+     * 登録完了: ユーザー（いなければ userHandle で作成）と認証器をまとめて保存する。
+     *
+     * <p>usernameが既に別のuserHandleで登録されている場合（同じusernameの最初の登録が同時に行われ、先に完了した方がいる）は、
+     * 何も保存しない。この認証器は登録開始時の userHandle を持つため、保存すると discoverable credential での認証で
+     * ユーザーを特定できなくなる。
+     *
+     * @param userHandle 登録開始時にクライアントへ送った userHandle
+     * @return 保存した場合はtrue。usernameが別のuserHandleで登録済みの場合はfalse
+     */
+    @Override
+    public boolean registerAuthenticator(byte[] userHandle, AuthenticatorInfo authenticator) {
+        checkWritable();
+        synchronized (writeLockFor(authenticator.getUsername())) {
+            UserInfo user = users.get(authenticator.getUsername());
+            if (user == null) {
+                user = new UserInfo(authenticator.getUsername(), userHandle);
+                putUser(user);
+                logChange(BackendChange.saveUser(user));
+            } else if (!Arrays.equals(user.getUserHandle(), userHandle)) {
+                return false;
+            }
+            putAuthenticator(authenticator);
+            logChange(BackendChange.saveAuthenticator(authenticator));
+            return true;
         }
     }
 
@@ -181,25 +430,440 @@ public class WebAuthnBackend {
      * 特定ユーザーの特定認証器を削除する。
      * 実際のバックエンドサーバーでは、認可チェック（削除者=所有者の確認）が必須。
      */
+    @Override
     public boolean deleteAuthenticator(String username, byte[] credentialId) {
-        ByteArray credId = new ByteArray(credentialId);
-        AuthenticatorInfo auth = authenticators.get(credId);
+        return deleteAuthenticators(username, List.of(credentialId)).get(0);
+    }
 
-        // 認証器が存在し、指定されたユーザーのものであることを確認
-        if (auth == null || !auth.getUsername().equals(username)) {
-            return false;
+    /**
+     * 特定ユーザーの認証器をまとめて削除する。
+     *
+     * <p>ユーザー単位でアトミックに適用し、ユーザーの認証器リストは1回の走査で更新する。
+     *
+     * @return credentialIdsと同じ順序の結果（指定ユーザーの認証器として存在し、削除できた場合はtrue）
+     */
+    @Override
+    public List<Boolean> deleteAuthenticators(String username, List<byte[]> credentialIds) {
+        return deleteAuthenticators(username, credentialIds, AuthenticatorRemovalListener.Reason.DELETED);
+    }
+
+    private List<Boolean> deleteAuthenticators(String username, List<byte[]> credentialIds,
+                                               AuthenticatorRemovalListener.Reason reason) {
+        checkWritable();
+        synchronized (writeLockFor(username)) {
+            List<Boolean> results = removeAuthenticators(username, credentialIds, reason);
+            for (int i = 0; i < credentialIds.size(); i++) {
+                if (results.get(i)) {
+                    logChange(BackendChange.deleteAuthenticator(username, credentialIds.get(i)));
+                }
+            }
+            return results;
         }
+    }
 
-        // authenticatorsマップから削除
-        authenticators.remove(credId);
+    @Override
+    public List<Boolean> renameAuthenticators(String username, List<byte[]> credentialIds, List<String> nicknames) {
+        checkWritable();
+        synchronized (writeLockFor(username)) {
+            List<Boolean> results = new ArrayList<>(credentialIds.size());
+            Map<ByteArray, AuthenticatorInfo> renamed = new HashMap<>();
+            ConcurrentSkipListMap<Long, AuthenticatorEntry> index = authenticatorIndex.get(username);
+            for (int i = 0; i < credentialIds.size(); i++) {
+                byte[] credentialId = credentialIds.get(i);
+                AuthenticatorEntry entry = authenticators.get(credentialId);
+                if (entry == null || !entry.authenticator().getUsername().equals(username)) {
+                    results.add(false);
+                    continue;
+                }
+                // ロックなしで読まれているインスタンスは変更せず、新しいインスタンスに差し替える
+                AuthenticatorInfo auth = entry.authenticator().withNickname(nicknames.get(i));
+                AuthenticatorEntry updated = new AuthenticatorEntry(entry.sequence(), entry.credentialIdBase64(), auth);
+                authenticators.put(credentialId, updated);
+                if (index != null) {
+                    index.put(updated.sequence(), updated);
+                }
+                renamed.put(new ByteArray(credentialId), auth);
+                logChange(BackendChange.saveAuthenticator(auth));
+                results.add(true);
+            }
 
-        // ユーザーの認証器リストからも削除
-        UserInfo user = users.get(username);
+            // ユーザーの認証器リストも差し替える（まとめて1回の走査で行う）
+            UserInfo user = users.get(username);
+            if (user != null && !renamed.isEmpty()) {
+                List<AuthenticatorInfo> list = user.getAuthenticators();
+                for (int i = 0; i < list.size(); i++) {
+                    AuthenticatorInfo replacement = renamed.get(new ByteArray(list.get(i).getCredentialId()));
+                    if (replacement != null) {
+                        list.set(i, replacement);
+                    }
+                }
+            }
+            return results;
+        }
+    }
+
+    /**
+     * 認証器が認証に使われたことを記録する。
+     *
+     * <p>最終使用時刻の更新から LAST_USED_UPDATE_INTERVAL_MILLIS 経っていなければ何もしない（ロックも取らない）。
+     * 更新した場合だけ、usernameのロックを取って変更ログに記録する。
+     *
+     * <p>リードレプリカでは変更ログに記録せず（リードレプリカの変更ログはどこにも送られない）、
+     * {@link #startFollowing(ObjLongConsumer)}で渡された送り先からリーダーに記録させる。
+     */
+    @Override
+    public void recordUse(byte[] credentialId, long nowMillis) {
+        AuthenticatorInfo auth = authenticatorFor(credentialId);
+        if (auth == null) {
+            return;
+        }
+        if (!auth.touch(nowMillis, LAST_USED_UPDATE_INTERVAL_MILLIS)) {
+            statistics.lastUseCoalesced();
+            return;
+        }
+        if (follower) {
+            useForwarder.accept(credentialId, nowMillis);
+            return;
+        }
+        synchronized (writeLockFor(auth.getUsername())) {
+            // ロックを取るまでに削除・差し替えられていれば記録しない
+            if (authenticatorFor(credentialId) == auth) {
+                logChange(BackendChange.saveAuthenticator(auth));
+                statistics.lastUseRecorded();
+            }
+        }
+    }
+
+    /**
+     * usernameの認証器のうち、cutoffMillis より前から使われていないものを削除する。
+     *
+     * @return 削除した認証器の数
+     */
+    public int expireAuthenticators(String username, long cutoffMillis) {
+        checkWritable();
+        ConcurrentSkipListMap<Long, AuthenticatorEntry> index = authenticatorIndex.get(username);
+        if (index == null) {
+            return 0;
+        }
+        synchronized (writeLockFor(username)) {
+            List<byte[]> stale = index.values().stream()
+                    .map(AuthenticatorEntry::authenticator)
+                    .filter(auth -> auth.getLastUsedAt() < cutoffMillis)
+                    .map(AuthenticatorInfo::getCredentialId)
+                    .toList();
+            if (stale.isEmpty()) {
+                return 0;
+            }
+            deleteAuthenticators(username, stale, AuthenticatorRemovalListener.Reason.EXPIRED);
+            statistics.credentialsExpired(stale.size());
+            return stale.size();
+        }
+    }
+
+    /**
+     * 認証器の統計。
+     */
+    public AuthenticatorStatistics getStatistics() {
+        return statistics;
+    }
+
+    // ===== レプリケーション =====
+
+    /**
+     * このノードをリードレプリカにする（ReplicationClient の開始時に呼ばれる）。
+     * 以降の更新は{@link ReadOnlyReplicaException}で拒否する。
+     *
+     * @param useForwarder 認証で使われた認証器のcredentialIdと時刻をリーダーへ送る処理（{@link #recordUse}から呼ばれる）
+     */
+    public void startFollowing(ObjLongConsumer<byte[]> useForwarder) {
+        this.useForwarder = useForwarder;
+        follower = true;
+    }
+
+    /**
+     * リードレプリカかどうか。
+     */
+    public boolean isFollower() {
+        return follower;
+    }
+
+    /**
+     * 他ノード（リーダー）の変更を反映する（リードレプリカ側で使用）。
+     * 反映した変更はこのノードの変更ログには記録しない。
+     */
+    public void apply(BackendChange change) {
+        synchronized (writeLockFor(change.username())) {
+            switch (change.type()) {
+                case SAVE_USER -> putUser(new UserInfo(change.username(), change.userHandle()));
+                case SAVE_AUTHENTICATOR -> putAuthenticator(new AuthenticatorInfo(
+                        change.credentialId(), change.publicKey(), change.aaguid(),
+                        change.username(), change.nickname(), change.lastUsedAt()));
+                case DELETE_AUTHENTICATOR -> removeAuthenticators(change.username(), List.of(change.credentialId()),
+                        AuthenticatorRemovalListener.Reason.REPLICATED);
+            }
+        }
+        appliedPosition.accumulateAndGet(change.position(), Math::max);
+        synchronized (appliedPosition) {
+            appliedPosition.notifyAll();
+        }
+    }
+
+    /**
+     * このノードの変更ログ（リーダーとして他ノードに送る。リーダーでなければnull）。
+     */
+    public ChangeLog getChangeLog() {
+        return changeLog;
+    }
+
+    /**
+     * 変更ログの最新のposition（書き込み後に返す read-your-writes のトークン。変更ログがなければ0）。
+     */
+    public long getLastPosition() {
+        return changeLog != null ? changeLog.lastPosition() : 0;
+    }
+
+    /**
+     * リードレプリカとして反映済みのposition。
+     */
+    public long getAppliedPosition() {
+        return appliedPosition.get();
+    }
+
+    /**
+     * read-your-writes: 指定したpositionまでの変更がこのノードで読めるようになるまで待つ。
+     *
+     * <p>positionはリーダーの変更ログのpositionのため、リードレプリカではリーダーから反映済みのpositionを待つ
+     * （{@link #apply}が appliedPosition のモニターで通知する）。
+     * それ以外のノードでは書き込みがこのノードで行われているため待たず、自ノードの変更ログの範囲内かだけを返す。
+     *
+     * @param position 書き込み時に得たposition（リーダーの変更ログのposition）
+     * @return timeout までに読めるようになった場合はtrue
+     */
+    public boolean awaitPosition(long position, long timeout, TimeUnit unit) throws InterruptedException {
+        if (!follower) {
+            return position <= getLastPosition();
+        }
+        long deadline = System.nanoTime() + unit.toNanos(timeout);
+        synchronized (appliedPosition) {
+            while (appliedPosition.get() < position) {
+                long remainingMillis = TimeUnit.NANOSECONDS.toMillis(deadline - System.nanoTime());
+                if (remainingMillis <= 0) {
+                    return false;
+                }
+                appliedPosition.wait(remainingMillis);
+            }
+            return true;
+        }
+    }
+
+    /**
+     * リードレプリカへ送る全件のスナップショット: usernameごとに、ユーザーとその認証器を保存する変更を渡す。
+     *
+     * <p>usernameごとにロックの中で値をコピーし、ロックの外で sink を呼ぶ（送信が遅くても更新を止めない）。
+     * 呼び出し前に取得した変更ログのpositionまでの更新は、全てスナップショットに含まれる
+     * （更新はマップへの反映の後に変更ログへ記録するため）。それより後の変更は、スナップショットに含まれていても
+     * リードレプリカで順に反映し直すと同じ状態になる（変更はキーごとに値を置き換える）。
+     */
+    public void snapshot(Consumer<List<BackendChange>> sink) {
+        for (String username : usernameIndex) {
+            List<BackendChange> changes = new ArrayList<>();
+            synchronized (writeLockFor(username)) {
+                UserInfo user = users.get(username);
+                if (user == null) {
+                    continue;
+                }
+                changes.add(BackendChange.saveUser(user));
+                ConcurrentSkipListMap<Long, AuthenticatorEntry> index = authenticatorIndex.get(username);
+                if (index != null) {
+                    for (AuthenticatorEntry entry : index.values()) {
+                        changes.add(BackendChange.saveAuthenticator(entry.authenticator()));
+                    }
+                }
+            }
+            sink.accept(changes);
+        }
+    }
+
+    /**
+     * スナップショットの受信を始める（リードレプリカ側）。反映済みのpositionを0に戻し、
+     * 受信が終わるまで read-your-writes の待ち合わせを通さない。
+     */
+    public void beginSnapshot() {
+        appliedPosition.set(0);
+    }
+
+    /**
+     * スナップショットの受信を終える（リードレプリカ側）: スナップショットになかったユーザー・認証器を取り除き、
+     * 反映済みのpositionをスナップショットのpositionにする。
+     *
+     * @param position      スナップショットが含む変更ログのposition（以降の変更はこの次から届く）
+     * @param usernames     スナップショットに含まれたusername
+     * @param credentialIds スナップショットに含まれたcredentialId
+     */
+    public void completeSnapshot(long position, Set<String> usernames, Set<ByteArray> credentialIds) {
+        for (String username : usernameIndex) {
+            synchronized (writeLockFor(username)) {
+                ConcurrentSkipListMap<Long, AuthenticatorEntry> index = authenticatorIndex.get(username);
+                if (index != null) {
+                    List<byte[]> stale = index.values().stream()
+                            .map(entry -> entry.authenticator().getCredentialId())
+                            .filter(credentialId -> !credentialIds.contains(new ByteArray(credentialId)))
+                            .toList();
+                    if (!stale.isEmpty()) {
+                        removeAuthenticators(username, stale, AuthenticatorRemovalListener.Reason.REPLICATED);
+                    }
+                }
+                if (!usernames.contains(username)) {
+                    removeUser(username);
+                }
+            }
+        }
+        appliedPosition.set(position);
+        synchronized (appliedPosition) {
+            appliedPosition.notifyAll();
+        }
+    }
+
+    private void checkWritable() {
+        if (follower) {
+            throw new ReadOnlyReplicaException();
+        }
+    }
+
+    // ===== マップの更新（呼び出し元でusernameのロックを取得すること） =====
+
+    private void logChange(BackendChange change) {
+        if (changeLog != null) {
+            changeLog.append(change);
+        }
+    }
+
+    private void putUser(UserInfo user) {
+        UserInfo existing = users.get(user.getUsername());
+        if (existing != null && Arrays.equals(existing.getUserHandle(), user.getUserHandle())) {
+            return;  // 同じユーザーの保存し直し（認証器リストを持つ既存の UserInfo を残す）
+        }
+        if (users.put(user.getUsername(), user) == null) {
+            statistics.userAdded();
+            String username = user.getUsername();
+            for (int length = 1; length <= Math.min(COUNTED_PREFIX_LENGTH, username.length()); length++) {
+                prefixCounts.computeIfAbsent(username.substring(0, length), k -> new LongAdder()).increment();
+            }
+        }
+        usernameIndex.add(user.getUsername());
+    }
+
+    private void putAuthenticator(AuthenticatorInfo authenticator) {
+        ByteArray credId = new ByteArray(authenticator.getCredentialId());
+
+        // 再保存の場合は登録順を変えずに差し替える
+        AuthenticatorEntry previous = authenticators.get(authenticator.getCredentialId());
+        AuthenticatorEntry entry = previous != null
+                ? new AuthenticatorEntry(previous.sequence(), previous.credentialIdBase64(), authenticator)
+                : new AuthenticatorEntry(registrationSequence.incrementAndGet(), credId.getBase64Url(), authenticator);
+        authenticators.put(authenticator.getCredentialId(), entry);
+        if (previous != null) {
+            statistics.credentialRemoved(previous.authenticator().getAaguid());
+        } else {
+            statistics.registered(System.currentTimeMillis());
+        }
+        statistics.credentialAdded(authenticator.getAaguid());
+
+        // 登録順のインデックスに追加
+        authenticatorIndex.computeIfAbsent(authenticator.getUsername(), k -> new ConcurrentSkipListMap<>())
+                .put(entry.sequence(), entry);
+
+        // ユーザーの認証器リストにも追加（同じcredentialIdがあれば差し替える）
+        UserInfo user = users.get(authenticator.getUsername());
         if (user != null) {
+            List<AuthenticatorInfo> list = user.getAuthenticators();
+            int existing = -1;
+            for (int i = 0; i < list.size(); i++) {
+                if (new ByteArray(list.get(i).getCredentialId()).equals(credId)) {
+                    existing = i;
+                    break;
+                }
+            }
+            if (existing >= 0) {
+                list.set(existing, authenticator);
+            } else {
+                list.add(authenticator);
+                statistics.userCredentialCountChanged(list.size() - 1, list.size());
+            }
+        }
+    }
+
+    /**
+     * ユーザーを取り除く（リードレプリカのスナップショットで、リーダーにないユーザーを消すときだけ使う）。
+     */
+    private void removeUser(String username) {
+        UserInfo user = users.get(username);
+        if (user == null) {
+            return;
+        }
+        List<byte[]> credentialIds = user.getAuthenticators().stream().map(AuthenticatorInfo::getCredentialId).toList();
+        if (!credentialIds.isEmpty()) {
+            removeAuthenticators(username, credentialIds, AuthenticatorRemovalListener.Reason.REPLICATED);
+        }
+        users.remove(username);
+        statistics.userRemoved(user.getAuthenticators().size());
+        authenticatorIndex.remove(username);
+        usernameIndex.remove(username);
+        for (int length = 1; length <= Math.min(COUNTED_PREFIX_LENGTH, username.length()); length++) {
+            LongAdder counter = prefixCounts.get(username.substring(0, length));
+            if (counter != null) {
+                counter.decrement();
+            }
+        }
+    }
+
+    private List<Boolean> removeAuthenticators(String username, List<byte[]> credentialIds,
+                                               AuthenticatorRemovalListener.Reason reason) {
+        List<Boolean> results = new ArrayList<>(credentialIds.size());
+        Set<ByteArray> removed = new HashSet<>();
+        ConcurrentSkipListMap<Long, AuthenticatorEntry> index = authenticatorIndex.get(username);
+
+        for (byte[] credentialId : credentialIds) {
+            AuthenticatorEntry entry = authenticators.get(credentialId);
+
+            // 認証器が存在し、指定されたユーザーのものであることを確認
+            if (entry == null || !entry.authenticator().getUsername().equals(username)) {
+                results.add(false);
+                continue;
+            }
+
+            // authenticatorsマップから削除
+            authenticators.remove(credentialId);
+
+            // 登録順のインデックスから削除
+            if (index != null) {
+                index.remove(entry.sequence());
+            }
+
+            statistics.credentialRemoved(entry.authenticator().getAaguid());
+            removalListener.removed(username, credentialId, reason);
+            removed.add(new ByteArray(credentialId));
+            results.add(true);
+        }
+
+        // ユーザーの認証器リストからも削除（まとめて1回の走査で行う）
+        UserInfo user = users.get(username);
+        if (user != null && !removed.isEmpty()) {
+            int before = user.getAuthenticators().size();
             user.getAuthenticators().removeIf(a ->
-                new ByteArray(a.getCredentialId()).equals(credId));
+                removed.contains(new ByteArray(a.getCredentialId())));
+            statistics.userCredentialCountChanged(before, user.getAuthenticators().size());
         }
 
-        return true;
+        return results;
+    }
+
+    private AuthenticatorInfo authenticatorFor(byte[] credentialId) {
+        AuthenticatorEntry entry = authenticators.get(credentialId);
+        return entry != null ? entry.authenticator() : null;
+    }
+
+    private Object writeLockFor(String username) {
+        return writeLocks[Math.floorMod(username.hashCode(), writeLocks.length)];
     }
 }
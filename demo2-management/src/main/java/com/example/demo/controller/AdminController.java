@@ -0,0 +1,138 @@
+package com.example.demo.controller;
+
+import com.example.demo.backend.AuthenticatorStatistics;
+import com.example.demo.backend.UserCount;
+import com.example.demo.backend.UserPage;
+import com.example.demo.backend.WebAuthnBackend;
+import com.example.demo.service.StaleCredentialSweeper;
+import com.yubico.webauthn.data.ByteArray;
+import lombok.Data;
+import lombok.RequiredArgsConstructor;
+import org.springframework.beans.factory.ObjectProvider;
+import org.springframework.boot.autoconfigure.condition.ConditionalOnProperty;
+import org.springframework.web.bind.annotation.GetMapping;
+import org.springframework.web.bind.annotation.RequestMapping;
+import org.springframework.web.bind.annotation.RequestParam;
+import org.springframework.web.bind.annotation.RestController;
+
+import java.nio.ByteBuffer;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.TreeMap;
+import java.util.UUID;
+
+/**
+ * 管理者向けAPI - ユーザーの検索（ヘルプデスク用）・認証器の統計（ダッシュボード用）
+ *
+ * <p>webauthn.admin.enabled=true の場合のみ有効になる。
+ * 本デモには管理者の認証がないため、実際のプロジェクトでは管理者の認証・認可を必ず追加すること。
+ */
+@RestController
+@RequestMapping("/api/admin")
+@ConditionalOnProperty(name = "webauthn.admin.enabled", havingValue = "true")
+@RequiredArgsConstructor
+public class AdminController {
+
+    private final WebAuthnBackend backend;
+    private final ObjectProvider<StaleCredentialSweeper> sweeper;  // webauthn.sweeper.enabled=true の場合のみ存在
+
+    private static final int MAX_USER_PAGE_SIZE = 100;
+    private static final long MAX_PREFIX_COUNT = 10_000;
+
+    /**
+     * ユーザー一覧API: usernameが prefix で始まるユーザーを、username順に1ページ分返す
+     *
+     * <p>レスポンスの nextCursor を次のリクエストの cursor に指定すると、続きを取得できる。
+     */
+    @GetMapping("/users")
+    public Map<String, Object> listUsers(
+            @RequestParam(defaultValue = "") String prefix,
+            @RequestParam(required = false) String cursor,
+            @RequestParam(defaultValue = "20") int limit) {
+
+        UserPage page = backend.findUsers(prefix, cursor, Math.max(1, Math.min(limit, MAX_USER_PAGE_SIZE)));
+
+        List<UserDto> items = page.items().stream()
+                .map(user -> new UserDto(user.getUsername(), user.getAuthenticators().size()))
+                .toList();
+
+        Map<String, Object> body = new LinkedHashMap<>();
+        body.put("items", items);
+        body.put("nextCursor", page.nextCursor());
+        return body;
+    }
+
+    /**
+     * ユーザー数API: usernameが prefix で始まるユーザー数を返す
+     *
+     * <p>prefixが2文字以下（全ユーザーを含む）の場合は正確な数を返す。
+     * それより長い prefix は MAX_PREFIX_COUNT 件まで数え、それ以上は count=MAX_PREFIX_COUNT・truncated=true として返す。
+     */
+    @GetMapping("/users/count")
+    public Map<String, Object> countUsers(@RequestParam(defaultValue = "") String prefix) {
+        UserCount count = backend.countUsersByPrefix(prefix, MAX_PREFIX_COUNT);
+
+        Map<String, Object> body = new LinkedHashMap<>();
+        body.put("count", count.count());
+        body.put("truncated", count.truncated());
+        return body;
+    }
+
+    /**
+     * 統計API: 認証器モデルごとの認証器数、認証器数ごとのユーザー数、1分ごとの新規登録数、
+     * 最終使用時刻の更新数、期限切れの削除状況を返す
+     *
+     * <p>WebAuthnBackendが差分で更新しているカウンターを読むだけで、認証器やユーザーは走査しない。
+     */
+    @GetMapping("/stats")
+    public Map<String, Object> stats() {
+        AuthenticatorStatistics statistics = backend.getStatistics();
+
+        Map<String, Long> byAaguid = new TreeMap<>();
+        statistics.getCredentialsByAaguid().forEach((aaguid, count) -> byAaguid.put(formatAaguid(aaguid), count));
+
+        long[] buckets = statistics.getUsersByCredentialCount();
+        Map<String, Long> usersByCredentialCount = new LinkedHashMap<>();
+        for (int i = 0; i < buckets.length; i++) {
+            usersByCredentialCount.put(i < buckets.length - 1 ? String.valueOf(i) : i + "+", buckets[i]);
+        }
+
+        Map<String, Object> body = new LinkedHashMap<>();
+        body.put("totalUsers", backend.countUsers());
+        body.put("totalCredentials", statistics.getTotalCredentials());
+        body.put("credentialsByAaguid", byAaguid);
+        body.put("usersByCredentialCount", usersByCredentialCount);
+        body.put("registrationsPerMinute", statistics.getRegistrationsPerMinute(System.currentTimeMillis()));
+        body.put("lastUseRecorded", statistics.getLastUseRecorded());
+        body.put("lastUseCoalesced", statistics.getLastUseCoalesced());
+        body.put("expiredCredentials", statistics.getExpiredCredentials());
+        sweeper.ifAvailable(s -> {
+            body.put("sweeperScannedUsers", s.getScannedUsers());
+            body.put("sweeperCompletedPasses", s.getCompletedPasses());
+        });
+        return body;
+    }
+
+    /**
+     * AAGUIDをUUID形式の文字列にする（AAGUIDがない認証器は "unknown"）
+     */
+    private static String formatAaguid(ByteArray aaguid) {
+        if (aaguid.size() != 16) {
+            return aaguid.isEmpty() ? "unknown" : aaguid.getHex();
+        }
+        ByteBuffer buffer = ByteBuffer.wrap(aaguid.getBytes());
+        return new UUID(buffer.getLong(), buffer.getLong()).toString();
+    }
+
+    // ===== DTOs =====
+
+    /**
+     * 管理画面表示用のユーザーDTO。
+     */
+    @Data
+    public static class UserDto {
+        private final String username;
+        private final int authenticatorCount;  // 登録済みの認証器の数
+    }
+}
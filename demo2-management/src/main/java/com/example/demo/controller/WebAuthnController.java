@@ -1,29 +1,40 @@
 package com.example.demo.controller;
 
-import com.example.demo.backend.AuthenticatorInfo;
-import com.example.demo.backend.UserInfo;
-import com.example.demo.backend.WebAuthnBackend;
-import com.example.demo.service.WebAuthnService;
-import com.fasterxml.jackson.core.JsonProcessingException;
+import com.example.demo.audit.AuditEvent;
+import com.example.demo.audit.AuditLog;
+import com.example.demo.backend.AuthenticatorPage;
+import com.example.demo.backend.ReadOnlyReplicaException;
+import com.example.demo.remote.BackendUnavailableException;
+import com.example.demo.tenant.Tenant;
+import com.example.demo.tenant.TenantRegistry;
+import com.example.demo.token.LoginToken;
+import com.example.demo.token.LoginTokenService;
+import com.example.demo.web.CeremonyRateLimiter;
+import com.example.demo.web.ReplicationPositionInterceptor;
 import com.yubico.webauthn.AssertionRequest;
 import com.yubico.webauthn.data.*;
 import com.yubico.webauthn.exception.AssertionFailedException;
 import com.yubico.webauthn.exception.RegistrationFailedException;
+import jakarta.servlet.http.HttpServletRequest;
+import jakarta.servlet.http.HttpServletResponse;
 import jakarta.servlet.http.HttpSession;
 import lombok.Data;
 import lombok.RequiredArgsConstructor;
+import org.springframework.http.HttpHeaders;
 import org.springframework.http.HttpStatus;
-import org.springframework.http.MediaType;
+import org.springframework.http.ResponseCookie;
 import org.springframework.http.ResponseEntity;
 import org.springframework.stereotype.Controller;
 import org.springframework.ui.Model;
 import org.springframework.web.bind.annotation.*;
 import org.springframework.web.servlet.mvc.support.RedirectAttributes;
 
+import java.util.ArrayList;
 import java.util.Base64;
+import java.util.LinkedHashMap;
 import java.util.List;
 import java.util.Map;
-import java.util.stream.Collectors;
+import java.util.Objects;
 
 /**
  * WebAuthn デモ - 認証器管理
@@ -36,41 +47,51 @@ import java.util.stream.Collectors;
  *   <li>認証器の一覧表示・削除（アプリケーション層）</li>
  *   <li>デバイス名の設定・表示（アプリケーション層）</li>
  * </ul>
+ *
+ * <p>リクエストのホスト名からテナントを解決し、そのテナントの WebAuthnService を使う
+ * （webauthn.remote-lookup.url=backend:// の既定のテナントでは、一覧・表示名の変更・トークンの確認もバックエンドサービスが対象）。
+ *
+ * <p>登録・ログインの成否と認証器の削除は、監査ログ（{@link AuditLog}）に記録する（非同期のため応答を待たせない）。
+ *
+ * <p>ログイン済みのユーザーは、既定ではセッションの username で判定する。
+ * webauthn.token.enabled=true の場合は、ログイン時に署名付きトークン（{@link LoginTokenService}）を発行し、
+ * 以降はトークンの検証だけで判定する（セッションは登録・認証の途中のチャレンジにだけ使う）。
  */
 @Controller
 @RequiredArgsConstructor
 public class WebAuthnController {
 
-    private final WebAuthnService webAuthnService;
-    private final WebAuthnBackend backend;
+    private final TenantRegistry tenants;
+    private final CeremonyRateLimiter rateLimiter;
+    private final AuditLog audit;
+    private final LoginTokenService loginTokens;
 
     private static final String REGISTRATION_REQUEST_KEY = "webauthn.registration.request";
     private static final String ASSERTION_REQUEST_KEY = "webauthn.assertion.request";
     private static final String SESSION_USERNAME_KEY = "username";
+    private static final int AUTHENTICATOR_PAGE_SIZE = 20;
+    private static final int MAX_AUTHENTICATOR_PAGE_SIZE = 100;
 
     // ===== 画面表示 =====
 
     /**
      * メイン画面: 未認証時は登録・認証フォーム、認証済み時は認証器管理画面を表示
+     *
+     * <p>認証器一覧は登録順に AUTHENTICATOR_PAGE_SIZE 件ずつ表示する（cursor: 前のページの nextCursor）。
      */
     @GetMapping("/")
-    public String index(HttpSession session, Model model) {
-        String username = (String) session.getAttribute(SESSION_USERNAME_KEY);
+    public String index(@RequestParam(required = false) Long cursor, HttpServletRequest httpRequest, Model model) {
+        String username = authenticatedUsername(httpRequest);
 
         if (username != null) {
-            // 認証済み: 認証器一覧を取得
-            List<AuthenticatorDto> authenticators = backend.findUserByUsername(username)
-                    .map(UserInfo::getAuthenticators)
-                    .orElse(List.of())
-                    .stream()
-                    .map(auth -> new AuthenticatorDto(
-                            Base64.getUrlEncoder().withoutPadding().encodeToString(auth.getCredentialId()),
-                            auth.getNickname()
-                    ))
-                    .collect(Collectors.toList());
+            // 認証済み: 認証器一覧を1ページ分取得
+            AuthenticatorPage page = tenants.resolve(httpRequest).service().findAuthenticatorPage(
+                    username, cursor != null ? cursor : 0, AUTHENTICATOR_PAGE_SIZE);
 
             model.addAttribute("username", username);
-            model.addAttribute("authenticators", authenticators);
+            model.addAttribute("authenticators", toDtos(page));
+            model.addAttribute("cursor", cursor);
+            model.addAttribute("nextCursor", page.nextCursor());
         }
 
         return "index";
@@ -82,10 +103,10 @@ public class WebAuthnController {
     @PostMapping("/authenticator/delete")
     public String deleteAuthenticator(
             @RequestParam String credentialId,
-            HttpSession session,
+            HttpServletRequest httpRequest,
             RedirectAttributes redirectAttributes) {
 
-        String username = (String) session.getAttribute(SESSION_USERNAME_KEY);
+        String username = authenticatedUsername(httpRequest);
         if (username == null) {
             redirectAttributes.addFlashAttribute("error", "ログインが必要です");
             return "redirect:/";
@@ -93,7 +114,12 @@ public class WebAuthnController {
 
         try {
             byte[] credIdBytes = Base64.getUrlDecoder().decode(credentialId);
-            boolean deleted = backend.deleteAuthenticator(username, credIdBytes);
+            Tenant tenant = tenants.resolve(httpRequest);
+            boolean deleted = tenant.service().deleteAuthenticators(username, List.of(credIdBytes)).get(0);
+            if (!deleted) {  // 削除できた場合はWebAuthnBackendの通知で記録される
+                audit(AuditEvent.Type.AUTHENTICATOR_DELETE_FAILURE, tenant, httpRequest, username, credentialId,
+                        "Authenticator not found");
+            }
 
             if (deleted) {
                 redirectAttributes.addFlashAttribute("message", "認証器を削除しました");
@@ -108,11 +134,110 @@ public class WebAuthnController {
     }
 
     /**
-     * ログアウト: セッションを破棄（アプリケーション層の機能）
+     * 認証器一覧API: 登録順に1ページ分返す（アプリケーション層の機能）
+     *
+     * <p>レスポンスの nextCursor を次のリクエストの cursor に指定すると、続きを取得できる。
+     */
+    @GetMapping("/api/authenticators")
+    @ResponseBody
+    public ResponseEntity<?> listAuthenticators(
+            @RequestParam(defaultValue = "0") long cursor,
+            @RequestParam(defaultValue = "20") int limit,
+            HttpServletRequest httpRequest) {
+
+        String username = authenticatedUsername(httpRequest);
+        if (username == null) {
+            return ResponseEntity.status(HttpStatus.UNAUTHORIZED)
+                    .body(Map.of("error", "Login required"));
+        }
+
+        AuthenticatorPage page = tenants.resolve(httpRequest).service().findAuthenticatorPage(
+                username, cursor, Math.max(1, Math.min(limit, MAX_AUTHENTICATOR_PAGE_SIZE)));
+
+        Map<String, Object> body = new LinkedHashMap<>();
+        body.put("items", toDtos(page));
+        body.put("nextCursor", page.nextCursor());
+        return ResponseEntity.ok(body);
+    }
+
+    /**
+     * 認証器の一括削除API: 指定された認証器をまとめて削除（アプリケーション層の機能）
+     *
+     * <p>ユーザー単位でアトミックに適用し、認証器ごとの結果を返す。
+     */
+    @PostMapping("/api/authenticators/delete")
+    @ResponseBody
+    public ResponseEntity<?> deleteAuthenticators(@RequestBody BulkDeleteRequest request,
+                                                  HttpServletRequest httpRequest) {
+        String username = authenticatedUsername(httpRequest);
+        if (username == null) {
+            return ResponseEntity.status(HttpStatus.UNAUTHORIZED)
+                    .body(Map.of("error", "Login required"));
+        }
+
+        List<String> ids = request.getCredentialIds() != null ? request.getCredentialIds() : List.of();
+        List<byte[]> decoded = ids.stream().map(WebAuthnController::decodeCredentialId).toList();
+        List<byte[]> valid = decoded.stream().filter(Objects::nonNull).toList();
+        Tenant tenant = tenants.resolve(httpRequest);
+        List<Boolean> deleted = tenant.service().deleteAuthenticators(username, valid);
+
+        List<Map<String, Object>> results = toBatchResults(ids, decoded, deleted);
+        for (Map<String, Object> result : results) {
+            if (!(Boolean) result.get("success")) {  // 削除できた分はWebAuthnBackendの通知で記録される
+                audit(AuditEvent.Type.AUTHENTICATOR_DELETE_FAILURE, tenant, httpRequest, username,
+                        (String) result.get("credentialId"), (String) result.get("error"));
+            }
+        }
+        return ResponseEntity.ok(Map.of("results", results));
+    }
+
+    /**
+     * 認証器の一括名前変更API: 指定された認証器の表示名をまとめて変更（アプリケーション層の機能）
+     *
+     * <p>ユーザー単位でアトミックに適用し、認証器ごとの結果を返す。
+     */
+    @PostMapping("/api/authenticators/rename")
+    @ResponseBody
+    public ResponseEntity<?> renameAuthenticators(@RequestBody BulkRenameRequest request,
+                                                  HttpServletRequest httpRequest) {
+        String username = authenticatedUsername(httpRequest);
+        if (username == null) {
+            return ResponseEntity.status(HttpStatus.UNAUTHORIZED)
+                    .body(Map.of("error", "Login required"));
+        }
+
+        List<RenameItem> items = request.getItems() != null ? request.getItems() : List.of();
+        List<String> ids = new ArrayList<>();
+        List<byte[]> decoded = new ArrayList<>();
+        List<byte[]> valid = new ArrayList<>();
+        List<String> nicknames = new ArrayList<>();
+        for (RenameItem item : items) {
+            byte[] bytes = decodeCredentialId(item.getCredentialId());
+            ids.add(item.getCredentialId());
+            decoded.add(bytes);
+            if (bytes != null) {
+                valid.add(bytes);
+                nicknames.add(item.getNickname());
+            }
+        }
+        List<Boolean> renamed = tenants.resolve(httpRequest).service().renameAuthenticators(username, valid, nicknames);
+
+        return ResponseEntity.ok(Map.of("results", toBatchResults(ids, decoded, renamed)));
+    }
+
+    /**
+     * ログアウト: セッションとトークンのCookieを破棄（アプリケーション層の機能）
      */
     @PostMapping("/logout")
-    public String logout(HttpSession session, RedirectAttributes redirectAttributes) {
-        session.invalidate();
+    public String logout(HttpServletRequest httpRequest, HttpServletResponse httpResponse,
+                         RedirectAttributes redirectAttributes) {
+        HttpSession session = httpRequest.getSession(false);
+        if (session != null) {
+            session.invalidate();
+        }
+        if (loginTokens.isEnabled()) {
+            httpResponse.addHeader(HttpHeaders.SET_COOKIE, tokenCookie("", 0, httpRequest).toString());
+        }
         redirectAttributes.addFlashAttribute("message", "ログアウトしました");
         return "redirect:/";
     }
@@ -124,21 +249,23 @@ public class WebAuthnController {
      */
     @PostMapping("/api/webauthn/register/start")
     @ResponseBody
-    public ResponseEntity<String> startRegistration(@RequestBody RegistrationStartRequest request, HttpSession session) {
-        try {
-            PublicKeyCredentialCreationOptions options =
-                    webAuthnService.startRegistration(request.getUsername());
+    public ResponseEntity<?> startRegistration(@RequestBody RegistrationStartRequest request,
+                                               HttpServletRequest httpRequest) {
+        // セッションを作る前に制限する（HttpSession引数にするとメソッド呼び出し前に作られてしまう）
+        long retryAfterSeconds = rateLimiter.acquire(httpRequest.getRemoteAddr(), request.getUsername());
+        if (retryAfterSeconds > 0) {
+            return tooManyRequests(retryAfterSeconds);
+        }
+        HttpSession session = httpRequest.getSession();
 
-            // チャレンジを検証するため、セッションに保存
-            session.setAttribute(REGISTRATION_REQUEST_KEY, options);
+        PublicKeyCredentialCreationOptions options =
+                tenants.resolve(httpRequest).service().startRegistration(request.getUsername());
 
-            return ResponseEntity.ok()
-                    .contentType(MediaType.APPLICATION_JSON)
-                    .body(options.toJson());
-        } catch (JsonProcessingException e) {
-            return ResponseEntity.status(HttpStatus.INTERNAL_SERVER_ERROR)
-                    .body("{\"error\": \"Failed to serialize registration options\"}");
-        }
+        // チャレンジを検証するため、セッションに保存
+        session.setAttribute(REGISTRATION_REQUEST_KEY, options);
+
+        // YubicoJsonHttpMessageConverter がレスポンスへ直接書き出す（toJson() と同じJSON）
+        return ResponseEntity.ok(options);
     }
 
     /**
@@ -146,16 +273,20 @@ public class WebAuthnController {
      */
     @PostMapping("/api/webauthn/register/finish")
     @ResponseBody
-    public ResponseEntity<?> finishRegistration(@RequestBody RegistrationFinishRequest request, HttpSession session) {
+    public ResponseEntity<?> finishRegistration(@RequestBody RegistrationFinishRequest request,
+                                                HttpServletRequest httpRequest, HttpSession session) {
+        Tenant tenant = tenants.resolve(httpRequest);
         try {
             PublicKeyCredentialCreationOptions options =
                     (PublicKeyCredentialCreationOptions) session.getAttribute(REGISTRATION_REQUEST_KEY);
             if (options == null) {
+                audit(AuditEvent.Type.REGISTRATION_FAILURE, tenant, httpRequest, request.getUsername(),
+                        credentialId(request.getCredential()), "No registration in progress");
                 return ResponseEntity.badRequest()
                         .body(Map.of("error", "No registration in progress"));
             }
 
-            webAuthnService.finishRegistration(
+            tenant.service().finishRegistration(
                     request.getUsername(),
                     options,
                     request.getCredential(),
@@ -163,11 +294,33 @@ public class WebAuthnController {
             );
 
             session.removeAttribute(REGISTRATION_REQUEST_KEY);
-            return ResponseEntity.ok(Map.of("success", true));
+            audit(AuditEvent.Type.REGISTRATION, tenant, httpRequest, request.getUsername(),
+                    credentialId(request.getCredential()), null);
+
+            // read-your-writes: 以降のリクエストに付けると、リードレプリカでもこの登録が見える状態で処理される
+            // （レプリケーションの対象でないテナント・変更ログを持たない単一ノードには返さない）
+            ResponseEntity.BodyBuilder response = ResponseEntity.ok();
+            if (tenant.replicated() && tenant.backend().getChangeLog() != null) {
+                response.header(ReplicationPositionInterceptor.HEADER,
+                        String.valueOf(tenant.backend().getLastPosition()));
+            }
+            return response.body(Map.of("success", true));
         } catch (RegistrationFailedException e) {
+            audit(AuditEvent.Type.REGISTRATION_FAILURE, tenant, httpRequest, request.getUsername(),
+                    credentialId(request.getCredential()), e.getMessage());
             return ResponseEntity.status(HttpStatus.BAD_REQUEST)
                     .body(Map.of("error", e.getMessage()));
+        } catch (BackendUnavailableException e) {
+            audit(AuditEvent.Type.REGISTRATION_FAILURE, tenant, httpRequest, request.getUsername(),
+                    credentialId(request.getCredential()), e.getMessage());
+            return backendUnavailable(e);
+        } catch (ReadOnlyReplicaException e) {
+            audit(AuditEvent.Type.REGISTRATION_FAILURE, tenant, httpRequest, request.getUsername(),
+                    credentialId(request.getCredential()), e.getMessage());
+            return readOnlyReplica(e);
         } catch (Exception e) {
+            audit(AuditEvent.Type.REGISTRATION_FAILURE, tenant, httpRequest, request.getUsername(),
+                    credentialId(request.getCredential()), e.getClass().getSimpleName() + ": " + e.getMessage());
             return ResponseEntity.status(HttpStatus.INTERNAL_SERVER_ERROR)
                     .body(Map.of("error", e.getMessage()));
         }
@@ -178,20 +331,22 @@ public class WebAuthnController {
      */
     @PostMapping("/api/webauthn/authenticate/start")
     @ResponseBody
-    public ResponseEntity<String> startAuthentication(@RequestBody AuthenticationStartRequest request, HttpSession session) {
-        try {
-            AssertionRequest assertionRequest = webAuthnService.startAuthentication(request.getUsername());
+    public ResponseEntity<?> startAuthentication(@RequestBody AuthenticationStartRequest request,
+                                                 HttpServletRequest httpRequest) {
+        // セッションを作る前に制限する（HttpSession引数にするとメソッド呼び出し前に作られてしまう）
+        long retryAfterSeconds = rateLimiter.acquire(httpRequest.getRemoteAddr(), request.getUsername());
+        if (retryAfterSeconds > 0) {
+            return tooManyRequests(retryAfterSeconds);
+        }
+        HttpSession session = httpRequest.getSession();
 
-            // チャレンジを検証するため、セッションに保存
-            session.setAttribute(ASSERTION_REQUEST_KEY, assertionRequest);
+        AssertionRequest assertionRequest = tenants.resolve(httpRequest).service().startAuthentication(request.getUsername());
 
-            return ResponseEntity.ok()
-                    .contentType(MediaType.APPLICATION_JSON)
-                    .body(assertionRequest.toJson());
-        } catch (JsonProcessingException e) {
-            return ResponseEntity.status(HttpStatus.INTERNAL_SERVER_ERROR)
-                    .body("{\"error\": \"Failed to serialize authentication options\"}");
-        }
+        // チャレンジを検証するため、セッションに保存
+        session.setAttribute(ASSERTION_REQUEST_KEY, assertionRequest);
+
+        // YubicoJsonHttpMessageConverter がレスポンスへ直接書き出す（toJson() と同じJSON）
+        return ResponseEntity.ok(assertionRequest);
     }
 
     /**
@@ -199,31 +354,182 @@ public class WebAuthnController {
      */
     @PostMapping("/api/webauthn/authenticate/finish")
     @ResponseBody
-    public ResponseEntity<?> finishAuthentication(@RequestBody AuthenticationFinishRequest request, HttpSession session) {
+    public ResponseEntity<?> finishAuthentication(@RequestBody AuthenticationFinishRequest request,
+                                                  HttpServletRequest httpRequest, HttpSession session) {
+        Tenant tenant = tenants.resolve(httpRequest);
         try {
             AssertionRequest assertionRequest =
                     (AssertionRequest) session.getAttribute(ASSERTION_REQUEST_KEY);
             if (assertionRequest == null) {
+                audit(AuditEvent.Type.LOGIN_FAILURE, tenant, httpRequest, request.getUsername(),
+                        credentialId(request.getCredential()), "No authentication in progress");
                 return ResponseEntity.badRequest()
                         .body(Map.of("error", "No authentication in progress"));
             }
 
-            String username = webAuthnService.finishAuthentication(assertionRequest, request.getCredential());
+            String username = tenant.service().finishAuthentication(assertionRequest, request.getCredential());
             session.removeAttribute(ASSERTION_REQUEST_KEY);
+            audit(AuditEvent.Type.LOGIN, tenant, httpRequest, username, credentialId(request.getCredential()), null);
+
+            if (loginTokens.isEnabled()) {
+                // 認証成功: トークンを発行し、セッションは破棄する（以降のリクエストはセッションストアを使わない）
+                String token = loginTokens.issue(tenant.config().id(), username, request.getCredential().getId().getBytes());
+                session.invalidate();
+                return ResponseEntity.ok()
+                        .header(HttpHeaders.SET_COOKIE,
+                                tokenCookie(token, loginTokens.getTtlSeconds(), httpRequest).toString())
+                        .body(Map.of("success", true, "token", token));
+            }
 
             // 認証成功: セッション確立
             session.setAttribute(SESSION_USERNAME_KEY, username);
 
             return ResponseEntity.ok(Map.of("success", true));
         } catch (AssertionFailedException e) {
+            audit(AuditEvent.Type.LOGIN_FAILURE, tenant, httpRequest, request.getUsername(),
+                    credentialId(request.getCredential()), e.getMessage());
             return ResponseEntity.status(HttpStatus.BAD_REQUEST)
                     .body(Map.of("error", e.getMessage()));
+        } catch (BackendUnavailableException e) {
+            audit(AuditEvent.Type.LOGIN_FAILURE, tenant, httpRequest, request.getUsername(),
+                    credentialId(request.getCredential()), e.getMessage());
+            return backendUnavailable(e);
         } catch (Exception e) {
+            audit(AuditEvent.Type.LOGIN_FAILURE, tenant, httpRequest, request.getUsername(),
+                    credentialId(request.getCredential()), e.getClass().getSimpleName() + ": " + e.getMessage());
             return ResponseEntity.status(HttpStatus.INTERNAL_SERVER_ERROR)
                     .body(Map.of("error", e.getMessage()));
         }
     }
 
+    /**
+     * ログイン済みのusername（未ログインならnull）
+     *
+     * <p>トークンを使う場合は、署名・有効期限・テナントに加えて、ログインに使った認証器が削除されていないことを確認する。
+     * セッションを使う場合も、ここでは新しいセッションを作らない。
+     */
+    private String authenticatedUsername(HttpServletRequest httpRequest) {
+        if (loginTokens.isEnabled()) {
+            Tenant tenant = tenants.resolve(httpRequest);
+            LoginToken token = loginTokens.verify(httpRequest, tenant.config().id());
+            if (token == null) {
+                return null;
+            }
+            return tenant.service().isRegisteredTo(token.username(), token.credentialId()) ? token.username() : null;
+        }
+        HttpSession session = httpRequest.getSession(false);
+        return session != null ? (String) session.getAttribute(SESSION_USERNAME_KEY) : null;
+    }
+
+    /**
+     * トークンのCookie（JavaScriptから読めないHttpOnly。maxAge=0 で削除）
+     */
+    private static ResponseCookie tokenCookie(String token, long maxAgeSeconds, HttpServletRequest httpRequest) {
+        return ResponseCookie.from(LoginTokenService.COOKIE_NAME, token)
+                .httpOnly(true)
+                .secure(httpRequest.isSecure())
+                .sameSite("Strict")
+                .path("/")
+                .maxAge(maxAgeSeconds)
+                .build();
+    }
+
+    /**
+     * 監査ログに記録する（書き込みは別スレッドで行われる）
+     */
+    private void audit(AuditEvent.Type type, Tenant tenant, HttpServletRequest httpRequest,
+                       String username, String credentialId, String detail) {
+        audit.record(type, tenant.config().id(), username, credentialId, httpRequest.getRemoteAddr(), detail);
+    }
+
+    /**
+     * 監査ログ用のcredentialId（base64url。リクエストに含まれていなければnull）
+     */
+    private static String credentialId(PublicKeyCredential<?, ?> credential) {
+        return credential != null ? credential.getId().getBase64Url() : null;
+    }
+
+    /**
+     * バックエンドを呼び出せない場合の応答（開始APIはここで、完了APIは各メソッドで返す）。
+     * サーキットブレーカー・バルクヘッドによる拒否は、タイムアウトを待たずにすぐ返る。
+     */
+    @ExceptionHandler(BackendUnavailableException.class)
+    @ResponseBody
+    public ResponseEntity<Map<String, String>> backendUnavailable(BackendUnavailableException e) {
+        return ResponseEntity.status(HttpStatus.SERVICE_UNAVAILABLE)
+                .header("Retry-After", "5")
+                .body(Map.of("error", "Backend unavailable, please retry later"));
+    }
+
+    /**
+     * リードレプリカに届いた更新の応答（登録完了は各メソッドで返す）。
+     * 421 により、ロードバランサー・クライアントにリーダーのノードへ送り直させる。
+     */
+    @ExceptionHandler(ReadOnlyReplicaException.class)
+    @ResponseBody
+    public ResponseEntity<Map<String, String>> readOnlyReplica(ReadOnlyReplicaException e) {
+        return ResponseEntity.status(421)
+                .body(Map.of("error", e.getMessage()));
+    }
+
+    /**
+     * レート制限を超えた開始APIの応答（Retry-After はバケットに次のトークンが補充されるまでの秒数）
+     */
+    private static ResponseEntity<Map<String, String>> tooManyRequests(long retryAfterSeconds) {
+        return ResponseEntity.status(HttpStatus.TOO_MANY_REQUESTS)
+                .header("Retry-After", String.valueOf(retryAfterSeconds))
+                .body(Map.of("error", "Too many requests, please retry later"));
+    }
+
+    /**
+     * base64urlのcredentialIdをデコードする（不正な値はnull）
+     */
+    private static byte[] decodeCredentialId(String credentialId) {
+        if (credentialId == null) {
+            return null;
+        }
+        try {
+            return Base64.getUrlDecoder().decode(credentialId);
+        } catch (IllegalArgumentException e) {
+            return null;
+        }
+    }
+
+    /**
+     * 一括操作の結果を、リクエストと同じ順序の認証器ごとの結果にする。
+     *
+     * @param decoded デコード結果（デコードできなかったものはnull。nullはバックエンドに渡していない）
+     * @param applied バックエンドに渡した分の結果
+     */
+    private static List<Map<String, Object>> toBatchResults(List<String> ids, List<byte[]> decoded, List<Boolean> applied) {
+        List<Map<String, Object>> results = new ArrayList<>(ids.size());
+        int next = 0;
+        for (int i = 0; i < ids.size(); i++) {
+            Map<String, Object> result = new LinkedHashMap<>();
+            result.put("credentialId", ids.get(i));
+            if (decoded.get(i) == null) {
+                result.put("success", false);
+                result.put("error", "Invalid credentialId");
+            } else if (applied.get(next++)) {
+                result.put("success", true);
+            } else {
+                result.put("success", false);
+                result.put("error", "Authenticator not found");
+            }
+            results.add(result);
+        }
+        return results;
+    }
+
+    private static List<AuthenticatorDto> toDtos(AuthenticatorPage page) {
+        return page.items().stream()
+                .map(entry -> new AuthenticatorDto(
+                        entry.credentialIdBase64(),
+                        entry.authenticator().getNickname()
+                ))
+                .toList();
+    }
+
     // ===== DTOs =====
 
     /**
@@ -235,6 +541,22 @@ public class WebAuthnController {
         private final String nickname;  // 認証器の表示名
     }
 
+    @Data
+    public static class BulkDeleteRequest {
+        private List<String> credentialIds;  // base64url
+    }
+
+    @Data
+    public static class BulkRenameRequest {
+        private List<RenameItem> items;
+    }
+
+    @Data
+    public static class RenameItem {
+        private String credentialId;  // base64url
+        private String nickname;      // 新しい表示名
+    }
+
     @Data
     public static class RegistrationStartRequest {
         private String username;
@@ -0,0 +1,41 @@
+package com.example.demo.jfr;
+
+import jdk.jfr.Category;
+import jdk.jfr.Description;
+import jdk.jfr.Event;
+import jdk.jfr.Label;
+import jdk.jfr.Name;
+
+/**
+ * JFRイベント: WebAuthnBackendの検索1回の処理時間。
+ *
+ * <p>実際のプロジェクトではバックエンドサーバーへのAPI呼び出しにあたる。
+ */
+@Name("com.example.demo.BackendLookup")
+@Label("WebAuthn Backend Lookup")
+@Category({"WebAuthn"})
+@Description("WebAuthnBackendの検索")
+public class BackendLookupEvent extends Event {
+
+    @Label("Operation")
+    String operation;
+
+    @Label("Found")
+    boolean found;
+
+    public BackendLookupEvent(String operation) {
+        this.operation = operation;
+        begin();
+    }
+
+    /**
+     * 処理の終了を記録する（記録が無効な場合は何もしない）。
+     */
+    public void finish(boolean found) {
+        end();
+        if (shouldCommit()) {
+            this.found = found;
+            commit();
+        }
+    }
+}
@@ -0,0 +1,59 @@
+package com.example.demo.jfr;
+
+import jdk.jfr.Category;
+import jdk.jfr.DataAmount;
+import jdk.jfr.Description;
+import jdk.jfr.Event;
+import jdk.jfr.Label;
+import jdk.jfr.Name;
+
+/**
+ * JFRイベント: 登録・認証の1フェーズ（開始または完了）の処理時間。
+ *
+ * <p>username・credentialId・チャレンジなどの値は記録しない（件数とサイズのみ）。
+ */
+@Name("com.example.demo.Ceremony")
+@Label("WebAuthn Ceremony")
+@Category({"WebAuthn"})
+@Description("登録・認証の開始/完了の処理")
+public class CeremonyEvent extends Event {
+
+    public static final String REGISTRATION_START = "registration.start";
+    public static final String REGISTRATION_FINISH = "registration.finish";
+    public static final String AUTHENTICATION_START = "authentication.start";
+    public static final String AUTHENTICATION_FINISH = "authentication.finish";
+
+    @Label("Phase")
+    String phase;
+
+    @Label("Outcome")
+    @Description("success / failure / error")
+    String outcome;
+
+    @Label("Credential Count")
+    @Description("開始: excludeCredentials / allowCredentials の件数")
+    int credentialCount;
+
+    @Label("Payload Size")
+    @Description("完了: クライアントから受け取った認証器データのサイズ")
+    @DataAmount
+    long payloadBytes;
+
+    public CeremonyEvent(String phase) {
+        this.phase = phase;
+        begin();
+    }
+
+    /**
+     * 処理の終了を記録する（記録が無効な場合は何もしない）。
+     */
+    public void finish(String outcome, int credentialCount, long payloadBytes) {
+        end();
+        if (shouldCommit()) {
+            this.outcome = outcome;
+            this.credentialCount = credentialCount;
+            this.payloadBytes = payloadBytes;
+            commit();
+        }
+    }
+}
@@ -0,0 +1,40 @@
+package com.example.demo.jfr;
+
+import jdk.jfr.Category;
+import jdk.jfr.Description;
+import jdk.jfr.Event;
+import jdk.jfr.Label;
+import jdk.jfr.Name;
+
+/**
+ * JFRイベント: Yubicoライブラリからの CredentialRepository の呼び出し1回の処理時間。
+ */
+@Name("com.example.demo.CredentialRepository")
+@Label("WebAuthn CredentialRepository Call")
+@Category({"WebAuthn"})
+@Description("Yubicoライブラリが呼び出した CredentialRepository のメソッド")
+public class CredentialRepositoryEvent extends Event {
+
+    @Label("Method")
+    String method;
+
+    @Label("Result Count")
+    @Description("返した件数（Optionalは0または1）")
+    int resultCount;
+
+    public CredentialRepositoryEvent(String method) {
+        this.method = method;
+        begin();
+    }
+
+    /**
+     * 処理の終了を記録する（記録が無効な場合は何もしない）。
+     */
+    public void finish(int resultCount) {
+        end();
+        if (shouldCommit()) {
+            this.resultCount = resultCount;
+            commit();
+        }
+    }
+}
@@ -0,0 +1,151 @@
+package com.example.demo.jfr;
+
+import jdk.jfr.consumer.RecordedEvent;
+import jdk.jfr.consumer.RecordingFile;
+
+import java.io.IOException;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.Comparator;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.TreeMap;
+
+/**
+ * JFRの記録ファイル（.jfr）から、登録・認証のフェーズごとのレイテンシを集計するツール。
+ *
+ * <p>【使い方】
+ * <pre>
+ * # 記録しながらアプリケーションを起動
+ * java -XX:StartFlightRecording=filename=webauthn.jfr,settings=profile -jar target/webauthn-demo2-management-*.jar
+ *
+ * # 記録ファイルを集計（jdk.jfr以外の依存はないため、コンパイル済みクラスだけで実行できる）
+ * java -cp target/classes com.example.demo.jfr.JfrLatencyReport webauthn.jfr
+ * </pre>
+ *
+ * <p>【出力】
+ * <ul>
+ *   <li>フェーズ・CredentialRepositoryのメソッド・バックエンドの検索ごとの件数とレイテンシ（p50 / p90 / p99 / max）</li>
+ *   <li>フェーズごとの内訳: 同じスレッドで処理中に呼ばれたCredentialRepositoryの時間と、それ以外（検証など）の時間</li>
+ *   <li>フェーズ・例外ごとの検証失敗の件数</li>
+ * </ul>
+ */
+public class JfrLatencyReport {
+
+    private static final String PREFIX = "com.example.demo.";
+
+    public static void main(String[] args) throws IOException {
+        if (args.length != 1) {
+            System.err.println("usage: JfrLatencyReport <recording.jfr>");
+            System.exit(2);
+        }
+
+        List<RecordedEvent> ceremonies = new ArrayList<>();
+        Map<Long, List<RecordedEvent>> repositoryCallsByThread = new HashMap<>();
+        Map<String, List<Long>> latencies = new TreeMap<>();
+        Map<String, Integer> failures = new TreeMap<>();
+
+        for (RecordedEvent event : RecordingFile.readAllEvents(Path.of(args[0]))) {
+            String type = event.getEventType().getName();
+            if (!type.startsWith(PREFIX)) {
+                continue;
+            }
+            switch (type.substring(PREFIX.length())) {
+                case "Ceremony" -> {
+                    ceremonies.add(event);
+                    add(latencies, "ceremony " + event.getString("phase") + " [" + event.getString("outcome") + "]", event);
+                }
+                case "CredentialRepository" -> {
+                    repositoryCallsByThread.computeIfAbsent(threadId(event), k -> new ArrayList<>()).add(event);
+                    add(latencies, "repository " + event.getString("method"), event);
+                }
+                case "BackendLookup" -> add(latencies, "backend " + event.getString("operation"), event);
+                case "VerificationFailure" -> failures.merge(
+                        event.getString("phase") + " " + event.getString("exception"), 1, Integer::sum);
+                default -> {
+                }
+            }
+        }
+
+        System.out.println("== Latency (ms) ==");
+        System.out.printf("%-60s %8s %9s %9s %9s %9s%n", "name", "count", "p50", "p90", "p99", "max");
+        latencies.forEach((name, nanos) -> {
+            long[] sorted = nanos.stream().mapToLong(Long::longValue).sorted().toArray();
+            System.out.printf("%-60s %8d %9.3f %9.3f %9.3f %9.3f%n", name, sorted.length,
+                    millis(percentile(sorted, 50)), millis(percentile(sorted, 90)),
+                    millis(percentile(sorted, 99)), millis(sorted[sorted.length - 1]));
+        });
+
+        System.out.println();
+        System.out.println("== Breakdown per phase (mean ms) ==");
+        System.out.printf("%-30s %8s %9s %12s %9s%n", "phase", "count", "total", "repository", "other");
+        breakdown(ceremonies, repositoryCallsByThread).forEach((phase, sums) ->
+                System.out.printf("%-30s %8d %9.3f %12.3f %9.3f%n", phase, sums[0],
+                        millis(sums[1] / sums[0]), millis(sums[2] / sums[0]), millis((sums[1] - sums[2]) / sums[0])));
+
+        System.out.println();
+        System.out.println("== Verification failures ==");
+        if (failures.isEmpty()) {
+            System.out.println("(none)");
+        }
+        failures.forEach((key, count) -> System.out.printf("%-60s %8d%n", key, count));
+    }
+
+    /**
+     * フェーズごとに [件数, 合計時間, うちCredentialRepositoryの時間]（ナノ秒）を集計する。
+     *
+     * <p>スレッドごとに開始時刻順に並べ、フェーズとCredentialRepositoryの呼び出しを先頭から突き合わせる。
+     */
+    private static Map<String, long[]> breakdown(List<RecordedEvent> ceremonies,
+                                                 Map<Long, List<RecordedEvent>> repositoryCallsByThread) {
+        Map<Long, List<RecordedEvent>> ceremoniesByThread = new HashMap<>();
+        for (RecordedEvent ceremony : ceremonies) {
+            ceremoniesByThread.computeIfAbsent(threadId(ceremony), k -> new ArrayList<>()).add(ceremony);
+        }
+
+        Map<String, long[]> result = new TreeMap<>();
+        ceremoniesByThread.forEach((thread, threadCeremonies) -> {
+            List<RecordedEvent> calls = repositoryCallsByThread.getOrDefault(thread, new ArrayList<>());
+            threadCeremonies.sort(Comparator.comparing(RecordedEvent::getStartTime));
+            calls.sort(Comparator.comparing(RecordedEvent::getStartTime));
+
+            int next = 0;
+            for (RecordedEvent ceremony : threadCeremonies) {
+                while (next < calls.size() && calls.get(next).getStartTime().isBefore(ceremony.getStartTime())) {
+                    next++;
+                }
+                long repositoryNanos = 0;
+                while (next < calls.size() && !calls.get(next).getEndTime().isAfter(ceremony.getEndTime())) {
+                    repositoryNanos += calls.get(next).getDuration().toNanos();
+                    next++;
+                }
+                long[] sums = result.computeIfAbsent(ceremony.getString("phase"), k -> new long[3]);
+                sums[0]++;
+                sums[1] += ceremony.getDuration().toNanos();
+                sums[2] += repositoryNanos;
+            }
+        });
+        return result;
+    }
+
+    private static long threadId(RecordedEvent event) {
+        return event.getThread() != null ? event.getThread().getJavaThreadId() : -1;
+    }
+
+    private static void add(Map<String, List<Long>> latencies, String name, RecordedEvent event) {
+        latencies.computeIfAbsent(name, k -> new ArrayList<>()).add(event.getDuration().toNanos());
+    }
+
+    private static long percentile(long[] sorted, int percent) {
+        int index = (int) Math.ceil(sorted.length * percent / 100.0) - 1;
+        return sorted[Math.max(0, Math.min(index, sorted.length - 1))];
+    }
+
+    private static double millis(long nanos) {
+        return nanos / 1_000_000.0;
+    }
+
+    private JfrLatencyReport() {
+    }
+}
@@ -0,0 +1,89 @@
+package com.example.demo.jfr;
+
+import jdk.jfr.Category;
+import jdk.jfr.Description;
+import jdk.jfr.Event;
+import jdk.jfr.Label;
+import jdk.jfr.Name;
+import jdk.jfr.StackTrace;
+
+import java.util.LinkedHashMap;
+import java.util.Map;
+
+/**
+ * JFRイベント: 登録・認証の検証に失敗した（署名・チャレンジ・オリジンなどの不一致）。
+ *
+ * <p>Yubicoライブラリの例外メッセージには credentialId・userHandle・username が含まれるものがあるため、記録しない。
+ * 代わりにメッセージの先頭から決めた固定の理由コード（該当しなければ other）を記録する。
+ */
+@Name("com.example.demo.VerificationFailure")
+@Label("WebAuthn Verification Failure")
+@Category({"WebAuthn"})
+@Description("Yubicoライブラリによる検証の失敗")
+@StackTrace(false)
+public class VerificationFailureEvent extends Event {
+
+    @Label("Phase")
+    String phase;
+
+    @Label("Exception")
+    String exception;
+
+    @Label("Reason")
+    @Description("例外のメッセージではなく、メッセージの先頭から決めた固定の理由コード")
+    String reason;
+
+    // メッセージの先頭 → 理由コード（Yubico webauthn-server-core 2.7 の FinishRegistrationSteps / FinishAssertionSteps）
+    private static final Map<String, String> REASONS = new LinkedHashMap<>();
+
+    static {
+        REASONS.put("Incorrect challenge", "challenge-mismatch");
+        REASONS.put("Incorrect origin", "origin-mismatch");
+        REASONS.put("Wrong RP ID hash", "rp-id-mismatch");
+        REASONS.put("The \"type\" in the client data", "client-data-type");
+        REASONS.put("Invalid assertion signature", "invalid-signature");
+        REASONS.put("Invalid attestation signature", "invalid-attestation-signature");
+        REASONS.put("User Presence is required", "user-presence-required");
+        REASONS.put("User Verification is required", "user-verification-required");
+        REASONS.put("Unknown credential", "unknown-credential");
+        REASONS.put("Unrequested credential ID", "unrequested-credential");
+        REASONS.put("Unrequested credential key algorithm", "unrequested-algorithm");
+        REASONS.put("Credential ID is already registered", "credential-already-registered");
+        REASONS.put("User handle", "user-handle-mismatch");
+        REASONS.put("Username not found", "user-not-found");
+        REASONS.put("Backup eligibility must not change", "backup-eligibility-changed");
+        REASONS.put("Malformed attestation object", "malformed-attestation");
+        REASONS.put("Missing", "missing-field");
+    }
+
+    /**
+     * 検証の失敗を記録する（記録が無効な場合は何もしない）。
+     */
+    public static void record(String phase, Exception e) {
+        VerificationFailureEvent event = new VerificationFailureEvent();
+        if (event.shouldCommit()) {
+            event.phase = phase;
+            event.exception = e.getClass().getSimpleName();
+            event.reason = reasonOf(e);
+            event.commit();
+        }
+    }
+
+    /**
+     * 例外（原因の例外も含む）のメッセージの先頭から理由コードを決める。
+     */
+    static String reasonOf(Throwable e) {
+        for (Throwable t = e; t != null; t = t.getCause()) {
+            String message = t.getMessage();
+            if (message == null) {
+                continue;
+            }
+            for (Map.Entry<String, String> reason : REASONS.entrySet()) {
+                if (message.startsWith(reason.getKey())) {
+                    return reason.getValue();
+                }
+            }
+        }
+        return "other";
+    }
+}
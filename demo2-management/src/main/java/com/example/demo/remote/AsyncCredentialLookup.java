@@ -0,0 +1,26 @@
+package com.example.demo.remote;
+
+import com.example.demo.backend.WebAuthnBackend.CredentialData;
+
+import java.util.List;
+import java.util.Optional;
+import java.util.concurrent.CompletableFuture;
+
+/**
+ * リモートのバックエンドへの検索（非同期）。{@link com.example.demo.backend.CredentialLookup} と同じ検索を、完了を待たずに送る。
+ *
+ * <p>{@link ResilientCredentialLookup} は、応答を待つ時間を自分で決めて、同じ検索をもう1回送る（ヘッジ）ために非同期の呼び出しを使う。
+ * 検索は読み取りだけのため、同じ検索を2回送っても結果は変わらない。
+ */
+public interface AsyncCredentialLookup {
+
+    CompletableFuture<Optional<byte[]>> findUserHandleByUsername(String username);
+
+    CompletableFuture<Optional<String>> findUsernameByUserHandle(byte[] userHandle);
+
+    CompletableFuture<List<byte[]>> findCredentialIdsByUsername(String username);
+
+    CompletableFuture<Optional<CredentialData>> findCredentialData(byte[] credentialId, byte[] userHandle);
+
+    CompletableFuture<Optional<CredentialData>> findCredentialDataByCredentialId(byte[] credentialId);
+}
@@ -0,0 +1,50 @@
+package com.example.demo.remote;
+
+import java.net.InetAddress;
+import java.net.InetSocketAddress;
+import java.net.UnknownHostException;
+import java.nio.charset.StandardCharsets;
+import java.security.MessageDigest;
+
+/**
+ * バックエンドのサーバー（{@link BinaryBackendServer}・{@link RemoteLookupServer}・ReplicationServer）の待ち受けアドレスと共有の秘密。
+ *
+ * <p>【既定はループバック】
+ * バックエンド（とレプリケーションの変更ログ）はユーザーと認証器の全てを読み書きできるため、既定では同じホストからの接続だけを受け付ける。
+ * 他のホストから使う場合は bind-address を指定し、共有の秘密（secret）も必ず設定する
+ * （ループバック以外で秘密なしに待ち受けようとすると{@link IllegalArgumentException}で起動しない）。
+ * 通信路の暗号化は行わないため、信頼できないネットワークを通す場合はトンネル（mTLS のサイドカーなど）を使うこと。
+ */
+public final class BackendAccess {
+
+    private BackendAccess() {
+    }
+
+    /**
+     * 待ち受けアドレスを解決する。
+     *
+     * @param host   待ち受けるアドレス（null・空ならループバック）
+     * @param secret 共有の秘密（null・空なら認証しない）
+     */
+    public static InetSocketAddress bindAddress(String host, int port, String secret) throws UnknownHostException {
+        InetAddress address = host == null || host.isEmpty() ? InetAddress.getLoopbackAddress() : InetAddress.getByName(host);
+        if (!address.isLoopbackAddress() && secretBytes(secret) == null) {
+            throw new IllegalArgumentException("A shared secret is required to listen on " + address.getHostAddress());
+        }
+        return new InetSocketAddress(address, port);
+    }
+
+    /**
+     * @return 秘密のバイト列（設定されていなければnull）
+     */
+    public static byte[] secretBytes(String secret) {
+        return secret == null || secret.isEmpty() ? null : secret.getBytes(StandardCharsets.UTF_8);
+    }
+
+    /**
+     * 比較にかかる時間が一致する長さによらない比較（秘密を1バイトずつ推測されないようにする）。
+     */
+    public static boolean matches(byte[] expected, byte[] given) {
+        return given != null && MessageDigest.isEqual(expected, given);
+    }
+}
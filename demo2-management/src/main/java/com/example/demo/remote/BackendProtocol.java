@@ -0,0 +1,304 @@
+package com.example.demo.remote;
+
+import com.example.demo.backend.AuthenticatorEntry;
+import com.example.demo.backend.AuthenticatorInfo;
+import com.example.demo.backend.AuthenticatorPage;
+import com.example.demo.backend.WebAuthnBackend.CredentialData;
+
+import java.nio.ByteBuffer;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Base64;
+import java.util.List;
+
+/**
+ * バックエンドサービスのバイナリプロトコル（{@link BinaryBackendServer} と {@link BinaryBackendClient}）。
+ *
+ * <p>【フレーム】
+ * <pre>
+ * 要求: 長さ(4) | 要求id(8) | 操作(1) | 内容
+ * 応答: 長さ(4) | 要求id(8) | 状態(1) | 内容
+ * </pre>
+ * 長さは自身の4バイトを含まない。応答は要求idで対応付けるため、1つの接続に複数の要求を続けて送り（パイプライン）、
+ * 処理の終わった順に受け取れる（多重化）。
+ *
+ * <p>【内容の符号化】
+ * byte[] と文字列（UTF-8）は 長さ(2) | バイト列。長さ 0xffff は null。
+ * リストは 件数(4) | 要素。long / int はビッグエンディアン。
+ *
+ * <p>認証器一覧の1ページ（AUTHENTICATOR_PAGE の応答）は 件数(4) | (通し番号(8) | 認証器)… | 次のページの有無(1) | nextCursor(8)。
+ * 結果の一覧（RENAME_AUTHENTICATORS の応答）は 件数(4) | 1件ごとに 1（成功）か 0。
+ *
+ * <p>【認証】
+ * サーバーに共有の秘密（secret）を設定した場合、接続の最初の要求は AUTHENTICATE（内容は secret のバイト列）でなければならない。
+ * 一致すれば OK を返し、それ以降の要求を受け付ける。一致しない・他の要求が先に届いた場合は、応答せずに接続を閉じる。
+ */
+final class BackendProtocol {
+
+    static final int MAX_FRAME_LENGTH = 1 << 20;
+    static final int HEADER_LENGTH = 8 + 1;  // 要求id + 操作（状態）
+    static final long AUTHENTICATE_REQUEST_ID = 0;  // 通常の要求idは1から
+    static final int MAX_PAGE_LIMIT = 1000;  // AUTHENTICATOR_PAGE の1ページの件数の上限（応答をフレームの上限に収める）
+
+    static final byte OK = 0;
+    static final byte NOT_FOUND = 1;
+    static final byte BAD_REQUEST = 2;
+    static final byte ERROR = 3;
+
+    private static final int NULL_LENGTH = 0xffff;
+    private static final Base64.Encoder BASE64URL = Base64.getUrlEncoder().withoutPadding();
+
+    /**
+     * 操作（要求の1バイト目）。値は互換性のため変えない。
+     */
+    enum Operation {
+        USER_HANDLE(1),
+        USERNAME(2),
+        CREDENTIAL_IDS(3),
+        CREDENTIAL_DATA(4),
+        CREDENTIAL_DATA_BY_ID(5),
+        CREDENTIAL_DATA_BATCH(6),
+        SAVE_USER(10),
+        SAVE_AUTHENTICATOR(11),
+        RECORD_USE(12),
+        DELETE_AUTHENTICATOR(13),
+        REGISTER_AUTHENTICATOR(14),
+        AUTHENTICATE(15),
+        AUTHENTICATOR_PAGE(16),
+        RENAME_AUTHENTICATORS(17);
+
+        private static final Operation[] BY_CODE = new Operation[256];
+
+        static {
+            for (Operation operation : values()) {
+                BY_CODE[operation.code] = operation;
+            }
+        }
+
+        final byte code;
+
+        Operation(int code) {
+            this.code = (byte) code;
+        }
+
+        /**
+         * @return 未知の操作はnull
+         */
+        static Operation of(byte code) {
+            return BY_CODE[code & 0xff];
+        }
+    }
+
+    private BackendProtocol() {
+    }
+
+    static byte[] getBytes(ByteBuffer buffer) {
+        int length = buffer.getShort() & 0xffff;
+        if (length == NULL_LENGTH) {
+            return null;
+        }
+        byte[] bytes = new byte[length];
+        buffer.get(bytes);
+        return bytes;
+    }
+
+    static String getString(ByteBuffer buffer) {
+        byte[] bytes = getBytes(buffer);
+        return bytes == null ? null : new String(bytes, StandardCharsets.UTF_8);
+    }
+
+    static CredentialData getCredentialData(ByteBuffer buffer) {
+        return new CredentialData(getBytes(buffer), getBytes(buffer), getBytes(buffer));
+    }
+
+    static AuthenticatorInfo getAuthenticator(ByteBuffer buffer) {
+        return new AuthenticatorInfo(getBytes(buffer), getBytes(buffer), getBytes(buffer),
+                getString(buffer), getString(buffer), buffer.getLong());
+    }
+
+    static AuthenticatorPage getAuthenticatorPage(ByteBuffer buffer) {
+        int count = getCount(buffer);
+        List<AuthenticatorEntry> items = new ArrayList<>(count);
+        for (int i = 0; i < count; i++) {
+            long sequence = buffer.getLong();
+            AuthenticatorInfo authenticator = getAuthenticator(buffer);
+            items.add(new AuthenticatorEntry(sequence, BASE64URL.encodeToString(authenticator.getCredentialId()), authenticator));
+        }
+        Long nextCursor = buffer.get() != 0 ? buffer.getLong() : null;
+        return new AuthenticatorPage(items, nextCursor);
+    }
+
+    static List<Boolean> getResults(ByteBuffer buffer) {
+        int count = getCount(buffer);
+        List<Boolean> results = new ArrayList<>(count);
+        for (int i = 0; i < count; i++) {
+            results.add(buffer.get() != 0);
+        }
+        return results;
+    }
+
+    /**
+     * リストの件数（残りのバイト数を超える件数は不正なフレームとして扱う）。
+     */
+    static int getCount(ByteBuffer buffer) {
+        int count = buffer.getInt();
+        if (count < 0 || count > buffer.remaining()) {
+            throw new IllegalArgumentException("Invalid count: " + count);
+        }
+        return count;
+    }
+
+    /**
+     * フレームを組み立てるバッファ（足りなければ広げる）。
+     */
+    static final class FrameWriter {
+
+        private ByteBuffer buffer;
+        private int frameStart = -1;
+
+        FrameWriter(int initialCapacity) {
+            this.buffer = ByteBuffer.allocate(initialCapacity);
+        }
+
+        /**
+         * フレームを始める（長さは{@link #end()}で書き込む）。
+         */
+        FrameWriter begin(long requestId, byte operationOrStatus) {
+            ensure(4 + HEADER_LENGTH);
+            frameStart = buffer.position();
+            buffer.putInt(0).putLong(requestId).put(operationOrStatus);
+            return this;
+        }
+
+        void end() {
+            int length = buffer.position() - frameStart - 4;
+            if (length > MAX_FRAME_LENGTH) {
+                buffer.position(frameStart);
+                frameStart = -1;
+                throw new IllegalArgumentException("Frame too large: " + length + " bytes");
+            }
+            buffer.putInt(frameStart, length);
+            frameStart = -1;
+        }
+
+        FrameWriter putByte(byte value) {
+            ensure(1);
+            buffer.put(value);
+            return this;
+        }
+
+        FrameWriter putInt(int value) {
+            ensure(4);
+            buffer.putInt(value);
+            return this;
+        }
+
+        FrameWriter putLong(long value) {
+            ensure(8);
+            buffer.putLong(value);
+            return this;
+        }
+
+        FrameWriter putBytes(byte[] value) {
+            if (value == null) {
+                ensure(2);
+                buffer.putShort((short) NULL_LENGTH);
+                return this;
+            }
+            if (value.length >= NULL_LENGTH) {
+                throw new IllegalArgumentException("Field too long: " + value.length + " bytes");
+            }
+            ensure(2 + value.length);
+            buffer.putShort((short) value.length).put(value);
+            return this;
+        }
+
+        /**
+         * 組み立て済みのフレームをそのまま追加する。
+         */
+        FrameWriter putFrame(byte[] frame) {
+            ensure(frame.length);
+            buffer.put(frame);
+            return this;
+        }
+
+        FrameWriter putString(String value) {
+            return putBytes(value == null ? null : value.getBytes(StandardCharsets.UTF_8));
+        }
+
+        FrameWriter putCredentialData(CredentialData data) {
+            return putBytes(data.credentialId).putBytes(data.userHandle).putBytes(data.publicKey);
+        }
+
+        FrameWriter putAuthenticatorPage(AuthenticatorPage page) {
+            putInt(page.items().size());
+            for (AuthenticatorEntry entry : page.items()) {
+                putLong(entry.sequence()).putAuthenticator(entry.authenticator());
+            }
+            putByte((byte) (page.nextCursor() != null ? 1 : 0));
+            return page.nextCursor() != null ? putLong(page.nextCursor()) : this;
+        }
+
+        FrameWriter putResults(List<Boolean> results) {
+            putInt(results.size());
+            results.forEach(result -> putByte((byte) (result ? 1 : 0)));
+            return this;
+        }
+
+        FrameWriter putAuthenticator(AuthenticatorInfo authenticator) {
+            return putBytes(authenticator.getCredentialId())
+                    .putBytes(authenticator.getPublicKey())
+                    .putBytes(authenticator.getAaguid())
+                    .putString(authenticator.getUsername())
+                    .putString(authenticator.getNickname())
+                    .putLong(authenticator.getLastUsedAt());
+        }
+
+        /**
+         * 書き込み済みのバイト数。
+         */
+        int size() {
+            return buffer.position();
+        }
+
+        /**
+         * 書き込み済みの内容を読み出す ByteBuffer（{@link #clear()}まで有効）。
+         */
+        ByteBuffer flip() {
+            return buffer.flip();
+        }
+
+        /**
+         * 読み出されなかった分を先頭に詰めて、書き込みを続けられるようにする。
+         */
+        void compact() {
+            buffer.compact();
+        }
+
+        /**
+         * position 以降に書いた内容（途中まで書いたフレーム）を捨てる。
+         */
+        void truncate(int position) {
+            buffer.position(position);
+            frameStart = -1;
+        }
+
+        void clear() {
+            buffer.clear();
+        }
+
+        byte[] toByteArray() {
+            return Arrays.copyOf(buffer.array(), buffer.position());
+        }
+
+        private void ensure(int bytes) {
+            if (buffer.remaining() < bytes) {
+                int capacity = Math.max(buffer.capacity() * 2, buffer.position() + bytes);
+                ByteBuffer larger = ByteBuffer.allocate(capacity);
+                larger.put(buffer.flip());
+                buffer = larger;
+            }
+        }
+    }
+}
@@ -0,0 +1,145 @@
+package com.example.demo.remote;
+
+import com.example.demo.backend.CredentialStore;
+import com.example.demo.backend.WebAuthnBackend;
+import com.example.demo.tiered.TieredCredentialStore;
+import lombok.extern.slf4j.Slf4j;
+
+import java.io.IOException;
+import java.nio.file.Path;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * バックエンドサービスを単独で起動する（Spring を使わない。CredentialStore と{@link BinaryBackendServer}だけ）。
+ *
+ * <p>【使い方】
+ * <pre>
+ * mvn -q exec:java -Dexec.mainClass=com.example.demo.remote.BackendServiceMain \
+ *     -Dexec.args="port=7072 tiered-directory=/var/lib/webauthn hot-capacity=100000"
+ * </pre>
+ * <ul>
+ *   <li>port: バイナリプロトコルのポート（既定 7072）</li>
+ *   <li>bind-address: 待ち受けるアドレス（既定はループバック。他のホストから使う場合は共有の秘密が必須）</li>
+ *   <li>http-port: 指定すると、同じデータの検索をHTTP/JSON（{@link RemoteLookupServer}）でも公開する</li>
+ *   <li>tiered-directory: 指定すると、WebAuthnBackend（全てヒープ）の代わりに{@link TieredCredentialStore}（よく使うものだけヒープ、残りはディスク）を使う</li>
+ *   <li>hot-capacity, memtable-mb, block-cache-mb: TieredCredentialStore の設定</li>
+ *   <li>lookup-budget-us: TieredCredentialStore の検索のレイテンシの目標（p99、既定 200）。
+ *       1分ごとに、その間の検索で目標を超えたものが1%を超えていれば警告を出す</li>
+ * </ul>
+ * 共有の秘密は、コマンドライン（ps で見える）ではなく環境変数 WEBAUTHN_BACKEND_SECRET で渡す
+ * （アプリケーションの webauthn.remote-lookup.secret と同じ値）。
+ * アプリケーションから webauthn.remote-lookup.url=backend://host:port で使うと、検索に加えて登録完了・最終使用時刻・認証器一覧・表示名の変更・削除もこのサービスに送る。
+ * 終了（SIGTERM・Ctrl+C）で接続を閉じる（TieredCredentialStore は書き込みバッファを書き出す）。
+ */
+@Slf4j
+public class BackendServiceMain {
+
+    private static final String SECRET_ENV = "WEBAUTHN_BACKEND_SECRET";
+    private static final long BUDGET_CHECK_MINUTES = 1;
+
+    public static void main(String[] args) throws IOException, InterruptedException {
+        Map<String, String> options = parse(args);
+        int port = Integer.parseInt(options.getOrDefault("port", "7072"));
+        String bindAddress = options.get("bind-address");
+        String secret = System.getenv(SECRET_ENV);
+        CredentialStore store = options.containsKey("tiered-directory") ? openTiered(options) : new WebAuthnBackend();
+        BinaryBackendServer server = new BinaryBackendServer(store, bindAddress, port, secret);
+        RemoteLookupServer httpServer = options.containsKey("http-port")
+                ? new RemoteLookupServer(store, bindAddress, Integer.parseInt(options.get("http-port")), secret) : null;
+
+        ScheduledExecutorService budgetCheck = Executors.newSingleThreadScheduledExecutor(r ->
+                Thread.ofPlatform().name("lookup-budget").daemon().unstarted(r));
+        if (store instanceof TieredCredentialStore tiered) {
+            budgetCheck.scheduleAtFixedRate(new BudgetCheck(tiered),
+                    BUDGET_CHECK_MINUTES, BUDGET_CHECK_MINUTES, TimeUnit.MINUTES);
+        }
+
+        CountDownLatch stopped = new CountDownLatch(1);
+        Runtime.getRuntime().addShutdownHook(new Thread(() -> {
+            budgetCheck.shutdownNow();
+            try {
+                server.close();
+                if (store instanceof AutoCloseable closeable) {
+                    closeable.close();
+                }
+            } catch (Exception e) {
+                // 終了中のため無視する
+            }
+            if (httpServer != null) {
+                httpServer.close();
+            }
+            stopped.countDown();
+        }));
+
+        server.start();
+        if (httpServer != null) {
+            httpServer.start();
+        }
+        stopped.await();
+    }
+
+    private static TieredCredentialStore openTiered(Map<String, String> options) throws IOException {
+        TieredCredentialStore.Settings defaults = TieredCredentialStore.Settings.defaults();
+        TieredCredentialStore.Settings settings = new TieredCredentialStore.Settings(
+                Integer.parseInt(options.getOrDefault("hot-capacity", String.valueOf(defaults.hotCapacity()))),
+                megabytes(options, "memtable-mb", defaults.memtableBytes()),
+                defaults.blockSize(),
+                megabytes(options, "block-cache-mb", defaults.blockCacheBytes()),
+                defaults.maxSegments(),
+                options.containsKey("lookup-budget-us")
+                        ? TimeUnit.MICROSECONDS.toNanos(Long.parseLong(options.get("lookup-budget-us")))
+                        : defaults.lookupBudgetNanos());
+        return new TieredCredentialStore(Path.of(options.get("tiered-directory")), settings);
+    }
+
+    /**
+     * 前回から増えた検索のうち、目標を超えたものが1%を超えていれば警告する（起動してからの累計では、最近の悪化が薄まる）。
+     */
+    private static final class BudgetCheck implements Runnable {
+
+        private final TieredCredentialStore store;
+        private long lookups;
+        private long overBudget;
+
+        BudgetCheck(TieredCredentialStore store) {
+            this.store = store;
+        }
+
+        @Override
+        public void run() {
+            long currentLookups = store.getLookups();
+            long currentOverBudget = store.getLookupsOverBudget();
+            long interval = currentLookups - lookups;
+            long slow = currentOverBudget - overBudget;
+            lookups = currentLookups;
+            overBudget = currentOverBudget;
+            if (slow * 100 > interval) {
+                log.warn("Lookup p99 over budget: {} of {} lookups took longer than {} us", slow, interval,
+                        TimeUnit.NANOSECONDS.toMicros(store.getSettings().lookupBudgetNanos()));
+            }
+        }
+    }
+
+    private static long megabytes(Map<String, String> options, String key, long defaultBytes) {
+        return options.containsKey(key) ? Long.parseLong(options.get(key)) << 20 : defaultBytes;
+    }
+
+    private static Map<String, String> parse(String[] args) {
+        Map<String, String> options = new LinkedHashMap<>();
+        for (String arg : args) {
+            int eq = arg.indexOf('=');
+            if (eq <= 0) {
+                System.err.println("usage: BackendServiceMain [key=value ...] (port, bind-address, http-port, "
+                        + "tiered-directory, hot-capacity, memtable-mb, block-cache-mb, lookup-budget-us)");
+                System.exit(2);
+            }
+            options.put(arg.substring(0, eq), arg.substring(eq + 1));
+        }
+        return options;
+    }
+}
@@ -0,0 +1,18 @@
+package com.example.demo.remote;
+
+/**
+ * リモートのバックエンドを呼び出せない（サーキットブレーカーが開いている・バルクヘッドが満杯・タイムアウト・エラー応答）。
+ *
+ * <p>サーキットブレーカーとバルクヘッドによる拒否は、リモートを呼ばずにすぐ投げる（呼び出し元を待たせない）。
+ * コントローラーは 503 Service Unavailable として返す。
+ */
+public class BackendUnavailableException extends RuntimeException {
+
+    public BackendUnavailableException(String message) {
+        super(message, null, false, false);  // 拒否が続いても、スタックトレースを作るコストをかけない
+    }
+
+    public BackendUnavailableException(String message, Throwable cause) {
+        super(message, cause);
+    }
+}
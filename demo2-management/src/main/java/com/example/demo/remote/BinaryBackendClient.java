@@ -0,0 +1,436 @@
+package com.example.demo.remote;
+
+import com.example.demo.backend.AuthenticatorInfo;
+import com.example.demo.backend.AuthenticatorPage;
+import com.example.demo.backend.UserInfo;
+import com.example.demo.backend.WebAuthnBackend.CredentialData;
+import com.example.demo.remote.BackendProtocol.FrameWriter;
+import com.example.demo.remote.BackendProtocol.Operation;
+import lombok.extern.slf4j.Slf4j;
+
+import java.io.IOException;
+import java.net.InetSocketAddress;
+import java.net.StandardSocketOptions;
+import java.nio.ByteBuffer;
+import java.nio.channels.SocketChannel;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Optional;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.function.Consumer;
+import java.util.function.Function;
+
+/**
+ * {@link BinaryBackendServer}（バックエンドサービス）のクライアント。WebAuthnBackend と同じ操作を{@link BackendProtocol}で送る。
+ *
+ * <p>【接続プールとパイプライン】
+ * connections 本の接続を順番に使い、1つの接続に応答を待たずに要求を続けて送る。
+ * 応答は要求idで対応付ける（多重化）ため、遅い要求が後の要求の応答を待たせない。
+ * 接続は最初の要求のときに張り、切れた場合は次の要求で張り直す（切れた接続の応答待ちは{@link BackendUnavailableException}で失敗させる）。
+ *
+ * <p>【書き込みのまとめ】
+ * 要求は接続ごとのキューに入れ、書き込み中のスレッドがいなければ自分がキューの全てを1回の write で送る。
+ * 同時に送られた要求は、システムコール1回分にまとまる。
+ *
+ * <p>応答は接続ごとの読み取りスレッドで解釈し、CompletableFuture を完了させる（後続の処理は軽くすること）。
+ * 複数の認証器のデータは{@link #findCredentialDataBatch(List)}で1回の往復で取得できる。
+ *
+ * <p>サーバーに共有の秘密が設定されている場合は、同じ秘密を渡す。接続を張るたびに最初に AUTHENTICATE を送る。
+ */
+@Slf4j
+public class BinaryBackendClient implements AsyncCredentialLookup, AutoCloseable {
+
+    private static final int READ_BUFFER_SIZE = 64 * 1024;
+
+    private final InetSocketAddress address;
+    private final long timeoutMillis;
+    private final byte[] secret;  // null なら認証しない
+    private final Connection[] connections;
+    private final AtomicInteger nextConnection = new AtomicInteger();
+    private final AtomicLong nextRequestId = new AtomicLong();
+    private volatile boolean closed;
+
+    /**
+     * @param address       バックエンドサービスのアドレス（host:port）
+     * @param connections   接続の数
+     * @param timeoutMillis 1回の要求のタイムアウト（接続の確立を含む）
+     */
+    public BinaryBackendClient(String address, int connections, long timeoutMillis) {
+        this(address, connections, timeoutMillis, null);
+    }
+
+    /**
+     * @param secret サーバーの共有の秘密（null・空なら認証しない）
+     */
+    public BinaryBackendClient(String address, int connections, long timeoutMillis, String secret) {
+        int colon = address.lastIndexOf(':');
+        if (colon <= 0) {
+            throw new IllegalArgumentException("Backend address must be host:port: " + address);
+        }
+        this.address = new InetSocketAddress(address.substring(0, colon), Integer.parseInt(address.substring(colon + 1)));
+        this.timeoutMillis = timeoutMillis;
+        this.secret = BackendAccess.secretBytes(secret);
+        this.connections = new Connection[connections];
+        for (int i = 0; i < connections; i++) {
+            this.connections[i] = new Connection(i);
+        }
+    }
+
+    @Override
+    public CompletableFuture<Optional<byte[]>> findUserHandleByUsername(String username) {
+        return call(Operation.USER_HANDLE, w -> w.putString(username), optional(BackendProtocol::getBytes));
+    }
+
+    @Override
+    public CompletableFuture<Optional<String>> findUsernameByUserHandle(byte[] userHandle) {
+        return call(Operation.USERNAME, w -> w.putBytes(userHandle), optional(BackendProtocol::getString));
+    }
+
+    @Override
+    public CompletableFuture<List<byte[]>> findCredentialIdsByUsername(String username) {
+        return call(Operation.CREDENTIAL_IDS, w -> w.putString(username), ok(in -> {
+            int count = in.getInt();
+            List<byte[]> ids = new ArrayList<>(count);
+            for (int i = 0; i < count; i++) {
+                ids.add(BackendProtocol.getBytes(in));
+            }
+            return ids;
+        }));
+    }
+
+    @Override
+    public CompletableFuture<Optional<CredentialData>> findCredentialData(byte[] credentialId, byte[] userHandle) {
+        return call(Operation.CREDENTIAL_DATA, w -> w.putBytes(credentialId).putBytes(userHandle),
+                optional(BackendProtocol::getCredentialData));
+    }
+
+    @Override
+    public CompletableFuture<Optional<CredentialData>> findCredentialDataByCredentialId(byte[] credentialId) {
+        return call(Operation.CREDENTIAL_DATA_BY_ID, w -> w.putBytes(credentialId),
+                optional(BackendProtocol::getCredentialData));
+    }
+
+    /**
+     * 複数の credentialId の認証データを1回の要求で取得する。
+     *
+     * @return credentialIds と同じ順序の結果（見つからなければ空のOptional）
+     */
+    public CompletableFuture<List<Optional<CredentialData>>> findCredentialDataBatch(List<byte[]> credentialIds) {
+        return call(Operation.CREDENTIAL_DATA_BATCH, w -> {
+            w.putInt(credentialIds.size());
+            credentialIds.forEach(w::putBytes);
+        }, ok(in -> {
+            int count = in.getInt();
+            List<Optional<CredentialData>> results = new ArrayList<>(count);
+            for (int i = 0; i < count; i++) {
+                results.add(in.get() == BackendProtocol.OK
+                        ? Optional.of(BackendProtocol.getCredentialData(in))
+                        : Optional.empty());
+            }
+            return results;
+        }));
+    }
+
+    /**
+     * UserInfoを保存する（WebAuthnBackend#saveUser）。
+     */
+    public CompletableFuture<Void> saveUser(UserInfo user) {
+        return call(Operation.SAVE_USER, w -> {
+            w.putString(user.getUsername()).putBytes(user.getUserHandle()).putInt(user.getAuthenticators().size());
+            user.getAuthenticators().forEach(w::putAuthenticator);
+        }, ok(in -> null));
+    }
+
+    /**
+     * AuthenticatorInfoを保存する（WebAuthnBackend#saveAuthenticator）。
+     */
+    public CompletableFuture<Void> saveAuthenticator(AuthenticatorInfo authenticator) {
+        return call(Operation.SAVE_AUTHENTICATOR, w -> w.putAuthenticator(authenticator), ok(in -> null));
+    }
+
+    /**
+     * 登録完了: ユーザーと認証器をまとめて保存する（WebAuthnBackend#registerAuthenticator）。
+     *
+     * @return 保存した場合はtrue。usernameが別のuserHandleで登録済みの場合はfalse
+     */
+    public CompletableFuture<Boolean> registerAuthenticator(byte[] userHandle, AuthenticatorInfo authenticator) {
+        return call(Operation.REGISTER_AUTHENTICATOR, w -> w.putBytes(userHandle).putAuthenticator(authenticator),
+                (status, in) -> status == BackendProtocol.OK);
+    }
+
+    /**
+     * 認証器が認証に使われたことを記録する（WebAuthnBackend#recordUse）。
+     */
+    public CompletableFuture<Void> recordUse(byte[] credentialId, long nowMillis) {
+        return call(Operation.RECORD_USE, w -> w.putBytes(credentialId).putLong(nowMillis), ok(in -> null));
+    }
+
+    /**
+     * 特定ユーザーの特定認証器を削除する（WebAuthnBackend#deleteAuthenticator）。
+     */
+    public CompletableFuture<Boolean> deleteAuthenticator(String username, byte[] credentialId) {
+        return call(Operation.DELETE_AUTHENTICATOR, w -> w.putString(username).putBytes(credentialId),
+                (status, in) -> status == BackendProtocol.OK);
+    }
+
+    /**
+     * ユーザーの認証器を、登録順に1ページ分取得する（CredentialStore#findAuthenticatorPage）。
+     */
+    public CompletableFuture<AuthenticatorPage> findAuthenticatorPage(String username, long afterCursor, int limit) {
+        return call(Operation.AUTHENTICATOR_PAGE, w -> w.putString(username).putLong(afterCursor).putInt(limit),
+                ok(BackendProtocol::getAuthenticatorPage));
+    }
+
+    /**
+     * 特定ユーザーの認証器の表示名をまとめて変更する（CredentialStore#renameAuthenticators）。
+     */
+    public CompletableFuture<List<Boolean>> renameAuthenticators(String username, List<byte[]> credentialIds,
+                                                                 List<String> nicknames) {
+        return call(Operation.RENAME_AUTHENTICATORS, w -> {
+            w.putString(username).putInt(credentialIds.size());
+            for (int i = 0; i < credentialIds.size(); i++) {
+                w.putBytes(credentialIds.get(i)).putString(nicknames.get(i));
+            }
+        }, ok(BackendProtocol::getResults));
+    }
+
+    private <T> CompletableFuture<T> call(Operation operation, Consumer<FrameWriter> request, ResponseDecoder<T> decoder) {
+        if (closed) {
+            return CompletableFuture.failedFuture(new BackendUnavailableException("Backend client is closed"));
+        }
+        long requestId = nextRequestId.incrementAndGet();
+        FrameWriter frame = new FrameWriter(64);
+        try {
+            frame.begin(requestId, operation.code);
+            request.accept(frame);
+            frame.end();
+        } catch (IllegalArgumentException e) {
+            return CompletableFuture.failedFuture(e);
+        }
+
+        Connection connection = connections[Math.floorMod(nextConnection.getAndIncrement(), connections.length)];
+        CompletableFuture<T> future = new CompletableFuture<>();
+        connection.send(requestId, frame.toByteArray(), new Pending<>(operation, future, decoder));
+        return future.orTimeout(timeoutMillis, TimeUnit.MILLISECONDS)
+                .whenComplete((result, e) -> connection.forget(requestId));
+    }
+
+    private static <T> ResponseDecoder<Optional<T>> optional(Function<ByteBuffer, T> decoder) {
+        return (status, in) -> status == BackendProtocol.NOT_FOUND ? Optional.empty() : Optional.of(decoder.apply(in));
+    }
+
+    private static <T> ResponseDecoder<T> ok(Function<ByteBuffer, T> decoder) {
+        return (status, in) -> decoder.apply(in);
+    }
+
+    @Override
+    public void close() {
+        closed = true;
+        for (Connection connection : connections) {
+            connection.close();
+        }
+    }
+
+    /**
+     * 応答（OK・NOT_FOUND）の内容を解釈する。BAD_REQUEST・ERROR は呼び出し側で失敗させる。
+     */
+    @FunctionalInterface
+    private interface ResponseDecoder<T> {
+        T decode(byte status, ByteBuffer in);
+    }
+
+    /**
+     * 応答待ちの要求。
+     */
+    private record Pending<T>(Operation operation, CompletableFuture<T> future, ResponseDecoder<T> decoder) {
+
+        void complete(byte status, ByteBuffer in) {
+            try {
+                switch (status) {
+                    case BackendProtocol.OK, BackendProtocol.NOT_FOUND -> future.complete(decoder.decode(status, in));
+                    case BackendProtocol.BAD_REQUEST ->
+                            future.completeExceptionally(new IllegalArgumentException(operation + " rejected by the backend"));
+                    default -> future.completeExceptionally(new BackendUnavailableException(
+                            operation + " failed on the backend: " + BackendProtocol.getString(in)));
+                }
+            } catch (RuntimeException e) {
+                future.completeExceptionally(new BackendUnavailableException(operation + " returned a malformed response", e));
+            }
+        }
+
+        void fail(Throwable cause) {
+            future.completeExceptionally(cause);
+        }
+    }
+
+    /**
+     * プールの1本の接続。切れた場合は次の要求で張り直す。
+     */
+    private final class Connection {
+
+        private final int index;
+        private final ConcurrentHashMap<Long, Pending<?>> pending = new ConcurrentHashMap<>();
+        private final ConcurrentLinkedQueue<byte[]> queue = new ConcurrentLinkedQueue<>();
+        private final AtomicBoolean writing = new AtomicBoolean();
+        private final FrameWriter batch = new FrameWriter(READ_BUFFER_SIZE);  // writing を取ったスレッドだけが触る
+        private volatile SocketChannel channel;
+
+        Connection(int index) {
+            this.index = index;
+        }
+
+        void send(long requestId, byte[] frame, Pending<?> request) {
+            pending.put(requestId, request);
+            queue.add(frame);
+            // 書き込み中のスレッドがいれば、そのスレッドがキューから送る
+            while (!queue.isEmpty() && writing.compareAndSet(false, true)) {
+                try {
+                    writeQueued();
+                } finally {
+                    writing.set(false);
+                }
+            }
+        }
+
+        private void writeQueued() {
+            SocketChannel current;
+            try {
+                current = connect();
+            } catch (IOException e) {
+                queue.clear();
+                failAll(new BackendUnavailableException("Cannot connect to the backend at " + address, e));
+                return;
+            }
+            batch.clear();
+            byte[] frame;
+            while ((frame = queue.poll()) != null) {
+                batch.putFrame(frame);
+            }
+            try {
+                ByteBuffer buffer = batch.flip();
+                while (buffer.hasRemaining()) {
+                    current.write(buffer);
+                }
+            } catch (IOException e) {
+                disconnect(current, new BackendUnavailableException("Lost the connection to the backend", e));
+            }
+        }
+
+        private synchronized SocketChannel connect() throws IOException {
+            SocketChannel current = channel;
+            if (current != null && current.isOpen()) {
+                return current;
+            }
+            if (closed) {
+                throw new IOException("Backend client is closed");
+            }
+            current = SocketChannel.open();
+            try {
+                current.setOption(StandardSocketOptions.TCP_NODELAY, true);
+                current.socket().connect(address, (int) Math.min(timeoutMillis, Integer.MAX_VALUE));
+                if (secret != null) {
+                    // 最初の要求として送る（応答は要求idが0のため、読み取りスレッドが捨てる）
+                    FrameWriter authenticate = new FrameWriter(64);
+                    authenticate.begin(BackendProtocol.AUTHENTICATE_REQUEST_ID, Operation.AUTHENTICATE.code)
+                            .putBytes(secret).end();
+                    ByteBuffer buffer = authenticate.flip();
+                    while (buffer.hasRemaining()) {
+                        current.write(buffer);
+                    }
+                }
+            } catch (IOException e) {
+                current.close();
+                throw e;
+            }
+            channel = current;
+            SocketChannel connected = current;
+            Thread.ofPlatform().name("backend-client-" + index).daemon().start(() -> readLoop(connected));
+            return current;
+        }
+
+        private void readLoop(SocketChannel current) {
+            ByteBuffer in = ByteBuffer.allocate(READ_BUFFER_SIZE);
+            try {
+                while (true) {
+                    if (current.read(in) < 0) {
+                        throw new IOException("Closed by the backend");
+                    }
+                    in.flip();
+                    while (in.remaining() >= 4) {
+                        int length = in.getInt(in.position());
+                        if (length < BackendProtocol.HEADER_LENGTH || length > BackendProtocol.MAX_FRAME_LENGTH) {
+                            throw new IOException("Invalid frame length: " + length);
+                        }
+                        if (in.remaining() < 4 + length) {
+                            break;
+                        }
+                        ByteBuffer frame = in.slice(in.position() + 4, length);
+                        in.position(in.position() + 4 + length);
+                        Pending<?> request = pending.remove(frame.getLong());
+                        byte status = frame.get();
+                        if (request != null) {
+                            request.complete(status, frame);  // タイムアウト済みの要求の応答は捨てる
+                        }
+                    }
+                    in.compact();
+                    if (in.remaining() == 0) {
+                        in = ByteBuffer.allocate(Math.min(in.capacity() * 2, 4 + BackendProtocol.MAX_FRAME_LENGTH))
+                                .put(in.flip());
+                    }
+                }
+            } catch (IOException e) {
+                disconnect(current, new BackendUnavailableException("Lost the connection to the backend", e));
+            }
+        }
+
+        /**
+         * 接続を閉じ、応答待ちの要求を全て失敗させる。
+         */
+        private void disconnect(SocketChannel current, BackendUnavailableException cause) {
+            synchronized (this) {
+                if (channel == current) {
+                    channel = null;
+                }
+            }
+            try {
+                current.close();
+            } catch (IOException e) {
+                // 閉じるときの失敗は無視する
+            }
+            if (!closed) {
+                log.debug("Backend connection {} closed: {}", index, cause.getMessage());
+            }
+            failAll(cause);
+        }
+
+        private void failAll(BackendUnavailableException cause) {
+            for (Long requestId : pending.keySet()) {
+                Pending<?> request = pending.remove(requestId);
+                if (request != null) {
+                    request.fail(cause);
+                }
+            }
+        }
+
+        void forget(long requestId) {
+            pending.remove(requestId);
+        }
+
+        void close() {
+            SocketChannel current;
+            synchronized (this) {
+                current = channel;
+                channel = null;
+            }
+            if (current != null) {
+                disconnect(current, new BackendUnavailableException("Backend client is closed"));
+            }
+        }
+    }
+}
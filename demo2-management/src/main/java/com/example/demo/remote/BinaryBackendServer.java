@@ -0,0 +1,356 @@
+package com.example.demo.remote;
+
+import com.example.demo.backend.AuthenticatorPage;
+import com.example.demo.backend.CredentialStore;
+import com.example.demo.backend.UserInfo;
+import com.example.demo.backend.WebAuthnBackend;
+import com.example.demo.remote.BackendProtocol.FrameWriter;
+import com.example.demo.remote.BackendProtocol.Operation;
+import lombok.extern.slf4j.Slf4j;
+
+import java.io.IOException;
+import java.net.InetSocketAddress;
+import java.net.StandardSocketOptions;
+import java.nio.BufferUnderflowException;
+import java.nio.ByteBuffer;
+import java.nio.channels.ClosedSelectorException;
+import java.nio.channels.SelectionKey;
+import java.nio.channels.Selector;
+import java.nio.channels.ServerSocketChannel;
+import java.nio.channels.SocketChannel;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Optional;
+import java.util.function.BiConsumer;
+
+/**
+ * バックエンドサービス: WebAuthnBackend（{@link CredentialStore}）の操作を{@link BackendProtocol}（長さ付きのバイナリ）で公開するサーバー。
+ *
+ * <p>【イベントループ】
+ * 1つのスレッドが Selector で全ての接続を扱う（接続ごとのスレッドを持たない）。
+ * 読み取れた分に含まれる要求を全て処理し、応答をまとめて1回の write で返す。
+ * パイプラインで続けて届いた要求は、システムコール1回分でまとめて応答できる。
+ *
+ * <p>操作は短時間で終わる（WebAuthnBackend はインメモリ、TieredCredentialStore もディスクの読み取りはブロック単位）ため、
+ * イベントループのスレッドで直接実行する。
+ * 検索の遅延（BackendDelay）を設定するとイベントループが止まるため、遅延を含む試験には{@link RemoteLookupServer}を使う。
+ *
+ * <p>【背圧】
+ * クライアントが応答を読まず、未送信の応答が MAX_PENDING_OUTPUT を超えた接続からは、送り終わるまで要求を読まない。
+ * 不正なフレーム（長さが範囲外）を受け取った接続は閉じる。
+ *
+ * <p>【待ち受けと認証】
+ * 既定ではループバックだけで待ち受ける。他のホストから使う場合は待ち受けアドレスと共有の秘密を指定する（{@link BackendAccess}）。
+ * 秘密を設定した場合、接続ごとに最初の要求で AUTHENTICATE を受け取るまで他の要求を処理しない（{@link BackendProtocol}）。
+ */
+@Slf4j
+public class BinaryBackendServer implements AutoCloseable {
+
+    private static final int READ_BUFFER_SIZE = 64 * 1024;
+    private static final int MAX_PENDING_OUTPUT = 4 * 1024 * 1024;
+
+    private final CredentialStore backend;
+    private final byte[] secret;  // null なら認証しない
+    private final ServerSocketChannel serverChannel;
+    private final Selector selector;
+    private Thread eventLoop;
+
+    /**
+     * ループバックだけで待ち受け、認証しない（同じホストのクライアント・テスト用）。
+     */
+    public BinaryBackendServer(CredentialStore backend, int port) throws IOException {
+        this(backend, null, port, null);
+    }
+
+    /**
+     * @param bindAddress 待ち受けるアドレス（null・空ならループバック）
+     * @param secret      共有の秘密（null・空なら認証しない。ループバック以外では必須）
+     */
+    public BinaryBackendServer(CredentialStore backend, String bindAddress, int port, String secret) throws IOException {
+        InetSocketAddress address = BackendAccess.bindAddress(bindAddress, port, secret);
+        this.backend = backend;
+        this.secret = BackendAccess.secretBytes(secret);
+        this.selector = Selector.open();
+        this.serverChannel = ServerSocketChannel.open();
+        serverChannel.bind(address);
+        serverChannel.configureBlocking(false);
+        serverChannel.register(selector, SelectionKey.OP_ACCEPT);
+    }
+
+    public void start() {
+        eventLoop = Thread.ofPlatform().name("backend-event-loop").daemon().start(this::run);
+        log.info("Backend service listening on {}{}", serverChannel.socket().getLocalSocketAddress(),
+                secret != null ? " (shared secret required)" : "");
+    }
+
+    public int getPort() {
+        return serverChannel.socket().getLocalPort();
+    }
+
+    private void run() {
+        try {
+            while (selector.isOpen()) {
+                selector.select();
+                for (SelectionKey key : selector.selectedKeys()) {
+                    try {
+                        if (!key.isValid()) {
+                            continue;
+                        }
+                        if (key.isAcceptable()) {
+                            accept();
+                            continue;
+                        }
+                        Connection connection = (Connection) key.attachment();
+                        if (key.isWritable()) {
+                            connection.flush();
+                        }
+                        if (key.isValid() && key.isReadable()) {
+                            connection.read();
+                        }
+                    } catch (IOException e) {
+                        log.debug("Closing backend connection: {}", e.toString());
+                        closeQuietly(key);
+                    }
+                }
+                selector.selectedKeys().clear();
+            }
+        } catch (ClosedSelectorException e) {
+            // close() で停止した
+        } catch (IOException e) {
+            log.error("Backend event loop failed", e);
+        }
+    }
+
+    private void accept() throws IOException {
+        SocketChannel channel = serverChannel.accept();
+        if (channel == null) {
+            return;
+        }
+        channel.configureBlocking(false);
+        channel.setOption(StandardSocketOptions.TCP_NODELAY, true);
+        SelectionKey key = channel.register(selector, SelectionKey.OP_READ);
+        key.attach(new Connection(channel, key));
+    }
+
+    /**
+     * 1つの要求を処理し、応答を out に書き込む。
+     */
+    private void handle(ByteBuffer frame, FrameWriter out) {
+        long requestId = frame.getLong();
+        Operation operation = Operation.of(frame.get());
+        int start = out.size();
+        try {
+            if (operation == null || operation == Operation.AUTHENTICATE) {
+                out.begin(requestId, BackendProtocol.BAD_REQUEST).end();
+                return;
+            }
+            execute(operation, requestId, frame, out);
+        } catch (IllegalArgumentException | BufferUnderflowException e) {
+            out.truncate(start);
+            out.begin(requestId, BackendProtocol.BAD_REQUEST).end();
+        } catch (RuntimeException e) {
+            out.truncate(start);
+            out.begin(requestId, BackendProtocol.ERROR).putString(String.valueOf(e.getMessage())).end();
+        }
+    }
+
+    private void execute(Operation operation, long requestId, ByteBuffer in, FrameWriter out) {
+        switch (operation) {
+            case USER_HANDLE -> optional(requestId, out, backend.findUserHandleByUsername(BackendProtocol.getString(in)),
+                    (w, userHandle) -> w.putBytes(userHandle));
+            case USERNAME -> optional(requestId, out, backend.findUsernameByUserHandle(BackendProtocol.getBytes(in)),
+                    FrameWriter::putString);
+            case CREDENTIAL_IDS -> {
+                List<byte[]> ids = backend.findCredentialIdsByUsername(BackendProtocol.getString(in));
+                out.begin(requestId, BackendProtocol.OK).putInt(ids.size());
+                ids.forEach(out::putBytes);
+                out.end();
+            }
+            case CREDENTIAL_DATA -> optional(requestId, out,
+                    backend.findCredentialData(BackendProtocol.getBytes(in), BackendProtocol.getBytes(in)),
+                    FrameWriter::putCredentialData);
+            case CREDENTIAL_DATA_BY_ID -> optional(requestId, out,
+                    backend.findCredentialDataByCredentialId(BackendProtocol.getBytes(in)),
+                    FrameWriter::putCredentialData);
+            case CREDENTIAL_DATA_BATCH -> {
+                int count = in.getInt();
+                if (count < 0 || count > in.remaining() / 2) {
+                    throw new IllegalArgumentException("Invalid batch size: " + count);
+                }
+                out.begin(requestId, BackendProtocol.OK).putInt(count);
+                for (int i = 0; i < count; i++) {
+                    Optional<WebAuthnBackend.CredentialData> data =
+                            backend.findCredentialDataByCredentialId(BackendProtocol.getBytes(in));
+                    out.putByte(data.isPresent() ? BackendProtocol.OK : BackendProtocol.NOT_FOUND);
+                    data.ifPresent(out::putCredentialData);
+                }
+                out.end();
+            }
+            case SAVE_USER -> {
+                UserInfo user = new UserInfo(BackendProtocol.getString(in), BackendProtocol.getBytes(in));
+                int count = in.getInt();
+                for (int i = 0; i < count; i++) {
+                    user.getAuthenticators().add(BackendProtocol.getAuthenticator(in));
+                }
+                backend.saveUser(user);
+                out.begin(requestId, BackendProtocol.OK).end();
+            }
+            case SAVE_AUTHENTICATOR -> {
+                backend.saveAuthenticator(BackendProtocol.getAuthenticator(in));
+                out.begin(requestId, BackendProtocol.OK).end();
+            }
+            case RECORD_USE -> {
+                backend.recordUse(BackendProtocol.getBytes(in), in.getLong());
+                out.begin(requestId, BackendProtocol.OK).end();
+            }
+            case DELETE_AUTHENTICATOR -> {
+                boolean deleted = backend.deleteAuthenticator(BackendProtocol.getString(in), BackendProtocol.getBytes(in));
+                out.begin(requestId, deleted ? BackendProtocol.OK : BackendProtocol.NOT_FOUND).end();
+            }
+            case REGISTER_AUTHENTICATOR -> {
+                boolean registered = backend.registerAuthenticator(BackendProtocol.getBytes(in), BackendProtocol.getAuthenticator(in));
+                out.begin(requestId, registered ? BackendProtocol.OK : BackendProtocol.NOT_FOUND).end();
+            }
+            case AUTHENTICATOR_PAGE -> {
+                String username = BackendProtocol.getString(in);
+                long afterCursor = in.getLong();
+                int limit = in.getInt();
+                if (limit <= 0 || limit > BackendProtocol.MAX_PAGE_LIMIT) {
+                    throw new IllegalArgumentException("Invalid page size: " + limit);
+                }
+                AuthenticatorPage page = backend.findAuthenticatorPage(username, afterCursor, limit);
+                out.begin(requestId, BackendProtocol.OK).putAuthenticatorPage(page).end();
+            }
+            case RENAME_AUTHENTICATORS -> {
+                String username = BackendProtocol.getString(in);
+                int count = BackendProtocol.getCount(in);
+                List<byte[]> credentialIds = new ArrayList<>(count);
+                List<String> nicknames = new ArrayList<>(count);
+                for (int i = 0; i < count; i++) {
+                    credentialIds.add(BackendProtocol.getBytes(in));
+                    nicknames.add(BackendProtocol.getString(in));
+                }
+                out.begin(requestId, BackendProtocol.OK)
+                        .putResults(backend.renameAuthenticators(username, credentialIds, nicknames)).end();
+            }
+            case AUTHENTICATE -> throw new IllegalStateException("AUTHENTICATE is handled per connection");
+        }
+    }
+
+    private static <T> void optional(long requestId, FrameWriter out, Optional<T> value,
+                                     BiConsumer<FrameWriter, T> writer) {
+        if (value.isEmpty()) {
+            out.begin(requestId, BackendProtocol.NOT_FOUND).end();
+            return;
+        }
+        out.begin(requestId, BackendProtocol.OK);
+        writer.accept(out, value.get());
+        out.end();
+    }
+
+    private static void closeQuietly(SelectionKey key) {
+        key.cancel();
+        try {
+            key.channel().close();
+        } catch (IOException e) {
+            // 閉じるときの失敗は無視する
+        }
+    }
+
+    @Override
+    public void close() throws IOException, InterruptedException {
+        List<SelectionKey> keys = new ArrayList<>(selector.keys());
+        selector.close();
+        for (SelectionKey key : keys) {
+            key.channel().close();
+        }
+        serverChannel.close();
+        if (eventLoop != null) {
+            eventLoop.join();
+        }
+    }
+
+    /**
+     * 1つの接続の読み取り途中のフレームと、未送信の応答（イベントループのスレッドだけが触る）。
+     */
+    private final class Connection {
+
+        private final SocketChannel channel;
+        private final SelectionKey key;
+        private ByteBuffer in = ByteBuffer.allocate(READ_BUFFER_SIZE);
+        private final FrameWriter out = new FrameWriter(READ_BUFFER_SIZE);
+        private boolean authenticated = secret == null;
+
+        Connection(SocketChannel channel, SelectionKey key) {
+            this.channel = channel;
+            this.key = key;
+        }
+
+        void read() throws IOException {
+            if (channel.read(in) < 0) {
+                throw new IOException("Closed by client");
+            }
+            in.flip();
+            while (in.remaining() >= 4) {
+                int length = in.getInt(in.position());
+                if (length < BackendProtocol.HEADER_LENGTH || length > BackendProtocol.MAX_FRAME_LENGTH) {
+                    throw new IOException("Invalid frame length: " + length);
+                }
+                if (in.remaining() < 4 + length) {
+                    break;
+                }
+                int end = in.position() + 4 + length;
+                ByteBuffer frame = in.slice(in.position() + 4, length);
+                in.position(end);
+                if (authenticated) {
+                    handle(frame, out);
+                } else {
+                    authenticate(frame);
+                }
+            }
+            in.compact();
+            if (in.remaining() == 0) {
+                // 読み取り途中のフレームが収まらない（最大長までは広げる）
+                ByteBuffer larger = ByteBuffer.allocate(Math.min(in.capacity() * 2, 4 + BackendProtocol.MAX_FRAME_LENGTH));
+                in = larger.put(in.flip());
+            }
+            flush();
+        }
+
+        /**
+         * 接続の最初の要求: AUTHENTICATE で秘密が一致しなければ、応答せずに接続を閉じる。
+         */
+        private void authenticate(ByteBuffer frame) throws IOException {
+            long requestId = frame.getLong();
+            if (Operation.of(frame.get()) != Operation.AUTHENTICATE) {
+                throw new IOException("Connection from " + channel.getRemoteAddress() + " is not authenticated");
+            }
+            byte[] given;
+            try {
+                given = BackendProtocol.getBytes(frame);
+            } catch (BufferUnderflowException e) {
+                given = null;
+            }
+            if (!BackendAccess.matches(secret, given)) {
+                log.warn("Rejected a backend connection from {}: wrong shared secret", channel.getRemoteAddress());
+                throw new IOException("Wrong shared secret");
+            }
+            authenticated = true;
+            out.begin(requestId, BackendProtocol.OK).end();
+        }
+
+        void flush() throws IOException {
+            ByteBuffer pending = out.flip();
+            if (pending.hasRemaining()) {
+                channel.write(pending);
+            }
+            int remaining = pending.remaining();
+            out.compact();
+            int ops = remaining > 0 ? SelectionKey.OP_WRITE : 0;
+            if (remaining < MAX_PENDING_OUTPUT) {
+                ops |= SelectionKey.OP_READ;
+            }
+            key.interestOps(ops);
+        }
+    }
+}
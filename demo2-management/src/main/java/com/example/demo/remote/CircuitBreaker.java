@@ -0,0 +1,131 @@
+package com.example.demo.remote;
+
+import java.util.Arrays;
+
+/**
+ * 1つのエンドポイントのサーキットブレーカー。
+ *
+ * <p>【状態】
+ * <ul>
+ *   <li>CLOSED: 呼び出しを通す。直近 windowSize 件のうち failureRate 以上が失敗したら（minimumCalls 件以上の場合）OPEN にする</li>
+ *   <li>OPEN: openMillis の間は呼び出さずに拒否する（リモートの回復を待ち、呼び出し元もタイムアウトまで待たせない）</li>
+ *   <li>HALF_OPEN: OPEN の期間が過ぎたら、1件だけ試しに通す。成功すれば CLOSED、失敗すれば再び OPEN</li>
+ * </ul>
+ *
+ * <p>状態の更新は呼び出しごとに1回の短い synchronized で済むため、ロックの競合は問題にならない。
+ */
+class CircuitBreaker {
+
+    enum State {
+        CLOSED,
+        OPEN,
+        HALF_OPEN
+    }
+
+    private final int windowSize;
+    private final int minimumCalls;
+    private final double failureRate;
+    private final long openNanos;
+
+    private final boolean[] outcomes;  // 直近の結果（true: 失敗）
+    private int next;
+    private int calls;
+    private int failures;
+    private State state = State.CLOSED;
+    private long openedAt;
+    private boolean trialInFlight;
+
+    CircuitBreaker(int windowSize, int minimumCalls, double failureRate, long openMillis) {
+        this.windowSize = windowSize;
+        this.minimumCalls = Math.min(minimumCalls, windowSize);
+        this.failureRate = failureRate;
+        this.openNanos = openMillis * 1_000_000L;
+        this.outcomes = new boolean[windowSize];
+    }
+
+    /**
+     * 呼び出してよいか。true を返した場合は、必ず{@link #onSuccess()}・{@link #onFailure()}・{@link #onIgnored()}のいずれかを呼ぶこと。
+     */
+    synchronized boolean tryAcquire() {
+        switch (state) {
+            case CLOSED:
+                return true;
+            case OPEN:
+                if (System.nanoTime() - openedAt < openNanos) {
+                    return false;
+                }
+                state = State.HALF_OPEN;
+                trialInFlight = true;
+                return true;
+            default:
+                if (trialInFlight) {
+                    return false;  // 試しの1件の結果を待っている
+                }
+                trialInFlight = true;
+                return true;
+        }
+    }
+
+    synchronized void onSuccess() {
+        if (state == State.HALF_OPEN) {
+            reset();
+            state = State.CLOSED;
+            return;
+        }
+        record(false);
+    }
+
+    synchronized void onFailure() {
+        if (state == State.HALF_OPEN) {
+            open();
+            return;
+        }
+        record(true);
+        if (state == State.CLOSED && calls >= minimumCalls && failures >= failureRate * calls) {
+            open();
+        }
+    }
+
+    /**
+     * 結果を数えずに終える（呼び出し元のスレッドの中断など、リモートの失敗ではない場合）。
+     * HALF_OPEN の試しの1件だった場合は、次の呼び出しで改めて試す。
+     */
+    synchronized void onIgnored() {
+        if (state == State.HALF_OPEN) {
+            trialInFlight = false;
+        }
+    }
+
+    synchronized State state() {
+        return state;
+    }
+
+    private void record(boolean failure) {
+        if (calls == windowSize) {
+            if (outcomes[next]) {
+                failures--;
+            }
+        } else {
+            calls++;
+        }
+        outcomes[next] = failure;
+        if (failure) {
+            failures++;
+        }
+        next = (next + 1) % windowSize;
+    }
+
+    private void open() {
+        reset();
+        state = State.OPEN;
+        openedAt = System.nanoTime();
+    }
+
+    private void reset() {
+        Arrays.fill(outcomes, false);
+        next = 0;
+        calls = 0;
+        failures = 0;
+        trialInFlight = false;
+    }
+}
@@ -0,0 +1,48 @@
+package com.example.demo.remote;
+
+import java.util.Arrays;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicLongArray;
+
+/**
+ * 1つのエンドポイントの直近のレイテンシから、ヘッジを送るまでの待ち時間（p95）を求める。
+ *
+ * <p>直近 WINDOW 件をリングバッファに記録し、RECOMPUTE_EVERY 件ごとに記録したスレッドがコピーして並べ替え、p95を更新する。
+ * 記録はロックを取らない（並べ替え中に上書きされた値が混ざっても、推定値への影響は小さい）。
+ * 件数が MIN_SAMPLES に満たない間は、設定した初期値を使う。
+ */
+class LatencyTracker {
+
+    static final int WINDOW = 1024;
+    static final int RECOMPUTE_EVERY = 64;
+    static final int MIN_SAMPLES = 32;
+
+    private final AtomicLongArray samples = new AtomicLongArray(WINDOW);  // ナノ秒
+    private final AtomicLong count = new AtomicLong();
+    private volatile long p95Nanos;
+
+    LatencyTracker(long initialNanos) {
+        this.p95Nanos = initialNanos;
+    }
+
+    void record(long nanos) {
+        long n = count.getAndIncrement();
+        samples.set((int) (n % WINDOW), nanos);
+        if ((n + 1) >= MIN_SAMPLES && (n + 1) % RECOMPUTE_EVERY == 0) {
+            recompute((int) Math.min(n + 1, WINDOW));
+        }
+    }
+
+    long p95Nanos() {
+        return p95Nanos;
+    }
+
+    private void recompute(int size) {
+        long[] copy = new long[size];
+        for (int i = 0; i < size; i++) {
+            copy[i] = samples.get(i);
+        }
+        Arrays.sort(copy);
+        p95Nanos = copy[(int) Math.ceil(size * 0.95) - 1];
+    }
+}
@@ -0,0 +1,25 @@
+package com.example.demo.remote;
+
+/**
+ * リモートのバックエンドの検索API（{@link RemoteLookupServer} のパス）。
+ *
+ * <p>サーキットブレーカーとレイテンシの記録（ヘッジの待ち時間）は、エンドポイントごとに持つ。
+ */
+public enum LookupEndpoint {
+
+    USER_HANDLE("/lookup/user-handle"),
+    USERNAME("/lookup/username"),
+    CREDENTIAL_IDS("/lookup/credential-ids"),
+    CREDENTIAL_DATA("/lookup/credential-data"),
+    CREDENTIAL_DATA_BY_ID("/lookup/credential-data-by-id");
+
+    private final String path;
+
+    LookupEndpoint(String path) {
+        this.path = path;
+    }
+
+    public String path() {
+        return path;
+    }
+}
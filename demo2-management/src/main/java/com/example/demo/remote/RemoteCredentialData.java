@@ -0,0 +1,17 @@
+package com.example.demo.remote;
+
+import com.example.demo.backend.WebAuthnBackend.CredentialData;
+
+/**
+ * 検索APIの応答の CredentialData（JSON。byte[] はbase64）。
+ */
+record RemoteCredentialData(byte[] credentialId, byte[] userHandle, byte[] publicKey) {
+
+    static RemoteCredentialData of(CredentialData data) {
+        return new RemoteCredentialData(data.credentialId, data.userHandle, data.publicKey);
+    }
+
+    CredentialData toCredentialData() {
+        return new CredentialData(credentialId, userHandle, publicKey);
+    }
+}
@@ -0,0 +1,130 @@
+package com.example.demo.remote;
+
+import com.example.demo.backend.WebAuthnBackend.CredentialData;
+import com.fasterxml.jackson.core.type.TypeReference;
+import com.fasterxml.jackson.databind.JavaType;
+import com.fasterxml.jackson.databind.ObjectMapper;
+
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.net.URI;
+import java.net.URLEncoder;
+import java.net.http.HttpClient;
+import java.net.http.HttpRequest;
+import java.net.http.HttpResponse;
+import java.nio.charset.StandardCharsets;
+import java.time.Duration;
+import java.util.Base64;
+import java.util.List;
+import java.util.Optional;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+
+/**
+ * {@link RemoteLookupServer} の検索APIを呼び出すHTTPクライアント（java.net.http.HttpClient、応答は非同期に受け取る）。
+ *
+ * <p>404は「見つからない」（空のOptional）、それ以外の200以外の応答は{@link BackendUnavailableException}として失敗させる。
+ * サーバーに共有の秘密が設定されている場合は、同じ秘密を Authorization: Bearer で送る。
+ */
+public class RemoteLookupClient implements AsyncCredentialLookup, AutoCloseable {
+
+    private static final ObjectMapper MAPPER = new ObjectMapper();
+    private static final Base64.Encoder BASE64URL = Base64.getUrlEncoder().withoutPadding();
+    private static final JavaType BYTES = MAPPER.constructType(byte[].class);
+    private static final JavaType STRING = MAPPER.constructType(String.class);
+    private static final JavaType BYTES_LIST = MAPPER.constructType(new TypeReference<List<byte[]>>() {
+    });
+    private static final JavaType CREDENTIAL_DATA = MAPPER.constructType(RemoteCredentialData.class);
+
+    private final URI baseUri;
+    private final Duration timeout;
+    private final String authorization;  // null なら送らない
+    private final ExecutorService executor;
+    private final HttpClient client;
+
+    /**
+     * @param baseUrl       検索APIのURL（例: http://backend:7071）
+     * @param timeoutMillis 1回の検索のタイムアウト
+     */
+    public RemoteLookupClient(String baseUrl, long timeoutMillis) {
+        this(baseUrl, timeoutMillis, null);
+    }
+
+    /**
+     * @param secret サーバーの共有の秘密（null・空なら送らない）
+     */
+    public RemoteLookupClient(String baseUrl, long timeoutMillis, String secret) {
+        this.authorization = secret == null || secret.isEmpty() ? null : "Bearer " + secret;
+        this.baseUri = URI.create(baseUrl.endsWith("/") ? baseUrl.substring(0, baseUrl.length() - 1) : baseUrl);
+        this.timeout = Duration.ofMillis(timeoutMillis);
+        this.executor = Executors.newVirtualThreadPerTaskExecutor();
+        this.client = HttpClient.newBuilder()
+                .version(HttpClient.Version.HTTP_1_1)
+                .connectTimeout(timeout)
+                .executor(executor)
+                .build();
+    }
+
+    @Override
+    public CompletableFuture<Optional<byte[]>> findUserHandleByUsername(String username) {
+        return get(LookupEndpoint.USER_HANDLE, "username=" + URLEncoder.encode(username, StandardCharsets.UTF_8), BYTES);
+    }
+
+    @Override
+    public CompletableFuture<Optional<String>> findUsernameByUserHandle(byte[] userHandle) {
+        return get(LookupEndpoint.USERNAME, "userHandle=" + BASE64URL.encodeToString(userHandle), STRING);
+    }
+
+    @Override
+    public CompletableFuture<List<byte[]>> findCredentialIdsByUsername(String username) {
+        return this.<List<byte[]>>get(LookupEndpoint.CREDENTIAL_IDS,
+                        "username=" + URLEncoder.encode(username, StandardCharsets.UTF_8), BYTES_LIST)
+                .thenApply(ids -> ids.orElse(List.of()));
+    }
+
+    @Override
+    public CompletableFuture<Optional<CredentialData>> findCredentialData(byte[] credentialId, byte[] userHandle) {
+        return this.<RemoteCredentialData>get(LookupEndpoint.CREDENTIAL_DATA,
+                        "credentialId=" + BASE64URL.encodeToString(credentialId)
+                                + "&userHandle=" + BASE64URL.encodeToString(userHandle), CREDENTIAL_DATA)
+                .thenApply(data -> data.map(RemoteCredentialData::toCredentialData));
+    }
+
+    @Override
+    public CompletableFuture<Optional<CredentialData>> findCredentialDataByCredentialId(byte[] credentialId) {
+        return this.<RemoteCredentialData>get(LookupEndpoint.CREDENTIAL_DATA_BY_ID,
+                        "credentialId=" + BASE64URL.encodeToString(credentialId), CREDENTIAL_DATA)
+                .thenApply(data -> data.map(RemoteCredentialData::toCredentialData));
+    }
+
+    private <T> CompletableFuture<Optional<T>> get(LookupEndpoint endpoint, String query, JavaType type) {
+        HttpRequest.Builder builder = HttpRequest.newBuilder(baseUri.resolve(endpoint.path() + "?" + query))
+                .timeout(timeout)
+                .GET();
+        if (authorization != null) {
+            builder.header("Authorization", authorization);
+        }
+        HttpRequest request = builder.build();
+        return client.sendAsync(request, HttpResponse.BodyHandlers.ofByteArray())
+                .thenApply(response -> {
+                    if (response.statusCode() == 404) {
+                        return Optional.empty();
+                    }
+                    if (response.statusCode() != 200) {
+                        throw new BackendUnavailableException(endpoint + " returned HTTP " + response.statusCode());
+                    }
+                    try {
+                        return Optional.of(MAPPER.readValue(response.body(), type));
+                    } catch (IOException e) {
+                        throw new UncheckedIOException(e);
+                    }
+                });
+    }
+
+    @Override
+    public void close() {
+        client.close();
+        executor.close();
+    }
+}
@@ -0,0 +1,104 @@
+package com.example.demo.remote;
+
+import com.example.demo.audit.AuditLog;
+import com.example.demo.backend.WebAuthnBackend;
+import com.example.demo.tenant.TenantConfig;
+import io.micrometer.core.instrument.MeterRegistry;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.boot.autoconfigure.condition.ConditionalOnExpression;
+import org.springframework.boot.autoconfigure.condition.ConditionalOnProperty;
+import org.springframework.context.annotation.Bean;
+import org.springframework.context.annotation.Configuration;
+
+import java.io.IOException;
+
+/**
+ * リモートのバックエンドへの検索の設定。
+ *
+ * <ul>
+ *   <li>webauthn.remote-lookup.server-port: このノードのWebAuthnBackendの検索を{@link RemoteLookupServer}で公開する</li>
+ *   <li>webauthn.remote-lookup.binary-server-port: このノードのWebAuthnBackendを{@link BinaryBackendServer}（バイナリプロトコル）で公開する</li>
+ *   <li>webauthn.remote-lookup.url: 既定のテナントの CredentialRepository の検索を、このURLのバックエンドに
+ *       {@link ResilientCredentialLookup}（ヘッジ・サーキットブレーカー・バルクヘッド）経由で送る。
+ *       http:// ならHTTP/JSON（{@link RemoteLookupClient}）、backend://host:port ならバイナリプロトコル（{@link BinaryBackendClient}）</li>
+ *   <li>webauthn.remote-lookup.bind-address: 公開するサーバーの待ち受けアドレス（既定はループバック）</li>
+ *   <li>webauthn.remote-lookup.secret: サーバーとクライアントの共有の秘密（ループバック以外で待ち受ける場合は必須）</li>
+ * </ul>
+ *
+ * <p>【更新の送り先】
+ * backend:// の場合は、既定のテナントの登録完了・最終使用時刻・削除・認証器一覧のページング・表示名の変更・ログイントークンの確認も
+ * {@link RemoteCredentialStore}でバックエンドサービスに送る（別のホストの BackendServiceMain をデータの置き場所にできる）。
+ * 管理者向けAPIはプロトコルにないため、このノードのWebAuthnBackendが対象のまま。
+ * http:// の場合は検索だけを送り、更新はこのノードのWebAuthnBackendに行うため、検索先はこのノードの登録が反映されるバックエンドであること
+ * （このデモでは、自ノードの server-port を指定して、バックエンドの遅延を含めた負荷試験に使う）。
+ */
+@Configuration
+public class RemoteLookupConfig {
+
+    private static final String BINARY_SCHEME = "backend://";
+
+    @Bean(initMethod = "start", destroyMethod = "close")
+    @ConditionalOnProperty(name = "webauthn.remote-lookup.server-port")
+    public RemoteLookupServer remoteLookupServer(
+            WebAuthnBackend backend,
+            @Value("${webauthn.remote-lookup.server-port}") int port,
+            @Value("${webauthn.remote-lookup.bind-address:}") String bindAddress,
+            @Value("${webauthn.remote-lookup.secret:}") String secret) throws IOException {
+        return new RemoteLookupServer(backend, bindAddress, port, secret);
+    }
+
+    @Bean(initMethod = "start", destroyMethod = "close")
+    @ConditionalOnProperty(name = "webauthn.remote-lookup.binary-server-port")
+    public BinaryBackendServer binaryBackendServer(
+            WebAuthnBackend backend,
+            @Value("${webauthn.remote-lookup.binary-server-port}") int port,
+            @Value("${webauthn.remote-lookup.bind-address:}") String bindAddress,
+            @Value("${webauthn.remote-lookup.secret:}") String secret) throws IOException {
+        return new BinaryBackendServer(backend, bindAddress, port, secret);
+    }
+
+    @Bean(destroyMethod = "close")
+    @ConditionalOnProperty(name = "webauthn.remote-lookup.url")
+    public AsyncCredentialLookup remoteLookupClient(
+            @Value("${webauthn.remote-lookup.url}") String url,
+            @Value("${webauthn.remote-lookup.timeout-ms:1000}") long timeoutMillis,
+            @Value("${webauthn.remote-lookup.connections:2}") int connections,
+            @Value("${webauthn.remote-lookup.secret:}") String secret) {
+        if (url.startsWith(BINARY_SCHEME)) {
+            return new BinaryBackendClient(url.substring(BINARY_SCHEME.length()), connections, timeoutMillis, secret);
+        }
+        return new RemoteLookupClient(url, timeoutMillis, secret);
+    }
+
+    @Bean
+    @ConditionalOnExpression("'${webauthn.remote-lookup.url:}'.startsWith('" + BINARY_SCHEME + "')")
+    public RemoteCredentialStore remoteCredentialStore(
+            AsyncCredentialLookup client,
+            ResilientCredentialLookup lookup,
+            AuditLog audit) {
+        RemoteCredentialStore store = new RemoteCredentialStore((BinaryBackendClient) client, lookup);
+        store.setRemovalListener(audit.removalListener(TenantConfig.DEFAULT.id()));
+        return store;
+    }
+
+    @Bean
+    @ConditionalOnProperty(name = "webauthn.remote-lookup.url")
+    public ResilientCredentialLookup resilientCredentialLookup(
+            AsyncCredentialLookup client,
+            MeterRegistry meterRegistry,
+            @Value("${webauthn.remote-lookup.timeout-ms:1000}") long timeoutMillis,
+            @Value("${webauthn.remote-lookup.initial-hedge-delay-ms:20}") long initialHedgeDelayMillis,
+            @Value("${webauthn.remote-lookup.min-hedge-delay-ms:2}") long minHedgeDelayMillis,
+            @Value("${webauthn.remote-lookup.max-outstanding-hedges:16}") int maxOutstandingHedges,
+            @Value("${webauthn.remote-lookup.breaker.window:50}") int breakerWindow,
+            @Value("${webauthn.remote-lookup.breaker.minimum-calls:20}") int breakerMinimumCalls,
+            @Value("${webauthn.remote-lookup.breaker.failure-rate:0.5}") double breakerFailureRate,
+            @Value("${webauthn.remote-lookup.breaker.open-ms:5000}") long breakerOpenMillis,
+            @Value("${webauthn.remote-lookup.bulkhead.registration:16}") int registrationConcurrency,
+            @Value("${webauthn.remote-lookup.bulkhead.authentication:64}") int authenticationConcurrency) {
+        return new ResilientCredentialLookup(client, new ResilientCredentialLookup.Settings(
+                timeoutMillis, initialHedgeDelayMillis, minHedgeDelayMillis, maxOutstandingHedges,
+                breakerWindow, breakerMinimumCalls, breakerFailureRate, breakerOpenMillis,
+                registrationConcurrency, authenticationConcurrency), meterRegistry);
+    }
+}
@@ -0,0 +1,159 @@
+package com.example.demo.remote;
+
+import com.example.demo.backend.CredentialLookup;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.sun.net.httpserver.HttpExchange;
+import com.sun.net.httpserver.HttpServer;
+import lombok.extern.slf4j.Slf4j;
+
+import java.io.IOException;
+import java.io.OutputStream;
+import java.net.InetSocketAddress;
+import java.net.URLDecoder;
+import java.nio.charset.StandardCharsets;
+import java.util.Base64;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.Optional;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+
+/**
+ * バックエンドサーバーの検索API（{@link LookupEndpoint}）を公開するHTTPサーバー。
+ *
+ * <p>実際のプロジェクトではバックエンドは別のサーバー（REST API）になる。
+ * このサーバーはその代わりとして、このノードのWebAuthnBackendの検索を公開する。
+ * WebAuthnBackend の遅延のフック（BackendDelay）で、遅延や失敗を再現できる（負荷試験・テスト用）。
+ *
+ * <p>【API】
+ * GET のクエリで検索条件を渡す（username はURLエンコード、byte[] はbase64url）。
+ * 見つかれば200とJSON（byte[] はbase64）、見つからなければ404、不正な条件は400、検索の失敗は500を返す。
+ *
+ * <p>【待ち受けと認証】
+ * 既定ではループバックだけで待ち受ける。他のホストから使う場合は待ち受けアドレスと共有の秘密を指定する（{@link BackendAccess}）。
+ * 秘密を設定した場合、Authorization: Bearer &lt;secret&gt; のない要求には401を返す。
+ */
+@Slf4j
+public class RemoteLookupServer implements AutoCloseable {
+
+    private static final ObjectMapper MAPPER = new ObjectMapper();
+    private static final Base64.Decoder BASE64URL = Base64.getUrlDecoder();
+
+    private static final String BEARER = "Bearer ";
+
+    private final CredentialLookup lookup;
+    private final byte[] secret;  // null なら認証しない
+    private final HttpServer server;
+    private final ExecutorService executor;
+
+    /**
+     * ループバックだけで待ち受け、認証しない（同じホストのクライアント・テスト用）。
+     */
+    public RemoteLookupServer(CredentialLookup lookup, int port) throws IOException {
+        this(lookup, null, port, null);
+    }
+
+    /**
+     * @param bindAddress 待ち受けるアドレス（null・空ならループバック）
+     * @param secret      共有の秘密（null・空なら認証しない。ループバック以外では必須）
+     */
+    public RemoteLookupServer(CredentialLookup lookup, String bindAddress, int port, String secret) throws IOException {
+        InetSocketAddress address = BackendAccess.bindAddress(bindAddress, port, secret);
+        this.lookup = lookup;
+        this.secret = BackendAccess.secretBytes(secret);
+        this.server = HttpServer.create(address, 0);
+        this.executor = Executors.newVirtualThreadPerTaskExecutor();
+        server.setExecutor(executor);
+        for (LookupEndpoint endpoint : LookupEndpoint.values()) {
+            server.createContext(endpoint.path(), exchange -> handle(endpoint, exchange));
+        }
+    }
+
+    public void start() {
+        server.start();
+        log.info("Backend lookup API listening on {}{}", server.getAddress(),
+                secret != null ? " (shared secret required)" : "");
+    }
+
+    public int getPort() {
+        return server.getAddress().getPort();
+    }
+
+    private void handle(LookupEndpoint endpoint, HttpExchange exchange) throws IOException {
+        try (exchange) {
+            if (secret != null && !authorized(exchange.getRequestHeaders().getFirst("Authorization"))) {
+                exchange.sendResponseHeaders(401, -1);
+                return;
+            }
+            Optional<?> result;
+            try {
+                result = lookup(endpoint, parseQuery(exchange.getRequestURI().getRawQuery()));
+            } catch (IllegalArgumentException e) {
+                exchange.sendResponseHeaders(400, -1);
+                return;
+            } catch (RuntimeException e) {
+                exchange.sendResponseHeaders(500, -1);
+                return;
+            }
+            if (result.isEmpty()) {
+                exchange.sendResponseHeaders(404, -1);
+                return;
+            }
+            byte[] body = MAPPER.writeValueAsBytes(result.get());
+            exchange.getResponseHeaders().set("Content-Type", "application/json");
+            exchange.sendResponseHeaders(200, body.length);
+            try (OutputStream out = exchange.getResponseBody()) {
+                out.write(body);
+            }
+        }
+    }
+
+    private Optional<?> lookup(LookupEndpoint endpoint, Map<String, String> query) {
+        return switch (endpoint) {
+            case USER_HANDLE -> lookup.findUserHandleByUsername(required(query, "username"));
+            case USERNAME -> lookup.findUsernameByUserHandle(bytes(query, "userHandle"));
+            case CREDENTIAL_IDS -> Optional.of(lookup.findCredentialIdsByUsername(required(query, "username")));
+            case CREDENTIAL_DATA -> lookup.findCredentialData(bytes(query, "credentialId"), bytes(query, "userHandle"))
+                    .map(RemoteCredentialData::of);
+            case CREDENTIAL_DATA_BY_ID -> lookup.findCredentialDataByCredentialId(bytes(query, "credentialId"))
+                    .map(RemoteCredentialData::of);
+        };
+    }
+
+    private boolean authorized(String authorization) {
+        return authorization != null && authorization.startsWith(BEARER)
+                && BackendAccess.matches(secret, BackendAccess.secretBytes(authorization.substring(BEARER.length())));
+    }
+
+    private static Map<String, String> parseQuery(String rawQuery) {
+        Map<String, String> query = new HashMap<>();
+        if (rawQuery == null) {
+            return query;
+        }
+        for (String pair : rawQuery.split("&")) {
+            int eq = pair.indexOf('=');
+            if (eq > 0) {
+                query.put(pair.substring(0, eq), URLDecoder.decode(pair.substring(eq + 1), StandardCharsets.UTF_8));
+            }
+        }
+        return query;
+    }
+
+    private static String required(Map<String, String> query, String name) {
+        String value = query.get(name);
+        if (value == null) {
+            throw new IllegalArgumentException("Missing query parameter: " + name);
+        }
+        return value;
+    }
+
+    private static byte[] bytes(Map<String, String> query, String name) {
+        return BASE64URL.decode(required(query, name));
+    }
+
+    @Override
+    public void close() {
+        server.stop(0);
+        executor.close();
+    }
+}
@@ -0,0 +1,287 @@
+package com.example.demo.remote;
+
+import com.example.demo.backend.CredentialLookup;
+import com.example.demo.backend.WebAuthnBackend.CredentialData;
+import io.micrometer.core.instrument.FunctionCounter;
+import io.micrometer.core.instrument.Gauge;
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.TimeGauge;
+
+import java.util.EnumMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Optional;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.Semaphore;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.TimeoutException;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.function.Supplier;
+
+/**
+ * リモートのバックエンドへの検索を、遅延と障害に強くする（CredentialRepository が使う検索の差し替え）。
+ *
+ * <p>バックエンドがREST APIになると、その末尾のレイテンシ（p99）がそのままログインのレイテンシになる。
+ * また、バックエンドが遅い・落ちている間に全てのリクエストがタイムアウトまで待つと、このノードのスレッドも詰まる。
+ *
+ * <p>【ヘッジ】
+ * 最初の検索がエンドポイントごとの直近のp95（{@link LatencyTracker}）を過ぎても終わらなければ、同じ検索をもう1回送り、先に成功した方を使う。
+ * 遅いのは一部の呼び出しだけ（GC・キューの偏りなど）のことが多く、2回目は速く返ることが多い。
+ * p95を過ぎてから送るため、増える呼び出しは5%程度。
+ * 同時に送っているヘッジの数は max-outstanding-hedges までとし、超えた分は送らない（バックエンド全体が遅いときに負荷を倍にしない）。
+ * 負けた方の検索は取り消さず、レイテンシの記録に使う（取り消すとp95が実際より低く推定される）。
+ *
+ * <p>【サーキットブレーカー】
+ * エンドポイントごとに{@link CircuitBreaker}を持つ。失敗（エラー応答・タイムアウト）が続いて開いている間は、
+ * リモートを呼ばずにすぐ{@link BackendUnavailableException}を投げる（コントローラーは503を返す）。
+ * 呼び出し元のスレッドが中断された場合は、リモートの失敗ではないため失敗として数えない。
+ *
+ * <p>【バルクヘッド】
+ * 登録と認証（{@link TrafficClass}）で、同時に実行できる検索の数を別々に制限する。
+ * 登録が集中してバックエンドが遅くなっても、認証の枠は使われないため、ログインは影響を受けにくい。
+ * 枠が空いていなければ待たずに{@link BackendUnavailableException}を投げる。
+ */
+public class ResilientCredentialLookup implements CredentialLookup {
+
+    /**
+     * 設定（RemoteLookupConfig が webauthn.remote-lookup.* から作る）。
+     *
+     * @param timeoutMillis              1回の検索（ヘッジを含む）のタイムアウト
+     * @param initialHedgeDelayMillis    レイテンシの記録が少ない間のヘッジまでの待ち時間
+     * @param minHedgeDelayMillis        ヘッジまでの待ち時間の下限（p95がこれより短くてもすぐには送らない）
+     * @param maxOutstandingHedges       同時に送っているヘッジの上限（0ならヘッジしない）
+     * @param breakerWindow              サーキットブレーカーが失敗率を求める直近の呼び出し数
+     * @param breakerMinimumCalls        失敗率で開くのに必要な呼び出し数
+     * @param breakerFailureRate         開く失敗率（0〜1）
+     * @param breakerOpenMillis          開いてから1件だけ試すまでの時間
+     * @param registrationConcurrency    登録の検索の同時実行数
+     * @param authenticationConcurrency  認証の検索の同時実行数
+     */
+    public record Settings(long timeoutMillis, long initialHedgeDelayMillis, long minHedgeDelayMillis,
+                           int maxOutstandingHedges, int breakerWindow, int breakerMinimumCalls,
+                           double breakerFailureRate, long breakerOpenMillis,
+                           int registrationConcurrency, int authenticationConcurrency) {
+    }
+
+    private final AsyncCredentialLookup remote;
+    private final long timeoutNanos;
+    private final long minHedgeDelayNanos;
+    private final int maxOutstandingHedges;
+    private final Map<LookupEndpoint, LatencyTracker> latencies = new EnumMap<>(LookupEndpoint.class);
+    private final Map<LookupEndpoint, CircuitBreaker> breakers = new EnumMap<>(LookupEndpoint.class);
+    private final Map<TrafficClass, Semaphore> bulkheads = new EnumMap<>(TrafficClass.class);
+    private final AtomicInteger outstandingHedges = new AtomicInteger();
+
+    private final LongAdder hedgesSent = new LongAdder();
+    private final LongAdder hedgesWon = new LongAdder();
+    private final LongAdder hedgesSkipped = new LongAdder();
+    private final LongAdder circuitRejected = new LongAdder();
+    private final LongAdder bulkheadRejected = new LongAdder();
+    private final LongAdder failures = new LongAdder();
+
+    public ResilientCredentialLookup(AsyncCredentialLookup remote, Settings settings, MeterRegistry meterRegistry) {
+        this.remote = remote;
+        this.timeoutNanos = TimeUnit.MILLISECONDS.toNanos(settings.timeoutMillis());
+        this.minHedgeDelayNanos = TimeUnit.MILLISECONDS.toNanos(settings.minHedgeDelayMillis());
+        this.maxOutstandingHedges = settings.maxOutstandingHedges();
+        for (LookupEndpoint endpoint : LookupEndpoint.values()) {
+            latencies.put(endpoint, new LatencyTracker(TimeUnit.MILLISECONDS.toNanos(settings.initialHedgeDelayMillis())));
+            breakers.put(endpoint, new CircuitBreaker(settings.breakerWindow(), settings.breakerMinimumCalls(),
+                    settings.breakerFailureRate(), settings.breakerOpenMillis()));
+        }
+        bulkheads.put(TrafficClass.REGISTRATION, new Semaphore(settings.registrationConcurrency()));
+        bulkheads.put(TrafficClass.AUTHENTICATION, new Semaphore(settings.authenticationConcurrency()));
+
+        counter(meterRegistry, "webauthn.remote.hedges", "outcome", "sent", hedgesSent, "Hedged second lookups to the backend");
+        counter(meterRegistry, "webauthn.remote.hedges", "outcome", "won", hedgesWon, "Hedged second lookups to the backend");
+        counter(meterRegistry, "webauthn.remote.hedges", "outcome", "skipped", hedgesSkipped, "Hedged second lookups to the backend");
+        counter(meterRegistry, "webauthn.remote.rejected", "reason", "circuit-open", circuitRejected, "Lookups rejected without calling the backend");
+        counter(meterRegistry, "webauthn.remote.rejected", "reason", "bulkhead-full", bulkheadRejected, "Lookups rejected without calling the backend");
+        FunctionCounter.builder("webauthn.remote.failures", failures, LongAdder::sum)
+                .description("Backend lookups that failed or timed out")
+                .register(meterRegistry);
+        for (LookupEndpoint endpoint : LookupEndpoint.values()) {
+            TimeGauge.builder("webauthn.remote.hedge.delay", latencies.get(endpoint), TimeUnit.NANOSECONDS, LatencyTracker::p95Nanos)
+                    .description("Delay before a hedged lookup is sent (recent p95 latency)")
+                    .tag("endpoint", endpoint.path())
+                    .register(meterRegistry);
+            Gauge.builder("webauthn.remote.circuit.state", breakers.get(endpoint), breaker -> breaker.state().ordinal())
+                    .description("Circuit breaker state (0=closed, 1=open, 2=half-open)")
+                    .tag("endpoint", endpoint.path())
+                    .register(meterRegistry);
+        }
+    }
+
+    @Override
+    public Optional<byte[]> findUserHandleByUsername(String username) {
+        return call(LookupEndpoint.USER_HANDLE, () -> remote.findUserHandleByUsername(username));
+    }
+
+    @Override
+    public Optional<String> findUsernameByUserHandle(byte[] userHandle) {
+        return call(LookupEndpoint.USERNAME, () -> remote.findUsernameByUserHandle(userHandle));
+    }
+
+    @Override
+    public List<byte[]> findCredentialIdsByUsername(String username) {
+        return call(LookupEndpoint.CREDENTIAL_IDS, () -> remote.findCredentialIdsByUsername(username));
+    }
+
+    @Override
+    public Optional<CredentialData> findCredentialData(byte[] credentialId, byte[] userHandle) {
+        return call(LookupEndpoint.CREDENTIAL_DATA, () -> remote.findCredentialData(credentialId, userHandle));
+    }
+
+    @Override
+    public Optional<CredentialData> findCredentialDataByCredentialId(byte[] credentialId) {
+        return call(LookupEndpoint.CREDENTIAL_DATA_BY_ID, () -> remote.findCredentialDataByCredentialId(credentialId));
+    }
+
+    /**
+     * バルクヘッド → サーキットブレーカー → ヘッジ付きの呼び出し の順に適用する。
+     */
+    private <T> T call(LookupEndpoint endpoint, Supplier<CompletableFuture<T>> request) {
+        TrafficClass traffic = TrafficClass.current();
+        Semaphore bulkhead = bulkheads.get(traffic);
+        if (!bulkhead.tryAcquire()) {
+            bulkheadRejected.increment();
+            throw new BackendUnavailableException("Too many concurrent " + traffic + " lookups to the backend");
+        }
+        try {
+            CircuitBreaker breaker = breakers.get(endpoint);
+            if (!breaker.tryAcquire()) {
+                circuitRejected.increment();
+                throw new BackendUnavailableException("Circuit breaker for " + endpoint.path() + " is open");
+            }
+            try {
+                T result = hedged(endpoint, request);
+                breaker.onSuccess();
+                return result;
+            } catch (BackendUnavailableException e) {
+                if (e.getCause() instanceof InterruptedException) {
+                    breaker.onIgnored();  // 中断はリモートの失敗ではない（バルクヘッドの枠は finally で返す）
+                    throw e;
+                }
+                breaker.onFailure();
+                failures.increment();
+                throw e;
+            }
+        } finally {
+            bulkhead.release();
+        }
+    }
+
+    /**
+     * 1回目の検索が p95 までに終わらなければ、2回目を送って先に成功した方を返す。
+     */
+    private <T> T hedged(LookupEndpoint endpoint, Supplier<CompletableFuture<T>> request) {
+        long deadline = System.nanoTime() + timeoutNanos;
+        CompletableFuture<T> primary = send(endpoint, request);
+
+        long hedgeDelay = Math.max(latencies.get(endpoint).p95Nanos(), minHedgeDelayNanos);
+        if (maxOutstandingHedges > 0 && hedgeDelay < timeoutNanos) {
+            try {
+                return primary.get(hedgeDelay, TimeUnit.NANOSECONDS);
+            } catch (TimeoutException e) {
+                primary = withHedge(endpoint, request, primary);
+            } catch (ExecutionException | InterruptedException e) {
+                throw failure(endpoint, e);
+            }
+        }
+
+        try {
+            return primary.get(Math.max(0, deadline - System.nanoTime()), TimeUnit.NANOSECONDS);
+        } catch (TimeoutException e) {
+            throw new BackendUnavailableException(endpoint.path() + " timed out after "
+                    + TimeUnit.NANOSECONDS.toMillis(timeoutNanos) + " ms");
+        } catch (ExecutionException | InterruptedException e) {
+            throw failure(endpoint, e);
+        }
+    }
+
+    /**
+     * ヘッジを送れる場合は、1回目とヘッジのうち先に成功した方で完了する Future を返す（送れなければ1回目をそのまま返す）。
+     */
+    private <T> CompletableFuture<T> withHedge(LookupEndpoint endpoint, Supplier<CompletableFuture<T>> request,
+                                               CompletableFuture<T> primary) {
+        if (outstandingHedges.incrementAndGet() > maxOutstandingHedges) {
+            outstandingHedges.decrementAndGet();
+            hedgesSkipped.increment();
+            return primary;
+        }
+        hedgesSent.increment();
+        CompletableFuture<T> hedge = send(endpoint, request);
+        hedge.whenComplete((result, error) -> outstandingHedges.decrementAndGet());
+
+        CompletableFuture<T> first = new CompletableFuture<>();
+        AtomicInteger failed = new AtomicInteger();
+        primary.whenComplete((result, error) -> complete(first, failed, result, error, false));
+        hedge.whenComplete((result, error) -> complete(first, failed, result, error, true));
+        return first;
+    }
+
+    private <T> void complete(CompletableFuture<T> first, AtomicInteger failed, T result, Throwable error,
+                              boolean isHedge) {
+        if (error == null) {
+            if (first.complete(result) && isHedge) {
+                hedgesWon.increment();
+            }
+        } else if (failed.incrementAndGet() == 2) {
+            first.completeExceptionally(error);  // 両方とも失敗した場合だけ失敗にする
+        }
+    }
+
+    /**
+     * 検索を送り、成功したらレイテンシを記録する。
+     */
+    private <T> CompletableFuture<T> send(LookupEndpoint endpoint, Supplier<CompletableFuture<T>> request) {
+        LatencyTracker tracker = latencies.get(endpoint);
+        long start = System.nanoTime();
+        CompletableFuture<T> future;
+        try {
+            future = request.get();
+        } catch (RuntimeException e) {
+            return CompletableFuture.failedFuture(e);  // 送る前の失敗（URLの組み立てなど）も、応答の失敗と同じに扱う
+        }
+        future.whenComplete((result, error) -> {
+            if (error == null) {
+                tracker.record(System.nanoTime() - start);
+            }
+        });
+        return future;
+    }
+
+    private static BackendUnavailableException failure(LookupEndpoint endpoint, Exception e) {
+        if (e instanceof InterruptedException) {
+            Thread.currentThread().interrupt();
+            return new BackendUnavailableException(endpoint.path() + " lookup was interrupted", e);
+        }
+        Throwable cause = e.getCause() != null ? e.getCause() : e;
+        if (cause instanceof BackendUnavailableException unavailable) {
+            return unavailable;
+        }
+        return new BackendUnavailableException(endpoint.path() + " lookup failed: " + cause, cause);
+    }
+
+    long getHedgesSent() {
+        return hedgesSent.sum();
+    }
+
+    long getHedgesWon() {
+        return hedgesWon.sum();
+    }
+
+    CircuitBreaker.State circuitState(LookupEndpoint endpoint) {
+        return breakers.get(endpoint).state();
+    }
+
+    private static void counter(MeterRegistry registry, String name, String tagKey, String tagValue, LongAdder value,
+                                String description) {
+        FunctionCounter.builder(name, value, LongAdder::sum)
+                .description(description)
+                .tag(tagKey, tagValue)
+                .register(registry);
+    }
+}
@@ -0,0 +1,46 @@
+package com.example.demo.remote;
+
+/**
+ * バックエンドへの検索を、どのセレモニーのために行っているか（バルクヘッドの区分）。
+ *
+ * <p>CredentialRepository のメソッドは RelyingParty から呼ばれるため、引数で区分を渡せない。
+ * WebAuthnService がセレモニーの間だけ{@link #enter()}でスレッドに設定する。
+ * 設定されていない呼び出しは AUTHENTICATION として扱う。
+ */
+public enum TrafficClass {
+
+    REGISTRATION,
+    AUTHENTICATION;
+
+    private static final ThreadLocal<TrafficClass> CURRENT = new ThreadLocal<>();
+
+    /**
+     * 現在のスレッドの区分を設定する（戻り値を閉じると元に戻す）。
+     */
+    public Scope enter() {
+        TrafficClass previous = CURRENT.get();
+        CURRENT.set(this);
+        return () -> {
+            if (previous == null) {
+                CURRENT.remove();
+            } else {
+                CURRENT.set(previous);
+            }
+        };
+    }
+
+    public static TrafficClass current() {
+        TrafficClass current = CURRENT.get();
+        return current != null ? current : AUTHENTICATION;
+    }
+
+    /**
+     * {@link #enter()}の範囲（try-with-resources で使う）。
+     */
+    @FunctionalInterface
+    public interface Scope extends AutoCloseable {
+
+        @Override
+        void close();
+    }
+}
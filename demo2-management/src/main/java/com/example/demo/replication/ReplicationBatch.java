@@ -0,0 +1,21 @@
+package com.example.demo.replication;
+
+import com.example.demo.backend.BackendChange;
+
+import java.util.List;
+
+/**
+ * リーダーからリードレプリカへ送る変更のまとまり。
+ *
+ * @param leaderPosition 送信時点のリーダーの最新position（遅延の計測用）。SNAPSHOT_END ではスナップショットが含むposition
+ * @param kind           まとまりの種類
+ * @param changes        CHANGES: positionの連続した変更（新しい変更がなければ空）、SNAPSHOT: ユーザーと認証器を保存する変更
+ */
+record ReplicationBatch(long leaderPosition, Kind kind, List<BackendChange> changes) {
+
+    enum Kind {
+        CHANGES,       // 変更ログの差分
+        SNAPSHOT,      // 全件のスナップショットの一部（リードレプリカの位置が変更ログの保持範囲外のとき）
+        SNAPSHOT_END   // スナップショットの終わり（以降は leaderPosition の次から差分を送る）
+    }
+}
@@ -0,0 +1,230 @@
+package com.example.demo.replication;
+
+import com.example.demo.backend.BackendChange;
+import com.example.demo.backend.WebAuthnBackend;
+import com.example.demo.remote.BackendAccess;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.yubico.webauthn.data.ByteArray;
+import lombok.extern.slf4j.Slf4j;
+
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.net.Socket;
+import java.util.HashSet;
+import java.util.Set;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * リードレプリカ側: リーダーから変更ログを受け取り、自ノードのWebAuthnBackendに反映するクライアント。
+ *
+ * <p>開始した時点で、WebAuthnBackend はリードレプリカとして更新を拒否するようになる。
+ * 認証による最終使用時刻の更新だけは、同じ接続でリーダーに送り、リーダーで記録させる
+ * （送信待ちが MAX_PENDING_USES 件を超えた分は捨て、droppedUses に数える）。
+ * 接続が切れた場合は、反映済みのpositionから再接続して続きを受け取る。
+ *
+ * <p>【スナップショット】
+ * 反映済みのpositionがリーダーの変更ログの保持範囲より古い（長く止まっていた・新しく加わった）場合は、
+ * リーダーが全件のスナップショットを送る。受信中は反映済みのpositionを0にして read-your-writes の待ち合わせを通さず、
+ * 受信し終えたら、スナップショットになかったユーザー・認証器を取り除いて、差分の受信に戻る。
+ * 受信の途中で接続が切れた場合は、再接続時にスナップショットを最初から要求し直す。
+ *
+ * <p>【遅延のメトリクス】
+ * <ul>
+ *   <li>lagEntries: リーダーの最新positionとの差（未反映の変更数）</li>
+ *   <li>lastApplyDelayMillis: 最後に反映した変更が、リーダーで記録されてから反映されるまでの時間</li>
+ *   <li>droppedUses: 送信待ちがあふれたため、リーダーに送らなかった最終使用時刻の更新の数</li>
+ *   <li>snapshotsReceived: 受信し終えたスナップショットの数</li>
+ * </ul>
+ */
+@Slf4j
+public class ReplicationClient implements AutoCloseable {
+
+    private static final ObjectMapper MAPPER = new ObjectMapper();
+    private static final long RECONNECT_DELAY_MILLIS = 1000;
+    private static final int MAX_PENDING_USES = 10_000;
+    private static final long REQUEST_SNAPSHOT = -1;  // 変更ログの範囲外のposition（リーダーはスナップショットを送る）
+
+    private final WebAuthnBackend backend;
+    private final String leaderHost;
+    private final int leaderPort;
+    private final byte[] secret;  // null なら送らない（長さ0）
+
+    private volatile boolean running;
+    private volatile Socket socket;
+    private volatile long leaderPosition;
+    private volatile long lastApplyDelayMillis;
+    private final BlockingQueue<Use> pendingUses = new ArrayBlockingQueue<>(MAX_PENDING_USES);
+    private final AtomicLong droppedUses = new AtomicLong();
+    private final AtomicLong snapshotsReceived = new AtomicLong();
+    private Set<String> snapshotUsernames;            // スナップショットの受信中のみ
+    private Set<ByteArray> snapshotCredentialIds;
+
+    public ReplicationClient(WebAuthnBackend backend, String leaderHost, int leaderPort) {
+        this(backend, leaderHost, leaderPort, null);
+    }
+
+    /**
+     * @param secret リーダーの共有の秘密（null・空なら送らない）
+     */
+    public ReplicationClient(WebAuthnBackend backend, String leaderHost, int leaderPort, String secret) {
+        this.backend = backend;
+        this.leaderHost = leaderHost;
+        this.leaderPort = leaderPort;
+        this.secret = BackendAccess.secretBytes(secret);
+    }
+
+    public void start() {
+        backend.startFollowing(this::forwardUse);
+        running = true;
+        Thread.ofVirtual().name("replication-follower").start(this::replicateLoop);
+    }
+
+    private void replicateLoop() {
+        while (running) {
+            try (Socket s = new Socket(leaderHost, leaderPort);
+                 DataOutputStream out = new DataOutputStream(s.getOutputStream());
+                 DataInputStream in = new DataInputStream(s.getInputStream())) {
+                socket = s;
+                byte[] given = secret != null ? secret : new byte[0];
+                out.writeInt(given.length);
+                out.write(given);
+                // スナップショットの受信中に切れた場合は、もう一度スナップショットを要求する（途中までの反映では欠けがある）
+                out.writeLong(snapshotUsernames != null ? REQUEST_SNAPSHOT : backend.getAppliedPosition());
+                snapshotUsernames = null;
+                snapshotCredentialIds = null;
+                out.flush();
+                Thread sender = Thread.ofVirtual().name("replication-uses").start(() -> sendUses(out));
+
+                try {
+                    receive(in);
+                } finally {
+                    sender.interrupt();
+                }
+            } catch (IOException e) {
+                if (running) {
+                    log.warn("Replication connection to {}:{} lost: {}", leaderHost, leaderPort, e.getMessage());
+                    sleepBeforeReconnect();
+                }
+            }
+        }
+    }
+
+    private void receive(DataInputStream in) throws IOException {
+        while (running) {
+            byte[] bytes = new byte[in.readInt()];
+            in.readFully(bytes);
+            ReplicationBatch batch = MAPPER.readValue(bytes, ReplicationBatch.class);
+            switch (batch.kind()) {
+                case CHANGES -> apply(batch);
+                case SNAPSHOT -> applySnapshot(batch);
+                case SNAPSHOT_END -> completeSnapshot(batch);
+            }
+        }
+    }
+
+    private void applySnapshot(ReplicationBatch batch) {
+        if (snapshotUsernames == null) {
+            log.info("Receiving a snapshot from the leader (this node is behind its change log)");
+            backend.beginSnapshot();
+            snapshotUsernames = new HashSet<>();
+            snapshotCredentialIds = new HashSet<>();
+        }
+        for (BackendChange change : batch.changes()) {
+            backend.apply(change);
+            snapshotUsernames.add(change.username());
+            if (change.credentialId() != null) {
+                snapshotCredentialIds.add(new ByteArray(change.credentialId()));
+            }
+        }
+        leaderPosition = batch.leaderPosition();
+    }
+
+    private void completeSnapshot(ReplicationBatch batch) {
+        if (snapshotUsernames == null) {
+            backend.beginSnapshot();  // リーダーが空（全て取り除く）
+        }
+        backend.completeSnapshot(batch.leaderPosition(),
+                snapshotUsernames != null ? snapshotUsernames : Set.of(),
+                snapshotCredentialIds != null ? snapshotCredentialIds : Set.of());
+        snapshotUsernames = null;
+        snapshotCredentialIds = null;
+        snapshotsReceived.incrementAndGet();
+        log.info("Snapshot applied up to leader position {}", batch.leaderPosition());
+    }
+
+    /**
+     * 最終使用時刻の更新をリーダーへ送る（接続ごとの仮想スレッド。送信待ちがなくなるまで続けて書いてからflushする）。
+     */
+    private void sendUses(DataOutputStream out) {
+        try {
+            while (true) {
+                Use use = pendingUses.take();
+                do {
+                    out.writeInt(use.credentialId().length);
+                    out.write(use.credentialId());
+                    out.writeLong(use.timestamp());
+                    use = pendingUses.poll();
+                } while (use != null);
+                out.flush();
+            }
+        } catch (IOException e) {
+            // 受信側も同じ接続の切断で終わり、再接続する
+        } catch (InterruptedException e) {
+            // 接続の終了
+        }
+    }
+
+    private void forwardUse(byte[] credentialId, long timestamp) {
+        if (!pendingUses.offer(new Use(credentialId, timestamp))) {
+            droppedUses.incrementAndGet();
+        }
+    }
+
+    private void apply(ReplicationBatch batch) {
+        for (BackendChange change : batch.changes()) {
+            backend.apply(change);
+            lastApplyDelayMillis = System.currentTimeMillis() - change.timestamp();
+        }
+        leaderPosition = batch.leaderPosition();
+    }
+
+    private void sleepBeforeReconnect() {
+        try {
+            Thread.sleep(RECONNECT_DELAY_MILLIS);
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            running = false;
+        }
+    }
+
+    public long getLagEntries() {
+        return Math.max(0, leaderPosition - backend.getAppliedPosition());
+    }
+
+    public long getLastApplyDelayMillis() {
+        return lastApplyDelayMillis;
+    }
+
+    public long getDroppedUses() {
+        return droppedUses.get();
+    }
+
+    public long getSnapshotsReceived() {
+        return snapshotsReceived.get();
+    }
+
+    private record Use(byte[] credentialId, long timestamp) {
+    }
+
+    @Override
+    public void close() throws IOException {
+        running = false;
+        Socket s = socket;
+        if (s != null) {
+            s.close();
+        }
+    }
+}
@@ -0,0 +1,86 @@
+package com.example.demo.replication;
+
+import com.example.demo.backend.WebAuthnBackend;
+import io.micrometer.core.instrument.FunctionCounter;
+import io.micrometer.core.instrument.Gauge;
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.TimeGauge;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.boot.autoconfigure.condition.ConditionalOnProperty;
+import org.springframework.context.annotation.Bean;
+import org.springframework.context.annotation.Configuration;
+
+import java.io.IOException;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * レプリケーションの設定。
+ *
+ * <p>webauthn.replication.role で、このノードの役割を指定する。
+ * <ul>
+ *   <li>未指定: レプリケーションしない（単一ノード。変更ログも持たない）</li>
+ *   <li>leader: 変更ログ（webauthn.replication.change-log-retention 件）を webauthn.replication.port で公開する</li>
+ *   <li>follower: webauthn.replication.leader-host / port のリーダーから変更を受け取る</li>
+ * </ul>
+ *
+ * <p>リーダーは既定でループバックだけで待ち受ける。他のホストのリードレプリカに公開する場合は
+ * webauthn.replication.bind-address と webauthn.replication.secret（リードレプリカにも同じ値）を設定する
+ * （ループバック以外で秘密なしに待ち受けようとすると起動しない）。
+ *
+ * <p>followerはリードレプリカであり、更新（登録・削除）はリーダーのノードに振り分けること。
+ * followerに届いた更新は 421 Misdirected Request で拒否する。
+ *
+ * <p>遅延・スナップショットの回数は Micrometer のメトリクス（webauthn.replication.*）として actuator の metrics で見られる。
+ */
+@Configuration
+public class ReplicationConfig {
+
+    @Bean(initMethod = "start", destroyMethod = "close")
+    @ConditionalOnProperty(name = "webauthn.replication.role", havingValue = "leader")
+    public ReplicationServer replicationServer(
+            WebAuthnBackend backend,
+            MeterRegistry meterRegistry,
+            @Value("${webauthn.replication.bind-address:}") String bindAddress,
+            @Value("${webauthn.replication.port:7070}") int port,
+            @Value("${webauthn.replication.secret:}") String secret) throws IOException {
+        ReplicationServer server = new ReplicationServer(backend, bindAddress, port, secret);
+        Gauge.builder("webauthn.replication.followers", server, ReplicationServer::getFollowerCount)
+                .description("Read replicas connected to this leader")
+                .register(meterRegistry);
+        Gauge.builder("webauthn.replication.position", backend, WebAuthnBackend::getLastPosition)
+                .description("Latest change log position on this leader")
+                .register(meterRegistry);
+        FunctionCounter.builder("webauthn.replication.snapshots.sent", server, ReplicationServer::getSnapshotsSent)
+                .description("Full snapshots sent to read replicas behind the change log retention")
+                .register(meterRegistry);
+        return server;
+    }
+
+    @Bean(initMethod = "start", destroyMethod = "close")
+    @ConditionalOnProperty(name = "webauthn.replication.role", havingValue = "follower")
+    public ReplicationClient replicationClient(
+            WebAuthnBackend backend,
+            MeterRegistry meterRegistry,
+            @Value("${webauthn.replication.leader-host:localhost}") String leaderHost,
+            @Value("${webauthn.replication.port:7070}") int leaderPort,
+            @Value("${webauthn.replication.secret:}") String secret) {
+        ReplicationClient client = new ReplicationClient(backend, leaderHost, leaderPort, secret);
+        Gauge.builder("webauthn.replication.lag", client, ReplicationClient::getLagEntries)
+                .description("Change log entries the leader has that this replica has not applied")
+                .register(meterRegistry);
+        TimeGauge.builder("webauthn.replication.apply.delay", client, TimeUnit.MILLISECONDS,
+                        ReplicationClient::getLastApplyDelayMillis)
+                .description("Time from the leader recording the last applied change to this replica applying it")
+                .register(meterRegistry);
+        Gauge.builder("webauthn.replication.position", backend, WebAuthnBackend::getAppliedPosition)
+                .description("Leader change log position applied on this replica")
+                .register(meterRegistry);
+        FunctionCounter.builder("webauthn.replication.uses.dropped", client, ReplicationClient::getDroppedUses)
+                .description("Last-use updates not forwarded to the leader because the queue was full")
+                .register(meterRegistry);
+        FunctionCounter.builder("webauthn.replication.snapshots.received", client, ReplicationClient::getSnapshotsReceived)
+                .description("Full snapshots received from the leader")
+                .register(meterRegistry);
+        return client;
+    }
+}
@@ -0,0 +1,249 @@
+package com.example.demo.replication;
+
+import com.example.demo.backend.BackendChange;
+import com.example.demo.backend.ChangeLog;
+import com.example.demo.backend.WebAuthnBackend;
+import com.example.demo.remote.BackendAccess;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import lombok.extern.slf4j.Slf4j;
+
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.net.InetSocketAddress;
+import java.net.ServerSocket;
+import java.net.Socket;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * リーダー側: 変更ログをリードレプリカへ送信するサーバー。
+ *
+ * <p>【プロトコル】
+ * <ol>
+ *   <li>リードレプリカが接続し、共有の秘密（長さ int + バイト列。秘密がなければ長さ0）と反映済みのposition（long）を送る</li>
+ *   <li>リーダーはそれより後の変更を{@link ReplicationBatch}（4バイトの長さ + JSON）で送り続ける</li>
+ *   <li>新しい変更がないときも HEARTBEAT_MILLIS ごとに空のバッチを送り、遅延の計測に使わせる</li>
+ *   <li>positionが変更ログの保持範囲より古い（またはリーダーの最新より新しい）場合は、
+ *       全件のスナップショット（SNAPSHOT を続けて SNAPSHOT_END）を送ってから差分を続ける（負のpositionはスナップショットの要求）</li>
+ * </ol>
+ *
+ * <p>逆向き（リードレプリカ → リーダー）には、認証による最終使用時刻の更新
+ * （credentialIdの長さ int + credentialId + 時刻 long）を送る。リーダーは{@link WebAuthnBackend#recordUse}で記録し、
+ * 変更ログ経由で全てのリードレプリカに反映させる。時刻はリーダーの時計より先にならないように丸める
+ * （未来の時刻を記録すると、最終使用時刻が更新されず、長期間使われていない認証器の削除からも外れるため）。
+ *
+ * <p>【アクセス制御】
+ * 変更ログにはusername・userHandle・公開鍵が全て含まれるため、{@link BackendAccess}と同じく既定ではループバックだけで待ち受け、
+ * ループバック以外では共有の秘密を必須にする。秘密は接続の最初に、長さによらない時間で比較する。
+ */
+@Slf4j
+public class ReplicationServer implements AutoCloseable {
+
+    static final int MAX_BATCH_SIZE = 500;
+    static final long HEARTBEAT_MILLIS = 1000;
+    static final int MAX_CREDENTIAL_ID_LENGTH = 1023;  // WebAuthn仕様の上限
+    static final int MAX_SECRET_LENGTH = 1024;
+    static final int HANDSHAKE_TIMEOUT_MILLIS = 10_000;
+
+    private static final ObjectMapper MAPPER = new ObjectMapper();
+
+    private final WebAuthnBackend backend;
+    private final ChangeLog changeLog;
+    private final byte[] secret;  // null なら認証しない
+    private final ServerSocket serverSocket;
+    private final Set<Socket> followers = ConcurrentHashMap.newKeySet();
+    private final AtomicLong snapshotsSent = new AtomicLong();
+
+    /**
+     * ループバックで、共有の秘密なしに待ち受ける（テスト・同じホストのリードレプリカ用）。
+     */
+    public ReplicationServer(WebAuthnBackend backend, int port) throws IOException {
+        this(backend, null, port, null);
+    }
+
+    /**
+     * @param bindAddress 待ち受けるアドレス（null・空ならループバック）
+     * @param secret      共有の秘密（null・空なら認証しない。ループバック以外では必須）
+     */
+    public ReplicationServer(WebAuthnBackend backend, String bindAddress, int port, String secret) throws IOException {
+        if (backend.getChangeLog() == null) {
+            throw new IllegalStateException("The backend has no change log; set webauthn.replication.role=leader");
+        }
+        InetSocketAddress address = BackendAccess.bindAddress(bindAddress, port, secret);
+        this.backend = backend;
+        this.changeLog = backend.getChangeLog();
+        this.secret = BackendAccess.secretBytes(secret);
+        this.serverSocket = new ServerSocket();
+        serverSocket.bind(address);
+    }
+
+    public void start() {
+        Thread.ofVirtual().name("replication-accept").start(this::acceptLoop);
+        log.info("Replication leader listening on {}{}", serverSocket.getLocalSocketAddress(),
+                secret != null ? " (shared secret required)" : "");
+    }
+
+    public int getPort() {
+        return serverSocket.getLocalPort();
+    }
+
+    private void acceptLoop() {
+        while (!serverSocket.isClosed()) {
+            try {
+                Socket socket = serverSocket.accept();
+                followers.add(socket);
+                Thread.ofVirtual().name("replication-" + socket.getRemoteSocketAddress())
+                        .start(() -> serve(socket));
+            } catch (IOException e) {
+                if (!serverSocket.isClosed()) {
+                    log.warn("Failed to accept replication connection", e);
+                }
+            }
+        }
+    }
+
+    private void serve(Socket socket) {
+        try (socket;
+             DataInputStream in = new DataInputStream(socket.getInputStream());
+             DataOutputStream out = new DataOutputStream(socket.getOutputStream())) {
+            socket.setSoTimeout(HANDSHAKE_TIMEOUT_MILLIS);
+            if (!authenticate(in)) {
+                log.warn("Rejected a replication connection from {}: wrong shared secret", socket.getRemoteSocketAddress());
+                return;
+            }
+            long position = in.readLong();
+            socket.setSoTimeout(0);
+            log.info("Follower {} connected from position {}", socket.getRemoteSocketAddress(), position);
+            Thread.ofVirtual().name("replication-uses-" + socket.getRemoteSocketAddress())
+                    .start(() -> receiveUses(socket, in));
+
+            while (!socket.isClosed()) {
+                if (!changeLog.canReadAfter(position)) {
+                    log.info("Follower {} at position {} is outside the change log; sending a snapshot",
+                            socket.getRemoteSocketAddress(), position);
+                    position = sendSnapshot(out);
+                    continue;
+                }
+                List<BackendChange> changes = changeLog.readAfter(position, MAX_BATCH_SIZE);
+                if (changes.isEmpty()) {
+                    changeLog.awaitAfter(position, HEARTBEAT_MILLIS);
+                    changes = changeLog.readAfter(position, MAX_BATCH_SIZE);
+                }
+                send(out, new ReplicationBatch(changeLog.lastPosition(), ReplicationBatch.Kind.CHANGES, changes));
+                if (!changes.isEmpty()) {
+                    position = changes.get(changes.size() - 1).position();
+                }
+            }
+        } catch (IOException e) {
+            log.info("Follower {} disconnected: {}", socket.getRemoteSocketAddress(), e.getMessage());
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        } finally {
+            followers.remove(socket);
+        }
+    }
+
+    /**
+     * 接続の最初に送られた共有の秘密を確かめる（秘密を設定していなければ読み飛ばす）。
+     */
+    private boolean authenticate(DataInputStream in) throws IOException {
+        int length = in.readInt();
+        if (length < 0 || length > MAX_SECRET_LENGTH) {
+            return false;
+        }
+        byte[] given = new byte[length];
+        in.readFully(given);
+        return secret == null || BackendAccess.matches(secret, given);
+    }
+
+    /**
+     * 全件のスナップショットを送る。
+     *
+     * @return スナップショットが含む変更ログのposition（以降はこの次から差分を送る）
+     */
+    private long sendSnapshot(DataOutputStream out) throws IOException {
+        long position = changeLog.lastPosition();  // スナップショットを取り始める前（これまでの更新は全て含まれる）
+        List<BackendChange> batch = new ArrayList<>();
+        try {
+            backend.snapshot(changes -> {
+                batch.addAll(changes);
+                if (batch.size() >= MAX_BATCH_SIZE) {
+                    sendUnchecked(out, new ReplicationBatch(changeLog.lastPosition(), ReplicationBatch.Kind.SNAPSHOT, batch));
+                    batch.clear();
+                }
+            });
+        } catch (UncheckedIOException e) {
+            throw e.getCause();
+        }
+        if (!batch.isEmpty()) {
+            send(out, new ReplicationBatch(changeLog.lastPosition(), ReplicationBatch.Kind.SNAPSHOT, batch));
+        }
+        send(out, new ReplicationBatch(position, ReplicationBatch.Kind.SNAPSHOT_END, List.of()));
+        snapshotsSent.incrementAndGet();
+        return position;
+    }
+
+    /**
+     * リードレプリカから最終使用時刻の更新を受け取り、記録する（接続が閉じられると終わる）。
+     */
+    private void receiveUses(Socket socket, DataInputStream in) {
+        try {
+            while (true) {
+                int length = in.readInt();
+                if (length <= 0 || length > MAX_CREDENTIAL_ID_LENGTH) {
+                    log.warn("Invalid use record from follower {}; closing", socket.getRemoteSocketAddress());
+                    socket.close();
+                    return;
+                }
+                byte[] credentialId = new byte[length];
+                in.readFully(credentialId);
+                // リードレプリカの時計・改ざんされた値で、リーダーの時計より先の時刻を記録しない
+                backend.recordUse(credentialId, Math.min(in.readLong(), System.currentTimeMillis()));
+            }
+        } catch (IOException e) {
+            // 送信側（serve）も同じ接続の切断で終わる
+        }
+    }
+
+    private static void sendUnchecked(DataOutputStream out, ReplicationBatch batch) {
+        try {
+            send(out, batch);
+        } catch (IOException e) {
+            throw new UncheckedIOException(e);
+        }
+    }
+
+    private static void send(DataOutputStream out, ReplicationBatch batch) throws IOException {
+        byte[] bytes = MAPPER.writeValueAsBytes(batch);
+        out.writeInt(bytes.length);
+        out.write(bytes);
+        out.flush();
+    }
+
+    /**
+     * 接続しているリードレプリカの数。
+     */
+    public int getFollowerCount() {
+        return followers.size();
+    }
+
+    /**
+     * 変更ログの保持範囲より遅れたリードレプリカに送ったスナップショットの数。
+     */
+    public long getSnapshotsSent() {
+        return snapshotsSent.get();
+    }
+
+    @Override
+    public void close() throws IOException {
+        serverSocket.close();
+        for (Socket socket : followers) {
+            socket.close();
+        }
+    }
+}
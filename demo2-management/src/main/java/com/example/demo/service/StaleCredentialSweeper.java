@@ -0,0 +1,84 @@
+package com.example.demo.service;
+
+import com.example.demo.backend.UserInfo;
+import com.example.demo.backend.UserPage;
+import com.example.demo.backend.WebAuthnBackend;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.boot.autoconfigure.condition.ConditionalOnProperty;
+import org.springframework.scheduling.annotation.EnableScheduling;
+import org.springframework.scheduling.annotation.Scheduled;
+import org.springframework.stereotype.Component;
+
+import java.time.Duration;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * 長期間使われていない認証器を削除するバックグラウンド処理。
+ *
+ * <p>webauthn.sweeper.enabled=true の場合のみ有効になる。
+ * 更新を行うため、リードレプリカ（webauthn.replication.role=follower）では有効にしても何もしない。
+ *
+ * <p>【少しずつ処理する】
+ * 1回の実行では username 順に users-per-run 人だけを調べ、次の実行は続きのユーザーから始める。
+ * 最後のユーザーまで進んだら先頭に戻る。
+ * ユーザーごとにロックを取るだけなので、処理中も認証・登録は止まらない。
+ * 1回あたりの人数と実行間隔で、削除処理がサーバーに与える負荷を制限する。
+ */
+@Component
+@EnableScheduling
+@ConditionalOnProperty(name = "webauthn.sweeper.enabled", havingValue = "true")
+public class StaleCredentialSweeper {
+
+    private final WebAuthnBackend backend;
+    private final Duration maxIdle;
+    private final int usersPerRun;
+
+    private String cursor;  // 次に調べるユーザーの直前のusername（先頭から始める場合はnull）
+    private final AtomicLong scannedUsers = new AtomicLong();
+    private final AtomicLong completedPasses = new AtomicLong();
+
+    public StaleCredentialSweeper(
+            WebAuthnBackend backend,
+            @Value("${webauthn.sweeper.max-idle-days:730}") long maxIdleDays,
+            @Value("${webauthn.sweeper.users-per-run:1000}") int usersPerRun) {
+        this.backend = backend;
+        this.maxIdle = Duration.ofDays(maxIdleDays);
+        this.usersPerRun = usersPerRun;
+    }
+
+    /**
+     * 前回の続きから usersPerRun 人を調べ、期限切れの認証器を削除する。
+     */
+    @Scheduled(fixedDelayString = "${webauthn.sweeper.interval-ms:1000}")
+    public synchronized void sweep() {
+        if (backend.isFollower()) {
+            return;
+        }
+        long cutoff = System.currentTimeMillis() - maxIdle.toMillis();
+
+        UserPage page = backend.findUsers("", cursor, usersPerRun);
+        for (UserInfo user : page.items()) {
+            backend.expireAuthenticators(user.getUsername(), cutoff);
+        }
+        scannedUsers.addAndGet(page.items().size());
+
+        cursor = page.nextCursor();
+        if (cursor == null) {
+            completedPasses.incrementAndGet();
+        }
+    }
+
+    /**
+     * これまでに調べたユーザー数（延べ人数）。
+     */
+    public long getScannedUsers() {
+        return scannedUsers.get();
+    }
+
+    /**
+     * 全ユーザーを一巡した回数。
+     */
+    public long getCompletedPasses() {
+        return completedPasses.get();
+    }
+}
@@ -1,29 +1,79 @@
 package com.example.demo.service;
 
 import com.example.demo.backend.AuthenticatorInfo;
-import com.example.demo.backend.UserInfo;
+import com.example.demo.backend.AuthenticatorPage;
+import com.example.demo.backend.CredentialLookup;
+import com.example.demo.backend.CredentialStore;
 import com.example.demo.backend.WebAuthnBackend;
+import com.example.demo.backend.WebAuthnBackend.CredentialData;
+import com.example.demo.jfr.CeremonyEvent;
+import com.example.demo.jfr.CredentialRepositoryEvent;
+import com.example.demo.jfr.VerificationFailureEvent;
+import com.example.demo.remote.RemoteCredentialStore;
+import com.example.demo.remote.ResilientCredentialLookup;
+import com.example.demo.remote.TrafficClass;
+import com.example.demo.tenant.TenantConfig;
 import com.yubico.webauthn.*;
 import com.yubico.webauthn.data.*;
 import com.yubico.webauthn.exception.AssertionFailedException;
 import com.yubico.webauthn.exception.RegistrationFailedException;
+import org.springframework.beans.factory.ObjectProvider;
+import org.springframework.beans.factory.annotation.Autowired;
 import org.springframework.stereotype.Service;
 
 import java.security.SecureRandom;
+import java.util.Arrays;
 import java.util.List;
 import java.util.Optional;
 import java.util.Set;
 import java.util.stream.Collectors;
 
+/**
+ * WebAuthnの登録・認証フロー（Yubicoライブラリの呼び出し）。
+ *
+ * <p>【JFRイベント】
+ * 各フェーズの処理時間を{@link CeremonyEvent}、CredentialRepositoryの呼び出しを{@link CredentialRepositoryEvent}、
+ * 検証の失敗を{@link VerificationFailureEvent}として記録する（JFRで記録していない間はほぼコストがない）。
+ *
+ * <p>【テナント】
+ * Springが管理するインスタンスは既定のテナント（{@link TenantConfig#DEFAULT}）用。
+ * 他のテナントのインスタンスは TenantRegistry がテナントごとに作成する。
+ *
+ * <p>【検索先】
+ * CredentialRepository の検索は{@link CredentialLookup}経由で行う。既定ではWebAuthnBackendを直接検索する。
+ * webauthn.remote-lookup.url を指定した場合、既定のテナントはリモートのバックエンドを{@link ResilientCredentialLookup}経由で検索する。
+ * 登録・認証の間は{@link TrafficClass}を設定し、リモートへの検索を登録と認証で別々の枠（バルクヘッド）に分ける。
+ *
+ * <p>【更新先】
+ * 登録完了・最終使用時刻・認証器の一覧・表示名の変更・削除とログイントークンの確認は{@link CredentialStore}に行う。既定ではWebAuthnBackend、
+ * webauthn.remote-lookup.url が backend://host:port の場合、既定のテナントは{@link RemoteCredentialStore}（バックエンドサービス）。
+ */
 @Service
 public class WebAuthnService implements CredentialRepository {
 
     private final RelyingParty relyingParty;
     private final SecureRandom random;
-    private final WebAuthnBackend backend;
+    private final CredentialStore store;
+    private final CredentialLookup lookup;
+
+    @Autowired
+    public WebAuthnService(WebAuthnBackend backend, ObjectProvider<ResilientCredentialLookup> remoteLookup,
+                           ObjectProvider<RemoteCredentialStore> remoteStore) {
+        this(storeOrBackend(remoteStore.getIfAvailable(), backend), TenantConfig.DEFAULT,
+                lookupOrBackend(remoteLookup.getIfAvailable(), backend));
+    }
+
+    public WebAuthnService(CredentialStore store) {
+        this(store, TenantConfig.DEFAULT);
+    }
 
-    public WebAuthnService(WebAuthnBackend backend) {
-        this.backend = backend;
+    public WebAuthnService(CredentialStore store, TenantConfig tenant) {
+        this(store, tenant, store);
+    }
+
+    public WebAuthnService(CredentialStore store, TenantConfig tenant, CredentialLookup lookup) {
+        this.store = store;
+        this.lookup = lookup;
         this.random = new SecureRandom();
 
         // ===== 認証依頼側（このサーバーアプリケーション）の設定 =====
@@ -34,19 +84,20 @@ public class WebAuthnService implements CredentialRepository {
         //   認証器が生成する credentialId はこの RP ID に紐付けられる（フィッシング対策）
         //   【重要】origins のホスト部分と一致する必要がある
         //   例: id="localhost" → origins="http://localhost:8080"
+        //   テナントごとに TenantConfig で指定する（既定は id="localhost"）
         //
         // - name: 認証器の画面に表示される人間が読める名前
         //   認証器によっては表示されない場合もある（Windows Hello では表示されない）
         //
         RelyingPartyIdentity rpIdentity = RelyingPartyIdentity.builder()
-                .id("localhost")
-                .name("WebAuthn Demo")
+                .id(tenant.rpId())
+                .name(tenant.rpName())
                 .build();
 
         this.relyingParty = RelyingParty.builder()
                 .identity(rpIdentity)
                 .credentialRepository(this)
-                .origins(Set.of("http://localhost:8080"))
+                .origins(tenant.origins())
                 .build();
     }
 
@@ -56,25 +107,30 @@ public class WebAuthnService implements CredentialRepository {
      * 登録開始: クライアントに送信する認証器登録オプションを生成する
      */
     public PublicKeyCredentialCreationOptions startRegistration(String username) {
-        ByteArray userHandle = getUserHandleForUsername(username)
-                .orElseGet(() -> new ByteArray(generateUserHandle()));
-
-        // displayName: 認証器の認証画面に表示されるユーザーの表示名
-        // WebAuthn仕様で必須だが、本デモでは username をそのまま使用
-        String displayName = username;
-
-        UserIdentity userIdentity = UserIdentity.builder()
-                .name(username)
-                .displayName(displayName)
-                .id(userHandle)
-                .build();
-
-        StartRegistrationOptions options = StartRegistrationOptions.builder()
-                .user(userIdentity)
-                .timeout(120000L)
-                .build();
-
-        return relyingParty.startRegistration(options);
+        try (TrafficClass.Scope ignored = TrafficClass.REGISTRATION.enter()) {
+            CeremonyEvent event = new CeremonyEvent(CeremonyEvent.REGISTRATION_START);
+            ByteArray userHandle = getUserHandleForUsername(username)
+                    .orElseGet(() -> new ByteArray(generateUserHandle()));
+
+            // displayName: 認証器の認証画面に表示されるユーザーの表示名
+            // WebAuthn仕様で必須だが、本デモでは username をそのまま使用
+            String displayName = username;
+
+            UserIdentity userIdentity = UserIdentity.builder()
+                    .name(username)
+                    .displayName(displayName)
+                    .id(userHandle)
+                    .build();
+
+            StartRegistrationOptions options = StartRegistrationOptions.builder()
+                    .user(userIdentity)
+                    .timeout(120000L)
+                    .build();
+
+            PublicKeyCredentialCreationOptions creationOptions = relyingParty.startRegistration(options);
+            event.finish("success", creationOptions.getExcludeCredentials().map(Set::size).orElse(0), 0);
+            return creationOptions;
+        }
     }
 
     /**
@@ -85,51 +141,61 @@ public class WebAuthnService implements CredentialRepository {
                                    PublicKeyCredential<AuthenticatorAttestationResponse, ClientRegistrationExtensionOutputs> credential,
                                    String nickname)
             throws RegistrationFailedException {
-
-        FinishRegistrationOptions options = FinishRegistrationOptions.builder()
-                .request(request)
-                .response(credential)
-                .build();
-
-        RegistrationResult result = relyingParty.finishRegistration(options);
-
-        // 既存ユーザーがいなければ新規作成
-        UserInfo user = getUserHandleForUsername(username)
-                .map(userHandle -> {
-                    // 既存ユーザーは既に保存されているのでそのまま使う
-                    // ここでは何もしない（認証器だけ追加）
-                    return (UserInfo) null;
-                })
-                .orElseGet(() -> new UserInfo(
-                        username,
-                        request.getUser().getId().getBytes()
-                ));
-
-        // 新規ユーザーの場合のみ保存
-        if (user != null) {
-            backend.saveUser(user);
+        try (TrafficClass.Scope ignored = TrafficClass.REGISTRATION.enter()) {
+            FinishRegistrationOptions options = FinishRegistrationOptions.builder()
+                    .request(request)
+                    .response(credential)
+                    .build();
+
+            CeremonyEvent event = new CeremonyEvent(CeremonyEvent.REGISTRATION_FINISH);
+            long payloadBytes = credential.getResponse().getAttestationObject().size()
+                    + credential.getResponse().getClientDataJSON().size();
+            RegistrationResult result;
+            try {
+                result = relyingParty.finishRegistration(options);
+            } catch (RegistrationFailedException e) {
+                VerificationFailureEvent.record(CeremonyEvent.REGISTRATION_FINISH, e);
+                event.finish("failure", 0, payloadBytes);
+                throw e;
+            } catch (RuntimeException e) {
+                event.finish("error", 0, payloadBytes);
+                throw e;
+            }
+
+            AuthenticatorInfo authenticator = new AuthenticatorInfo(
+                    result.getKeyId().getId().getBytes(),
+                    result.getPublicKeyCose().getBytes(),
+                    result.getAaguid().getBytes(),
+                    username,
+                    nickname  // アプリケーション層の機能：ユーザーが設定した認証器の表示名
+            );
+
+            // 既存ユーザーがいなければ新規作成し、認証器を追加する（確認と作成を分けると、同じusernameの同時の登録で
+            // userHandleの異なるユーザーが2回作られ、後の方が上書きしてしまうため、1回の呼び出しで行う）
+            if (!store.registerAuthenticator(request.getUser().getId().getBytes(), authenticator)) {
+                event.finish("failure", 0, payloadBytes);
+                throw new RegistrationFailedException(new IllegalArgumentException(
+                        "Username was registered concurrently with a different user handle; start registration again"));
+            }
+            event.finish("success", 0, payloadBytes);
         }
-
-        AuthenticatorInfo authenticator = new AuthenticatorInfo(
-                result.getKeyId().getId().getBytes(),
-                result.getPublicKeyCose().getBytes(),
-                result.getAaguid().getBytes(),
-                username,
-                nickname  // アプリケーション層の機能：ユーザーが設定した認証器の表示名
-        );
-
-        backend.saveAuthenticator(authenticator);
     }
 
     /**
      * 認証開始: クライアントに送信する認証オプションを生成する
      */
     public AssertionRequest startAuthentication(String username) {
-        StartAssertionOptions options = StartAssertionOptions.builder()
-                .username(username)
-                .build();
-
-        return relyingParty.startAssertion(options);
+        try (TrafficClass.Scope ignored = TrafficClass.AUTHENTICATION.enter()) {
+            StartAssertionOptions options = StartAssertionOptions.builder()
+                    .username(username)
+                    .build();
+
+            CeremonyEvent event = new CeremonyEvent(CeremonyEvent.AUTHENTICATION_START);
+            AssertionRequest assertionRequest = relyingParty.startAssertion(options);
+            event.finish("success",
+                    assertionRequest.getPublicKeyCredentialRequestOptions().getAllowCredentials().map(List::size).orElse(0), 0);
+            return assertionRequest;
+        }
     }
 
     /**
@@ -138,58 +204,127 @@ public class WebAuthnService implements CredentialRepository {
     public String finishAuthentication(AssertionRequest request,
                                        PublicKeyCredential<AuthenticatorAssertionResponse, ClientAssertionExtensionOutputs> credential)
             throws AssertionFailedException {
+        try (TrafficClass.Scope ignored = TrafficClass.AUTHENTICATION.enter()) {
+            FinishAssertionOptions options = FinishAssertionOptions.builder()
+                    .request(request)
+                    .response(credential)
+                    .build();
+
+            CeremonyEvent event = new CeremonyEvent(CeremonyEvent.AUTHENTICATION_FINISH);
+            long payloadBytes = credential.getResponse().getAuthenticatorData().size()
+                    + credential.getResponse().getClientDataJSON().size()
+                    + credential.getResponse().getSignature().size();
+            AssertionResult result;
+            try {
+                result = relyingParty.finishAssertion(options);
+            } catch (AssertionFailedException e) {
+                VerificationFailureEvent.record(CeremonyEvent.AUTHENTICATION_FINISH, e);
+                event.finish("failure", 0, payloadBytes);
+                throw e;
+            } catch (RuntimeException e) {
+                event.finish("error", 0, payloadBytes);
+                throw e;
+            }
+
+            // 最終使用時刻を記録（期限切れの判定に使う）
+            store.recordUse(result.getCredential().getCredentialId().getBytes(), System.currentTimeMillis());
+            event.finish("success", 0, payloadBytes);
+
+            // 認証されたユーザー名を返す
+            return result.getUsername();
+        }
+    }
 
-        FinishAssertionOptions options = FinishAssertionOptions.builder()
-                .request(request)
-                .response(credential)
-                .build();
+    // ===== 認証器の管理 =====
 
-        AssertionResult result = relyingParty.finishAssertion(options);
+    /**
+     * ユーザーの認証器を、登録順に1ページ分取得する（更新先の{@link CredentialStore}から読む）。
+     */
+    public AuthenticatorPage findAuthenticatorPage(String username, long afterCursor, int limit) {
+        return store.findAuthenticatorPage(username, afterCursor, limit);
+    }
 
-        // 認証されたユーザー名を返す
-        return result.getUsername();
+    /**
+     * 特定ユーザーの認証器の表示名をまとめて変更する（更新先の{@link CredentialStore}に送る）。
+     *
+     * @return credentialIdsと同じ順序の結果（指定ユーザーの認証器として存在し、変更できた場合はtrue）
+     */
+    public List<Boolean> renameAuthenticators(String username, List<byte[]> credentialIds, List<String> nicknames) {
+        return store.renameAuthenticators(username, credentialIds, nicknames);
+    }
+
+    /**
+     * credentialIdの認証器が、usernameのユーザーのものとして登録されているか（ログイントークンの確認用）。
+     */
+    public boolean isRegisteredTo(String username, byte[] credentialId) {
+        Optional<CredentialData> data = store.findCredentialDataByCredentialId(credentialId);
+        return data.isPresent() && store.findUserHandleByUsername(username)
+                .map(userHandle -> Arrays.equals(userHandle, data.get().userHandle))
+                .orElse(false);
+    }
+
+    /**
+     * 特定ユーザーの認証器をまとめて削除する（更新先の{@link CredentialStore}に送る）。
+     *
+     * @return credentialIdsと同じ順序の結果（指定ユーザーの認証器として存在し、削除できた場合はtrue）
+     */
+    public List<Boolean> deleteAuthenticators(String username, List<byte[]> credentialIds) {
+        return store.deleteAuthenticators(username, credentialIds);
     }
 
     // ===== CredentialRepository 実装（Yubicoライブラリが呼び出す） =====
     //
     // WebAuthnServiceはYubicoライブラリのCredentialRepositoryインターフェースを実装している。
     // Yubicoライブラリから呼び出されるため、このクラスに実装を保持する必要がある。
-    // データアクセスはWebAuthnBackend経由で行う。
+    // データアクセスはCredentialLookup（既定ではWebAuthnBackend）経由で行う。
 
     @Override
     public Set<PublicKeyCredentialDescriptor> getCredentialIdsForUsername(String username) {
-        List<byte[]> credentialIds = backend.findCredentialIdsByUsername(username);
-        return credentialIds.stream()
+        CredentialRepositoryEvent event = new CredentialRepositoryEvent("getCredentialIdsForUsername");
+        List<byte[]> credentialIds = lookup.findCredentialIdsByUsername(username);
+        Set<PublicKeyCredentialDescriptor> descriptors = credentialIds.stream()
                 .map(credId -> PublicKeyCredentialDescriptor.builder()
                         .id(new ByteArray(credId))
                         .build())
                 .collect(Collectors.toSet());
+        event.finish(descriptors.size());
+        return descriptors;
     }
 
     @Override
     public Optional<ByteArray> getUserHandleForUsername(String username) {
-        return backend.findUserHandleByUsername(username)
+        CredentialRepositoryEvent event = new CredentialRepositoryEvent("getUserHandleForUsername");
+        Optional<ByteArray> userHandle = lookup.findUserHandleByUsername(username)
                 .map(ByteArray::new);
+        event.finish(userHandle.isPresent() ? 1 : 0);
+        return userHandle;
     }
 
     @Override
     public Optional<String> getUsernameForUserHandle(ByteArray userHandle) {
-        return backend.findUsernameByUserHandle(userHandle.getBytes());
+        CredentialRepositoryEvent event = new CredentialRepositoryEvent("getUsernameForUserHandle");
+        Optional<String> username = lookup.findUsernameByUserHandle(userHandle.getBytes());
+        event.finish(username.isPresent() ? 1 : 0);
+        return username;
     }
 
     @Override
     public Optional<RegisteredCredential> lookup(ByteArray credentialId, ByteArray userHandle) {
-        return backend.findCredentialData(credentialId.getBytes(), userHandle.getBytes())
+        CredentialRepositoryEvent event = new CredentialRepositoryEvent("lookup");
+        Optional<RegisteredCredential> credential = lookup.findCredentialData(credentialId.getBytes(), userHandle.getBytes())
                 .map(data -> RegisteredCredential.builder()
                         .credentialId(new ByteArray(data.credentialId))
                         .userHandle(new ByteArray(data.userHandle))
                         .publicKeyCose(new ByteArray(data.publicKey))
                         .build());
+        event.finish(credential.isPresent() ? 1 : 0);
+        return credential;
     }
 
     @Override
     public Set<RegisteredCredential> lookupAll(ByteArray credentialId) {
-        return backend.findCredentialDataByCredentialId(credentialId.getBytes())
+        CredentialRepositoryEvent event = new CredentialRepositoryEvent("lookupAll");
+        Set<RegisteredCredential> credentials = lookup.findCredentialDataByCredentialId(credentialId.getBytes())
                 .map(data -> RegisteredCredential.builder()
                         .credentialId(new ByteArray(data.credentialId))
                         .userHandle(new ByteArray(data.userHandle))
@@ -197,6 +332,8 @@ public class WebAuthnService implements CredentialRepository {
                         .build())
                 .stream()
                 .collect(Collectors.toSet());
+        event.finish(credentials.size());
+        return credentials;
     }
 
     // ===== ヘルパーメソッド =====
@@ -219,4 +356,12 @@ public class WebAuthnService implements CredentialRepository {
         random.nextBytes(handle);
         return handle;
     }
+
+    private static CredentialLookup lookupOrBackend(CredentialLookup remoteLookup, WebAuthnBackend backend) {
+        return remoteLookup != null ? remoteLookup : backend;
+    }
+
+    private static CredentialStore storeOrBackend(CredentialStore remoteStore, WebAuthnBackend backend) {
+        return remoteStore != null ? remoteStore : backend;
+    }
 }
@@ -0,0 +1,60 @@
+package com.example.demo.tenant;
+
+import com.example.demo.backend.WebAuthnBackend;
+import com.example.demo.service.WebAuthnService;
+
+/**
+ * 1つのテナントの実行時の状態。
+ *
+ * <p>テナントごとに WebAuthnBackend を持ち、ユーザー・認証器のインデックスを他のテナントと共有しない。
+ * WebAuthnService（とその RelyingParty）は、最初のリクエストで作成してキャッシュする。
+ * 設定が変わった場合は新しい Tenant を作るが、WebAuthnBackend は同じidのものを引き継ぐ。
+ */
+public final class Tenant {
+
+    private final TenantConfig config;
+    private final WebAuthnBackend backend;
+    private volatile WebAuthnService service;
+
+    Tenant(TenantConfig config, WebAuthnBackend backend) {
+        this(config, backend, null);
+    }
+
+    Tenant(TenantConfig config, WebAuthnBackend backend, WebAuthnService service) {
+        this.config = config;
+        this.backend = backend;
+        this.service = service;
+    }
+
+    public TenantConfig config() {
+        return config;
+    }
+
+    public WebAuthnBackend backend() {
+        return backend;
+    }
+
+    /**
+     * このテナントのデータがレプリケーションの対象か（既定のテナントのデータだけがリードレプリカに送られる）。
+     */
+    public boolean replicated() {
+        return config.id().equals(TenantConfig.DEFAULT.id());
+    }
+
+    /**
+     * このテナントの WebAuthnService（初回のみ作成する）。
+     */
+    public WebAuthnService service() {
+        WebAuthnService current = service;
+        if (current == null) {
+            synchronized (this) {
+                current = service;
+                if (current == null) {
+                    current = new WebAuthnService(backend, config);
+                    service = current;
+                }
+            }
+        }
+        return current;
+    }
+}
@@ -0,0 +1,27 @@
+package com.example.demo.tenant;
+
+import java.util.Locale;
+import java.util.Set;
+
+/**
+ * テナント（顧客ドメイン）ごとのRelying Partyの設定。
+ *
+ * @param id      テナントの識別子（設定を変更しても同じidなら同じデータを使い続ける）
+ * @param host    このテナントとして扱うリクエストのホスト名（小文字）
+ * @param rpId    RP ID（通常はドメイン名。origins のホスト部分と一致する必要がある）
+ * @param rpName  認証器の画面に表示される名前
+ * @param origins 許可するオリジン（例: https://login.example.com）
+ */
+public record TenantConfig(String id, String host, String rpId, String rpName, Set<String> origins) {
+
+    /**
+     * テナントの設定がない場合の既定値（単一テナントとして動かす場合の設定）。
+     */
+    public static final TenantConfig DEFAULT = new TenantConfig(
+            "default", "localhost", "localhost", "WebAuthn Demo", Set.of("http://localhost:8080"));
+
+    public TenantConfig {
+        host = host.toLowerCase(Locale.ROOT);  // 既定のロケール（トルコ語の I など）によらない
+        origins = Set.copyOf(origins);
+    }
+}
@@ -0,0 +1,164 @@
+package com.example.demo.tenant;
+
+import com.example.demo.audit.AuditLog;
+import com.example.demo.backend.WebAuthnBackend;
+import com.example.demo.service.WebAuthnService;
+import com.fasterxml.jackson.core.type.TypeReference;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import jakarta.servlet.http.HttpServletRequest;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Component;
+
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.attribute.FileTime;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Locale;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * リクエストのホスト名から、テナント（RelyingPartyとデータ）を解決するレジストリ。
+ *
+ * <p>【設定】
+ * webauthn.tenants.file にテナントの一覧（{@link TenantConfig} のJSON配列）を指定する。
+ * 未指定の場合は、既定のテナント（localhost）だけで動く。
+ * <pre>
+ * [
+ *   {"id": "acme", "host": "login.acme.example", "rpId": "acme.example", "rpName": "Acme",
+ *    "origins": ["https://login.acme.example"]}
+ * ]
+ * </pre>
+ * 一覧にないホストへのリクエストは既定のテナントとして扱う。
+ *
+ * <p>【再読み込み】
+ * 設定ファイルの更新時刻を webauthn.tenants.reload-interval-ms ごとに確認し、変更されていれば読み込み直す。
+ * 読み込みに失敗した場合は、それまでの設定を使い続ける。
+ *
+ * <p>【解決のコスト】
+ * ホスト名 → Tenant の変更されないマップを volatile フィールドで保持し、再読み込み時はマップごと差し替える。
+ * リクエストごとの解決はロックを取らないマップの参照1回で済む。
+ *
+ * <p>【既定のテナント】
+ * Springが管理する WebAuthnService / WebAuthnBackend をそのまま使う。
+ * レプリケーション・管理者向けAPI・期限切れの削除・ウォームアップは、既定のテナントのデータが対象。
+ *
+ * <p>各テナントの WebAuthnBackend には、認証器の削除を監査ログに記録する通知先（{@link AuditLog#removalListener}）を設定する。
+ */
+@Component
+public class TenantRegistry implements AutoCloseable {
+
+    private static final Logger log = LoggerFactory.getLogger(TenantRegistry.class);
+
+    private final Tenant defaultTenant;
+    private final AuditLog audit;
+    private final ObjectMapper objectMapper;
+    private final Path file;
+    private final ConcurrentHashMap<String, WebAuthnBackend> backends = new ConcurrentHashMap<>();  // key: テナントid（再読み込みをまたいで引き継ぐ）
+    private final ScheduledExecutorService reloader;
+
+    private volatile Map<String, Tenant> tenantsByHost = Map.of();
+    private FileTime lastModified;
+
+    public TenantRegistry(
+            WebAuthnService defaultService,
+            WebAuthnBackend defaultBackend,
+            AuditLog audit,
+            ObjectMapper objectMapper,
+            @Value("${webauthn.tenants.file:}") String file,
+            @Value("${webauthn.tenants.reload-interval-ms:5000}") long reloadIntervalMillis) throws IOException {
+        this.defaultTenant = new Tenant(TenantConfig.DEFAULT, defaultBackend, defaultService);
+        this.audit = audit;
+        this.objectMapper = objectMapper;
+        this.file = file.isEmpty() ? null : Path.of(file);
+        backends.put(TenantConfig.DEFAULT.id(), defaultBackend);
+        defaultBackend.setRemovalListener(audit.removalListener(TenantConfig.DEFAULT.id()));
+
+        if (this.file == null) {
+            this.reloader = null;
+            return;
+        }
+        load();
+        this.reloader = Executors.newSingleThreadScheduledExecutor(
+                Thread.ofPlatform().name("tenant-reload").daemon().factory());
+        reloader.scheduleWithFixedDelay(this::reloadIfModified,
+                reloadIntervalMillis, reloadIntervalMillis, TimeUnit.MILLISECONDS);
+    }
+
+    /**
+     * リクエストのホスト名に対応するテナントを返す（一覧になければ既定のテナント）。
+     */
+    public Tenant resolve(HttpServletRequest request) {
+        return resolve(request.getServerName());
+    }
+
+    /**
+     * ホスト名に対応するテナントを返す（一覧になければ既定のテナント）。
+     */
+    public Tenant resolve(String host) {
+        Tenant tenant = tenantsByHost.get(host.toLowerCase(Locale.ROOT));
+        return tenant != null ? tenant : defaultTenant;
+    }
+
+    /**
+     * 登録されているテナントの数（既定のテナントを除く）。
+     */
+    public int size() {
+        return tenantsByHost.size();
+    }
+
+    private void reloadIfModified() {
+        try {
+            if (!Files.getLastModifiedTime(file).equals(lastModified)) {
+                load();
+            }
+        } catch (IOException | RuntimeException e) {
+            log.warn("Failed to reload tenants from {}, keeping the current configuration", file, e);
+        }
+    }
+
+    private synchronized void load() throws IOException {
+        FileTime modified = Files.getLastModifiedTime(file);
+        List<TenantConfig> configs = objectMapper.readValue(file.toFile(), new TypeReference<List<TenantConfig>>() {});
+        Map<String, Tenant> current = tenantsByHost;
+
+        Map<String, Tenant> next = new HashMap<>();
+        for (TenantConfig config : configs) {
+            Tenant existing = current.get(config.host());
+            if (existing != null && existing.config().equals(config)) {
+                next.put(config.host(), existing);  // 設定が同じなら作成済みの RelyingParty を使い続ける
+            } else {
+                next.put(config.host(), new Tenant(config, backendFor(config)));
+            }
+        }
+        tenantsByHost = Map.copyOf(next);
+        lastModified = modified;
+        log.info("Loaded {} tenants from {}", next.size(), file);
+    }
+
+    private WebAuthnBackend backendFor(TenantConfig config) {
+        if (config.id().equals(TenantConfig.DEFAULT.id())) {
+            return defaultTenant.backend();
+        }
+        return backends.computeIfAbsent(config.id(), id -> {
+            // 既定のテナント以外はレプリケーションしないため、変更ログを持たせない
+            WebAuthnBackend backend = new WebAuthnBackend(0);
+            backend.setRemovalListener(audit.removalListener(id));
+            return backend;
+        });
+    }
+
+    @Override
+    public void close() {
+        if (reloader != null) {
+            reloader.shutdownNow();
+        }
+    }
+}
@@ -0,0 +1,78 @@
+package com.example.demo.tiered;
+
+import java.io.IOException;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.Map;
+
+/**
+ * セグメントファイルから読んだブロックのキャッシュ（合計 capacityBytes まで、LRU）。
+ *
+ * <p>キーはセグメントの番号とブロックの番号。同じブロックを続けて検索する場合に、ファイルを読み直さない。
+ * ブロックの読み込みはロックの外で行う（同じブロックを同時に読むことはあるが、結果は同じ）。
+ */
+class BlockCache {
+
+    /**
+     * ブロックの読み込み。
+     */
+    @FunctionalInterface
+    interface Loader {
+        byte[] load() throws IOException;
+    }
+
+    private final long capacityBytes;
+    private final LinkedHashMap<Long, byte[]> blocks = new LinkedHashMap<>(256, 0.75f, true);
+    private long sizeBytes;
+    private long hits;
+    private long misses;
+
+    BlockCache(long capacityBytes) {
+        this.capacityBytes = capacityBytes;
+    }
+
+    byte[] get(int segmentId, int blockIndex, Loader loader) throws IOException {
+        long key = ((long) segmentId << 32) | (blockIndex & 0xffff_ffffL);
+        synchronized (this) {
+            byte[] block = blocks.get(key);
+            if (block != null) {
+                hits++;
+                return block;
+            }
+            misses++;
+        }
+        byte[] block = loader.load();
+        synchronized (this) {
+            byte[] previous = blocks.put(key, block);
+            sizeBytes += block.length - (previous == null ? 0 : previous.length);
+            Iterator<Map.Entry<Long, byte[]>> eldest = blocks.entrySet().iterator();
+            while (sizeBytes > capacityBytes && eldest.hasNext()) {
+                sizeBytes -= eldest.next().getValue().length;
+                eldest.remove();
+            }
+        }
+        return block;
+    }
+
+    /**
+     * セグメントのブロックを全て捨てる（コンパクションで削除したセグメント）。
+     */
+    synchronized void evictSegment(int segmentId) {
+        Iterator<Map.Entry<Long, byte[]>> it = blocks.entrySet().iterator();
+        while (it.hasNext()) {
+            Map.Entry<Long, byte[]> entry = it.next();
+            if ((int) (entry.getKey() >>> 32) == segmentId) {
+                sizeBytes -= entry.getValue().length;
+                it.remove();
+            }
+        }
+    }
+
+    synchronized long getHits() {
+        return hits;
+    }
+
+    synchronized long getMisses() {
+        return misses;
+    }
+}
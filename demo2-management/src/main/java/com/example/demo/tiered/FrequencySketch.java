@@ -0,0 +1,86 @@
+package com.example.demo.tiered;
+
+/**
+ * キーごとの最近の利用回数の推定（Count-Min Sketch、4ビットのカウンター）。
+ *
+ * <p>{@link HotTier}が、追い出す候補と新しく入れる候補のどちらを残すかを決めるために使う（TinyLFU）。
+ * 全てのキーの回数を持つとキーの数に比例したメモリが要るため、固定の大きさの表に4つのハッシュで数え、最小値を推定値とする。
+ *
+ * <p>【減衰】
+ * 記録した回数が sampleSize に達するたびに全てのカウンターを半分にする。
+ * 昔よく使われたキーが、使われなくなった後もいつまでも残らないようにする。
+ *
+ * <p>スレッドセーフではない（HotTier のストライプのロックの中で使う）。
+ */
+class FrequencySketch {
+
+    private static final int MAX_COUNT = 15;
+    private static final long RESET_MASK = 0x7777_7777_7777_7777L;  // 各4ビットを1ビット右にずらしたときの桁あふれを消す
+    private static final long[] SEEDS = {
+            0xc3a5c85c97cb3127L, 0xb492b66fbe98f273L, 0x9ae16a3b2f90404fL, 0xcbf29ce484222325L};
+
+    private final long[] table;  // 1つの long に16個の4ビットカウンター
+    private final int tableMask;
+    private final int sampleSize;
+    private int additions;
+
+    /**
+     * @param expectedEntries 数えたいキーの数（HotTier の容量）
+     */
+    FrequencySketch(int expectedEntries) {
+        int size = Integer.highestOneBit(Math.max(expectedEntries, 16) - 1) << 1;
+        this.table = new long[size];
+        this.tableMask = size - 1;
+        this.sampleSize = 10 * size;
+    }
+
+    /**
+     * キーの利用を1回記録する。
+     */
+    void increment(int hash) {
+        boolean added = false;
+        for (int i = 0; i < SEEDS.length; i++) {
+            added |= incrementAt(slot(hash, i), counterOffset(hash, i));
+        }
+        if (added && ++additions >= sampleSize) {
+            reset();
+        }
+    }
+
+    /**
+     * キーの最近の利用回数の推定値（0〜15）。
+     */
+    int frequency(int hash) {
+        int frequency = MAX_COUNT;
+        for (int i = 0; i < SEEDS.length; i++) {
+            int count = (int) ((table[slot(hash, i)] >>> counterOffset(hash, i)) & 0xf);
+            frequency = Math.min(frequency, count);
+        }
+        return frequency;
+    }
+
+    private boolean incrementAt(int slot, int offset) {
+        long mask = 0xfL << offset;
+        if ((table[slot] & mask) == mask) {
+            return false;  // 上限
+        }
+        table[slot] += 1L << offset;
+        return true;
+    }
+
+    private void reset() {
+        for (int i = 0; i < table.length; i++) {
+            table[i] = (table[i] >>> 1) & RESET_MASK;
+        }
+        additions /= 2;
+    }
+
+    private int slot(int hash, int i) {
+        long h = (hash + SEEDS[i]) * SEEDS[i];
+        return (int) (h >>> 40) & tableMask;
+    }
+
+    private static int counterOffset(int hash, int i) {
+        return ((hash >>> (i * 4)) & 0xf) << 2;
+    }
+}
@@ -0,0 +1,186 @@
+package com.example.demo.tiered;
+
+import java.util.Arrays;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.Map;
+
+/**
+ * ヒープ上の層: 最近よく使われたキーの値を capacity 件まで持つ。
+ *
+ * <p>【追い出し（TinyLFU）】
+ * 満杯のときに新しいキーを入れる場合、最も長く使われていないキー（LRU）と比べて、
+ * {@link FrequencySketch}の推定利用回数が多い方を残す。
+ * 1回だけ検索された利用頻度の低いキーが、よく使われるキーを追い出さない。
+ *
+ * <p>【更新との競合】
+ * 下の層から読んだ値を入れる（昇格する）までの間に同じキーが更新されると、古い値を入れてしまう。
+ * キーのハッシュで分けた版数を持ち、読む前の版数から変わっていれば入れない（更新は必ず版数を進める）。
+ *
+ * <p>【ロックの分割】
+ * 検索もLRUの順序と利用回数を更新するため、検索ごとにロックが要る。1つのロックでは全ての検索がそこで順番待ちになるため、
+ * キーのハッシュでストライプ（それぞれ LRU・利用回数の推定・版数と capacity を分けた分を持つ）に分け、ストライプごとにロックする。
+ * 追い出しはストライプの中で比べるため、容量の小さい層（ストライプあたり {@value #MIN_STRIPE_CAPACITY} 件未満）は分けない。
+ */
+class HotTier {
+
+    private static final int VERSION_STRIPES = 1024;
+    private static final int MAX_STRIPES = 64;
+    private static final int MIN_STRIPE_CAPACITY = 256;
+
+    private final Stripe[] stripes;
+    private final int stripeMask;
+
+    HotTier(int capacity) {
+        int wanted = Math.min(MAX_STRIPES, Math.min(Runtime.getRuntime().availableProcessors() * 4,
+                capacity / MIN_STRIPE_CAPACITY));
+        int count = Integer.highestOneBit(Math.max(1, wanted));
+        this.stripes = new Stripe[count];
+        this.stripeMask = count - 1;
+        for (int i = 0; i < count; i++) {
+            // 割り切れない分は先頭のストライプから1件ずつ足す（合計が capacity になる）
+            stripes[i] = new Stripe(capacity / count + (i < capacity % count ? 1 : 0));
+        }
+    }
+
+    /**
+     * キーの値を返し、利用を記録する（なければnull）。
+     */
+    byte[] get(byte[] key) {
+        Key k = new Key(key);
+        return stripe(k.hash).get(k);
+    }
+
+    /**
+     * キーの現在の版数（下の層から読む前に取得し、{@link #admit}に渡す）。
+     */
+    long version(byte[] key) {
+        int hash = Key.hash(key);
+        return stripe(hash).version(hash);
+    }
+
+    /**
+     * 下の層から読んだ値を入れる（昇格）。
+     *
+     * @param version 読む前に{@link #version(byte[])}で取得した版数（その後に更新されていれば入れない）
+     * @return 入れた場合はtrue
+     */
+    boolean admit(byte[] key, byte[] value, long version) {
+        Key k = new Key(key);
+        return stripe(k.hash).admit(k, value, version);
+    }
+
+    /**
+     * 更新を反映する（入っていれば値を差し替え、value が null なら取り除く）。版数を進める。
+     */
+    void update(byte[] key, byte[] value) {
+        Key k = new Key(key);
+        stripe(k.hash).update(k, value);
+    }
+
+    int size() {
+        int size = 0;
+        for (Stripe stripe : stripes) {
+            size += stripe.size();
+        }
+        return size;
+    }
+
+    int stripeCount() {
+        return stripes.length;
+    }
+
+    private Stripe stripe(int hash) {
+        // 版数と LinkedHashMap は下位のビットを使うため、上位のビットで分ける
+        return stripes[(hash >>> 16) & stripeMask];
+    }
+
+    /**
+     * 1つのロックで守る分（LRU の順序・利用回数の推定・版数）。
+     */
+    private static final class Stripe {
+
+        private final int capacity;
+        private final LinkedHashMap<Key, byte[]> entries;
+        private final FrequencySketch sketch;
+        private final long[] versions = new long[VERSION_STRIPES];
+
+        Stripe(int capacity) {
+            this.capacity = capacity;
+            this.entries = new LinkedHashMap<>(Math.max(16, capacity * 4 / 3 + 1), 0.75f, true);
+            this.sketch = new FrequencySketch(capacity);
+        }
+
+        synchronized byte[] get(Key k) {
+            sketch.increment(k.hash);
+            return entries.get(k);
+        }
+
+        synchronized long version(int hash) {
+            return versions[hash & (VERSION_STRIPES - 1)];
+        }
+
+        synchronized boolean admit(Key k, byte[] value, long version) {
+            if (versions[k.hash & (VERSION_STRIPES - 1)] != version) {
+                return false;
+            }
+            if (entries.containsKey(k) || entries.size() < capacity) {
+                entries.put(k, value);
+                return true;
+            }
+            if (capacity == 0) {
+                return false;
+            }
+            Iterator<Map.Entry<Key, byte[]>> eldest = entries.entrySet().iterator();
+            Key victim = eldest.next().getKey();
+            if (sketch.frequency(k.hash) <= sketch.frequency(victim.hash)) {
+                return false;
+            }
+            eldest.remove();
+            entries.put(k, value);
+            return true;
+        }
+
+        synchronized void update(Key k, byte[] value) {
+            versions[k.hash & (VERSION_STRIPES - 1)]++;
+            if (value == null) {
+                entries.remove(k);
+            } else {
+                entries.replace(k, value);
+            }
+        }
+
+        synchronized int size() {
+            return entries.size();
+        }
+    }
+
+    /**
+     * byte[] のキー（内容で比較する）。
+     */
+    private static final class Key {
+
+        private final byte[] bytes;
+        private final int hash;
+
+        Key(byte[] bytes) {
+            this.bytes = bytes;
+            this.hash = hash(bytes);
+        }
+
+        static int hash(byte[] bytes) {
+            int h = Arrays.hashCode(bytes);
+            return h ^ (h >>> 16);
+        }
+
+        @Override
+        public boolean equals(Object o) {
+            return o instanceof Key other && hash == other.hash && Arrays.equals(bytes, other.bytes);
+        }
+
+        @Override
+        public int hashCode() {
+            return hash;
+        }
+    }
+}
@@ -0,0 +1,360 @@
+package com.example.demo.tiered;
+
+import java.io.ByteArrayOutputStream;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.StandardOpenOption;
+import java.util.AbstractMap;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Iterator;
+import java.util.List;
+import java.util.Map;
+import java.util.NoSuchElementException;
+import java.util.PriorityQueue;
+
+/**
+ * ディスク上の層の1ファイル: キーの順に並べた、変更しないエントリーの列。
+ *
+ * <p>【ファイルの形式】
+ * <pre>
+ * ブロック*  : エントリー（キーの長さ(2) | キー | 値の長さ(4、-1は削除) | 値）を blockSize バイト程度ずつ
+ * 索引       : ブロック数(4) | (先頭のキーの長さ(2) | 先頭のキー | 位置(8) | 長さ(4))*
+ * フッター   : 索引の位置(8) | MAGIC(4)
+ * </pre>
+ *
+ * <p>【疎な索引】
+ * ヒープにはブロックごとの先頭のキーだけを持つ（エントリーの数ではなくブロックの数に比例する）。
+ * 検索は索引を二分探索してブロックを1つ読み（{@link BlockCache}経由）、ブロックの中を先頭から探す。
+ *
+ * <p>一時ファイルに書き、fsync してから名前を変えるため、書きかけのファイルがセグメントとして読まれることはない。
+ */
+final class Segment implements AutoCloseable {
+
+    /**
+     * 削除の印（値の長さ -1）。新しい層の削除は、古い層の同じキーを隠す。
+     */
+    static final byte[] TOMBSTONE = new byte[0];
+
+    private static final int MAGIC = 0x57414e53;  // "WANS"
+    private static final int FOOTER_LENGTH = 8 + 4;
+
+    final int id;
+    private final Path file;
+    private final FileChannel channel;
+    private final BlockCache cache;
+    private final byte[][] firstKeys;
+    private final long[] offsets;
+    private final int[] lengths;
+
+    private Segment(int id, Path file, FileChannel channel, BlockCache cache,
+                    byte[][] firstKeys, long[] offsets, int[] lengths) {
+        this.id = id;
+        this.file = file;
+        this.channel = channel;
+        this.cache = cache;
+        this.firstKeys = firstKeys;
+        this.offsets = offsets;
+        this.lengths = lengths;
+    }
+
+    /**
+     * キーの順に並んだエントリーをセグメントファイルに書き、開く。
+     *
+     * @param dropTombstones 削除の印を書かない（これより古いセグメントがない場合だけ指定できる）
+     */
+    static Segment write(Path file, int id, Iterator<Map.Entry<byte[], byte[]>> entries, int blockSize,
+                         boolean dropTombstones, BlockCache cache) throws IOException {
+        Path temporary = file.resolveSibling(file.getFileName() + ".tmp");
+        try (FileChannel out = FileChannel.open(temporary, StandardOpenOption.CREATE,
+                StandardOpenOption.TRUNCATE_EXISTING, StandardOpenOption.WRITE)) {
+            ByteArrayOutputStream block = new ByteArrayOutputStream(blockSize * 2);
+            DataOutputStream blockData = new DataOutputStream(block);
+            List<byte[]> blockKeys = new ArrayList<>();
+            List<Long> blockOffsets = new ArrayList<>();
+            long position = 0;
+
+            while (entries.hasNext()) {
+                Map.Entry<byte[], byte[]> entry = entries.next();
+                byte[] key = entry.getKey();
+                byte[] value = entry.getValue();
+                boolean deleted = value == TOMBSTONE;
+                if (deleted && dropTombstones) {
+                    continue;
+                }
+                int entryLength = 2 + key.length + 4 + (deleted ? 0 : value.length);
+                if (block.size() > 0 && block.size() + entryLength > blockSize) {
+                    position += writeBlock(out, block);
+                }
+                if (block.size() == 0) {
+                    blockKeys.add(key);
+                    blockOffsets.add(position);
+                }
+                blockData.writeShort(key.length);
+                blockData.write(key);
+                blockData.writeInt(deleted ? -1 : value.length);
+                if (!deleted) {
+                    blockData.write(value);
+                }
+            }
+            if (block.size() > 0) {
+                position += writeBlock(out, block);
+            }
+
+            // ブロックの長さは、次のブロックの位置（最後はデータの終わり）との差
+            int indexLength = 4;
+            for (byte[] key : blockKeys) {
+                indexLength += 2 + key.length + 8 + 4;
+            }
+            ByteBuffer index = ByteBuffer.allocate(indexLength + FOOTER_LENGTH).putInt(blockKeys.size());
+            for (int i = 0; i < blockKeys.size(); i++) {
+                long end = i + 1 < blockKeys.size() ? blockOffsets.get(i + 1) : position;
+                index.putShort((short) blockKeys.get(i).length).put(blockKeys.get(i))
+                        .putLong(blockOffsets.get(i)).putInt((int) (end - blockOffsets.get(i)));
+            }
+            index.putLong(position).putInt(MAGIC).flip();
+            while (index.hasRemaining()) {
+                out.write(index);
+            }
+            out.force(true);
+        }
+        Files.move(temporary, file, StandardCopyOption.ATOMIC_MOVE);
+        return open(file, id, cache);
+    }
+
+    private static int writeBlock(FileChannel out, ByteArrayOutputStream block) throws IOException {
+        ByteBuffer buffer = ByteBuffer.wrap(block.toByteArray());
+        int length = buffer.remaining();
+        while (buffer.hasRemaining()) {
+            out.write(buffer);
+        }
+        block.reset();
+        return length;
+    }
+
+    /**
+     * セグメントファイルを開き、索引をヒープに読み込む。
+     */
+    static Segment open(Path file, int id, BlockCache cache) throws IOException {
+        FileChannel channel = FileChannel.open(file, StandardOpenOption.READ);
+        try {
+            long size = channel.size();
+            ByteBuffer footer = read(channel, size - FOOTER_LENGTH, FOOTER_LENGTH);
+            long indexOffset = footer.getLong();
+            if (footer.getInt() != MAGIC) {
+                throw new IOException("Not a segment file: " + file);
+            }
+            ByteBuffer index = read(channel, indexOffset, (int) (size - FOOTER_LENGTH - indexOffset));
+            int blocks = index.getInt();
+            byte[][] firstKeys = new byte[blocks][];
+            long[] offsets = new long[blocks];
+            int[] lengths = new int[blocks];
+            for (int i = 0; i < blocks; i++) {
+                firstKeys[i] = new byte[index.getShort() & 0xffff];
+                index.get(firstKeys[i]);
+                offsets[i] = index.getLong();
+                lengths[i] = index.getInt();
+            }
+            return new Segment(id, file, channel, cache, firstKeys, offsets, lengths);
+        } catch (IOException | RuntimeException e) {
+            channel.close();
+            throw e;
+        }
+    }
+
+    /**
+     * @return キーの値（このセグメントになければnull、削除されていれば{@link #TOMBSTONE}）
+     */
+    byte[] get(byte[] key) throws IOException {
+        int blockIndex = findBlock(key);
+        if (blockIndex < 0) {
+            return null;
+        }
+        byte[] block = cache.get(id, blockIndex, () -> readBlock(blockIndex));
+        ByteBuffer buffer = ByteBuffer.wrap(block);
+        while (buffer.hasRemaining()) {
+            int keyLength = buffer.getShort() & 0xffff;
+            int keyStart = buffer.position();
+            int compared = Arrays.compareUnsigned(block, keyStart, keyStart + keyLength, key, 0, key.length);
+            buffer.position(keyStart + keyLength);
+            int valueLength = buffer.getInt();
+            if (compared == 0) {
+                return valueLength < 0 ? TOMBSTONE : Arrays.copyOfRange(block, buffer.position(), buffer.position() + valueLength);
+            }
+            if (compared > 0) {
+                return null;  // キーの順に並んでいるため、この先にはない
+            }
+            buffer.position(buffer.position() + Math.max(valueLength, 0));
+        }
+        return null;
+    }
+
+    /**
+     * 先頭のキーが key 以下の最後のブロック（なければ -1）。
+     */
+    private int findBlock(byte[] key) {
+        int low = 0;
+        int high = firstKeys.length - 1;
+        int found = -1;
+        while (low <= high) {
+            int mid = (low + high) >>> 1;
+            if (Arrays.compareUnsigned(firstKeys[mid], key) <= 0) {
+                found = mid;
+                low = mid + 1;
+            } else {
+                high = mid - 1;
+            }
+        }
+        return found;
+    }
+
+    private byte[] readBlock(int blockIndex) throws IOException {
+        return read(channel, offsets[blockIndex], lengths[blockIndex]).array();
+    }
+
+    private static ByteBuffer read(FileChannel channel, long position, int length) throws IOException {
+        ByteBuffer buffer = ByteBuffer.allocate(length);
+        while (buffer.hasRemaining()) {
+            if (channel.read(buffer, position + buffer.position()) < 0) {
+                throw new IOException("Unexpected end of segment file");
+            }
+        }
+        return buffer.flip();
+    }
+
+    /**
+     * 全てのエントリーをキーの順に返す（コンパクション用。ブロックキャッシュを使わない）。
+     */
+    Iterator<Map.Entry<byte[], byte[]>> iterator() {
+        return new Iterator<>() {
+            private int nextBlock;
+            private ByteBuffer block = ByteBuffer.allocate(0);
+
+            @Override
+            public boolean hasNext() {
+                while (!block.hasRemaining() && nextBlock < firstKeys.length) {
+                    try {
+                        block = ByteBuffer.wrap(readBlock(nextBlock++));
+                    } catch (IOException e) {
+                        throw new UncheckedIOException(e);
+                    }
+                }
+                return block.hasRemaining();
+            }
+
+            @Override
+            public Map.Entry<byte[], byte[]> next() {
+                if (!hasNext()) {
+                    throw new NoSuchElementException();
+                }
+                byte[] key = new byte[block.getShort() & 0xffff];
+                block.get(key);
+                int valueLength = block.getInt();
+                byte[] value = TOMBSTONE;
+                if (valueLength >= 0) {
+                    value = new byte[valueLength];
+                    block.get(value);
+                }
+                return new AbstractMap.SimpleImmutableEntry<>(key, value);
+            }
+        };
+    }
+
+    int blockCount() {
+        return firstKeys.length;
+    }
+
+    long sizeBytes() throws IOException {
+        return channel.size();
+    }
+
+    /**
+     * 閉じてファイルを削除する（コンパクションで不要になったセグメント）。
+     */
+    void delete() throws IOException {
+        close();
+        Files.deleteIfExists(file);
+    }
+
+    @Override
+    public void close() throws IOException {
+        channel.close();
+    }
+
+    /**
+     * 複数のセグメント（新しい順）を1つの順序にまとめる。同じキーは最も新しいセグメントの値だけを返す。
+     */
+    static Iterator<Map.Entry<byte[], byte[]>> merge(List<Segment> newestFirst) {
+        List<PeekingIterator> sources = new ArrayList<>(newestFirst.size());
+        for (int i = 0; i < newestFirst.size(); i++) {
+            PeekingIterator source = new PeekingIterator(newestFirst.get(i).iterator(), i);
+            if (source.peek() != null) {
+                sources.add(source);
+            }
+        }
+        PriorityQueue<PeekingIterator> queue = new PriorityQueue<>((a, b) -> {
+            int compared = Arrays.compareUnsigned(a.peek().getKey(), b.peek().getKey());
+            return compared != 0 ? compared : Integer.compare(a.age, b.age);
+        });
+        queue.addAll(sources);
+
+        return new Iterator<>() {
+            @Override
+            public boolean hasNext() {
+                return !queue.isEmpty();
+            }
+
+            @Override
+            public Map.Entry<byte[], byte[]> next() {
+                PeekingIterator newest = queue.poll();
+                if (newest == null) {
+                    throw new NoSuchElementException();
+                }
+                Map.Entry<byte[], byte[]> entry = newest.next();
+                requeue(newest);
+                // 古いセグメントの同じキーは捨てる
+                while (!queue.isEmpty() && Arrays.equals(queue.peek().peek().getKey(), entry.getKey())) {
+                    PeekingIterator older = queue.poll();
+                    older.next();
+                    requeue(older);
+                }
+                return entry;
+            }
+
+            private void requeue(PeekingIterator source) {
+                if (source.peek() != null) {
+                    queue.add(source);
+                }
+            }
+        };
+    }
+
+    private static final class PeekingIterator {
+
+        private final Iterator<Map.Entry<byte[], byte[]>> source;
+        private final int age;  // 0 が最も新しい
+        private Map.Entry<byte[], byte[]> next;
+
+        PeekingIterator(Iterator<Map.Entry<byte[], byte[]>> source, int age) {
+            this.source = source;
+            this.age = age;
+            this.next = source.hasNext() ? source.next() : null;
+        }
+
+        Map.Entry<byte[], byte[]> peek() {
+            return next;
+        }
+
+        Map.Entry<byte[], byte[]> next() {
+            Map.Entry<byte[], byte[]> current = next;
+            next = source.hasNext() ? source.next() : null;
+            return current;
+        }
+    }
+}
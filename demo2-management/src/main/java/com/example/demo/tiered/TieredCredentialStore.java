@@ -0,0 +1,718 @@
+package com.example.demo.tiered;
+
+import com.example.demo.backend.AuthenticatorEntry;
+import com.example.demo.backend.AuthenticatorInfo;
+import com.example.demo.backend.AuthenticatorPage;
+import com.example.demo.backend.CredentialStore;
+import com.example.demo.backend.UserInfo;
+import com.example.demo.backend.WebAuthnBackend.CredentialData;
+import lombok.extern.slf4j.Slf4j;
+
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.nio.ByteBuffer;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Base64;
+import java.util.List;
+import java.util.Optional;
+import java.util.concurrent.ConcurrentSkipListMap;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.concurrent.locks.ReentrantLock;
+import java.util.concurrent.locks.ReentrantReadWriteLock;
+import java.util.stream.Stream;
+
+/**
+ * 利用頻度で層を分けた{@link CredentialStore}: よく使われるユーザーと認証器だけをヒープに置き、残りはディスクに置く。
+ *
+ * <p>【層】
+ * <ol>
+ *   <li>ヒープの層（{@link HotTier}）: 最大 hotCapacity 件。検索で見つかった値を入れ（昇格）、
+ *       満杯のときは利用頻度の推定が低い方を追い出す（降格。ディスクには常にあるため、捨てるだけ）</li>
+ *   <li>書き込みバッファ（memtable）: 更新をキーの順に持ち、memtableBytes を超えたら裏のスレッドでセグメントファイルに書き出す</li>
+ *   <li>ディスクの層（{@link Segment}）: キーの順に並べたファイル。ヒープにはブロックごとの先頭のキー（疎な索引）だけを持ち、
+ *       読んだブロックは{@link BlockCache}に入れる。セグメントが maxSegments を超えたら全てを1つにまとめる（コンパクション）</li>
+ * </ol>
+ * 検索は上の層から順に探し、最初に見つかった値（または削除の印）を使う。
+ * ヒープの使用量はユーザー数によらず、hotCapacity・memtableBytes・blockCacheBytes と、疎な索引（ブロック数に比例）で決まる。
+ *
+ * <p>【レコード】
+ * キーの先頭1バイトで種類を分け、1つの順序に並べる。
+ * <ul>
+ *   <li>u + username → userHandle | credentialIdの一覧</li>
+ *   <li>h + userHandle → username</li>
+ *   <li>c + credentialId → userHandle | 公開鍵 | aaguid | username | 表示名 | 最終使用時刻</li>
+ * </ul>
+ * 同じusernameへの更新（ユーザーのレコードの読み取り・変更・書き込み）は、usernameのロックの中で行う。
+ *
+ * <p>【レイテンシの目標】
+ * 検索（レコード1件）ごとにかかった時間を測り、lookupBudgetNanos を超えた件数を数える。
+ * 超えた検索が1%以下なら p99 が目標以内（{@link #isWithinLookupBudget()}）。
+ * ヒストグラムではなくカウンター（{@link LongAdder}）で数えるため、検索のスレッドどうしが1か所で競合しない。
+ *
+ * <p>【耐久性】
+ * 書き込みバッファは{@link #close()}でセグメントに書き出す。WAL を持たないため、異常終了した場合は書き出し前の更新が失われる。
+ * 起動時は directory の既存のセグメントを開く。
+ */
+@Slf4j
+public class TieredCredentialStore implements CredentialStore, AutoCloseable {
+
+    private static final byte USER = 'u';
+    private static final byte HANDLE = 'h';
+    private static final byte CREDENTIAL = 'c';
+    private static final int WRITE_LOCK_STRIPES = 64;
+    private static final long LAST_USED_UPDATE_INTERVAL_MILLIS = 60 * 60 * 1000;  // WebAuthnBackend と同じ（1時間）
+    private static final int ENTRY_OVERHEAD = 64;  // 書き込みバッファの1件あたりのオブジェクトの大きさ（概算）
+    private static final String SEGMENT_SUFFIX = ".seg";
+    private static final Base64.Encoder BASE64URL = Base64.getUrlEncoder().withoutPadding();
+
+    /**
+     * @param hotCapacity     ヒープの層に置くレコードの数
+     * @param memtableBytes   書き込みバッファをセグメントに書き出す大きさ
+     * @param blockSize       セグメントのブロックの大きさ
+     * @param blockCacheBytes ブロックキャッシュの大きさ
+     * @param maxSegments     コンパクションを始めるセグメントの数
+     * @param lookupBudgetNanos 1件の検索のレイテンシの目標（p99）。これを超えた検索を数える（{@link #isWithinLookupBudget()}）
+     */
+    public record Settings(int hotCapacity, long memtableBytes, int blockSize, long blockCacheBytes, int maxSegments,
+                           long lookupBudgetNanos) {
+
+        public static Settings defaults() {
+            return new Settings(100_000, 8L << 20, 4096, 32L << 20, 4, TimeUnit.MICROSECONDS.toNanos(200));
+        }
+    }
+
+    private final Path directory;
+    private final Settings settings;
+    private final HotTier hot;
+    private final BlockCache blockCache;
+    private final Object[] writeLocks = new Object[WRITE_LOCK_STRIPES];
+
+    // 書き込み: 共有ロックでバッファに追加する。書き出し: 排他ロックで新しいバッファに切り替える
+    private final ReentrantReadWriteLock memtableLock = new ReentrantReadWriteLock();
+    private volatile ConcurrentSkipListMap<byte[], byte[]> memtable = newMemtable();
+    private volatile ConcurrentSkipListMap<byte[], byte[]> flushing;  // 書き出し中のバッファ（検索でも見る）
+    private final AtomicLong memtableSize = new AtomicLong();
+
+    // 検索: 共有ロックでセグメントを読む。コンパクション: 排他ロックで差し替えてから古いファイルを閉じる
+    private final ReentrantReadWriteLock segmentsLock = new ReentrantReadWriteLock();
+    private volatile List<Segment> segments;  // 新しい順
+    private final ReentrantLock flushLock = new ReentrantLock();
+    private final ExecutorService flusher = Executors.newSingleThreadExecutor(r ->
+            Thread.ofPlatform().name("tiered-flush").daemon().unstarted(r));
+    private final AtomicBoolean flushScheduled = new AtomicBoolean();
+    private int nextSegmentId;
+
+    private final LongAdder hotHits = new LongAdder();
+    private final LongAdder memtableHits = new LongAdder();
+    private final LongAdder segmentHits = new LongAdder();
+    private final LongAdder misses = new LongAdder();
+    private final LongAdder lookups = new LongAdder();
+    private final LongAdder lookupsOverBudget = new LongAdder();
+
+    public TieredCredentialStore(Path directory, Settings settings) throws IOException {
+        this.directory = directory;
+        this.settings = settings;
+        this.hot = new HotTier(settings.hotCapacity());
+        this.blockCache = new BlockCache(settings.blockCacheBytes());
+        for (int i = 0; i < writeLocks.length; i++) {
+            writeLocks[i] = new Object();
+        }
+        Files.createDirectories(directory);
+        this.segments = openSegments();
+    }
+
+    private List<Segment> openSegments() throws IOException {
+        List<Path> files;
+        try (Stream<Path> list = Files.list(directory)) {
+            files = list.filter(f -> f.getFileName().toString().endsWith(SEGMENT_SUFFIX)).sorted().toList();
+        }
+        List<Segment> opened = new ArrayList<>();
+        for (Path file : files) {
+            String name = file.getFileName().toString();
+            int id = Integer.parseInt(name.substring(0, name.length() - SEGMENT_SUFFIX.length()));
+            opened.add(0, Segment.open(file, id, blockCache));
+            nextSegmentId = Math.max(nextSegmentId, id + 1);
+        }
+        if (!opened.isEmpty()) {
+            log.info("Opened {} credential segments in {}", opened.size(), directory);
+        }
+        return List.copyOf(opened);
+    }
+
+    // ===== 検索 =====
+
+    @Override
+    public Optional<byte[]> findUserHandleByUsername(String username) {
+        byte[] user = get(key(USER, username));
+        return user == null ? Optional.empty() : Optional.of(getBytes(ByteBuffer.wrap(user)));
+    }
+
+    @Override
+    public Optional<String> findUsernameByUserHandle(byte[] userHandle) {
+        byte[] username = get(key(HANDLE, userHandle));
+        return username == null ? Optional.empty() : Optional.of(getString(ByteBuffer.wrap(username)));
+    }
+
+    @Override
+    public List<byte[]> findCredentialIdsByUsername(String username) {
+        byte[] user = get(key(USER, username));
+        return user == null ? List.of() : decodeUser(user).credentialIds();
+    }
+
+    @Override
+    public Optional<CredentialData> findCredentialData(byte[] credentialId, byte[] userHandle) {
+        return findCredentialDataByCredentialId(credentialId)
+                .filter(data -> Arrays.equals(data.userHandle, userHandle));
+    }
+
+    @Override
+    public Optional<CredentialData> findCredentialDataByCredentialId(byte[] credentialId) {
+        byte[] credential = get(key(CREDENTIAL, credentialId));
+        if (credential == null) {
+            return Optional.empty();
+        }
+        ByteBuffer in = ByteBuffer.wrap(credential);
+        byte[] userHandle = getBytes(in);
+        return Optional.of(new CredentialData(credentialId, userHandle, getBytes(in)));
+    }
+
+    /**
+     * credentialIdの認証器（なければ空）。
+     */
+    public Optional<AuthenticatorInfo> findAuthenticatorByCredentialId(byte[] credentialId) {
+        byte[] credential = get(key(CREDENTIAL, credentialId));
+        return credential == null ? Optional.empty() : Optional.of(decodeCredential(credentialId, credential).authenticator());
+    }
+
+    /**
+     * {@inheritDoc}
+     *
+     * <p>通し番号はユーザーのレコードにある credentialId の一覧での位置（1から）。
+     * ページの間に削除があると、続きのページでは位置がずれる（WebAuthnBackend のように登録順の通し番号を持たないため）。
+     */
+    @Override
+    public AuthenticatorPage findAuthenticatorPage(String username, long afterCursor, int limit) {
+        byte[] user = get(key(USER, username));
+        if (user == null) {
+            return new AuthenticatorPage(List.of(), null);
+        }
+        List<byte[]> credentialIds = decodeUser(user).credentialIds();
+        List<AuthenticatorEntry> items = new ArrayList<>(limit);
+        int i = (int) Math.min(Math.max(afterCursor, 0), credentialIds.size());
+        for (; i < credentialIds.size() && items.size() < limit; i++) {
+            byte[] credentialId = credentialIds.get(i);
+            byte[] credential = get(key(CREDENTIAL, credentialId));
+            if (credential != null) {
+                items.add(new AuthenticatorEntry(i + 1, BASE64URL.encodeToString(credentialId),
+                        decodeCredential(credentialId, credential).authenticator()));
+            }
+        }
+        Long nextCursor = i < credentialIds.size() ? (long) i : null;
+        return new AuthenticatorPage(items, nextCursor);
+    }
+
+    // ===== 更新 =====
+
+    @Override
+    public void saveUser(UserInfo user) {
+        synchronized (writeLockFor(user.getUsername())) {
+            List<byte[]> credentialIds = new ArrayList<>();
+            for (AuthenticatorInfo authenticator : user.getAuthenticators()) {
+                put(key(CREDENTIAL, authenticator.getCredentialId()), encodeCredential(user.getUserHandle(), authenticator));
+                credentialIds.add(authenticator.getCredentialId());
+            }
+            put(key(USER, user.getUsername()), encodeUser(new UserRecord(user.getUserHandle(), credentialIds)));
+            put(key(HANDLE, user.getUserHandle()), encodeString(user.getUsername()));
+        }
+    }
+
+    @Override
+    public void saveAuthenticator(AuthenticatorInfo authenticator) {
+        synchronized (writeLockFor(authenticator.getUsername())) {
+            byte[] userKey = key(USER, authenticator.getUsername());
+            byte[] userValue = get(userKey);
+            UserRecord user = userValue == null ? null : decodeUser(userValue);
+            put(key(CREDENTIAL, authenticator.getCredentialId()),
+                    encodeCredential(user == null ? null : user.userHandle(), authenticator));
+
+            // ユーザーの認証器一覧にも追加する（ユーザーがいなければ認証器だけを保存する。WebAuthnBackend と同じ）
+            if (user != null && user.credentialIds().stream().noneMatch(id -> Arrays.equals(id, authenticator.getCredentialId()))) {
+                List<byte[]> credentialIds = new ArrayList<>(user.credentialIds());
+                credentialIds.add(authenticator.getCredentialId());
+                put(userKey, encodeUser(new UserRecord(user.userHandle(), credentialIds)));
+            }
+        }
+    }
+
+    @Override
+    public boolean registerAuthenticator(byte[] userHandle, AuthenticatorInfo authenticator) {
+        synchronized (writeLockFor(authenticator.getUsername())) {
+            byte[] userKey = key(USER, authenticator.getUsername());
+            byte[] userValue = get(userKey);
+            UserRecord user = userValue == null ? null : decodeUser(userValue);
+            if (user != null && !Arrays.equals(user.userHandle(), userHandle)) {
+                return false;  // 同じusernameの最初の登録が同時に行われ、別のuserHandleで先に完了した
+            }
+            List<byte[]> credentialIds = new ArrayList<>(user == null ? List.of() : user.credentialIds());
+            if (credentialIds.stream().noneMatch(id -> Arrays.equals(id, authenticator.getCredentialId()))) {
+                credentialIds.add(authenticator.getCredentialId());
+            }
+            put(key(CREDENTIAL, authenticator.getCredentialId()), encodeCredential(userHandle, authenticator));
+            put(userKey, encodeUser(new UserRecord(userHandle, credentialIds)));
+            if (user == null) {
+                put(key(HANDLE, userHandle), encodeString(authenticator.getUsername()));
+            }
+            return true;
+        }
+    }
+
+    /**
+     * {@inheritDoc}
+     *
+     * <p>最終使用時刻の更新から1時間経っていなければ何もしない（書き込みバッファに追加しない）。
+     */
+    @Override
+    public void recordUse(byte[] credentialId, long nowMillis) {
+        byte[] credentialKey = key(CREDENTIAL, credentialId);
+        byte[] value = get(credentialKey);
+        if (value == null) {
+            return;
+        }
+        StoredCredential stored = decodeCredential(credentialId, value);
+        if (nowMillis - stored.authenticator().getLastUsedAt() < LAST_USED_UPDATE_INTERVAL_MILLIS) {
+            return;
+        }
+        synchronized (writeLockFor(stored.authenticator().getUsername())) {
+            // ロックを取るまでに削除・差し替えられていれば記録しない
+            byte[] current = get(credentialKey);
+            if (current == null || !Arrays.equals(current, value)) {
+                return;
+            }
+            stored.authenticator().setLastUsedAt(nowMillis);
+            put(credentialKey, encodeCredential(stored.userHandle(), stored.authenticator()));
+        }
+    }
+
+    @Override
+    public boolean deleteAuthenticator(String username, byte[] credentialId) {
+        synchronized (writeLockFor(username)) {
+            byte[] credentialKey = key(CREDENTIAL, credentialId);
+            byte[] value = get(credentialKey);
+            if (value == null || !decodeCredential(credentialId, value).authenticator().getUsername().equals(username)) {
+                return false;
+            }
+            put(credentialKey, Segment.TOMBSTONE);
+
+            byte[] userKey = key(USER, username);
+            byte[] userValue = get(userKey);
+            if (userValue != null) {
+                UserRecord user = decodeUser(userValue);
+                List<byte[]> credentialIds = new ArrayList<>(user.credentialIds());
+                credentialIds.removeIf(id -> Arrays.equals(id, credentialId));
+                put(userKey, encodeUser(new UserRecord(user.userHandle(), credentialIds)));
+            }
+            return true;
+        }
+    }
+
+    @Override
+    public List<Boolean> renameAuthenticators(String username, List<byte[]> credentialIds, List<String> nicknames) {
+        synchronized (writeLockFor(username)) {
+            List<Boolean> results = new ArrayList<>(credentialIds.size());
+            for (int i = 0; i < credentialIds.size(); i++) {
+                byte[] credentialKey = key(CREDENTIAL, credentialIds.get(i));
+                byte[] value = get(credentialKey);
+                StoredCredential stored = value == null ? null : decodeCredential(credentialIds.get(i), value);
+                if (stored == null || !stored.authenticator().getUsername().equals(username)) {
+                    results.add(false);
+                    continue;
+                }
+                put(credentialKey, encodeCredential(stored.userHandle(), stored.authenticator().withNickname(nicknames.get(i))));
+                results.add(true);
+            }
+            return results;
+        }
+    }
+
+    // ===== 層をまたいだ読み書き =====
+
+    /**
+     * 上の層から順に探す。ヒープの層になければ、見つかった値をヒープの層に入れる（昇格）。
+     *
+     * @return 値（ない・削除されていればnull）
+     */
+    private byte[] get(byte[] key) {
+        long start = System.nanoTime();
+        try {
+            byte[] value = hot.get(key);
+            if (value != null) {
+                hotHits.increment();
+                return value;
+            }
+            long version = hot.version(key);
+            value = getFromLowerTiers(key);
+            if (value != null) {
+                hot.admit(key, value, version);
+            }
+            return value;
+        } finally {
+            lookups.increment();
+            if (System.nanoTime() - start > settings.lookupBudgetNanos()) {
+                lookupsOverBudget.increment();
+            }
+        }
+    }
+
+    private byte[] getFromLowerTiers(byte[] key) {
+        // 書き出しの順序（セグメントを公開してから flushing を外す）と逆の順に読むため、どこかで必ず見つかる
+        byte[] value = memtable.get(key);
+        if (value == null) {
+            ConcurrentSkipListMap<byte[], byte[]> beingFlushed = flushing;
+            value = beingFlushed == null ? null : beingFlushed.get(key);
+        }
+        if (value != null) {
+            memtableHits.increment();
+            return value == Segment.TOMBSTONE ? null : value;
+        }
+
+        segmentsLock.readLock().lock();
+        try {
+            for (Segment segment : segments) {
+                value = segment.get(key);
+                if (value != null) {
+                    segmentHits.increment();
+                    return value == Segment.TOMBSTONE ? null : value;
+                }
+            }
+        } catch (IOException e) {
+            throw new UncheckedIOException(e);
+        } finally {
+            segmentsLock.readLock().unlock();
+        }
+        misses.increment();
+        return null;
+    }
+
+    /**
+     * 書き込みバッファに追加し、ヒープの層にあれば差し替える（{@link Segment#TOMBSTONE}は削除）。
+     */
+    private void put(byte[] key, byte[] value) {
+        memtableLock.readLock().lock();
+        try {
+            byte[] previous = memtable.put(key, value);
+            memtableSize.addAndGet(entrySize(key, value) - (previous == null ? 0 : entrySize(key, previous)));
+        } finally {
+            memtableLock.readLock().unlock();
+        }
+        hot.update(key, value == Segment.TOMBSTONE ? null : value);
+
+        if (memtableSize.get() >= settings.memtableBytes() && flushScheduled.compareAndSet(false, true)) {
+            flusher.execute(() -> {
+                flushScheduled.set(false);
+                flush();
+            });
+        }
+    }
+
+    /**
+     * 書き込みバッファをセグメントに書き出し、必要ならコンパクションする（通常は裏のスレッドから。テストでは直接呼ぶ）。
+     */
+    void flush() {
+        flushLock.lock();
+        try {
+            ConcurrentSkipListMap<byte[], byte[]> full;
+            memtableLock.writeLock().lock();
+            try {
+                full = memtable;
+                if (full.isEmpty()) {
+                    return;
+                }
+                flushing = full;
+                memtable = newMemtable();
+                memtableSize.set(0);
+            } finally {
+                memtableLock.writeLock().unlock();
+            }
+
+            try {
+                Segment segment = Segment.write(segmentFile(nextSegmentId), nextSegmentId++, full.entrySet().iterator(),
+                        settings.blockSize(), segments.isEmpty(), blockCache);
+                List<Segment> updated = new ArrayList<>(segments.size() + 1);
+                updated.add(segment);
+                updated.addAll(segments);
+                segments = List.copyOf(updated);
+            } catch (IOException e) {
+                // 書き出せなかった分をバッファに戻す（その後の更新を上書きしない）
+                memtableLock.writeLock().lock();
+                try {
+                    full.forEach((key, value) -> {
+                        if (memtable.putIfAbsent(key, value) == null) {
+                            memtableSize.addAndGet(entrySize(key, value));
+                        }
+                    });
+                } finally {
+                    memtableLock.writeLock().unlock();
+                }
+                log.error("Failed to flush {} credential records", full.size(), e);
+                return;
+            } finally {
+                flushing = null;
+            }
+
+            if (segments.size() > settings.maxSegments()) {
+                compact();
+            }
+        } finally {
+            flushLock.unlock();
+        }
+    }
+
+    /**
+     * 全てのセグメントを1つにまとめる（同じキーは新しい値だけ、削除の印は捨てる）。書き出しのスレッドで呼ぶ。
+     */
+    private void compact() {
+        List<Segment> inputs = segments;
+        Segment merged;
+        try {
+            merged = Segment.write(segmentFile(nextSegmentId), nextSegmentId++, Segment.merge(inputs),
+                    settings.blockSize(), true, blockCache);
+        } catch (IOException | UncheckedIOException e) {
+            log.error("Failed to compact {} credential segments", inputs.size(), e);
+            return;
+        }
+
+        segmentsLock.writeLock().lock();
+        try {
+            segments = List.of(merged);
+        } finally {
+            segmentsLock.writeLock().unlock();
+        }
+        for (Segment segment : inputs) {
+            blockCache.evictSegment(segment.id);
+            try {
+                segment.delete();
+            } catch (IOException e) {
+                log.warn("Failed to delete compacted segment {}", segment.id, e);
+            }
+        }
+    }
+
+    /**
+     * 書き込みバッファを書き出して、ファイルを閉じる。
+     */
+    @Override
+    public void close() throws IOException {
+        flusher.close();
+        flush();
+        for (Segment segment : segments) {
+            segment.close();
+        }
+    }
+
+    public Settings getSettings() {
+        return settings;
+    }
+
+    // ===== 統計 =====
+
+    public long getHotHits() {
+        return hotHits.sum();
+    }
+
+    public long getMemtableHits() {
+        return memtableHits.sum();
+    }
+
+    public long getSegmentHits() {
+        return segmentHits.sum();
+    }
+
+    public long getMisses() {
+        return misses.sum();
+    }
+
+    public long getBlockCacheHits() {
+        return blockCache.getHits();
+    }
+
+    public long getBlockReads() {
+        return blockCache.getMisses();
+    }
+
+    /**
+     * レコードの検索の回数（{@link #getLookupsOverBudget()}と合わせて、レイテンシの目標を確かめる）。
+     */
+    public long getLookups() {
+        return lookups.sum();
+    }
+
+    /**
+     * lookupBudgetNanos を超えた検索の回数。
+     */
+    public long getLookupsOverBudget() {
+        return lookupsOverBudget.sum();
+    }
+
+    /**
+     * 起動してからの検索の p99 が lookupBudgetNanos 以内か（目標を超えた検索が1%以下か）。
+     */
+    public boolean isWithinLookupBudget() {
+        return getLookupsOverBudget() * 100 <= getLookups();
+    }
+
+    public int getHotSize() {
+        return hot.size();
+    }
+
+    public int getSegmentCount() {
+        return segments.size();
+    }
+
+    /**
+     * セグメントファイルの合計の大きさ。
+     */
+    public long getDiskBytes() throws IOException {
+        long bytes = 0;
+        for (Segment segment : segments) {
+            bytes += segment.sizeBytes();
+        }
+        return bytes;
+    }
+
+    /**
+     * 疎な索引のブロック数（ヒープに持つ先頭のキーの数）。
+     */
+    public long getIndexedBlocks() {
+        return segments.stream().mapToLong(Segment::blockCount).sum();
+    }
+
+    // ===== レコードの符号化 =====
+
+    private record UserRecord(byte[] userHandle, List<byte[]> credentialIds) {
+    }
+
+    private record StoredCredential(byte[] userHandle, AuthenticatorInfo authenticator) {
+    }
+
+    private static byte[] key(byte type, String value) {
+        return key(type, value.getBytes(StandardCharsets.UTF_8));
+    }
+
+    private static byte[] key(byte type, byte[] value) {
+        byte[] key = new byte[1 + value.length];
+        key[0] = type;
+        System.arraycopy(value, 0, key, 1, value.length);
+        return key;
+    }
+
+    private static byte[] encodeUser(UserRecord user) {
+        int length = 2 + user.userHandle().length + 4;
+        for (byte[] id : user.credentialIds()) {
+            length += 2 + id.length;
+        }
+        ByteBuffer out = ByteBuffer.allocate(length);
+        putBytes(out, user.userHandle());
+        out.putInt(user.credentialIds().size());
+        user.credentialIds().forEach(id -> putBytes(out, id));
+        return out.array();
+    }
+
+    private static UserRecord decodeUser(byte[] value) {
+        ByteBuffer in = ByteBuffer.wrap(value);
+        byte[] userHandle = getBytes(in);
+        int count = in.getInt();
+        List<byte[]> credentialIds = new ArrayList<>(count);
+        for (int i = 0; i < count; i++) {
+            credentialIds.add(getBytes(in));
+        }
+        return new UserRecord(userHandle, credentialIds);
+    }
+
+    private static byte[] encodeCredential(byte[] userHandle, AuthenticatorInfo authenticator) {
+        byte[] username = utf8(authenticator.getUsername());
+        byte[] nickname = utf8(authenticator.getNickname());
+        ByteBuffer out = ByteBuffer.allocate(length(userHandle) + length(authenticator.getPublicKey())
+                + length(authenticator.getAaguid()) + length(username) + length(nickname) + 8);
+        putBytes(out, userHandle);
+        putBytes(out, authenticator.getPublicKey());
+        putBytes(out, authenticator.getAaguid());
+        putBytes(out, username);
+        putBytes(out, nickname);
+        out.putLong(authenticator.getLastUsedAt());
+        return out.array();
+    }
+
+    private static StoredCredential decodeCredential(byte[] credentialId, byte[] value) {
+        ByteBuffer in = ByteBuffer.wrap(value);
+        byte[] userHandle = getBytes(in);
+        AuthenticatorInfo authenticator = new AuthenticatorInfo(credentialId, getBytes(in), getBytes(in),
+                getString(in), getString(in), in.getLong());
+        return new StoredCredential(userHandle, authenticator);
+    }
+
+    private static byte[] encodeString(String value) {
+        byte[] bytes = utf8(value);
+        ByteBuffer out = ByteBuffer.allocate(length(bytes));
+        putBytes(out, bytes);
+        return out.array();
+    }
+
+    private static byte[] utf8(String value) {
+        return value == null ? null : value.getBytes(StandardCharsets.UTF_8);
+    }
+
+    private static int length(byte[] value) {
+        return 2 + (value == null ? 0 : value.length);
+    }
+
+    /**
+     * 長さ(2) | バイト列。長さ 0xffff は null。
+     */
+    private static void putBytes(ByteBuffer out, byte[] value) {
+        if (value == null) {
+            out.putShort((short) 0xffff);
+            return;
+        }
+        out.putShort((short) value.length).put(value);
+    }
+
+    private static byte[] getBytes(ByteBuffer in) {
+        int length = in.getShort() & 0xffff;
+        if (length == 0xffff) {
+            return null;
+        }
+        byte[] bytes = new byte[length];
+        in.get(bytes);
+        return bytes;
+    }
+
+    private static String getString(ByteBuffer in) {
+        byte[] bytes = getBytes(in);
+        return bytes == null ? null : new String(bytes, StandardCharsets.UTF_8);
+    }
+
+    private static long entrySize(byte[] key, byte[] value) {
+        return ENTRY_OVERHEAD + key.length + value.length;
+    }
+
+    private static ConcurrentSkipListMap<byte[], byte[]> newMemtable() {
+        return new ConcurrentSkipListMap<>(Arrays::compareUnsigned);
+    }
+
+    private Path segmentFile(int id) {
+        return directory.resolve(String.format("%010d%s", id, SEGMENT_SUFFIX));
+    }
+
+    private Object writeLockFor(String username) {
+        return writeLocks[Math.floorMod(username.hashCode(), writeLocks.length)];
+    }
+}
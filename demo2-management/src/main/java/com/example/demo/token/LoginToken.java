@@ -0,0 +1,12 @@
+package com.example.demo.token;
+
+/**
+ * ログイン後に発行する署名付きトークンの内容。
+ *
+ * @param tenant       発行したテナントのid（他のテナントでは使えない）
+ * @param username     ログインしたユーザー
+ * @param credentialId ログインに使った認証器（検証結果をキャッシュで共有するため、書き換えないこと）
+ * @param expiresAt    有効期限（エポック秒）
+ */
+public record LoginToken(String tenant, String username, byte[] credentialId, long expiresAt) {
+}
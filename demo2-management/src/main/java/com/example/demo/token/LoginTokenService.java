@@ -0,0 +1,305 @@
+package com.example.demo.token;
+
+import jakarta.servlet.http.Cookie;
+import jakarta.servlet.http.HttpServletRequest;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Component;
+
+import javax.crypto.Mac;
+import javax.crypto.spec.SecretKeySpec;
+import java.nio.BufferUnderflowException;
+import java.nio.ByteBuffer;
+import java.nio.charset.StandardCharsets;
+import java.security.GeneralSecurityException;
+import java.security.MessageDigest;
+import java.security.SecureRandom;
+import java.util.ArrayList;
+import java.util.Base64;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * ログイン後の署名付きトークン（ステートレス）の発行と検証。
+ *
+ * <p>【目的】
+ * ログイン済みかどうかを HttpSession の username で判定すると、認証後の全てのリクエストがセッションストアに依存する。
+ * webauthn.token.enabled=true の場合、ログイン時に短期間有効なトークンを発行し、
+ * 以降のリクエストは署名の検証だけで username を得る（他のサービスも同じ鍵で検証できる）。
+ *
+ * <p>【形式】
+ * {@code <鍵id>.<base64url(内容)>.<base64url(HMAC-SHA256(内容))>}
+ * 内容はバイナリ: バージョン(1) | 有効期限（エポック秒, 8） | テナントid長(1) | テナントid | credentialId長(2) | credentialId | username
+ *
+ * <p>【鍵のローテーション】
+ * <ul>
+ *   <li>webauthn.token.keys を指定した場合（複数ノード構成）: 「鍵id:base64の鍵」をカンマ区切りで並べる。
+ *       先頭の鍵で署名し、全ての鍵で検証する。新しい鍵を先頭に追加し、古い鍵は有効期限が過ぎてから外す</li>
+ *   <li>指定しない場合（単一ノード）: 起動時に鍵を生成し、rotation-minutes ごとに新しい鍵に切り替える。
+ *       1つ前の鍵は、それで署名したトークンが期限切れになるまで検証に使う</li>
+ * </ul>
+ *
+ * <p>【検証のキャッシュ】
+ * 検証に成功したトークンは、文字列をキーにキャッシュする。2回目以降はマップの検索だけで済む（割り当てなし）。
+ * キャッシュが cache-size を超えたら全て捨てる（検証し直すだけで、結果は変わらない）。
+ *
+ * <p>トークンはステートレスのため、ログアウトしても有効期限まではサーバー側で無効にできない（有効期限を短くする）。
+ */
+@Component
+public class LoginTokenService {
+
+    public static final String COOKIE_NAME = "WEBAUTHN_TOKEN";
+
+    private static final String ALGORITHM = "HmacSHA256";
+    private static final byte VERSION = 1;
+    private static final int KEY_BYTES = 32;
+    private static final int MAX_TOKEN_LENGTH = 2048;
+    private static final String BEARER_PREFIX = "Bearer ";
+    private static final Base64.Encoder BASE64URL = Base64.getUrlEncoder().withoutPadding();
+    private static final Base64.Decoder BASE64URL_DECODER = Base64.getUrlDecoder();
+
+    private final boolean enabled;
+    private final long ttlSeconds;
+    private final long rotationSeconds;
+    private final int cacheSize;
+    private final boolean generatedKeys;
+    private final SecureRandom random = new SecureRandom();
+    private final ConcurrentHashMap<String, LoginToken> verified = new ConcurrentHashMap<>();  // key: トークン
+    private volatile KeyRing keyRing;
+
+    public LoginTokenService(
+            @Value("${webauthn.token.enabled:false}") boolean enabled,
+            @Value("${webauthn.token.ttl-seconds:900}") long ttlSeconds,
+            @Value("${webauthn.token.keys:}") String keys,
+            @Value("${webauthn.token.rotation-minutes:60}") long rotationMinutes,
+            @Value("${webauthn.token.cache-size:10000}") int cacheSize) {
+        this.enabled = enabled;
+        this.ttlSeconds = ttlSeconds;
+        // 1つ前の鍵だけを残すため、ローテーションの間隔は有効期限より短くしない
+        this.rotationSeconds = Math.max(TimeUnit.MINUTES.toSeconds(rotationMinutes), ttlSeconds);
+        this.cacheSize = cacheSize;
+        this.generatedKeys = keys.isBlank();
+        this.keyRing = generatedKeys ? generateKeyRing(null) : parseKeyRing(keys);
+    }
+
+    public boolean isEnabled() {
+        return enabled;
+    }
+
+    public long getTtlSeconds() {
+        return ttlSeconds;
+    }
+
+    /**
+     * トークンを発行する。
+     */
+    public String issue(String tenant, String username, byte[] credentialId) {
+        long now = System.currentTimeMillis() / 1000;
+        byte[] tenantBytes = tenant.getBytes(StandardCharsets.UTF_8);
+        byte[] usernameBytes = username.getBytes(StandardCharsets.UTF_8);
+        if (tenantBytes.length > 0xff || credentialId.length > 0xffff) {
+            throw new IllegalArgumentException("Tenant id or credential ID is too long for a login token");
+        }
+        byte[] payload = ByteBuffer.allocate(1 + 8 + 1 + tenantBytes.length + 2 + credentialId.length + usernameBytes.length)
+                .put(VERSION)
+                .putLong(now + ttlSeconds)
+                .put((byte) tenantBytes.length)
+                .put(tenantBytes)
+                .putShort((short) credentialId.length)
+                .put(credentialId)
+                .put(usernameBytes)
+                .array();
+
+        SigningKey key = currentKeyRing(now).signingKey();
+        return key.id() + "." + BASE64URL.encodeToString(payload) + "." + BASE64URL.encodeToString(key.sign(payload));
+    }
+
+    /**
+     * リクエストのトークン（Authorizationヘッダーの Bearer、なければCookie）を検証する。
+     *
+     * @param tenant リクエストのテナントid（発行したテナントと異なる場合は無効）
+     * @return 有効なトークンの内容（トークンがない・無効・期限切れの場合はnull）
+     */
+    public LoginToken verify(HttpServletRequest request, String tenant) {
+        String token = extract(request);
+        if (token == null) {
+            return null;
+        }
+        LoginToken loginToken = verify(token, System.currentTimeMillis() / 1000);
+        return loginToken != null && loginToken.tenant().equals(tenant) ? loginToken : null;
+    }
+
+    /**
+     * トークンを検証する。
+     *
+     * @return 有効なトークンの内容（無効・期限切れの場合はnull）
+     */
+    public LoginToken verify(String token, long nowSeconds) {
+        LoginToken cached = verified.get(token);
+        if (cached != null) {
+            if (cached.expiresAt() > nowSeconds) {
+                return cached;
+            }
+            verified.remove(token);
+            return null;
+        }
+
+        LoginToken loginToken = parseAndVerify(token, nowSeconds);
+        if (loginToken != null) {
+            if (verified.size() >= cacheSize) {
+                verified.clear();
+            }
+            verified.put(token, loginToken);
+        }
+        return loginToken;
+    }
+
+    private LoginToken parseAndVerify(String token, long nowSeconds) {
+        if (token.length() > MAX_TOKEN_LENGTH) {
+            return null;
+        }
+        int first = token.indexOf('.');
+        int second = token.indexOf('.', first + 1);
+        if (first <= 0 || second < 0) {
+            return null;
+        }
+        SigningKey key = keyRing.keys().get(token.substring(0, first));
+        if (key == null) {
+            return null;  // 未知の鍵、またはローテーションで外した鍵
+        }
+        try {
+            byte[] payload = BASE64URL_DECODER.decode(token.substring(first + 1, second));
+            byte[] signature = BASE64URL_DECODER.decode(token.substring(second + 1));
+            if (!MessageDigest.isEqual(key.sign(payload), signature)) {
+                return null;
+            }
+
+            ByteBuffer buffer = ByteBuffer.wrap(payload);
+            if (buffer.get() != VERSION) {
+                return null;
+            }
+            long expiresAt = buffer.getLong();
+            if (expiresAt <= nowSeconds) {
+                return null;
+            }
+            byte[] tenant = new byte[buffer.get() & 0xff];
+            buffer.get(tenant);
+            byte[] credentialId = new byte[buffer.getShort() & 0xffff];
+            buffer.get(credentialId);
+            byte[] username = new byte[buffer.remaining()];
+            buffer.get(username);
+            return new LoginToken(new String(tenant, StandardCharsets.UTF_8),
+                    new String(username, StandardCharsets.UTF_8), credentialId, expiresAt);
+        } catch (IllegalArgumentException | BufferUnderflowException e) {
+            return null;  // base64urlとして不正、または内容が短すぎる
+        }
+    }
+
+    private static String extract(HttpServletRequest request) {
+        String authorization = request.getHeader("Authorization");
+        if (authorization != null && authorization.startsWith(BEARER_PREFIX)) {
+            return authorization.substring(BEARER_PREFIX.length());
+        }
+        Cookie[] cookies = request.getCookies();
+        if (cookies != null) {
+            for (Cookie cookie : cookies) {
+                if (COOKIE_NAME.equals(cookie.getName())) {
+                    return cookie.getValue();
+                }
+            }
+        }
+        return null;
+    }
+
+    /**
+     * 署名に使う鍵の一覧（生成した鍵の場合は、期限が来ていれば新しい鍵に切り替える）。
+     */
+    private KeyRing currentKeyRing(long nowSeconds) {
+        KeyRing current = keyRing;
+        if (generatedKeys && nowSeconds >= current.rotateAt()) {
+            synchronized (this) {
+                current = keyRing;
+                if (nowSeconds >= current.rotateAt()) {
+                    current = generateKeyRing(current.signingKey());
+                    keyRing = current;
+                }
+            }
+        }
+        return current;
+    }
+
+    /**
+     * 新しい鍵で署名し、1つ前の鍵（あれば）でも検証できる鍵の一覧を作る。
+     */
+    private KeyRing generateKeyRing(SigningKey previous) {
+        byte[] secret = new byte[KEY_BYTES];
+        random.nextBytes(secret);
+        byte[] id = new byte[6];
+        random.nextBytes(id);
+        SigningKey key = new SigningKey(BASE64URL.encodeToString(id), secret);
+
+        Map<String, SigningKey> keys = new LinkedHashMap<>();
+        keys.put(key.id(), key);
+        if (previous != null) {
+            keys.put(previous.id(), previous);
+        }
+        return new KeyRing(key, Map.copyOf(keys), System.currentTimeMillis() / 1000 + rotationSeconds);
+    }
+
+    private static KeyRing parseKeyRing(String keys) {
+        List<SigningKey> parsed = new ArrayList<>();
+        for (String entry : keys.split(",")) {
+            String[] parts = entry.trim().split(":", 2);
+            if (parts.length != 2 || parts[0].isEmpty() || parts[0].contains(".")) {
+                throw new IllegalArgumentException("webauthn.token.keys must be a list of <id>:<base64 key>");
+            }
+            byte[] secret = Base64.getDecoder().decode(parts[1]);
+            if (secret.length < KEY_BYTES) {
+                throw new IllegalArgumentException("Login token key " + parts[0] + " must be at least " + KEY_BYTES + " bytes");
+            }
+            parsed.add(new SigningKey(parts[0], secret));
+        }
+        Map<String, SigningKey> byId = new LinkedHashMap<>();
+        parsed.forEach(key -> byId.put(key.id(), key));
+        return new KeyRing(parsed.get(0), Map.copyOf(byId), Long.MAX_VALUE);
+    }
+
+    /**
+     * 署名に使う鍵と、検証に使える鍵の一覧（不変。ローテーションでは全体を差し替える）。
+     */
+    private record KeyRing(SigningKey signingKey, Map<String, SigningKey> keys, long rotateAt) {
+    }
+
+    /**
+     * HMACの鍵。Mac はスレッドごとに初期化済みのものを使い回す。
+     */
+    private static final class SigningKey {
+
+        private final String id;
+        private final ThreadLocal<Mac> mac;
+
+        SigningKey(String id, byte[] secret) {
+            this.id = id;
+            SecretKeySpec key = new SecretKeySpec(secret, ALGORITHM);
+            this.mac = ThreadLocal.withInitial(() -> {
+                try {
+                    Mac instance = Mac.getInstance(ALGORITHM);
+                    instance.init(key);
+                    return instance;
+                } catch (GeneralSecurityException e) {
+                    throw new IllegalStateException(e);
+                }
+            });
+        }
+
+        String id() {
+            return id;
+        }
+
+        byte[] sign(byte[] data) {
+            return mac.get().doFinal(data);
+        }
+    }
+}
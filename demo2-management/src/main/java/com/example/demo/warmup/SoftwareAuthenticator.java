@@ -0,0 +1,209 @@
+package com.example.demo.warmup;
+
+import com.fasterxml.jackson.dataformat.cbor.CBORFactory;
+import com.fasterxml.jackson.dataformat.cbor.CBORGenerator;
+import com.yubico.webauthn.AssertionRequest;
+import com.yubico.webauthn.data.ByteArray;
+import com.yubico.webauthn.data.PublicKeyCredentialCreationOptions;
+
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.math.BigInteger;
+import java.nio.ByteBuffer;
+import java.nio.charset.StandardCharsets;
+import java.security.GeneralSecurityException;
+import java.security.KeyPair;
+import java.security.KeyPairGenerator;
+import java.security.MessageDigest;
+import java.security.SecureRandom;
+import java.security.Signature;
+import java.security.interfaces.ECPublicKey;
+import java.security.spec.ECGenParameterSpec;
+import java.util.Base64;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+
+/**
+ * プロセス内で動くソフトウェア認証器（ウォームアップ・負荷試験用）。
+ *
+ * <p>ブラウザの navigator.credentials.create() / get() が返す値を、webauthn.js と同じJSONの形で作る。
+ * <ul>
+ *   <li>鍵: ES256（P-256）</li>
+ *   <li>attestation: none（attStmt は空）</li>
+ *   <li>フラグ: UP（ユーザー在席）と UV（ユーザー検証）を常に立てる</li>
+ *   <li>署名カウンター: 常に0（カウンター非対応の認証器と同じ扱い）</li>
+ * </ul>
+ *
+ * <p>起動時のウォームアップ（WarmupRunner）と負荷試験（loadtest.CeremonyClient）で使う。
+ * 秘密鍵はメモリ上にのみ保持する。実際の認証器の代わりに使ってはいけない。
+ */
+public class SoftwareAuthenticator {
+
+    private static final byte FLAG_UP = 0x01;
+    private static final byte FLAG_UV = 0x04;
+    private static final byte FLAG_AT = 0x40;
+    private static final byte[] AAGUID = new byte[16];  // attestation none のため全て0
+
+    private static final Base64.Encoder BASE64URL = Base64.getUrlEncoder().withoutPadding();
+
+    private final String origin;
+    private final SecureRandom random = new SecureRandom();
+    private final CBORFactory cborFactory = new CBORFactory();
+    private final Map<ByteArray, KeyPair> keys = new ConcurrentHashMap<>();  // key: credentialId
+
+    public SoftwareAuthenticator(String origin) {
+        this.origin = origin;
+    }
+
+    /**
+     * 登録: 新しい鍵を生成し、PublicKeyCredential（attestation）をJSONの形で返す。
+     */
+    public Map<String, Object> create(PublicKeyCredentialCreationOptions options) {
+        try {
+            byte[] credentialId = new byte[16];
+            random.nextBytes(credentialId);
+
+            KeyPairGenerator generator = KeyPairGenerator.getInstance("EC");
+            generator.initialize(new ECGenParameterSpec("secp256r1"), random);
+            KeyPair keyPair = generator.generateKeyPair();
+            keys.put(new ByteArray(credentialId), keyPair);
+
+            byte[] cosePublicKey = encodeCosePublicKey((ECPublicKey) keyPair.getPublic());
+            byte[] authenticatorData = ByteBuffer.allocate(32 + 1 + 4 + 16 + 2 + credentialId.length + cosePublicKey.length)
+                    .put(sha256(options.getRp().getId().getBytes(StandardCharsets.UTF_8)))
+                    .put((byte) (FLAG_UP | FLAG_UV | FLAG_AT))
+                    .putInt(0)
+                    .put(AAGUID)
+                    .putShort((short) credentialId.length)
+                    .put(credentialId)
+                    .put(cosePublicKey)
+                    .array();
+
+            byte[] clientDataJson = clientDataJson("webauthn.create", options.getChallenge());
+
+            Map<String, Object> response = new LinkedHashMap<>();
+            response.put("attestationObject", base64Url(encodeAttestationObject(authenticatorData)));
+            response.put("clientDataJSON", base64Url(clientDataJson));
+            return credential(credentialId, response);
+        } catch (GeneralSecurityException e) {
+            throw new IllegalStateException(e);
+        }
+    }
+
+    /**
+     * 認証: allowCredentials に含まれる鍵で署名し、PublicKeyCredential（assertion）をJSONの形で返す。
+     */
+    public Map<String, Object> get(AssertionRequest request) {
+        var options = request.getPublicKeyCredentialRequestOptions();
+        ByteArray credentialId = options.getAllowCredentials().orElseThrow().stream()
+                .map(descriptor -> descriptor.getId())
+                .filter(keys::containsKey)
+                .findFirst()
+                .orElseThrow(() -> new IllegalStateException("No credential for this request"));
+        try {
+            byte[] authenticatorData = ByteBuffer.allocate(32 + 1 + 4)
+                    .put(sha256(options.getRpId().getBytes(StandardCharsets.UTF_8)))
+                    .put((byte) (FLAG_UP | FLAG_UV))
+                    .putInt(0)
+                    .array();
+            byte[] clientDataJson = clientDataJson("webauthn.get", options.getChallenge());
+
+            Signature signature = Signature.getInstance("SHA256withECDSA");
+            signature.initSign(keys.get(credentialId).getPrivate());
+            signature.update(authenticatorData);
+            signature.update(sha256(clientDataJson));
+
+            Map<String, Object> response = new LinkedHashMap<>();
+            response.put("authenticatorData", base64Url(authenticatorData));
+            response.put("clientDataJSON", base64Url(clientDataJson));
+            response.put("signature", base64Url(signature.sign()));
+            return credential(credentialId.getBytes(), response);
+        } catch (GeneralSecurityException e) {
+            throw new IllegalStateException(e);
+        }
+    }
+
+    /**
+     * 鍵を捨てる（サーバー側で削除した認証器。ソーク試験で鍵が溜まり続けないようにする）。
+     */
+    public void forget(byte[] credentialId) {
+        keys.remove(new ByteArray(credentialId));
+    }
+
+    private Map<String, Object> credential(byte[] credentialId, Map<String, Object> response) {
+        Map<String, Object> credential = new LinkedHashMap<>();
+        credential.put("id", base64Url(credentialId));
+        credential.put("rawId", base64Url(credentialId));
+        credential.put("response", response);
+        credential.put("type", "public-key");
+        credential.put("clientExtensionResults", Map.of());
+        return credential;
+    }
+
+    private byte[] clientDataJson(String type, ByteArray challenge) {
+        return ("{\"type\":\"" + type + "\",\"challenge\":\"" + challenge.getBase64Url()
+                + "\",\"origin\":\"" + origin + "\",\"crossOrigin\":false}").getBytes(StandardCharsets.UTF_8);
+    }
+
+    /**
+     * attestationObject: {"fmt": "none", "attStmt": {}, "authData": authenticatorData}
+     */
+    private byte[] encodeAttestationObject(byte[] authenticatorData) {
+        ByteArrayOutputStream out = new ByteArrayOutputStream();
+        try (CBORGenerator generator = cborFactory.createGenerator(out)) {
+            generator.writeStartObject(3);
+            generator.writeStringField("fmt", "none");
+            generator.writeFieldName("attStmt");
+            generator.writeStartObject(0);
+            generator.writeEndObject();
+            generator.writeFieldName("authData");
+            generator.writeBinary(authenticatorData);
+            generator.writeEndObject();
+        } catch (IOException e) {
+            throw new UncheckedIOException(e);
+        }
+        return out.toByteArray();
+    }
+
+    /**
+     * COSE_Key（EC2, P-256, ES256）: {1: 2, 3: -7, -1: 1, -2: x, -3: y}
+     */
+    private byte[] encodeCosePublicKey(ECPublicKey publicKey) {
+        ByteArrayOutputStream out = new ByteArrayOutputStream();
+        try (CBORGenerator generator = cborFactory.createGenerator(out)) {
+            generator.writeStartObject(5);
+            generator.writeFieldId(1);
+            generator.writeNumber(2);
+            generator.writeFieldId(3);
+            generator.writeNumber(-7);
+            generator.writeFieldId(-1);
+            generator.writeNumber(1);
+            generator.writeFieldId(-2);
+            generator.writeBinary(toUnsigned32(publicKey.getW().getAffineX()));
+            generator.writeFieldId(-3);
+            generator.writeBinary(toUnsigned32(publicKey.getW().getAffineY()));
+            generator.writeEndObject();
+        } catch (IOException e) {
+            throw new UncheckedIOException(e);
+        }
+        return out.toByteArray();
+    }
+
+    private static byte[] toUnsigned32(BigInteger value) {
+        byte[] bytes = value.toByteArray();
+        byte[] result = new byte[32];
+        int length = Math.min(bytes.length, 32);
+        System.arraycopy(bytes, bytes.length - length, result, 32 - length, length);
+        return result;
+    }
+
+    private static byte[] sha256(byte[] data) throws GeneralSecurityException {
+        return MessageDigest.getInstance("SHA-256").digest(data);
+    }
+
+    private static String base64Url(byte[] bytes) {
+        return BASE64URL.encodeToString(bytes);
+    }
+}
@@ -0,0 +1,172 @@
+package com.example.demo.warmup;
+
+import com.example.demo.backend.WebAuthnBackend;
+import com.example.demo.controller.WebAuthnController.AuthenticationFinishRequest;
+import com.example.demo.controller.WebAuthnController.RegistrationFinishRequest;
+import com.example.demo.service.WebAuthnService;
+import com.example.demo.tenant.TenantConfig;
+import com.example.demo.web.YubicoJsonHttpMessageConverter;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.yubico.webauthn.AssertionRequest;
+import com.yubico.webauthn.data.PublicKeyCredentialCreationOptions;
+import io.micrometer.core.instrument.Gauge;
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.TimeGauge;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.boot.ApplicationArguments;
+import org.springframework.boot.ApplicationRunner;
+import org.springframework.boot.autoconfigure.condition.ConditionalOnProperty;
+import org.springframework.stereotype.Component;
+
+import java.lang.management.ManagementFactory;
+import java.time.Duration;
+import java.util.Map;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * 起動時のウォームアップ: 登録・認証をプロセス内で繰り返し、JITコンパイルを済ませてからトラフィックを受け付ける。
+ *
+ * <p>デプロイ直後は Jackson・YubicoのCBOR/COSE解析・署名検証がインタープリタで動くため、最初のログインが遅い。
+ * 起動時に{@link SoftwareAuthenticator}で登録・認証を行い、本番と同じコードを先に実行しておく。
+ *
+ * <p>【本番のデータに影響しない】
+ * ウォームアップ専用の WebAuthnBackend / WebAuthnService を作って使う。
+ * リクエスト・レスポンスのJSON変換は、アプリケーションと同じ ObjectMapper・コンバーターを使う。
+ *
+ * <p>【レディネス】
+ * ApplicationRunnerの実行が終わるまで、Spring Bootはレディネスを ACCEPTING_TRAFFIC にしない
+ * （/actuator/health/readiness は OUT_OF_SERVICE を返す）。
+ * 次のどちらかに達するまで繰り返す（時間の上限は webauthn.warmup.max-seconds）。
+ * <ul>
+ *   <li>webauthn.warmup.iterations 回</li>
+ *   <li>直近 WINDOW 回の平均が webauthn.warmup.target-millis 以下（0なら判定しない）</li>
+ * </ul>
+ *
+ * <p>【メトリクス】
+ * webauthn.warmup.duration（所要時間）、webauthn.warmup.iterations（回数）、
+ * webauthn.warmup.ceremony.latency（stage=before: 最初の WINDOW 回の平均、stage=after: 最後の WINDOW 回の平均）、
+ * webauthn.warmup.first-ceremony（JVMの起動から最初の登録・認証が成功するまでの時間。起動時間の計測に使う）。
+ */
+@Component
+@ConditionalOnProperty(name = "webauthn.warmup.enabled", havingValue = "true")
+public class WarmupRunner implements ApplicationRunner {
+
+    private static final Logger log = LoggerFactory.getLogger(WarmupRunner.class);
+
+    private static final int WINDOW = 20;
+
+    private final ObjectMapper objectMapper;
+    private final YubicoJsonHttpMessageConverter yubicoJsonConverter;
+    private final int iterations;
+    private final long targetNanos;
+    private final Duration maxDuration;
+
+    private final AtomicLong durationNanos = new AtomicLong();
+    private final AtomicLong completedIterations = new AtomicLong();
+    private final AtomicLong beforeLatencyNanos = new AtomicLong();
+    private final AtomicLong afterLatencyNanos = new AtomicLong();
+    private final AtomicLong firstCeremonyUptimeMillis = new AtomicLong();
+
+    public WarmupRunner(
+            ObjectMapper objectMapper,
+            YubicoJsonHttpMessageConverter yubicoJsonConverter,
+            MeterRegistry meterRegistry,
+            @Value("${webauthn.warmup.iterations:200}") int iterations,
+            @Value("${webauthn.warmup.target-millis:0}") double targetMillis,
+            @Value("${webauthn.warmup.max-seconds:60}") long maxSeconds) {
+        this.objectMapper = objectMapper;
+        this.yubicoJsonConverter = yubicoJsonConverter;
+        this.iterations = iterations;
+        this.targetNanos = (long) (targetMillis * 1_000_000);
+        this.maxDuration = Duration.ofSeconds(maxSeconds);
+
+        TimeGauge.builder("webauthn.warmup.duration", durationNanos, TimeUnit.NANOSECONDS, AtomicLong::get)
+                .description("Time spent in the startup warm-up")
+                .register(meterRegistry);
+        Gauge.builder("webauthn.warmup.iterations", completedIterations, AtomicLong::get)
+                .description("Register and authenticate iterations run during warm-up")
+                .register(meterRegistry);
+        TimeGauge.builder("webauthn.warmup.ceremony.latency", beforeLatencyNanos, TimeUnit.NANOSECONDS, AtomicLong::get)
+                .tag("stage", "before")
+                .description("Mean register and authenticate time of the first " + WINDOW + " iterations")
+                .register(meterRegistry);
+        TimeGauge.builder("webauthn.warmup.ceremony.latency", afterLatencyNanos, TimeUnit.NANOSECONDS, AtomicLong::get)
+                .tag("stage", "after")
+                .description("Mean register and authenticate time of the last " + WINDOW + " iterations")
+                .register(meterRegistry);
+        TimeGauge.builder("webauthn.warmup.first-ceremony", firstCeremonyUptimeMillis, TimeUnit.MILLISECONDS, AtomicLong::get)
+                .description("JVM uptime when the first warm-up register and authenticate succeeded")
+                .register(meterRegistry);
+    }
+
+    @Override
+    public void run(ApplicationArguments args) {
+        WebAuthnService service = new WebAuthnService(new WebAuthnBackend());
+        SoftwareAuthenticator authenticator = new SoftwareAuthenticator(TenantConfig.DEFAULT.origins().iterator().next());
+
+        long[] recent = new long[WINDOW];  // 直近 WINDOW 回の所要時間（リングバッファ）
+        long recentSum = 0;
+        long start = System.nanoTime();
+        int i = 0;
+        try {
+            while (i < iterations && System.nanoTime() - start < maxDuration.toNanos()) {
+                long t0 = System.nanoTime();
+                runCeremonies(service, authenticator, "warmup-" + i);
+                long elapsed = System.nanoTime() - t0;
+
+                if (i == 0) {
+                    firstCeremonyUptimeMillis.set(ManagementFactory.getRuntimeMXBean().getUptime());
+                }
+                recentSum += elapsed - recent[i % WINDOW];
+                recent[i % WINDOW] = elapsed;
+                i++;
+                if (i == WINDOW) {
+                    beforeLatencyNanos.set(recentSum / WINDOW);
+                }
+                if (i >= WINDOW && targetNanos > 0 && recentSum / WINDOW <= targetNanos) {
+                    break;
+                }
+            }
+        } catch (Exception e) {
+            // ウォームアップの失敗で起動を止めない（最初のリクエストが遅くなるだけ）
+            log.warn("Warm-up stopped after {} iterations", i, e);
+        }
+
+        durationNanos.set(System.nanoTime() - start);
+        completedIterations.set(i);
+        if (i > 0) {
+            afterLatencyNanos.set(recentSum / Math.min(i, WINDOW));
+        }
+        log.info("Warm-up finished: {} iterations in {} ms, ceremony latency {} ms -> {} ms",
+                i, TimeUnit.NANOSECONDS.toMillis(durationNanos.get()),
+                beforeLatencyNanos.get() / 1_000_000.0, afterLatencyNanos.get() / 1_000_000.0);
+    }
+
+    /**
+     * 登録と認証を1回ずつ行う（JSONの変換はブラウザとのやり取りと同じ経路を通す）。
+     */
+    private void runCeremonies(WebAuthnService service, SoftwareAuthenticator authenticator, String username)
+            throws Exception {
+        PublicKeyCredentialCreationOptions options = service.startRegistration(username);
+        yubicoJsonConverter.getObjectMapper().writeValueAsBytes(options);
+        RegistrationFinishRequest registration = objectMapper.readValue(
+                objectMapper.writeValueAsBytes(Map.of(
+                        "username", username,
+                        "credential", authenticator.create(options),
+                        "nickname", "warmup")),
+                RegistrationFinishRequest.class);
+        service.finishRegistration(username, options, registration.getCredential(), registration.getNickname());
+
+        AssertionRequest assertionRequest = service.startAuthentication(username);
+        yubicoJsonConverter.getObjectMapper().writeValueAsBytes(assertionRequest);
+        AuthenticationFinishRequest authentication = objectMapper.readValue(
+                objectMapper.writeValueAsBytes(Map.of(
+                        "username", username,
+                        "credential", authenticator.get(assertionRequest))),
+                AuthenticationFinishRequest.class);
+        service.finishAuthentication(assertionRequest, authentication.getCredential());
+    }
+}
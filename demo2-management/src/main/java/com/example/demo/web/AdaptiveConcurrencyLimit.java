@@ -0,0 +1,128 @@
+package com.example.demo.web;
+
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * 計測したレイテンシから同時実行数の上限を自動調整するリミッター（Vegas方式）。
+ *
+ * <p>【アルゴリズム】
+ * <ul>
+ *   <li>負荷がないときのレイテンシ（rttNoLoad）を最小値として記録する</li>
+ *   <li>待ち行列の推定値 = 上限 × (1 - rttNoLoad / 直近のレイテンシ)</li>
+ *   <li>待ち行列が alpha 未満なら上限を増やし、beta を超えたら減らす</li>
+ * </ul>
+ *
+ * <p>過負荷時はレイテンシの悪化を検知して上限が下がり、超過分のリクエストは即座に拒否される。
+ * 待たせずに拒否することで、受け付けたリクエストのレイテンシを保つ。
+ *
+ * <p>rttNoLoad は、上限に余裕がある（負荷が低い）ときにだけ定期的に測り直す。
+ * 過負荷中に測り直すと、待ち時間を含んだ値を基準にしてしまい上限が膨らみ続けるため。
+ *
+ * <p>【エンドポイントの種類ごとの基準】
+ * 処理の重さが違うエンドポイント（開始と、署名を検証する完了）の最小値を1つにすると、
+ * 軽いリクエストが続いたときに rttNoLoad が下がり、重いリクエストが待たされていると誤認して上限が下がり続ける。
+ * rttNoLoad は種類（endpointClass）ごとに持ち、レイテンシは同じ種類の rttNoLoad と比べる（上限は全体で1つ）。
+ */
+public class AdaptiveConcurrencyLimit {
+
+    private static final int PROBE_INTERVAL = 1000;  // rttNoLoad を測り直す間隔（サンプル数）
+
+    private final int minLimit;
+    private final int maxLimit;
+    private final AtomicInteger inFlight = new AtomicInteger();
+
+    private volatile int limit;
+    private double estimatedLimit;
+    private final long[] rttNoLoadNanos;  // 添字: endpointClass
+    private final long[] sampleCounts;
+
+    public AdaptiveConcurrencyLimit(int initialLimit, int minLimit, int maxLimit) {
+        this(initialLimit, minLimit, maxLimit, 1);
+    }
+
+    /**
+     * @param endpointClasses rttNoLoad を分けて持つエンドポイントの種類の数（{@link #release(int, long, boolean)}の endpointClass は 0 〜 この値-1）
+     */
+    public AdaptiveConcurrencyLimit(int initialLimit, int minLimit, int maxLimit, int endpointClasses) {
+        this.minLimit = minLimit;
+        this.maxLimit = maxLimit;
+        this.limit = initialLimit;
+        this.estimatedLimit = initialLimit;
+        this.rttNoLoadNanos = new long[endpointClasses];
+        this.sampleCounts = new long[endpointClasses];
+    }
+
+    /**
+     * 実行枠を確保する。
+     *
+     * @param share 上限のうち、このリクエストが使用できる割合（優先度が高いほど1.0に近い）
+     * @return 確保できた場合はtrue（完了時に必ず {@link #release(long, boolean)} を呼ぶこと）
+     */
+    public boolean tryAcquire(double share) {
+        int allowed = Math.max(1, (int) (limit * share));
+        while (true) {
+            int current = inFlight.get();
+            if (current >= allowed) {
+                return false;
+            }
+            if (inFlight.compareAndSet(current, current + 1)) {
+                return true;
+            }
+        }
+    }
+
+    /**
+     * 実行枠を解放し、レイテンシを上限の計算に反映する（エンドポイントの種類が1つの場合）。
+     */
+    public void release(long rttNanos, boolean sample) {
+        release(0, rttNanos, sample);
+    }
+
+    /**
+     * 実行枠を解放し、レイテンシを上限の計算に反映する。
+     *
+     * @param endpointClass エンドポイントの種類（同じ種類の rttNoLoad と比べる）
+     * @param rttNanos      処理にかかった時間
+     * @param sample        レイテンシを計測値として使用するか（成功した応答だけを使い、拒否・エラーは除外する）
+     */
+    public void release(int endpointClass, long rttNanos, boolean sample) {
+        int current = inFlight.getAndDecrement();
+        if (sample) {
+            onSample(endpointClass, Math.max(1, rttNanos), current);
+        }
+    }
+
+    private synchronized void onSample(int endpointClass, long rttNanos, int inFlightAtCompletion) {
+        boolean appLimited = inFlightAtCompletion < estimatedLimit / 2;
+
+        long rttNoLoad = rttNoLoadNanos[endpointClass];
+        if (rttNoLoad == 0 || rttNanos < rttNoLoad
+                || (++sampleCounts[endpointClass] % PROBE_INTERVAL == 0 && appLimited)) {
+            rttNoLoadNanos[endpointClass] = rttNanos;
+            return;
+        }
+
+        // 上限に達していない状態でのレイテンシは、上限を変える根拠にならない
+        if (appLimited) {
+            return;
+        }
+
+        double log = Math.max(1.0, Math.log10(estimatedLimit));
+        double queueSize = estimatedLimit * (1 - (double) rttNoLoad / rttNanos);
+        if (queueSize < 3 * log) {
+            estimatedLimit += log;
+        } else if (queueSize > 6 * log) {
+            estimatedLimit -= log;
+        }
+        estimatedLimit = Math.max(minLimit, Math.min(maxLimit, estimatedLimit));
+        limit = (int) estimatedLimit;
+    }
+
+    public int getLimit() {
+        return limit;
+    }
+
+    public int getInFlight() {
+        return inFlight.get();
+    }
+}
@@ -0,0 +1,40 @@
+package com.example.demo.web;
+
+import com.fasterxml.jackson.core.JsonGenerator;
+import com.fasterxml.jackson.databind.SerializerProvider;
+import com.fasterxml.jackson.databind.module.SimpleModule;
+import com.fasterxml.jackson.databind.ser.std.StdSerializer;
+import com.yubico.webauthn.data.ByteArray;
+
+import java.io.IOException;
+
+/**
+ * YubicoのByteArrayをCBORのバイト列としてそのまま読み書きするJacksonモジュール。
+ *
+ * <p>ByteArrayはJacksonのアノテーションでbase64url文字列に変換される。
+ * JSONでは必要な変換だが、バイト列を直接扱えるCBORでは無駄なため、このモジュールで置き換える。
+ *
+ * <p>読み込み時は文字列（base64url）も受け付ける（{@link ByteArrayDeserializer}）。
+ * PublicKeyCredential.id のように、クライアントが文字列で送る値があるため。
+ */
+public class ByteArrayBinaryModule extends SimpleModule {
+
+    public ByteArrayBinaryModule() {
+        super("ByteArrayBinaryModule");
+        addSerializer(ByteArray.class, new ByteArraySerializer());
+        addDeserializer(ByteArray.class, new ByteArrayDeserializer());
+    }
+
+    static class ByteArraySerializer extends StdSerializer<ByteArray> {
+
+        ByteArraySerializer() {
+            super(ByteArray.class);
+        }
+
+        @Override
+        public void serialize(ByteArray value, JsonGenerator gen, SerializerProvider provider) throws IOException {
+            byte[] bytes = value.getBytes();
+            gen.writeBinary(bytes, 0, bytes.length);
+        }
+    }
+}
@@ -0,0 +1,42 @@
+package com.example.demo.web;
+
+import com.fasterxml.jackson.core.Base64Variants;
+import com.fasterxml.jackson.core.JsonParser;
+import com.fasterxml.jackson.core.JsonToken;
+import com.fasterxml.jackson.databind.DeserializationContext;
+import com.fasterxml.jackson.databind.deser.std.StdDeserializer;
+import com.yubico.webauthn.data.ByteArray;
+
+import java.io.IOException;
+
+/**
+ * YubicoのByteArrayを、中間のStringを作らずに読み込むデシリアライザー。
+ *
+ * <p>ByteArray標準の読み込み（@JsonCreator）は、base64url文字列をStringとして取り出してからデコードする。
+ * このデシリアライザーはJacksonのパーサーに直接デコードさせるため、
+ * 入力バッファから最終的なbyte[]が1回で作られる。
+ *
+ * <p>【受け付ける形式】
+ * <ul>
+ *   <li>文字列: パディングなしのbase64url（WebAuthn仕様の形式）</li>
+ *   <li>CBORのバイト列: そのまま</li>
+ * </ul>
+ */
+public class ByteArrayDeserializer extends StdDeserializer<ByteArray> {
+
+    public ByteArrayDeserializer() {
+        super(ByteArray.class);
+    }
+
+    @Override
+    public ByteArray deserialize(JsonParser p, DeserializationContext ctxt) throws IOException {
+        JsonToken token = p.currentToken();
+        if (token == JsonToken.VALUE_STRING) {
+            return new ByteArray(p.getBinaryValue(Base64Variants.MODIFIED_FOR_URL));
+        }
+        if (token == JsonToken.VALUE_EMBEDDED_OBJECT) {
+            return new ByteArray(p.getBinaryValue());
+        }
+        return (ByteArray) ctxt.handleUnexpectedToken(ByteArray.class, p);
+    }
+}
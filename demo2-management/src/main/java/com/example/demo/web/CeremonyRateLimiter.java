@@ -0,0 +1,61 @@
+package com.example.demo.web;
+
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Component;
+
+import java.util.concurrent.TimeUnit;
+
+/**
+ * 登録開始・認証開始のレート制限。
+ *
+ * <p>開始APIは未認証で呼び出せ、呼び出すたびにセッションへチャレンジを保存する
+ * （登録開始では新しいuserHandleも生成する）。
+ * 大量の呼び出しでサーバーの資源を消費されないよう、WebAuthnServiceを呼ぶ前に制限する。
+ *
+ * <p>【制限の単位】
+ * <ul>
+ *   <li>クライアントIP: 1つの送信元からの大量リクエストを防ぐ</li>
+ *   <li>クライアントIPとusernameの組: 1つの送信元から特定ユーザーを狙うリクエストを、IPの上限より低く抑える</li>
+ * </ul>
+ * usernameだけをキーにすると、第三者が同じusernameで開始APIを呼び続けることで、本人の認証開始まで拒否できてしまう。
+ * 組をキーにするため、他の送信元からのリクエストは本人の枠を消費しない。
+ *
+ * <p>組ごとの上限は webauthn.rate-limit.per-client-username-per-minute で設定する
+ * （以前の名前 per-username-per-minute も、新しい名前が設定されていなければ読む）。
+ *
+ * <p>リバースプロキシ配下では、server.forward-headers-strategy を設定して
+ * 実際のクライアントIPがリモートアドレスになるようにすること。
+ */
+@Component
+public class CeremonyRateLimiter {
+
+    private final StripedRateLimiter perClient;
+    private final StripedRateLimiter perClientAndUsername;
+
+    public CeremonyRateLimiter(
+            @Value("${webauthn.rate-limit.per-client-per-minute:60}") int perClientPerMinute,
+            @Value("${webauthn.rate-limit.per-client-username-per-minute:${webauthn.rate-limit.per-username-per-minute:10}}")
+            int perClientAndUsernamePerMinute,
+            @Value("${webauthn.rate-limit.burst:5}") int burst,
+            @Value("${webauthn.rate-limit.max-keys:100000}") int maxKeys) {
+        this.perClient = new StripedRateLimiter(perClientPerMinute, burst, maxKeys);
+        this.perClientAndUsername = new StripedRateLimiter(perClientAndUsernamePerMinute, burst, maxKeys);
+    }
+
+    /**
+     * 開始APIの呼び出しを許可するか判定する（許可する場合はトークンを消費する）。
+     *
+     * @return 許可する場合は0。制限する場合は、再試行できるまでの秒数（1以上、Retry-After に使う）
+     */
+    public long acquire(String clientIp, String username) {
+        return acquire(clientIp, username, System.nanoTime());
+    }
+
+    long acquire(String clientIp, String username, long now) {
+        long waitNanos = perClient.acquire(clientIp, now);
+        if (waitNanos == 0 && username != null) {
+            waitNanos = perClientAndUsername.acquire(clientIp + ' ' + username, now);
+        }
+        return waitNanos == 0 ? 0 : Math.max(1, TimeUnit.NANOSECONDS.toSeconds(waitNanos + 999_999_999));
+    }
+}
@@ -0,0 +1,92 @@
+package com.example.demo.web;
+
+import jakarta.servlet.http.HttpServletRequest;
+import jakarta.servlet.http.HttpServletResponse;
+import org.springframework.http.HttpStatus;
+import org.springframework.http.MediaType;
+import org.springframework.web.servlet.HandlerInterceptor;
+
+import java.io.IOException;
+
+/**
+ * WebAuthn APIの同時実行数を制限するインターセプター。
+ *
+ * <p>【優先度】
+ * 上限に近づいたときは、優先度の低いリクエストから拒否する。
+ * <ul>
+ *   <li>認証完了: 最優先（ユーザーは認証器の操作を終えており、失敗させると再操作が必要になる）</li>
+ *   <li>認証開始・登録完了: 通常</li>
+ *   <li>登録開始: 最も低い（新規登録は後回しにしてもログイン中のユーザーに影響しない）</li>
+ * </ul>
+ *
+ * <p>拒否したリクエストには待たせずに 503 Service Unavailable を返す。
+ *
+ * <p>【レイテンシの計測】
+ * ハンドラーが成功（2xx）で完了したリクエストだけを上限の計算に使う。
+ * レート制限の 429・サイズ超過の 400 などは処理せずにすぐ返るため、含めると負荷がないときのレイテンシが下がり、上限が下がる。
+ * 負荷がないときのレイテンシはエンドポイントごとに分けて持つ（開始は軽く、完了は署名の検証で重い）。
+ */
+public class ConcurrencyLimitInterceptor implements HandlerInterceptor {
+
+    private static final String START_TIME_ATTRIBUTE = ConcurrencyLimitInterceptor.class.getName() + ".start";
+    private static final String ENDPOINT_ATTRIBUTE = ConcurrencyLimitInterceptor.class.getName() + ".endpoint";
+
+    /**
+     * エンドポイントの種類と、上限のうち使用できる割合。
+     */
+    enum Endpoint {
+        REGISTER_START("/register/start", 0.7),
+        REGISTER_FINISH("/register/finish", 0.85),
+        AUTHENTICATE_START("/authenticate/start", 0.85),
+        AUTHENTICATE_FINISH("/authenticate/finish", 1.0),
+        OTHER(null, 0.85);
+
+        final String suffix;
+        final double share;
+
+        Endpoint(String suffix, double share) {
+            this.suffix = suffix;
+            this.share = share;
+        }
+
+        static Endpoint of(String uri) {
+            for (Endpoint endpoint : values()) {
+                if (endpoint.suffix != null && uri.endsWith(endpoint.suffix)) {
+                    return endpoint;
+                }
+            }
+            return OTHER;
+        }
+    }
+
+    private final AdaptiveConcurrencyLimit limit;
+
+    public ConcurrencyLimitInterceptor(AdaptiveConcurrencyLimit limit) {
+        this.limit = limit;
+    }
+
+    @Override
+    public boolean preHandle(HttpServletRequest request, HttpServletResponse response, Object handler)
+            throws IOException {
+        Endpoint endpoint = Endpoint.of(request.getRequestURI());
+        if (!limit.tryAcquire(endpoint.share)) {
+            response.setStatus(HttpStatus.SERVICE_UNAVAILABLE.value());
+            response.setHeader("Retry-After", "1");
+            response.setContentType(MediaType.APPLICATION_JSON_VALUE);
+            response.getWriter().write("{\"error\": \"Server is busy, please retry\"}");
+            return false;
+        }
+        request.setAttribute(START_TIME_ATTRIBUTE, System.nanoTime());
+        request.setAttribute(ENDPOINT_ATTRIBUTE, endpoint);
+        return true;
+    }
+
+    @Override
+    public void afterCompletion(HttpServletRequest request, HttpServletResponse response, Object handler, Exception ex) {
+        long start = (Long) request.getAttribute(START_TIME_ATTRIBUTE);
+        Endpoint endpoint = (Endpoint) request.getAttribute(ENDPOINT_ATTRIBUTE);
+        // 成功した応答だけを使う（拒否・エラーは処理時間が実態を表さない）
+        boolean sample = ex == null && response.getStatus() >= 200 && response.getStatus() < 300;
+        limit.release(endpoint.ordinal(), System.nanoTime() - start, sample);
+    }
+}
@@ -0,0 +1,80 @@
+package com.example.demo.web;
+
+import com.example.demo.backend.WebAuthnBackend;
+import com.example.demo.tenant.Tenant;
+import com.example.demo.tenant.TenantRegistry;
+import jakarta.servlet.http.HttpServletRequest;
+import jakarta.servlet.http.HttpServletResponse;
+import org.springframework.beans.factory.ObjectProvider;
+import org.springframework.http.HttpStatus;
+import org.springframework.http.MediaType;
+import org.springframework.web.servlet.HandlerInterceptor;
+
+import java.io.IOException;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * read-your-writes: リクエストの X-Replication-Position まで反映されるのを待ってから処理する。
+ *
+ * <p>更新APIはレスポンスヘッダーで、書き込み後の変更ログのpositionを返す。
+ * クライアントがそれを次のリクエストに付けると、リードレプリカのノードでも自分の書き込みが見える状態で処理される。
+ * 待ち時間内に追いつかなければ 503 を返し、リトライさせる。
+ *
+ * <p>待つのはリードレプリカのノードだけで、最大 MAX_WAIT_MILLIS。
+ * リーダー（と単一ノード）では書き込みがこのノードで行われているため待たずに処理し、
+ * このノードの変更ログの最新より先のpositionは発行していないため 400 で拒否する
+ * （大きな値を付けて、リクエストのスレッドを待たせ続けることはできない）。
+ *
+ * <p>positionはリクエストのテナントの WebAuthnBackend で待つ。レプリケーションの対象でないテナントは
+ * 更新APIがヘッダーを返さないため、付いていても無視する（別のテナントの変更ログのpositionと比べない）。
+ */
+public class ReplicationPositionInterceptor implements HandlerInterceptor {
+
+    public static final String HEADER = "X-Replication-Position";
+
+    private static final long MAX_WAIT_MILLIS = 1000;
+
+    private final ObjectProvider<TenantRegistry> tenants;  // ObjectMapper → WebMvcConfig → TenantRegistry の循環を避けるため、使うときに取得する
+
+    public ReplicationPositionInterceptor(ObjectProvider<TenantRegistry> tenants) {
+        this.tenants = tenants;
+    }
+
+    @Override
+    public boolean preHandle(HttpServletRequest request, HttpServletResponse response, Object handler)
+            throws IOException, InterruptedException {
+        String header = request.getHeader(HEADER);
+        if (header == null) {
+            return true;
+        }
+
+        long position;
+        try {
+            position = Long.parseLong(header);
+        } catch (NumberFormatException e) {
+            response.sendError(HttpStatus.BAD_REQUEST.value(), "Invalid " + HEADER);
+            return false;
+        }
+
+        Tenant tenant = tenants.getObject().resolve(request);
+        if (!tenant.replicated()) {
+            return true;
+        }
+        WebAuthnBackend backend = tenant.backend();
+        if (!backend.isFollower()) {
+            if (position > backend.getLastPosition()) {
+                response.sendError(HttpStatus.BAD_REQUEST.value(), "Unknown " + HEADER);
+                return false;
+            }
+            return true;
+        }
+        if (!backend.awaitPosition(position, MAX_WAIT_MILLIS, TimeUnit.MILLISECONDS)) {
+            response.setStatus(HttpStatus.SERVICE_UNAVAILABLE.value());
+            response.setHeader("Retry-After", "1");
+            response.setContentType(MediaType.APPLICATION_JSON_VALUE);
+            response.getWriter().write("{\"error\": \"Replica is behind, please retry\"}");
+            return false;
+        }
+        return true;
+    }
+}
@@ -0,0 +1,152 @@
+package com.example.demo.web;
+
+import jakarta.servlet.FilterChain;
+import jakarta.servlet.ReadListener;
+import jakarta.servlet.ServletException;
+import jakarta.servlet.ServletInputStream;
+import jakarta.servlet.http.HttpServletRequest;
+import jakarta.servlet.http.HttpServletRequestWrapper;
+import jakarta.servlet.http.HttpServletResponse;
+import org.springframework.http.HttpStatus;
+import org.springframework.http.MediaType;
+import org.springframework.web.filter.OncePerRequestFilter;
+
+import java.io.BufferedReader;
+import java.io.IOException;
+import java.io.InputStreamReader;
+import java.nio.charset.Charset;
+import java.nio.charset.StandardCharsets;
+import java.util.Map;
+
+/**
+ * APIリクエストのボディサイズを制限するフィルター。
+ *
+ * <p>WebAuthnのリクエストは通常数KB（証明書チェーン付きのattestationでも数十KB）に収まる。
+ * 上限を超えるボディはJacksonに渡す前に拒否し、巨大なリクエストでメモリやCPUを消費されないようにする。
+ *
+ * <ul>
+ *   <li>Content-Length が上限を超える場合: 読み込まずに 413 Payload Too Large を返す</li>
+ *   <li>Content-Length がない場合（chunked）: 読み込み中に上限を超えた時点でIOExceptionにする
+ *       （getInputStream・getReader のどちらで読んでも同じ）</li>
+ * </ul>
+ *
+ * <p>認証器の一括削除・一括名前変更のように、1回のリクエストで数千件を扱うパスにはパスごとの上限を指定できる。
+ */
+public class RequestSizeLimitFilter extends OncePerRequestFilter {
+
+    private final long maxBytes;
+    private final Map<String, Long> pathLimits;
+
+    public RequestSizeLimitFilter(long maxBytes) {
+        this(maxBytes, Map.of());
+    }
+
+    /**
+     * @param pathLimits コンテキストパスを除いたパスごとの上限（指定のないパスは maxBytes）
+     */
+    public RequestSizeLimitFilter(long maxBytes, Map<String, Long> pathLimits) {
+        this.maxBytes = maxBytes;
+        this.pathLimits = Map.copyOf(pathLimits);
+    }
+
+    @Override
+    protected void doFilterInternal(HttpServletRequest request, HttpServletResponse response, FilterChain chain)
+            throws ServletException, IOException {
+        String path = request.getRequestURI().substring(request.getContextPath().length());
+        long maxBytes = pathLimits.getOrDefault(path, this.maxBytes);
+        long contentLength = request.getContentLengthLong();
+        if (contentLength > maxBytes) {
+            response.setStatus(HttpStatus.PAYLOAD_TOO_LARGE.value());
+            response.setContentType(MediaType.APPLICATION_JSON_VALUE);
+            response.getWriter().write("{\"error\": \"Request body too large\"}");
+            return;
+        }
+        if (contentLength < 0) {
+            request = new LimitedRequest(request, maxBytes);
+        }
+        chain.doFilter(request, response);
+    }
+
+    private static class LimitedRequest extends HttpServletRequestWrapper {
+        private final long maxBytes;
+        private ServletInputStream stream;
+        private BufferedReader reader;
+
+        LimitedRequest(HttpServletRequest request, long maxBytes) {
+            super(request);
+            this.maxBytes = maxBytes;
+        }
+
+        @Override
+        public ServletInputStream getInputStream() throws IOException {
+            if (stream == null) {
+                stream = new LimitedInputStream(super.getInputStream(), maxBytes);
+            }
+            return stream;
+        }
+
+        /**
+         * 上限付きのストリームから文字を読む（元のリクエストの getReader は上限を通らないため使わない）。
+         */
+        @Override
+        public BufferedReader getReader() throws IOException {
+            if (reader == null) {
+                String encoding = getCharacterEncoding();
+                Charset charset = encoding != null ? Charset.forName(encoding) : StandardCharsets.UTF_8;
+                reader = new BufferedReader(new InputStreamReader(getInputStream(), charset));
+            }
+            return reader;
+        }
+    }
+
+    private static class LimitedInputStream extends ServletInputStream {
+        private final ServletInputStream delegate;
+        private final long maxBytes;
+        private long count;
+
+        LimitedInputStream(ServletInputStream delegate, long maxBytes) {
+            this.delegate = delegate;
+            this.maxBytes = maxBytes;
+        }
+
+        @Override
+        public int read() throws IOException {
+            int b = delegate.read();
+            if (b >= 0) {
+                consumed(1);
+            }
+            return b;
+        }
+
+        @Override
+        public int read(byte[] b, int off, int len) throws IOException {
+            int n = delegate.read(b, off, len);
+            if (n > 0) {
+                consumed(n);
+            }
+            return n;
+        }
+
+        private void consumed(int n) throws IOException {
+            count += n;
+            if (count > maxBytes) {
+                throw new IOException("Request body exceeds " + maxBytes + " bytes");
+            }
+        }
+
+        @Override
+        public boolean isFinished() {
+            return delegate.isFinished();
+        }
+
+        @Override
+        public boolean isReady() {
+            return delegate.isReady();
+        }
+
+        @Override
+        public void setReadListener(ReadListener readListener) {
+            delegate.setReadListener(readListener);
+        }
+    }
+}
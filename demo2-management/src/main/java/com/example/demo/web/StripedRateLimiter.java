@@ -0,0 +1,110 @@
+package com.example.demo.web;
+
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * キーごとのトークンバケットによるレート制限。
+ *
+ * <p>【メモリ上限】
+ * バケットはストライプ（分割したLRUマップ）に格納し、ストライプごとに保持数の上限を持つ。
+ * 上限を超えると最も長く使われていないバケットから捨てるため、
+ * 攻撃で大量の異なるキーが来てもメモリ使用量は一定に保たれる。
+ *
+ * <p>【ロックフリーな判定】
+ * バケットはGCRA（Generic Cell Rate Algorithm）で実装し、
+ * 「次のトークンが補充される理論上の時刻」を1つのAtomicLongで持つ。
+ * ロックを取るのはストライプからバケットを探す間だけで、判定自体はCASで行う。
+ */
+public class StripedRateLimiter {
+
+    private static final int STRIPES = 64;
+
+    private final long emissionIntervalNanos;  // トークン1個が補充される間隔
+    private final long burstToleranceNanos;    // 連続で許可できる量（バースト）を時間に換算した値
+    private final Stripe[] stripes = new Stripe[STRIPES];
+
+    /**
+     * @param permitsPerMinute 1分あたりに許可する回数
+     * @param burst            連続で許可できる回数
+     * @param maxKeys          保持するバケット数の上限（全ストライプの合計）
+     */
+    public StripedRateLimiter(int permitsPerMinute, int burst, int maxKeys) {
+        this.emissionIntervalNanos = 60_000_000_000L / permitsPerMinute;
+        this.burstToleranceNanos = emissionIntervalNanos * (burst - 1);
+        int keysPerStripe = Math.max(1, maxKeys / STRIPES);
+        for (int i = 0; i < STRIPES; i++) {
+            stripes[i] = new Stripe(keysPerStripe);
+        }
+    }
+
+    /**
+     * keyのリクエストを1回許可できるか判定し、許可する場合はトークンを消費する。
+     */
+    public boolean tryAcquire(String key) {
+        return tryAcquire(key, System.nanoTime());
+    }
+
+    boolean tryAcquire(String key, long now) {
+        return acquire(key, now) == 0;
+    }
+
+    /**
+     * keyのリクエストを1回許可できるか判定し、許可する場合はトークンを消費する。
+     *
+     * @return 許可した場合は0。許可しない場合は、次に許可できるまでの時間（ナノ秒）
+     */
+    long acquire(String key, long now) {
+        AtomicLong theoreticalArrival = stripeFor(key).bucket(key, now);
+        while (true) {
+            long tat = theoreticalArrival.get();
+            long base = Math.max(tat, now);
+            if (base - now > burstToleranceNanos) {
+                return base - now - burstToleranceNanos;
+            }
+            if (theoreticalArrival.compareAndSet(tat, base + emissionIntervalNanos)) {
+                return 0;
+            }
+        }
+    }
+
+    /**
+     * 現在保持しているバケット数。
+     */
+    public int size() {
+        int size = 0;
+        for (Stripe stripe : stripes) {
+            size += stripe.size();
+        }
+        return size;
+    }
+
+    private Stripe stripeFor(String key) {
+        int h = key.hashCode();
+        h ^= (h >>> 16);
+        return stripes[h & (STRIPES - 1)];
+    }
+
+    private static class Stripe {
+        private final Map<String, AtomicLong> buckets;
+
+        Stripe(int maxKeys) {
+            // アクセス順のLinkedHashMap: 上限を超えたら最も長く使われていないバケットを捨てる
+            this.buckets = new LinkedHashMap<>(16, 0.75f, true) {
+                @Override
+                protected boolean removeEldestEntry(Map.Entry<String, AtomicLong> eldest) {
+                    return size() > maxKeys;
+                }
+            };
+        }
+
+        synchronized AtomicLong bucket(String key, long now) {
+            return buckets.computeIfAbsent(key, k -> new AtomicLong(now));
+        }
+
+        synchronized int size() {
+            return buckets.size();
+        }
+    }
+}
@@ -0,0 +1,156 @@
+package com.example.demo.web;
+
+import com.fasterxml.jackson.annotation.JsonInclude;
+import com.fasterxml.jackson.databind.DeserializationFeature;
+import com.fasterxml.jackson.databind.Module;
+import com.fasterxml.jackson.databind.module.SimpleModule;
+import com.fasterxml.jackson.dataformat.cbor.databind.CBORMapper;
+import com.fasterxml.jackson.datatype.jdk8.Jdk8Module;
+import com.fasterxml.jackson.datatype.jsr310.JavaTimeModule;
+import com.example.demo.tenant.TenantRegistry;
+import com.yubico.webauthn.data.ByteArray;
+import org.springframework.beans.factory.ObjectProvider;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.boot.web.servlet.FilterRegistrationBean;
+import org.springframework.context.annotation.Bean;
+import org.springframework.context.annotation.Configuration;
+import org.springframework.http.CacheControl;
+import org.springframework.http.converter.cbor.MappingJackson2CborHttpMessageConverter;
+import org.springframework.web.servlet.config.annotation.InterceptorRegistry;
+import org.springframework.web.servlet.config.annotation.ResourceHandlerRegistration;
+import org.springframework.web.servlet.config.annotation.ResourceHandlerRegistry;
+import org.springframework.web.servlet.config.annotation.WebMvcConfigurer;
+import org.springframework.web.servlet.resource.EncodedResourceResolver;
+import org.springframework.web.servlet.resource.ResourceUrlEncodingFilter;
+import org.springframework.web.servlet.resource.VersionResourceResolver;
+
+import java.time.Duration;
+import java.util.Map;
+
+/**
+ * Web層の共通設定。
+ *
+ * <ul>
+ *   <li>WebAuthn APIの前段に、過負荷対策のインターセプターを登録する</li>
+ *   <li>JSONに加えて application/cbor のリクエスト・レスポンスを扱えるようにする</li>
+ *   <li>登録・認証の開始APIのレスポンスを、Stringを経由せずに書き出す</li>
+ *   <li>APIリクエストのボディサイズを制限する</li>
+ *   <li>read-your-writes のため、指定されたpositionまでレプリケーションが追いつくのを待つ</li>
+ *   <li>JS・CSSを内容のハッシュ付きURLで配信し、ブラウザに長期間キャッシュさせる</li>
+ * </ul>
+ */
+@Configuration
+public class WebMvcConfig implements WebMvcConfigurer {
+
+    private static final String WEBAUTHN_API_PATH = "/api/webauthn/**";
+    private static final String VERSIONED_RESOURCE = "/{name:[\\w.]+}-{hash:[0-9a-f]{32}}.{extension:js|css}";  // 内容のハッシュ（md5）付き
+
+    private final AdaptiveConcurrencyLimit concurrencyLimit;
+    private final ObjectProvider<TenantRegistry> tenants;
+
+    public WebMvcConfig(
+            ObjectProvider<TenantRegistry> tenants,
+            @Value("${webauthn.concurrency.initial-limit:20}") int initialLimit,
+            @Value("${webauthn.concurrency.min-limit:4}") int minLimit,
+            @Value("${webauthn.concurrency.max-limit:200}") int maxLimit) {
+        this.concurrencyLimit = new AdaptiveConcurrencyLimit(initialLimit, minLimit, maxLimit,
+                ConcurrencyLimitInterceptor.Endpoint.values().length);
+        this.tenants = tenants;
+    }
+
+    /**
+     * application/cbor 用のメッセージコンバーター。
+     *
+     * <p>Spring Bootが標準で登録するCBORコンバーターを置き換え、
+     * ByteArrayをbase64url文字列ではなくCBORのバイト列として扱う。
+     * YubicoのオブジェクトもJSONと同じ構造で書き出せるよう、Optionalの空値は出力しない。
+     */
+    @Bean
+    public MappingJackson2CborHttpMessageConverter cborHttpMessageConverter() {
+        CBORMapper mapper = CBORMapper.builder()
+                .serializationInclusion(JsonInclude.Include.NON_ABSENT)
+                .addModule(new Jdk8Module())
+                .addModule(new JavaTimeModule())
+                .addModule(new ByteArrayBinaryModule())
+                .disable(DeserializationFeature.FAIL_ON_UNKNOWN_PROPERTIES)
+                .build();
+        return new MappingJackson2CborHttpMessageConverter(mapper);
+    }
+
+    /**
+     * 登録・認証の開始APIが返すYubicoのオブジェクト用のJSONコンバーター。
+     * 通常のJSONコンバーターより前に登録される。
+     */
+    @Bean
+    public YubicoJsonHttpMessageConverter yubicoJsonHttpMessageConverter() {
+        return new YubicoJsonHttpMessageConverter();
+    }
+
+    /**
+     * JSONのリクエストでも、ByteArrayをStringを経由せずに読み込む。
+     * Spring BootのObjectMapperに自動で登録される。
+     */
+    @Bean
+    public Module byteArrayJsonModule() {
+        return new SimpleModule("ByteArrayJsonModule")
+                .addDeserializer(ByteArray.class, new ByteArrayDeserializer());
+    }
+
+    /**
+     * APIのボディサイズ上限。認証器の一括削除・一括名前変更は数千件のIDを受け付けるため、別の上限にする。
+     */
+    @Bean
+    public FilterRegistrationBean<RequestSizeLimitFilter> requestSizeLimitFilter(
+            @Value("${webauthn.max-request-bytes:65536}") long maxRequestBytes,
+            @Value("${webauthn.max-bulk-request-bytes:1048576}") long maxBulkRequestBytes) {
+        RequestSizeLimitFilter filter = new RequestSizeLimitFilter(maxRequestBytes, Map.of(
+                "/api/authenticators/delete", maxBulkRequestBytes,
+                "/api/authenticators/rename", maxBulkRequestBytes));
+        FilterRegistrationBean<RequestSizeLimitFilter> registration = new FilterRegistrationBean<>(filter);
+        registration.addUrlPatterns("/api/*");
+        return registration;
+    }
+
+    /**
+     * テンプレートの @{/webauthn.js} などを、内容のハッシュ付きURL（/webauthn-&lt;md5&gt;.js）に書き換える。
+     */
+    @Bean
+    public FilterRegistrationBean<ResourceUrlEncodingFilter> resourceUrlEncodingFilter() {
+        return new FilterRegistrationBean<>(new ResourceUrlEncodingFilter());
+    }
+
+    /**
+     * JS・CSSの配信設定。
+     *
+     * <p>内容のハッシュを含むURL（VERSIONED_RESOURCE）は、内容が変わればURLも変わる。
+     * そのため1年間キャッシュさせ（immutable）、ログイン画面の表示ごとの再取得・再検証をなくす。
+     * ハッシュを含まないURL（/webauthn.js など、テンプレートを通さずに参照された場合）は同じURLのまま内容が変わるため、
+     * no-cache にして毎回 Last-Modified で再検証させる（変わっていなければ 304）。
+     *
+     * <p>ビルド時に作成した gzip 版（webauthn.js.gz など）があり、ブラウザが対応していればそれを返す
+     * （リクエストのたびに圧縮しない）。
+     */
+    @Override
+    public void addResourceHandlers(ResourceHandlerRegistry registry) {
+        addStaticResources(registry.addResourceHandler(VERSIONED_RESOURCE),
+                CacheControl.maxAge(Duration.ofDays(365)).cachePublic().immutable());
+        addStaticResources(registry.addResourceHandler("/*.js", "/*.css"), CacheControl.noCache());
+    }
+
+    private static void addStaticResources(ResourceHandlerRegistration registration, CacheControl cacheControl) {
+        registration.addResourceLocations("classpath:/static/")
+                .setCacheControl(cacheControl)
+                .resourceChain(true)
+                .addResolver(new EncodedResourceResolver())
+                .addResolver(new VersionResourceResolver().addContentVersionStrategy("/**"));
+    }
+
+    @Override
+    public void addInterceptors(InterceptorRegistry registry) {
+        // read-your-writes の待ち合わせを先に行う（リードレプリカで待つ間、同時実行数の枠を使わない）
+        registry.addInterceptor(new ReplicationPositionInterceptor(tenants))
+                .addPathPatterns("/", "/api/**");
+        registry.addInterceptor(new ConcurrencyLimitInterceptor(concurrencyLimit))
+                .addPathPatterns(WEBAUTHN_API_PATH);
+    }
+}
@@ -0,0 +1,66 @@
+package com.example.demo.web;
+
+import com.fasterxml.jackson.annotation.JsonInclude;
+import com.fasterxml.jackson.core.Base64Variants;
+import com.fasterxml.jackson.databind.json.JsonMapper;
+import com.fasterxml.jackson.datatype.jdk8.Jdk8Module;
+import com.fasterxml.jackson.datatype.jsr310.JavaTimeModule;
+import com.yubico.webauthn.AssertionRequest;
+import com.yubico.webauthn.data.PublicKeyCredentialCreationOptions;
+import org.springframework.http.MediaType;
+import org.springframework.http.converter.json.AbstractJackson2HttpMessageConverter;
+
+import java.lang.reflect.Type;
+
+/**
+ * 登録・認証の開始APIが返すYubicoのオブジェクトを、レスポンスへ直接JSONで書き出すコンバーター。
+ *
+ * <p>options.toJson() は呼び出すたびにObjectMapperを生成し、JSON全体をStringとして組み立てる。
+ * このコンバーターは設定済みのObjectMapperを使い回し、
+ * Jacksonのジェネレーター（内部バッファは再利用される）でレスポンスのストリームに直接書き込む。
+ *
+ * <p>ObjectMapperの設定は toJson() と同じ出力になるように合わせている
+ * （Optionalの空値は出力しない、バイナリはbase64url）。
+ */
+public class YubicoJsonHttpMessageConverter extends AbstractJackson2HttpMessageConverter {
+
+    public YubicoJsonHttpMessageConverter() {
+        super(JsonMapper.builder()
+                        .serializationInclusion(JsonInclude.Include.NON_ABSENT)
+                        .defaultBase64Variant(Base64Variants.MODIFIED_FOR_URL)
+                        .addModule(new Jdk8Module())
+                        .addModule(new JavaTimeModule())
+                        .build(),
+                MediaType.APPLICATION_JSON);
+    }
+
+    @Override
+    protected boolean supports(Class<?> clazz) {
+        return PublicKeyCredentialCreationOptions.class.isAssignableFrom(clazz)
+                || AssertionRequest.class.isAssignableFrom(clazz);
+    }
+
+    // 対象クラスだけを書き込む（AbstractJackson2HttpMessageConverter は supports() を参照しないため明示的に判定する）
+
+    @Override
+    public boolean canWrite(Class<?> clazz, MediaType mediaType) {
+        return supports(clazz) && super.canWrite(clazz, mediaType);
+    }
+
+    @Override
+    public boolean canWrite(Type type, Class<?> clazz, MediaType mediaType) {
+        return supports(clazz) && super.canWrite(clazz, mediaType);
+    }
+
+    // 書き込み専用（リクエストの読み込みは通常のJSONコンバーターが担当する）
+
+    @Override
+    public boolean canRead(Class<?> clazz, MediaType mediaType) {
+        return false;
+    }
+
+    @Override
+    public boolean canRead(Type type, Class<?> contextClass, MediaType mediaType) {
+        return false;
+    }
+}
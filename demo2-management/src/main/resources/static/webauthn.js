@@ -1,3 +1,10 @@
+// ===== 送信形式 =====
+// trueにすると、各APIへのリクエストを application/cbor で送信する。
+// CBORではバイナリ値（attestationObject、clientDataJSONなど）をbase64urlに変換せずそのまま送れるため、
+// ペイロードが約25%小さくなり、サーバー側でのbase64urlデコードも不要になる。
+// レスポンスはどちらの場合もJSONで受け取る。
+const USE_CBOR = false;
+
 function bufferToBase64url(buffer) {
     const bytes = new Uint8Array(buffer);
     let str = '';
@@ -19,6 +26,90 @@ function base64urlToBuffer(base64url) {
     return bytes.buffer;
 }
 
+// バイナリ値を送信形式に合わせて変換する（CBORならそのまま、JSONならbase64url文字列）
+function encodeBinary(buffer) {
+    return USE_CBOR ? new Uint8Array(buffer) : bufferToBase64url(buffer);
+}
+
+// CBOR（RFC 8949）エンコーダー: 本デモで送信する値（null、真偽値、数値、文字列、バイト列、配列、オブジェクト）のみ対応
+function encodeCbor(value) {
+    const bytes = [];
+    const textEncoder = new TextEncoder();
+
+    function writeHead(majorType, length) {
+        const type = majorType << 5;
+        if (length < 24) {
+            bytes.push(type | length);
+        } else if (length < 0x100) {
+            bytes.push(type | 24, length);
+        } else if (length < 0x10000) {
+            bytes.push(type | 25, length >> 8, length & 0xff);
+        } else {
+            bytes.push(type | 26, (length >>> 24) & 0xff, (length >> 16) & 0xff, (length >> 8) & 0xff, length & 0xff);
+        }
+    }
+
+    function writeBytes(array) {
+        for (const b of array) {
+            bytes.push(b);
+        }
+    }
+
+    function write(v) {
+        if (v === null || v === undefined) {
+            bytes.push(0xf6);
+        } else if (typeof v === 'boolean') {
+            bytes.push(v ? 0xf5 : 0xf4);
+        } else if (typeof v === 'number') {
+            if (Number.isInteger(v) && v >= 0 && v <= 0xffffffff) {
+                writeHead(0, v);
+            } else if (Number.isInteger(v) && v < 0 && v >= -0x100000000) {
+                writeHead(1, -1 - v);
+            } else {
+                const view = new DataView(new ArrayBuffer(8));
+                view.setFloat64(0, v);
+                bytes.push(0xfb);
+                writeBytes(new Uint8Array(view.buffer));
+            }
+        } else if (typeof v === 'string') {
+            const utf8 = textEncoder.encode(v);
+            writeHead(3, utf8.length);
+            writeBytes(utf8);
+        } else if (v instanceof ArrayBuffer || ArrayBuffer.isView(v)) {
+            const array = v instanceof ArrayBuffer ? new Uint8Array(v) : new Uint8Array(v.buffer, v.byteOffset, v.byteLength);
+            writeHead(2, array.length);
+            writeBytes(array);
+        } else if (Array.isArray(v)) {
+            writeHead(4, v.length);
+            v.forEach(write);
+        } else {
+            // JSON.stringifyと同様に、値がundefinedのプロパティは送信しない
+            const entries = Object.entries(v).filter(([, x]) => x !== undefined);
+            writeHead(5, entries.length);
+            for (const [key, x] of entries) {
+                write(key);
+                write(x);
+            }
+        }
+    }
+
+    write(value);
+    return new Uint8Array(bytes);
+}
+
+// APIにPOSTし、JSONのレスポンスを返す
+async function postApi(url, body) {
+    const response = await fetch(url, {
+        method: 'POST',
+        headers: {
+            'Content-Type': USE_CBOR ? 'application/cbor' : 'application/json',
+            'Accept': 'application/json'
+        },
+        body: USE_CBOR ? encodeCbor(body) : JSON.stringify(body)
+    });
+    return response.json();
+}
+
 function showMessage(elementId, message, isError = false) {
     const element = document.getElementById(elementId);
     element.textContent = message;
@@ -35,13 +126,7 @@ async function register() {
     }
 
     try {
-        const startResponse = await fetch('/api/webauthn/register/start', {
-            method: 'POST',
-            headers: { 'Content-Type': 'application/json' },
-            body: JSON.stringify({ username })
-        });
-
-        const options = await startResponse.json();
+        const options = await postApi('/api/webauthn/register/start', { username });
 
         if (options.error) {
             showMessage('regMessage', 'エラー: ' + options.error, true);
@@ -63,27 +148,21 @@ async function register() {
 
         const credentialForServer = {
             id: credential.id,
-            rawId: bufferToBase64url(credential.rawId),
+            rawId: encodeBinary(credential.rawId),
             response: {
-                attestationObject: bufferToBase64url(credential.response.attestationObject),
-                clientDataJSON: bufferToBase64url(credential.response.clientDataJSON)
+                attestationObject: encodeBinary(credential.response.attestationObject),
+                clientDataJSON: encodeBinary(credential.response.clientDataJSON)
             },
             type: credential.type,
             clientExtensionResults: credential.getClientExtensionResults()
         };
 
-        const finishResponse = await fetch('/api/webauthn/register/finish', {
-            method: 'POST',
-            headers: { 'Content-Type': 'application/json' },
-            body: JSON.stringify({
-                username,
-                credential: credentialForServer,
-                nickname: nickname || null  // 空文字の場合はnullにする
-            })
+        const result = await postApi('/api/webauthn/register/finish', {
+            username,
+            credential: credentialForServer,
+            nickname: nickname || null  // 空文字の場合はnullにする
         });
 
-        const result = await finishResponse.json();
-
         if (result.success) {
             showMessage('regMessage', '登録が完了しました！');
         } else {
@@ -103,13 +182,7 @@ async function authenticate() {
     }
 
     try {
-        const startResponse = await fetch('/api/webauthn/authenticate/start', {
-            method: 'POST',
-            headers: { 'Content-Type': 'application/json' },
-            body: JSON.stringify({ username })
-        });
-
-        const options = await startResponse.json();
+        const options = await postApi('/api/webauthn/authenticate/start', { username });
 
         if (options.error) {
             showMessage('authMessage', 'エラー: ' + options.error, true);
@@ -136,28 +209,22 @@ async function authenticate() {
 
         const credentialForServer = {
             id: credential.id,
-            rawId: bufferToBase64url(credential.rawId),
+            rawId: encodeBinary(credential.rawId),
             response: {
-                authenticatorData: bufferToBase64url(credential.response.authenticatorData),
-                clientDataJSON: bufferToBase64url(credential.response.clientDataJSON),
-                signature: bufferToBase64url(credential.response.signature),
-                userHandle: credential.response.userHandle ? bufferToBase64url(credential.response.userHandle) : null
+                authenticatorData: encodeBinary(credential.response.authenticatorData),
+                clientDataJSON: encodeBinary(credential.response.clientDataJSON),
+                signature: encodeBinary(credential.response.signature),
+                userHandle: credential.response.userHandle ? encodeBinary(credential.response.userHandle) : null
             },
             type: credential.type,
             clientExtensionResults: credential.getClientExtensionResults()
         };
 
-        const finishResponse = await fetch('/api/webauthn/authenticate/finish', {
-            method: 'POST',
-            headers: { 'Content-Type': 'application/json' },
-            body: JSON.stringify({
-                username,
-                credential: credentialForServer
-            })
+        const result = await postApi('/api/webauthn/authenticate/finish', {
+            username,
+            credential: credentialForServer
         });
 
-        const result = await finishResponse.json();
-
         if (result.success) {
             // 認証成功: 管理画面にリダイレクト
             location.href = '/';
@@ -181,13 +248,7 @@ async function addAuthenticator() {
     }
 
     try {
-        const startResponse = await fetch('/api/webauthn/register/start', {
-            method: 'POST',
-            headers: { 'Content-Type': 'application/json' },
-            body: JSON.stringify({ username })
-        });
-
-        const options = await startResponse.json();
+        const options = await postApi('/api/webauthn/register/start', { username });
 
         if (options.error) {
             showMessage('addMessage', 'エラー: ' + options.error, true);
@@ -209,27 +270,21 @@ async function addAuthenticator() {
 
         const credentialForServer = {
             id: credential.id,
-            rawId: bufferToBase64url(credential.rawId),
+            rawId: encodeBinary(credential.rawId),
             response: {
-                attestationObject: bufferToBase64url(credential.response.attestationObject),
-                clientDataJSON: bufferToBase64url(credential.response.clientDataJSON)
+                attestationObject: encodeBinary(credential.response.attestationObject),
+                clientDataJSON: encodeBinary(credential.response.clientDataJSON)
             },
             type: credential.type,
             clientExtensionResults: credential.getClientExtensionResults()
         };
 
-        const finishResponse = await fetch('/api/webauthn/register/finish', {
-            method: 'POST',
-            headers: { 'Content-Type': 'application/json' },
-            body: JSON.stringify({
-                username,
-                credential: credentialForServer,
-                nickname: nickname || null  // 空文字の場合はnullにする
-            })
+        const result = await postApi('/api/webauthn/register/finish', {
+            username,
+            credential: credentialForServer,
+            nickname: nickname || null  // 空文字の場合はnullにする
         });
 
-        const result = await finishResponse.json();
-
         if (result.success) {
             // 認証器追加成功: ページをリロードして一覧を更新
             location.href = '/';
@@ -0,0 +1,152 @@
+package com.example.demo.audit;
+
+import com.example.demo.backend.AuthenticatorInfo;
+import com.example.demo.backend.BackendChange;
+import com.example.demo.backend.UserInfo;
+import com.example.demo.backend.WebAuthnBackend;
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+import org.springframework.util.unit.DataSize;
+
+import java.io.BufferedReader;
+import java.io.InputStreamReader;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Set;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.stream.Stream;
+import java.util.zip.GZIPInputStream;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+/**
+ * 複数のスレッドから記録した監査イベントが、欠落・重複なく gzip ファイルに書き込まれることの確認。
+ * 停止と同時の記録・リクエスト以外の経路での認証器の削除の記録も確認する。
+ */
+class AuditLogTest {
+
+    private static final int THREADS = 4;
+    private static final int EVENTS_PER_THREAD = 20_000;
+
+    @Test
+    void writesEveryEventFromConcurrentProducers(@TempDir Path directory) throws Exception {
+        // 小さいバッファ・小さいファイルで、満杯時の待機とローテーションも起こす
+        AuditLog audit = new AuditLog(new SimpleMeterRegistry(), true, directory.toString(),
+                256, "block", 100, 10, 0, DataSize.ofKilobytes(64));
+
+        Thread[] producers = new Thread[THREADS];
+        for (int t = 0; t < THREADS; t++) {
+            String username = "user-" + t;
+            producers[t] = Thread.ofPlatform().start(() -> {
+                for (int i = 0; i < EVENTS_PER_THREAD; i++) {
+                    audit.record(AuditEvent.Type.LOGIN, "default", username, "cred-" + i, "127.0.0.1", null);
+                }
+            });
+        }
+        for (Thread producer : producers) {
+            producer.join();
+        }
+        audit.close();
+
+        assertEquals(THREADS * EVENTS_PER_THREAD, audit.getPublished());
+        assertEquals(0, audit.getDropped());
+        assertEquals(THREADS * EVENTS_PER_THREAD, audit.getWritten());
+
+        List<Path> files;
+        try (Stream<Path> list = Files.list(directory)) {
+            files = list.sorted().toList();
+        }
+        assertTrue(files.size() > 1, "rotated files: " + files.size());
+
+        Set<String> lines = new HashSet<>();
+        for (String line : readLines(directory)) {
+            assertTrue(lines.add(line), "duplicate: " + line);
+        }
+        assertEquals(THREADS * EVENTS_PER_THREAD, lines.size());
+    }
+
+    @Test
+    void eventsPublishedWhileClosingAreWrittenOrCountedAsDropped(@TempDir Path directory) throws Exception {
+        AuditLog audit = new AuditLog(new SimpleMeterRegistry(), true, directory.toString(),
+                1024, "drop", 100, 10, -1, DataSize.ofMegabytes(64));
+
+        AtomicBoolean stop = new AtomicBoolean();
+        Thread[] producers = new Thread[THREADS];
+        for (int t = 0; t < THREADS; t++) {
+            producers[t] = Thread.ofPlatform().start(() -> {
+                while (!stop.get()) {
+                    audit.record(AuditEvent.Type.LOGIN, "default", "user", null, "127.0.0.1", null);
+                }
+            });
+        }
+        Thread.sleep(50);
+        audit.close();
+        stop.set(true);
+        for (Thread producer : producers) {
+            producer.join();
+        }
+
+        // 受け付けた記録は全て書き込まれ、停止後の記録は dropped に数えられる
+        assertEquals(audit.getPublished(), audit.getWritten());
+        assertEquals(audit.getWritten(), readLines(directory).size());
+        assertFalse(audit.publish(new AuditEvent(0, AuditEvent.Type.LOGIN, "default", "user", null, null, null)));
+        assertTrue(audit.getDropped() > 0);
+    }
+
+    @Test
+    void authenticatorRemovalsAreAuditedWhateverThePath(@TempDir Path directory) throws Exception {
+        AuditLog audit = new AuditLog(new SimpleMeterRegistry(), true, directory.toString(),
+                256, "block", 100, 10, -1, DataSize.ofMegabytes(1));
+        WebAuthnBackend backend = new WebAuthnBackend();
+        backend.setRemovalListener(audit.removalListener("acme"));
+
+        backend.saveUser(new UserInfo("user", new byte[]{1}));
+        backend.saveAuthenticator(new AuthenticatorInfo(new byte[]{1}, new byte[]{2}, new byte[16], "user", null, 0));
+        backend.saveAuthenticator(new AuthenticatorInfo(new byte[]{2}, new byte[]{2}, new byte[16], "user", null,
+                System.currentTimeMillis()));
+        backend.saveAuthenticator(new AuthenticatorInfo(new byte[]{3}, new byte[]{2}, new byte[16], "user", null,
+                System.currentTimeMillis()));
+
+        backend.expireAuthenticators("user", System.currentTimeMillis() - 1000);  // 期限切れの削除（スケジューラのスレッド）
+        backend.deleteAuthenticator("user", new byte[]{2});                         // バイナリプロトコルと同じ経路
+        backend.apply(new BackendChange(1, 0, BackendChange.Type.DELETE_AUTHENTICATOR, "user", null,
+                new byte[]{3}, null, null, null, 0));                                 // レプリケーションでの反映
+        audit.close();
+
+        List<String> lines = readLines(directory);
+        assertEquals(3, lines.size());
+        assertTrue(lines.get(0).contains("\"credentialId\":\"AQ\"") && lines.get(0).contains("\"detail\":\"expired\""),
+                lines.get(0));
+        assertTrue(lines.get(1).contains("\"credentialId\":\"Ag\"") && lines.get(1).contains("\"detail\":\"deleted\""),
+                lines.get(1));
+        assertTrue(lines.get(2).contains("\"credentialId\":\"Aw\"") && lines.get(2).contains("\"detail\":\"replicated\""),
+                lines.get(2));
+        for (String line : lines) {
+            assertTrue(line.contains("\"type\":\"AUTHENTICATOR_DELETE\"") && line.contains("\"tenant\":\"acme\""), line);
+            assertFalse(line.contains("remoteAddr"), line);  // リクエストのスレッド以外では記録しない
+        }
+    }
+
+    private static List<String> readLines(Path directory) throws Exception {
+        List<Path> files;
+        try (Stream<Path> list = Files.list(directory)) {
+            files = list.sorted().toList();
+        }
+        List<String> lines = new ArrayList<>();
+        for (Path file : files) {
+            // 連結した gzip メンバーを1つのストリームとして読めること
+            try (BufferedReader reader = new BufferedReader(new InputStreamReader(
+                    new GZIPInputStream(Files.newInputStream(file)), StandardCharsets.UTF_8))) {
+                reader.lines().forEach(lines::add);
+            }
+        }
+        return lines;
+    }
+}
@@ -0,0 +1,81 @@
+package com.example.demo.backend;
+
+import org.junit.jupiter.api.Test;
+
+import java.util.List;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertNull;
+
+/**
+ * 認証器一覧のカーソルによるページング（空のページ・最後のページ・ページの間の削除・再保存）の確認。
+ */
+class AuthenticatorPageTest {
+
+    private final WebAuthnBackend backend = new WebAuthnBackend();
+
+    @Test
+    void emptyPages() {
+        assertEquals(List.of(), backend.findAuthenticatorPage("nobody", 0, 10).items());
+        assertNull(backend.findAuthenticatorPage("nobody", 0, 10).nextCursor());
+
+        register("alice", 1);
+        backend.deleteAuthenticator("alice", new byte[]{1});
+        AuthenticatorPage page = backend.findAuthenticatorPage("alice", 0, 10);
+        assertEquals(List.of(), page.items());
+        assertNull(page.nextCursor());
+    }
+
+    @Test
+    void lastPageHasNoCursor() {
+        register("alice", 1, 2, 3, 4);
+
+        AuthenticatorPage first = backend.findAuthenticatorPage("alice", 0, 2);
+        assertEquals(List.of("key1", "key2"), nicknames(first));
+        AuthenticatorPage second = backend.findAuthenticatorPage("alice", first.nextCursor(), 2);
+        assertEquals(List.of("key3", "key4"), nicknames(second));
+        assertNull(second.nextCursor());  // ちょうどページサイズで終わる場合も次のページを返さない
+
+        AuthenticatorPage all = backend.findAuthenticatorPage("alice", 0, 10);
+        assertEquals(4, all.items().size());
+        assertNull(all.nextCursor());
+    }
+
+    @Test
+    void deletionBetweenPagesDoesNotSkipOrRepeat() {
+        register("alice", 1, 2, 3, 4, 5);
+
+        AuthenticatorPage first = backend.findAuthenticatorPage("alice", 0, 2);
+        assertEquals(List.of("key1", "key2"), nicknames(first));
+
+        // カーソルの認証器自身と、次のページの先頭を削除しても続きから返す
+        backend.deleteAuthenticators("alice", List.of(new byte[]{2}, new byte[]{3}));
+        AuthenticatorPage second = backend.findAuthenticatorPage("alice", first.nextCursor(), 2);
+        assertEquals(List.of("key4", "key5"), nicknames(second));
+        assertNull(second.nextCursor());
+    }
+
+    @Test
+    void resavedAuthenticatorKeepsItsPosition() {
+        register("alice", 1, 2, 3);
+        long sequence = backend.findAuthenticatorPage("alice", 0, 1).items().get(0).sequence();
+
+        backend.renameAuthenticators("alice", List.of(new byte[]{1}), List.of("renamed"));
+        AuthenticatorPage page = backend.findAuthenticatorPage("alice", 0, 10);
+        assertEquals(List.of("renamed", "key2", "key3"), nicknames(page));
+        assertEquals(sequence, page.items().get(0).sequence());
+        assertEquals(3, backend.getStatistics().getTotalCredentials());
+    }
+
+    private void register(String username, int... ids) {
+        backend.saveUser(new UserInfo(username, username.getBytes()));
+        for (int id : ids) {
+            backend.saveAuthenticator(new AuthenticatorInfo(
+                    new byte[]{(byte) id}, new byte[]{2}, new byte[16], username, "key" + id));
+        }
+    }
+
+    private static List<String> nicknames(AuthenticatorPage page) {
+        return page.items().stream().map(entry -> entry.authenticator().getNickname()).toList();
+    }
+}
@@ -0,0 +1,56 @@
+package com.example.demo.backend;
+
+import com.yubico.webauthn.data.ByteArray;
+import org.junit.jupiter.api.Test;
+
+import java.lang.management.ManagementFactory;
+import java.util.Map;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+/**
+ * AAGUIDごとの認証器数の差分更新と、更新で ByteArray を作らないことの確認。
+ */
+class AuthenticatorStatisticsTest {
+
+    private static final byte[] YUBIKEY = {1, 2, 3, 4, 5, 6, 7, 8, 9, 10, 11, 12, 13, 14, 15, 16};
+    private static final byte[] PLATFORM = new byte[16];
+
+    @Test
+    void countsByAaguid() {
+        AuthenticatorStatistics statistics = new AuthenticatorStatistics();
+        statistics.credentialAdded(YUBIKEY);
+        statistics.credentialAdded(YUBIKEY.clone());  // 同じ内容の別の配列も同じAAGUID
+        statistics.credentialAdded(PLATFORM);
+        statistics.credentialAdded(null);
+        statistics.credentialRemoved(PLATFORM);
+
+        assertEquals(3, statistics.getTotalCredentials());
+        assertEquals(Map.of(new ByteArray(YUBIKEY), 2L, new ByteArray(new byte[0]), 1L),
+                statistics.getCredentialsByAaguid());  // 0件になったAAGUIDは返さない
+    }
+
+    @Test
+    void updatesDoNotAllocatePerCall() {
+        AuthenticatorStatistics statistics = new AuthenticatorStatistics();
+        statistics.credentialAdded(YUBIKEY);
+        for (int i = 0; i < 20_000; i++) {  // JITでコンパイルされるまで温める
+            statistics.credentialAdded(YUBIKEY);
+            statistics.credentialRemoved(YUBIKEY);
+        }
+
+        com.sun.management.ThreadMXBean threads = (com.sun.management.ThreadMXBean) ManagementFactory.getThreadMXBean();
+        long threadId = Thread.currentThread().threadId();
+        long before = threads.getThreadAllocatedBytes(threadId);
+        for (int i = 0; i < 100_000; i++) {
+            statistics.credentialAdded(YUBIKEY);
+            statistics.credentialRemoved(YUBIKEY);
+        }
+        long allocated = threads.getThreadAllocatedBytes(threadId) - before;
+
+        // 1回ごとに ByteArray を作ると数MBになる
+        assertTrue(allocated < 64 * 1024, "allocated " + allocated + " bytes");
+        assertEquals(1, statistics.getTotalCredentials());
+    }
+}
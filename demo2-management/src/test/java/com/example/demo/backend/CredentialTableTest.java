@@ -0,0 +1,126 @@
+package com.example.demo.backend;
+
+import org.junit.jupiter.api.Test;
+
+import java.nio.ByteBuffer;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicReference;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertNull;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+/**
+ * CredentialTable の基本操作と、更新（拡張・削除）と並行したロックなしの検索、
+ * 鍵なしのハッシュで衝突するキーを並べても探索が長くならないことの確認。
+ */
+class CredentialTableTest {
+
+    @Test
+    void putGetRemoveAcrossResizes() {
+        CredentialTable<Integer> table = new CredentialTable<>();
+        for (int i = 0; i < 10_000; i++) {
+            assertNull(table.put(key(i), i));
+        }
+        assertEquals(10_000, table.size());
+        assertEquals(5, table.put(key(5), 50));
+
+        for (int i = 0; i < 10_000; i += 2) {
+            table.remove(key(i));
+        }
+        assertEquals(5_000, table.size());
+        assertNull(table.get(key(4)));
+        assertEquals(50, table.get(key(5)));
+
+        // 範囲指定の検索（前後に余分なバイトがあるバッファ）
+        byte[] buffer = new byte[key(7).length + 3];
+        System.arraycopy(key(7), 0, buffer, 2, key(7).length);
+        assertEquals(7, table.get(buffer, 2, key(7).length));
+    }
+
+    @Test
+    void putIfAbsentKeepsExistingValueAndForEachVisitsLiveEntries() {
+        CredentialTable<Integer> table = new CredentialTable<>();
+        assertNull(table.putIfAbsent(key(1), 1));
+        assertEquals(1, table.putIfAbsent(key(1), 10));
+        assertEquals(1, table.get(key(1)));
+        table.put(key(2), 2);
+        table.put(key(3), 3);
+        table.remove(key(2));
+
+        Map<Integer, Integer> visited = new HashMap<>();
+        table.forEach((key, value) -> visited.put(ByteBuffer.wrap(key).getInt(8), value));
+        assertEquals(Map.of(1, 1, 3, 3), visited);
+    }
+
+    @Test
+    void readersNeverSeeWrongValueWhileWriting() throws InterruptedException {
+        CredentialTable<Integer> table = new CredentialTable<>();
+        for (int i = 0; i < 1_000; i++) {
+            table.put(key(i), i);  // 常に存在するキー
+        }
+        AtomicBoolean running = new AtomicBoolean(true);
+        AtomicReference<String> failure = new AtomicReference<>();
+
+        Thread[] readers = new Thread[4];
+        for (int r = 0; r < readers.length; r++) {
+            readers[r] = new Thread(() -> {
+                int i = 0;
+                while (running.get()) {
+                    int k = i++ % 1_000;
+                    Integer value = table.get(key(k));
+                    if (value == null || value != k) {
+                        failure.compareAndSet(null, "key " + k + " -> " + value);
+                    }
+                }
+            });
+            readers[r].start();
+        }
+
+        // 追加と削除を繰り返し、拡張と削除済みスロットの整理を何度も起こす
+        for (int round = 0; round < 20; round++) {
+            for (int i = 1_000; i < 20_000; i++) {
+                table.put(key(i), i);
+            }
+            for (int i = 1_000; i < 20_000; i++) {
+                table.remove(key(i));
+            }
+        }
+        running.set(false);
+        for (Thread reader : readers) {
+            reader.join();
+        }
+
+        assertNull(failure.get());
+        assertEquals(1_000, table.size());
+    }
+
+    private static byte[] key(int i) {
+        return ByteBuffer.allocate(16).putLong(0x5eedL).putInt(8, i).array();
+    }
+
+    @Test
+    void keysCollidingUnderAnUnkeyedHashStayShortToProbe() {
+        // "Aa" と "BB" は 31 * h + b で同じハッシュ値になる。12個並べた 4096 個のキーは全て同じ値になる
+        byte[][] pieces = {{'A', 'a'}, {'B', 'B'}};
+        CredentialTable<Integer> table = new CredentialTable<>();
+        for (int n = 0; n < 4096; n++) {
+            byte[] key = new byte[24];
+            for (int bit = 0; bit < 12; bit++) {
+                System.arraycopy(pieces[(n >>> bit) & 1], 0, key, bit * 2, 2);
+            }
+            table.put(key, n);
+        }
+        assertEquals(4096, table.size());
+
+        // 全て同じハッシュ値なら 4095 になる。負荷率 1/2 以下の線形探索として十分短い
+        assertTrue(table.longestProbe() < 64, "longest probe " + table.longestProbe());
+        byte[] key = new byte[24];
+        for (int bit = 0; bit < 12; bit++) {
+            System.arraycopy(pieces[(4095 >>> bit) & 1], 0, key, bit * 2, 2);
+        }
+        assertEquals(4095, table.get(key));
+    }
+}
@@ -0,0 +1,39 @@
+package com.example.demo.backend;
+
+import org.junit.jupiter.api.Test;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+
+/**
+ * usernameの前方一致でのユーザー数（短い prefix はカウンターで正確に、長い prefix は上限で打ち切り）の確認。
+ */
+class UserCountTest {
+
+    private final WebAuthnBackend backend = new WebAuthnBackend();
+
+    @Test
+    void shortPrefixesAreExactBeyondTheScanLimit() {
+        for (int i = 0; i < 250; i++) {
+            backend.saveUser(new UserInfo("ab" + i, new byte[]{(byte) i}));
+        }
+        backend.saveUser(new UserInfo("b", new byte[]{1}));
+        backend.saveUser(new UserInfo("ab0", new byte[]{2}));  // 同じusernameの再保存は数えない
+
+        assertEquals(new UserCount(251, false), backend.countUsersByPrefix("", 100));
+        assertEquals(new UserCount(250, false), backend.countUsersByPrefix("a", 100));
+        assertEquals(new UserCount(250, false), backend.countUsersByPrefix("ab", 100));
+        assertEquals(new UserCount(1, false), backend.countUsersByPrefix("b", 100));
+        assertEquals(new UserCount(0, false), backend.countUsersByPrefix("z", 100));
+    }
+
+    @Test
+    void longPrefixesStopAtTheLimit() {
+        for (int i = 0; i < 250; i++) {
+            backend.saveUser(new UserInfo("abc" + i, new byte[]{(byte) i}));
+        }
+
+        assertEquals(new UserCount(100, true), backend.countUsersByPrefix("abc", 100));
+        assertEquals(new UserCount(111, false), backend.countUsersByPrefix("abc1", 200));  // abc1, abc10〜19, abc100〜199
+        assertEquals(new UserCount(250, false), backend.countUsersByPrefix("abc", 250));  // ちょうど上限なら打ち切りではない
+    }
+}
@@ -0,0 +1,30 @@
+package com.example.demo.jfr;
+
+import com.yubico.webauthn.exception.AssertionFailedException;
+import com.yubico.webauthn.exception.RegistrationFailedException;
+import org.junit.jupiter.api.Test;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+
+/**
+ * 検証の失敗の理由コード（識別子を含むメッセージを記録しない）の確認。
+ */
+class VerificationFailureEventTest {
+
+    @Test
+    void reasonIsFixedCodeFromCauseMessage() {
+        assertEquals("challenge-mismatch", VerificationFailureEvent.reasonOf(
+                new RegistrationFailedException(new IllegalArgumentException("Incorrect challenge."))));
+        assertEquals("unknown-credential", VerificationFailureEvent.reasonOf(new AssertionFailedException(
+                new IllegalArgumentException("Unknown credential. Credential ID: AAEC, user handle: AwQF"))));
+        assertEquals("user-handle-mismatch", VerificationFailureEvent.reasonOf(new AssertionFailedException(
+                new IllegalArgumentException("User handle AwQF does not own credential AAEC"))));
+    }
+
+    @Test
+    void unknownMessagesAreNotRecorded() {
+        assertEquals("other", VerificationFailureEvent.reasonOf(
+                new AssertionFailedException(new IllegalArgumentException("alice@example.com: something new"))));
+        assertEquals("other", VerificationFailureEvent.reasonOf(new IllegalStateException()));
+    }
+}
@@ -0,0 +1,133 @@
+package com.example.demo.loadtest;
+
+import com.example.demo.warmup.SoftwareAuthenticator;
+import com.fasterxml.jackson.databind.JsonNode;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.yubico.webauthn.AssertionRequest;
+import com.yubico.webauthn.data.PublicKeyCredentialCreationOptions;
+
+import java.io.IOException;
+import java.net.URI;
+import java.net.http.HttpClient;
+import java.net.http.HttpRequest;
+import java.net.http.HttpResponse;
+import java.time.Duration;
+import java.util.Map;
+
+/**
+ * 負荷試験用のクライアント: 実際のHTTPエンドポイントに対して、ブラウザと同じ手順で登録・認証を行う。
+ *
+ * <p>navigator.credentials.create() / get() の代わりに{@link SoftwareAuthenticator}が応答を作る。
+ * 開始APIで作られたセッション（JSESSIONID）を、完了APIのリクエストに付けて送る。
+ *
+ * <p>失敗した場合は{@link CeremonyException}を投げる（失敗の分類に使うカテゴリー付き）。
+ */
+public class CeremonyClient {
+
+    private static final int MAX_ERROR_LENGTH = 80;
+
+    private final HttpClient httpClient;
+    private final ObjectMapper objectMapper = new ObjectMapper();
+    private final SoftwareAuthenticator authenticator;
+    private final URI baseUri;
+    private final Duration timeout;
+
+    public CeremonyClient(URI baseUri, String origin, Duration timeout) {
+        this.httpClient = HttpClient.newBuilder()
+                .version(HttpClient.Version.HTTP_1_1)
+                .connectTimeout(timeout)
+                .build();
+        this.authenticator = new SoftwareAuthenticator(origin);
+        this.baseUri = baseUri;
+        this.timeout = timeout;
+    }
+
+    /**
+     * 登録: register/start → 認証器で attestation を作成 → register/finish
+     */
+    public void register(String username) throws CeremonyException, InterruptedException {
+        Response start = post("register/start", Map.of("username", username), null);
+        PublicKeyCredentialCreationOptions options;
+        try {
+            options = PublicKeyCredentialCreationOptions.fromJson(start.body());
+        } catch (IOException e) {
+            throw new CeremonyException("register/start invalid response");
+        }
+        post("register/finish", Map.of(
+                "username", username,
+                "credential", authenticator.create(options),
+                "nickname", "loadtest"), start.sessionCookie());
+    }
+
+    /**
+     * 認証: authenticate/start → 認証器で assertion を作成 → authenticate/finish
+     */
+    public void authenticate(String username) throws CeremonyException, InterruptedException {
+        Response start = post("authenticate/start", Map.of("username", username), null);
+        AssertionRequest request;
+        try {
+            request = AssertionRequest.fromJson(start.body());
+        } catch (IOException e) {
+            throw new CeremonyException("authenticate/start invalid response");
+        }
+        post("authenticate/finish", Map.of(
+                "username", username,
+                "credential", authenticator.get(request)), start.sessionCookie());
+    }
+
+    private Response post(String path, Map<String, Object> body, String sessionCookie)
+            throws CeremonyException, InterruptedException {
+        HttpRequest.Builder builder;
+        try {
+            builder = HttpRequest.newBuilder(baseUri.resolve("/api/webauthn/" + path))
+                    .timeout(timeout)
+                    .header("Content-Type", "application/json")
+                    .POST(HttpRequest.BodyPublishers.ofByteArray(objectMapper.writeValueAsBytes(body)));
+        } catch (IOException e) {
+            throw new IllegalStateException(e);
+        }
+        if (sessionCookie != null) {
+            builder.header("Cookie", sessionCookie);
+        }
+
+        HttpResponse<String> response;
+        try {
+            response = httpClient.send(builder.build(), HttpResponse.BodyHandlers.ofString());
+        } catch (IOException e) {
+            throw new CeremonyException(path + " " + e.getClass().getSimpleName());
+        }
+        if (response.statusCode() != 200) {
+            throw new CeremonyException(path + " " + response.statusCode() + " " + errorMessage(response.body()));
+        }
+        String cookie = response.headers().firstValue("Set-Cookie")
+                .map(value -> value.split(";", 2)[0])
+                .orElse(sessionCookie);
+        return new Response(response.body(), cookie);
+    }
+
+    /**
+     * レスポンスの {"error": "..."} を取り出す（分類に使うため、長いメッセージは切り詰める）。
+     */
+    private String errorMessage(String body) {
+        try {
+            JsonNode error = objectMapper.readTree(body).path("error");
+            String message = error.isTextual() ? error.asText() : "";
+            return message.length() > MAX_ERROR_LENGTH ? message.substring(0, MAX_ERROR_LENGTH) + "..." : message;
+        } catch (IOException e) {
+            return "";
+        }
+    }
+
+    private record Response(String body, String sessionCookie) {
+    }
+
+    /**
+     * 登録・認証の失敗（HTTPステータス・エラーメッセージ・例外の種類から作ったカテゴリーを持つ）。
+     */
+    public static class CeremonyException extends Exception {
+
+        public CeremonyException(String category) {
+            super(category, null, false, false);  // 分類にだけ使うため、スタックトレースは取らない
+        }
+    }
+}
@@ -0,0 +1,120 @@
+package com.example.demo.loadtest;
+
+import javax.management.JMException;
+import javax.management.ObjectName;
+import java.lang.management.ManagementFactory;
+import java.util.ArrayList;
+import java.util.Comparator;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.regex.Matcher;
+import java.util.regex.Pattern;
+
+/**
+ * ソーク試験用: GCの後に残っているヒープ（保持されているメモリ）の計測と、クラスごとのヒストグラム。
+ *
+ * <p>【保持されているメモリ】
+ * System.gc() を数回呼んだ後のヒープ使用量。ゴミの量に左右されないため、計測ごとの差は「増え続けている構造」を表す。
+ * -XX:+DisableExplicitGC を指定すると計測できない。
+ *
+ * <p>【クラスのヒストグラム】
+ * jcmd GC.class_histogram と同じもの（DiagnosticCommand MBean。取得前にフルGCが走る）。
+ * 2つのヒストグラムの差を、増えたバイト数の多い順に並べると、増え続けている構造の要素のクラスがわかる。
+ */
+public class HeapMonitor {
+
+    private static final int GC_ROUNDS = 3;
+    private static final Pattern HISTOGRAM_LINE = Pattern.compile("^\\s*\\d+:\\s+(\\d+)\\s+(\\d+)\\s+(\\S+).*$");
+
+    /**
+     * GCの後のヒープ使用量（バイト）。
+     */
+    public long usedAfterGc() {
+        for (int i = 0; i < GC_ROUNDS; i++) {
+            System.gc();
+        }
+        return ManagementFactory.getMemoryMXBean().getHeapMemoryUsage().getUsed();
+    }
+
+    /**
+     * 最小二乗法の傾き（y / x）。点が2つ未満なら0。
+     */
+    public static double slope(List<Long> x, List<Long> y) {
+        int n = x.size();
+        if (n < 2) {
+            return 0;
+        }
+        double meanX = x.stream().mapToLong(Long::longValue).average().orElse(0);
+        double meanY = y.stream().mapToLong(Long::longValue).average().orElse(0);
+        double covariance = 0;
+        double variance = 0;
+        for (int i = 0; i < n; i++) {
+            covariance += (x.get(i) - meanX) * (y.get(i) - meanY);
+            variance += (x.get(i) - meanX) * (x.get(i) - meanX);
+        }
+        return variance == 0 ? 0 : covariance / variance;
+    }
+
+    /**
+     * 現在のクラスのヒストグラム（フルGCの後）。
+     */
+    public ClassHistogram classHistogram() {
+        try {
+            String output = (String) ManagementFactory.getPlatformMBeanServer().invoke(
+                    new ObjectName("com.sun.management:type=DiagnosticCommand"),
+                    "gcClassHistogram",
+                    new Object[]{new String[0]},
+                    new String[]{String[].class.getName()});
+            return ClassHistogram.parse(output);
+        } catch (JMException e) {
+            throw new IllegalStateException("Class histogram is not available", e);
+        }
+    }
+
+    /**
+     * クラスごとのインスタンス数とバイト数。
+     */
+    public record ClassHistogram(Map<String, Entry> entries) {
+
+        public record Entry(long instances, long bytes) {
+        }
+
+        /**
+         * 2つのヒストグラムの差の1行。
+         */
+        public record Growth(String className, long instances, long bytes) {
+        }
+
+        static ClassHistogram parse(String output) {
+            Map<String, Entry> entries = new HashMap<>();
+            for (String line : output.split("\n")) {
+                Matcher matcher = HISTOGRAM_LINE.matcher(line);
+                if (matcher.matches()) {
+                    // 同じ名前のクラスが複数のクラスローダーにある場合は合計する
+                    entries.merge(matcher.group(3),
+                            new Entry(Long.parseLong(matcher.group(1)), Long.parseLong(matcher.group(2))),
+                            (a, b) -> new Entry(a.instances() + b.instances(), a.bytes() + b.bytes()));
+                }
+            }
+            return new ClassHistogram(entries);
+        }
+
+        /**
+         * このヒストグラムから after までに増えたクラスを、増えたバイト数の多い順に最大 limit 件返す。
+         * 比較の基準として保持しているこのヒストグラム自身（HeapMonitor のクラス）は除く。
+         */
+        public List<Growth> growthTo(ClassHistogram after, int limit) {
+            List<Growth> growth = new ArrayList<>();
+            after.entries().forEach((className, entry) -> {
+                Entry before = entries.getOrDefault(className, new Entry(0, 0));
+                long bytes = entry.bytes() - before.bytes();
+                if (bytes > 0 && !className.startsWith(HeapMonitor.class.getName() + "$")) {
+                    growth.add(new Growth(className, entry.instances() - before.instances(), bytes));
+                }
+            });
+            growth.sort(Comparator.comparingLong(Growth::bytes).reversed());
+            return growth.subList(0, Math.min(limit, growth.size()));
+        }
+    }
+}
@@ -0,0 +1,52 @@
+package com.example.demo.loadtest;
+
+import com.example.demo.loadtest.HeapMonitor.ClassHistogram;
+import org.junit.jupiter.api.Test;
+
+import java.util.ArrayList;
+import java.util.List;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+/**
+ * ソーク試験の判定（GCの後のヒープの傾き・クラスのヒストグラムの差）が、増え続ける構造を見つけられることの確認。
+ */
+class HeapMonitorTest {
+
+    /** 増え続ける構造の要素（ヒストグラムで見つける対象） */
+    private record LeakedEntry(byte[] payload) {
+    }
+
+    @Test
+    void detectsGrowingStructure() {
+        HeapMonitor heap = new HeapMonitor();
+        List<LeakedEntry> leak = new ArrayList<>();
+        List<Long> steps = new ArrayList<>();
+        List<Long> used = new ArrayList<>();
+
+        ClassHistogram before = heap.classHistogram();
+        for (long step = 1; step <= 5; step++) {
+            for (int i = 0; i < 10_000; i++) {
+                leak.add(new LeakedEntry(new byte[100]));  // 1回あたり約1.5MB
+            }
+            steps.add(step);
+            used.add(heap.usedAfterGc());
+        }
+        ClassHistogram after = heap.classHistogram();
+
+        double slope = HeapMonitor.slope(steps, used);
+        assertTrue(slope > 1_000_000, "slope: " + slope);
+
+        List<ClassHistogram.Growth> growth = before.growthTo(after, 5);
+        assertTrue(growth.stream().anyMatch(g -> g.className().endsWith("HeapMonitorTest$LeakedEntry")
+                && g.instances() == 50_000), "growth: " + growth);
+        assertEquals(50_000, leak.size());
+    }
+
+    @Test
+    void slopeOfFlatSamplesIsZero() {
+        assertEquals(0, HeapMonitor.slope(List.of(1L, 2L, 3L), List.of(100L, 100L, 100L)));
+        assertEquals(10, HeapMonitor.slope(List.of(1L, 2L, 3L), List.of(10L, 20L, 30L)), 1e-9);
+    }
+}
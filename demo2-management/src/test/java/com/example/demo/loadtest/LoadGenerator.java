@@ -0,0 +1,272 @@
+package com.example.demo.loadtest;
+
+import com.example.demo.loadtest.CeremonyClient.CeremonyException;
+
+import java.net.URI;
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Semaphore;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.locks.LockSupport;
+
+/**
+ * 負荷試験ツール: 起動中のアプリケーションのHTTPエンドポイントに、登録・認証を繰り返し送る。
+ *
+ * <p>【使い方】
+ * <pre>
+ * # 試験対象を起動（レート制限を緩める loadtest プロファイル）
+ * mvn spring-boot:run -Dspring-boot.run.profiles=loadtest
+ * # 遅いバックエンドを再現する場合（検索ごとに遅延を加える。SimulatedBackendDelay）
+ * mvn spring-boot:run -Dspring-boot.run.profiles=loadtest -Dspring-boot.run.arguments=--webauthn.slow-backend.enabled=true
+ *
+ * # 負荷をかける（引数は key=value。省略時は既定値）
+ * mvn -q exec:java -Dexec.mainClass=com.example.demo.loadtest.LoadGenerator \
+ *     -Dexec.args="model=closed users=200 think-ms=500 duration=60"
+ * </pre>
+ *
+ * <p>【ワークロードモデル】
+ * <ul>
+ *   <li>closed: users 人の仮想ユーザーが、それぞれ「登録または認証 → 考慮時間（平均 think-ms の指数分布）」を繰り返す。
+ *       応答が遅くなると送信も遅くなる（ログイン画面を操作する人数が決まっている状況）</li>
+ *   <li>open: 平均 rate 件/秒のポアソン到着で、users 人の中から選んだユーザーが登録または認証する。
+ *       応答が遅くなっても到着は減らない（レイテンシは予定していた到着時刻から計るため、coordinated omission を含まない）</li>
+ * </ul>
+ * 開始前に users 人を登録し、register-ratio の割合で新しいユーザーの登録を混ぜる（残りは認証）。
+ *
+ * <p>【出力】
+ * report-interval 秒ごとのスループットとレイテンシ、最後に計測期間（warmup 秒を除く）全体の
+ * スループット・レイテンシのパーセンタイル・失敗の内訳（HTTPステータスとエラーメッセージ）。
+ */
+public class LoadGenerator {
+
+    private static final int SETUP_CONCURRENCY = 16;
+
+    private final CeremonyClient client;
+    private final LoadReport report = new LoadReport();
+    private final List<String> usernames = Collections.synchronizedList(new ArrayList<>());
+    private final String runId = Long.toString(System.currentTimeMillis(), 36);
+    private final AtomicInteger nextUser = new AtomicInteger();
+    private final double registerRatio;
+    private volatile boolean running = true;
+
+    private LoadGenerator(CeremonyClient client, double registerRatio) {
+        this.client = client;
+        this.registerRatio = registerRatio;
+    }
+
+    public static void main(String[] args) throws InterruptedException {
+        Map<String, String> options = parse(args);
+        String url = options.getOrDefault("url", "http://localhost:8080");
+        String model = options.getOrDefault("model", "closed");
+        int users = Integer.parseInt(options.getOrDefault("users", "100"));
+        double rate = Double.parseDouble(options.getOrDefault("rate", "50"));
+        double thinkMillis = Double.parseDouble(options.getOrDefault("think-ms", "1000"));
+        double registerRatio = Double.parseDouble(options.getOrDefault("register-ratio", "0.05"));
+        long durationSeconds = Long.parseLong(options.getOrDefault("duration", "60"));
+        long warmupSeconds = Long.parseLong(options.getOrDefault("warmup", "10"));
+        long intervalSeconds = Long.parseLong(options.getOrDefault("report-interval", "10"));
+        int maxInFlight = Integer.parseInt(options.getOrDefault("max-in-flight", "10000"));
+        Duration timeout = Duration.ofMillis(Long.parseLong(options.getOrDefault("timeout-ms", "10000")));
+        String origin = options.getOrDefault("origin", url.replaceAll("/+$", ""));
+        if (!model.equals("closed") && !model.equals("open")) {
+            System.err.println("model must be closed or open: " + model);
+            System.exit(2);
+        }
+
+        LoadGenerator generator = new LoadGenerator(new CeremonyClient(URI.create(url), origin, timeout), registerRatio);
+        System.out.printf("target %s, model %s, users %d, %s, register-ratio %.2f, warmup %d s, duration %d s%n",
+                url, model, users, model.equals("closed") ? "think-ms " + thinkMillis : "rate " + rate + "/s",
+                registerRatio, warmupSeconds, durationSeconds);
+
+        try (ExecutorService executor = Executors.newVirtualThreadPerTaskExecutor()) {
+            generator.setup(executor, users);
+            if (generator.usernames.isEmpty()) {
+                System.err.println("No user could be registered");
+                generator.report.printSummary(System.err);
+                System.exit(1);
+            }
+            generator.report.reset();
+
+            if (model.equals("closed")) {
+                for (String username : List.copyOf(generator.usernames)) {  // 計測中に登録したユーザーは仮想ユーザーにしない
+                    executor.submit(() -> generator.closedUser(username, thinkMillis));
+                }
+            } else {
+                Thread.ofPlatform().name("arrivals").start(() -> generator.openArrivals(executor, rate, maxInFlight));
+            }
+
+            generator.measure(warmupSeconds, durationSeconds, intervalSeconds);
+            generator.running = false;
+            executor.shutdownNow();  // 考慮時間中・応答待ちの仮想ユーザーを止める
+        }
+        generator.report.printSummary(System.out);
+    }
+
+    /**
+     * 開始前に users 人を登録する（この間の記録は計測に含めない）。
+     */
+    private void setup(ExecutorService executor, int users) throws InterruptedException {
+        System.out.printf("registering %d users...%n", users);
+        Semaphore permits = new Semaphore(SETUP_CONCURRENCY);
+        for (int i = 0; i < users; i++) {
+            permits.acquire();
+            executor.submit(() -> {
+                try {
+                    register();
+                } finally {
+                    permits.release();
+                }
+            });
+        }
+        permits.acquire(SETUP_CONCURRENCY);
+        permits.release(SETUP_CONCURRENCY);
+    }
+
+    /**
+     * 計測: warmup 秒経ったら記録を捨て、その後 duration 秒間、report-interval 秒ごとに表示する。
+     */
+    private void measure(long warmupSeconds, long durationSeconds, long intervalSeconds) throws InterruptedException {
+        TimeUnit.SECONDS.sleep(warmupSeconds);
+        report.reset();
+
+        long start = System.nanoTime();
+        long end = start + TimeUnit.SECONDS.toNanos(durationSeconds);
+        long last = start;
+        while (last < end) {
+            long next = Math.min(last + TimeUnit.SECONDS.toNanos(intervalSeconds), end);
+            TimeUnit.NANOSECONDS.sleep(next - System.nanoTime());
+            long now = System.nanoTime();
+            report.printInterval(System.out, now - start, now - last);
+            last = now;
+        }
+    }
+
+    /**
+     * closed モデルの仮想ユーザー1人: 自分のusernameで認証し（一部は新規登録）、考慮時間だけ待つことを繰り返す。
+     */
+    private void closedUser(String username, double thinkMillis) {
+        ThreadLocalRandom random = ThreadLocalRandom.current();
+        while (running) {
+            long start = System.nanoTime();
+            if (random.nextDouble() < registerRatio) {
+                register(start);
+            } else {
+                authenticate(username, start);
+            }
+            if (thinkMillis > 0) {
+                long thinkNanos = (long) (-Math.log(1 - random.nextDouble()) * thinkMillis * 1_000_000);
+                LockSupport.parkNanos(thinkNanos);
+            }
+            if (Thread.currentThread().isInterrupted()) {
+                return;
+            }
+        }
+    }
+
+    /**
+     * open モデルの到着: 平均 rate 件/秒のポアソン過程で、到着ごとに仮想スレッドで登録または認証する。
+     *
+     * <p>処理中が maxInFlight 件を超えた到着は送らずに失敗として数える（試験する側のメモリを使い切らないため）。
+     */
+    private void openArrivals(ExecutorService executor, double rate, int maxInFlight) {
+        AtomicInteger inFlight = new AtomicInteger();
+        ThreadLocalRandom random = ThreadLocalRandom.current();
+        long next = System.nanoTime();
+        while (running) {
+            next += (long) (-Math.log(1 - random.nextDouble()) / rate * 1e9);
+            for (long wait = next - System.nanoTime(); wait > 0 && running; wait = next - System.nanoTime()) {
+                LockSupport.parkNanos(wait);
+            }
+            long intended = next;
+            boolean register = random.nextDouble() < registerRatio;
+            if (inFlight.incrementAndGet() > maxInFlight) {
+                inFlight.decrementAndGet();
+                report.recordError(register ? "register" : "authenticate", "dropped (max-in-flight)");
+                continue;
+            }
+            try {
+                executor.submit(() -> {
+                    try {
+                        if (register) {
+                            register(intended);
+                        } else {
+                            authenticate(randomUsername(), intended);
+                        }
+                    } finally {
+                        inFlight.decrementAndGet();
+                    }
+                });
+            } catch (RuntimeException e) {
+                return;  // 計測の終了後（executor が停止済み）
+            }
+        }
+    }
+
+    private void register() {
+        register(System.nanoTime());
+    }
+
+    /**
+     * 新しいユーザーを登録し、以降の認証の対象に加える。
+     *
+     * @param start レイテンシの起点（open モデルでは予定していた到着時刻）
+     */
+    private void register(long start) {
+        String username = "load-" + runId + "-" + nextUser.getAndIncrement();
+        if (run("register", start, () -> client.register(username))) {
+            usernames.add(username);
+        }
+    }
+
+    private void authenticate(String username, long start) {
+        run("authenticate", start, () -> client.authenticate(username));
+    }
+
+    private boolean run(String operation, long start, Ceremony ceremony) {
+        try {
+            ceremony.run();
+            report.recordSuccess(operation, System.nanoTime() - start);
+            return true;
+        } catch (CeremonyException e) {
+            report.recordError(operation, e.getMessage());
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();  // 計測の終了（結果は数えない）
+        } catch (RuntimeException e) {
+            report.recordError(operation, e.getClass().getSimpleName());
+        }
+        return false;
+    }
+
+    private String randomUsername() {
+        synchronized (usernames) {
+            return usernames.get(ThreadLocalRandom.current().nextInt(usernames.size()));
+        }
+    }
+
+    private static Map<String, String> parse(String[] args) {
+        Map<String, String> options = new LinkedHashMap<>();
+        for (String arg : args) {
+            int eq = arg.indexOf('=');
+            if (eq <= 0) {
+                System.err.println("usage: LoadGenerator [key=value ...] (url, model, users, rate, think-ms, "
+                        + "register-ratio, duration, warmup, report-interval, max-in-flight, timeout-ms, origin)");
+                System.exit(2);
+            }
+            options.put(arg.substring(0, eq), arg.substring(eq + 1));
+        }
+        return options;
+    }
+
+    @FunctionalInterface
+    private interface Ceremony {
+        void run() throws CeremonyException, InterruptedException;
+    }
+}
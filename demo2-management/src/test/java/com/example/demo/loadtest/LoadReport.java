@@ -0,0 +1,93 @@
+package com.example.demo.loadtest;
+
+import org.HdrHistogram.Histogram;
+import org.HdrHistogram.Recorder;
+
+import java.io.PrintStream;
+import java.util.Map;
+import java.util.TreeMap;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * 負荷試験の集計: 操作（register / authenticate）ごとのレイテンシ（HdrHistogram）と、失敗の内訳。
+ *
+ * <p>記録は複数スレッドから同時に行われる（{@link Recorder}はロックなしで記録できる）。
+ * 一定間隔で{@link #printInterval}を呼ぶと、その間の分を取り出して表示し、全体の集計に加える。
+ */
+public class LoadReport {
+
+    private static final int SIGNIFICANT_DIGITS = 3;
+
+    private final Map<String, Recorder> recorders = new ConcurrentHashMap<>();  // key: 操作
+    private final Map<String, Histogram> totals = new TreeMap<>();              // key: 操作（printInterval のスレッドだけが触る）
+    private final Map<String, LongAdder> errors = new ConcurrentHashMap<>();    // key: 操作 + 失敗のカテゴリー
+    private long measuredNanos;
+
+    /**
+     * 成功した操作のレイテンシを記録する。
+     */
+    public void recordSuccess(String operation, long latencyNanos) {
+        recorders.computeIfAbsent(operation, k -> new Recorder(SIGNIFICANT_DIGITS)).recordValue(latencyNanos);
+    }
+
+    /**
+     * 失敗した操作を記録する。
+     */
+    public void recordError(String operation, String category) {
+        errors.computeIfAbsent(operation + " " + category, k -> new LongAdder()).increment();
+    }
+
+    /**
+     * ここまでの記録を捨てる（ウォームアップ期間の分を集計に含めないため）。
+     */
+    public void reset() {
+        recorders.values().forEach(Recorder::reset);
+        totals.clear();
+        errors.clear();
+        measuredNanos = 0;
+    }
+
+    /**
+     * 前回の呼び出しからの分を1行ずつ表示し、全体の集計に加える。
+     */
+    public void printInterval(PrintStream out, long elapsedNanos, long intervalNanos) {
+        measuredNanos += intervalNanos;
+        recorders.forEach((operation, recorder) -> {
+            Histogram interval = recorder.getIntervalHistogram();
+            totals.computeIfAbsent(operation, k -> new Histogram(SIGNIFICANT_DIGITS)).add(interval);
+            out.printf("%6.0fs %-13s %9.1f/s p50 %8.2f ms  p99 %8.2f ms  max %8.2f ms%n",
+                    elapsedNanos / 1e9, operation, interval.getTotalCount() / (intervalNanos / 1e9),
+                    millis(interval.getValueAtPercentile(50)), millis(interval.getValueAtPercentile(99)),
+                    millis(interval.getMaxValue()));
+        });
+    }
+
+    /**
+     * 計測期間全体の結果を表示する。
+     */
+    public void printSummary(PrintStream out) {
+        double seconds = measuredNanos / 1e9;
+        out.println();
+        out.printf("== Throughput and latency (ms) over %.0f s ==%n", seconds);
+        out.printf("%-13s %9s %9s %9s %9s %9s %9s %9s%n",
+                "operation", "count", "per sec", "p50", "p90", "p99", "p99.9", "max");
+        totals.forEach((operation, histogram) -> out.printf("%-13s %9d %9.1f %9.2f %9.2f %9.2f %9.2f %9.2f%n",
+                operation, histogram.getTotalCount(), histogram.getTotalCount() / seconds,
+                millis(histogram.getValueAtPercentile(50)), millis(histogram.getValueAtPercentile(90)),
+                millis(histogram.getValueAtPercentile(99)), millis(histogram.getValueAtPercentile(99.9)),
+                millis(histogram.getMaxValue())));
+
+        out.println();
+        out.println("== Errors ==");
+        if (errors.isEmpty()) {
+            out.println("(none)");
+        }
+        new TreeMap<>(errors).forEach((key, count) -> out.printf("%-80s %9d%n", key, count.sum()));
+    }
+
+    private static double millis(long nanos) {
+        return nanos / (double) TimeUnit.MILLISECONDS.toNanos(1);
+    }
+}
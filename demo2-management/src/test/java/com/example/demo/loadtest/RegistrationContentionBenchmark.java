@@ -0,0 +1,154 @@
+package com.example.demo.loadtest;
+
+import com.example.demo.backend.AuthenticatorInfo;
+import com.example.demo.backend.UserInfo;
+import com.example.demo.backend.WebAuthnBackend;
+import org.HdrHistogram.ConcurrentHistogram;
+import org.HdrHistogram.Histogram;
+
+import java.util.Arrays;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * 登録完了の保存を、WebAuthnBackend.registerAuthenticator（確認と作成を1つのロックの中で行う）と、
+ * 以前の手順（findUserHandleByUsername で確認してから saveUser・saveAuthenticator）で比べる。
+ *
+ * <p>【使い方】
+ * <pre>
+ * mvn -q exec:java -Dexec.mainClass=com.example.demo.loadtest.RegistrationContentionBenchmark \
+ *     -Dexec.args="threads=8 usernames=200000"
+ * </pre>
+ * <ul>
+ *   <li>distinct: スレッドごとに別のusernameを登録する（競合するのはロックのストライプが同じ場合だけ）</li>
+ *   <li>shared: 全てのスレッドが同じusernameを同じ順に登録する（同じusernameの最初の登録が同時に完了する）</li>
+ * </ul>
+ * 登録ごとにuserHandleを変え、保存できた登録のuserHandleが最後に残ったユーザーのuserHandleと異なる件数（孤立した認証器）を数える。
+ * registerAuthenticator では0件になり、代わりに拒否した件数（クライアントは登録をやり直す）を表示する。
+ */
+public class RegistrationContentionBenchmark {
+
+    public static void main(String[] args) throws InterruptedException {
+        Map<String, String> options = parse(args);
+        int threads = Integer.parseInt(options.getOrDefault("threads", "8"));
+        int usernames = Integer.parseInt(options.getOrDefault("usernames", "200000"));
+        int warmup = Integer.parseInt(options.getOrDefault("warmup", "2"));
+        System.out.printf("threads %d, usernames %d%n%n", threads, usernames);
+
+        for (int i = 0; i < warmup; i++) {
+            run(true, true, threads, usernames / 10);
+            run(false, true, threads, usernames / 10);
+        }
+        System.out.printf("%-15s %-8s %10s %12s %9s %9s %9s %10s%n",
+                "path", "mode", "attempts", "per sec", "p50 us", "p99 us", "rejected", "orphaned");
+        for (boolean shared : new boolean[]{false, true}) {
+            print("check-then-act", shared, run(false, shared, threads, usernames));
+            print("atomic", shared, run(true, shared, threads, usernames));
+        }
+    }
+
+    private static Result run(boolean atomic, boolean shared, int threads, int usernames) throws InterruptedException {
+        WebAuthnBackend backend = new WebAuthnBackend(1000);
+        Histogram histogram = new ConcurrentHistogram(3);
+        AtomicLong rejected = new AtomicLong();
+        int perThread = shared ? usernames : usernames / threads;
+        byte[][][] acceptedHandles = new byte[threads][perThread][];
+        CountDownLatch start = new CountDownLatch(1);
+        CountDownLatch done = new CountDownLatch(threads);
+
+        for (int t = 0; t < threads; t++) {
+            int thread = t;
+            Thread.ofPlatform().daemon().start(() -> {
+                try {
+                    start.await();
+                    ThreadLocalRandom random = ThreadLocalRandom.current();
+                    for (int i = 0; i < perThread; i++) {
+                        String username = username(shared, thread, i);
+                        byte[] userHandle = new byte[32];
+                        byte[] credentialId = new byte[16];
+                        random.nextBytes(userHandle);
+                        random.nextBytes(credentialId);
+                        AuthenticatorInfo authenticator =
+                                new AuthenticatorInfo(credentialId, new byte[77], new byte[16], username, null);
+
+                        long begin = System.nanoTime();
+                        boolean saved;
+                        if (atomic) {
+                            saved = backend.registerAuthenticator(userHandle, authenticator);
+                        } else {
+                            if (backend.findUserHandleByUsername(username).isEmpty()) {
+                                backend.saveUser(new UserInfo(username, userHandle));
+                            }
+                            backend.saveAuthenticator(authenticator);
+                            saved = true;
+                        }
+                        histogram.recordValue(System.nanoTime() - begin);
+                        if (saved) {
+                            acceptedHandles[thread][i] = userHandle;
+                        } else {
+                            rejected.incrementAndGet();
+                        }
+                    }
+                } catch (InterruptedException e) {
+                    Thread.currentThread().interrupt();
+                } finally {
+                    done.countDown();
+                }
+            });
+        }
+        long begin = System.nanoTime();
+        start.countDown();
+        done.await();
+        long elapsed = System.nanoTime() - begin;
+
+        // 保存できたのに、最後に残ったユーザーと userHandle が異なる登録（その認証器ではユーザーを特定できない）
+        long orphaned = 0;
+        for (int t = 0; t < threads; t++) {
+            for (int i = 0; i < perThread; i++) {
+                byte[] accepted = acceptedHandles[t][i];
+                byte[] current = backend.findUserHandleByUsername(username(shared, t, i)).orElse(null);
+                if (accepted != null && !Arrays.equals(accepted, current)) {
+                    orphaned++;
+                }
+            }
+        }
+        return new Result(histogram, elapsed, rejected.get(), orphaned);
+    }
+
+    private static String username(boolean shared, int thread, int i) {
+        return shared ? "user" + i : "user" + thread + "-" + i;
+    }
+
+    private static void print(String path, boolean shared, Result result) {
+        Histogram h = result.histogram();
+        System.out.printf("%-15s %-8s %10d %12.0f %9.1f %9.1f %9d %10d%n",
+                path, shared ? "shared" : "distinct", h.getTotalCount(),
+                h.getTotalCount() / (result.elapsedNanos() / 1e9),
+                micros(h.getValueAtPercentile(50)), micros(h.getValueAtPercentile(99)),
+                result.rejected(), result.orphaned());
+    }
+
+    private static double micros(long nanos) {
+        return nanos / (double) TimeUnit.MICROSECONDS.toNanos(1);
+    }
+
+    private static Map<String, String> parse(String[] args) {
+        Map<String, String> options = new LinkedHashMap<>();
+        for (String arg : args) {
+            int eq = arg.indexOf('=');
+            if (eq <= 0) {
+                System.err.println("usage: RegistrationContentionBenchmark [key=value ...] (threads, usernames, warmup)");
+                System.exit(2);
+            }
+            options.put(arg.substring(0, eq), arg.substring(eq + 1));
+        }
+        return options;
+    }
+
+    private record Result(Histogram histogram, long elapsedNanos, long rejected, long orphaned) {
+    }
+}
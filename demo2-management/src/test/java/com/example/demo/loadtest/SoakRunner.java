@@ -0,0 +1,367 @@
+package com.example.demo.loadtest;
+
+import com.example.demo.backend.WebAuthnBackend;
+import com.example.demo.loadtest.HeapMonitor.ClassHistogram;
+import com.example.demo.service.WebAuthnService;
+import com.example.demo.tenant.TenantConfig;
+import com.example.demo.warmup.SoftwareAuthenticator;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.yubico.webauthn.AssertionRequest;
+import com.yubico.webauthn.data.PublicKeyCredential;
+import com.yubico.webauthn.data.PublicKeyCredentialCreationOptions;
+
+import java.util.ArrayList;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * ソーク試験: 登録・認証・途中で放棄したセレモニー・認証器の削除を数百万回繰り返し、保持されているメモリが増え続けないことを確認する。
+ *
+ * <p>【使い方】
+ * <pre>
+ * mvn -q exec:java -Dexec.mainClass=com.example.demo.loadtest.SoakRunner \
+ *     -Dexec.args="ceremonies=2000000 users=10000 max-slope-mb=2"
+ * </pre>
+ * 保持されているメモリの傾きが max-slope-mb（100万セレモニーあたりのMB）を超えるか、セレモニーが失敗した場合は終了コード1で終わる。
+ *
+ * <p>【対象】
+ * HTTPを通さず、1つのJVM内で WebAuthnService / WebAuthnBackend と同じ処理を呼ぶ（HTTPでは数百万回に時間がかかりすぎる）。
+ * HttpSession は{@link SessionStore}で置き換える。WebAuthnController と同じく、開始時にリクエストを属性に保存し、完了時に外す。
+ * 放棄したセレモニーのリクエスト（AssertionRequest など）はセッションの有効期限まで残る。
+ *
+ * <p>【時間の圧縮】
+ * 1セレモニーごとに virtual-ms-per-ceremony ミリ秒進む仮想の時計で、セッションの有効期限（session-timeout-minutes）を判定する。
+ * 既定では200万セレモニーで約55時間分のセッションの生成と期限切れが起こる。
+ *
+ * <p>【判定】
+ * sample-every 回ごとにGCの後のヒープ使用量を記録する。最初の warmup-samples 回は、キャッシュ・セッション・変更ログが
+ * 定常状態になるまでの増加のため除く。残りの記録の傾き（最小二乗法）を、100万セレモニーあたりのMBで判定する。
+ * ウォームアップの終わりと最後のクラスのヒストグラムの差を、増えたバイト数の多い順に表示する（増え続けている構造の要素がわかる）。
+ *
+ * <p>変更ログ（WebAuthnBackendの ChangeLog）は保持数まで増えるため、change-log-retention を小さくして、準備の段階で保持数に達するようにする。
+ */
+public class SoakRunner {
+
+    // WebAuthnController と同じ使い方をするセッション属性
+    private static final String REGISTRATION_REQUEST_KEY = "registrationRequest";
+    private static final String ASSERTION_REQUEST_KEY = "assertionRequest";
+    private static final String SESSION_USERNAME_KEY = "username";
+
+    private static final long EXPIRE_INTERVAL_MILLIS = 60_000;  // 仮想の時計で期限切れを確認する間隔（Tomcatの既定と同じ1分）
+
+    private final WebAuthnBackend backend;
+    private final WebAuthnService service;
+    private final SoftwareAuthenticator authenticator;
+    private final SessionStore sessions;
+    private final ObjectMapper mapper = new ObjectMapper();
+    private final String[] usernames;
+    private final int threads;
+    private final double registerRatio;
+    private final double deleteRatio;
+    private final double abandonRatio;
+    private final double newSessionRatio;
+    private final int maxCredentials;
+    private final long virtualMillisPerCeremony;
+
+    private final AtomicLong next = new AtomicLong();
+    private final LongAdder registrations = new LongAdder();
+    private final LongAdder authentications = new LongAdder();
+    private final LongAdder abandoned = new LongAdder();
+    private final LongAdder deletes = new LongAdder();
+    private final Map<String, LongAdder> errors = new ConcurrentHashMap<>();
+
+    private SoakRunner(Map<String, String> options) {
+        int users = Integer.parseInt(options.getOrDefault("users", "10000"));
+        this.threads = Integer.parseInt(options.getOrDefault("threads",
+                String.valueOf(Math.max(2, Runtime.getRuntime().availableProcessors()))));
+        this.registerRatio = Double.parseDouble(options.getOrDefault("register-ratio", "0.05"));
+        this.deleteRatio = Double.parseDouble(options.getOrDefault("delete-ratio", "0.05"));
+        this.abandonRatio = Double.parseDouble(options.getOrDefault("abandon-ratio", "0.1"));
+        this.newSessionRatio = Double.parseDouble(options.getOrDefault("new-session-ratio", "0.2"));
+        this.maxCredentials = Integer.parseInt(options.getOrDefault("max-credentials", "5"));
+        this.virtualMillisPerCeremony = Long.parseLong(options.getOrDefault("virtual-ms-per-ceremony", "100"));
+        long sessionTimeoutMillis = TimeUnit.MINUTES.toMillis(
+                Long.parseLong(options.getOrDefault("session-timeout-minutes", "30")));
+        int changeLogRetention = Integer.parseInt(options.getOrDefault("change-log-retention", "1000"));
+
+        this.backend = new WebAuthnBackend(changeLogRetention);
+        this.service = new WebAuthnService(backend);
+        this.authenticator = new SoftwareAuthenticator(TenantConfig.DEFAULT.origins().iterator().next());
+        this.sessions = new SessionStore(sessionTimeoutMillis);
+        String runId = Long.toString(System.currentTimeMillis(), 36);
+        this.usernames = new String[users];
+        for (int i = 0; i < users; i++) {
+            usernames[i] = "soak-" + runId + "-" + i;
+        }
+    }
+
+    public static void main(String[] args) throws Exception {
+        Map<String, String> options = parse(args);
+        long ceremonies = Long.parseLong(options.getOrDefault("ceremonies", "2000000"));
+        long sampleEvery = Long.parseLong(options.getOrDefault("sample-every", "100000"));
+        int warmupSamples = Integer.parseInt(options.getOrDefault("warmup-samples", "2"));
+        double maxSlopeMegabytes = Double.parseDouble(options.getOrDefault("max-slope-mb", "2"));
+        int initialCredentials = Integer.parseInt(options.getOrDefault("initial-credentials", "3"));
+        int histogramTop = Integer.parseInt(options.getOrDefault("histogram-top", "15"));
+
+        SoakRunner runner = new SoakRunner(options);
+        HeapMonitor heap = new HeapMonitor();
+        System.out.printf("ceremonies %d, users %d, threads %d, register %.2f, delete %.2f, abandon %.2f, "
+                        + "%d virtual ms per ceremony, sample every %d%n",
+                ceremonies, runner.usernames.length, runner.threads, runner.registerRatio, runner.deleteRatio,
+                runner.abandonRatio, runner.virtualMillisPerCeremony, sampleEvery);
+
+        try (ExecutorService executor = Executors.newFixedThreadPool(runner.threads)) {
+            System.out.printf("registering %d users with %d credentials each...%n", runner.usernames.length, initialCredentials);
+            runner.setup(executor, initialCredentials);
+
+            List<Long> sampledCeremonies = new ArrayList<>();
+            List<Long> sampledBytes = new ArrayList<>();
+            ClassHistogram baseline = null;
+            long baselineCeremonies = 0;
+            System.out.printf("%12s %10s %10s %10s %10s %12s %10s%n",
+                    "ceremonies", "heap MB", "sessions", "pending", "users", "credentials", "per sec");
+            for (int sample = 1; runner.next.get() < ceremonies; sample++) {
+                long start = System.nanoTime();
+                long before = runner.next.get();
+                long end = Math.min(before + sampleEvery, ceremonies);
+                runner.run(executor, end);
+                double perSecond = (end - before) / ((System.nanoTime() - start) / 1e9);
+
+                runner.sessions.expire(runner.virtualNow(end));
+                long used = heap.usedAfterGc();
+                System.out.printf("%12d %10.1f %10d %10d %10d %12d %10.0f%s%n",
+                        end, used / 1048576.0, runner.sessions.size(), runner.sessions.pending(),
+                        runner.backend.countUsers(), runner.backend.getStatistics().getTotalCredentials(), perSecond,
+                        sample <= warmupSamples ? "  (warm-up)" : "");
+                if (sample == warmupSamples) {
+                    baseline = heap.classHistogram();
+                    baselineCeremonies = end;
+                }
+                if (sample > warmupSamples) {
+                    sampledCeremonies.add(end);
+                    sampledBytes.add(used);
+                }
+            }
+
+            runner.printSummary();
+            boolean passed = runner.errors.isEmpty();
+            if (sampledCeremonies.size() < 2) {
+                System.out.println("Not enough samples after warm-up to fit a slope; increase ceremonies or reduce sample-every");
+                passed = false;
+            } else {
+                double slopeMegabytes = HeapMonitor.slope(sampledCeremonies, sampledBytes) * 1_000_000 / 1048576.0;
+                boolean withinLimit = slopeMegabytes <= maxSlopeMegabytes;
+                System.out.printf("%n== Retained heap after GC ==%n%.2f MB per million ceremonies over %d samples (limit %.2f): %s%n",
+                        slopeMegabytes, sampledCeremonies.size(), maxSlopeMegabytes, withinLimit ? "PASS" : "FAIL");
+                passed &= withinLimit;
+            }
+            if (baseline != null) {
+                System.out.printf("%n== Class histogram growth since %d ceremonies ==%n%14s %12s  %s%n",
+                        baselineCeremonies, "bytes", "instances", "class");
+                for (ClassHistogram.Growth growth : baseline.growthTo(heap.classHistogram(), histogramTop)) {
+                    System.out.printf("%14d %12d  %s%n", growth.bytes(), growth.instances(), growth.className());
+                }
+            }
+            System.exit(passed ? 0 : 1);
+        }
+    }
+
+    /**
+     * 全てのユーザーに initialCredentials 個ずつ認証器を登録する。
+     */
+    private void setup(ExecutorService executor, int initialCredentials) throws Exception {
+        List<Future<?>> futures = new ArrayList<>();
+        for (int t = 0; t < threads; t++) {
+            int thread = t;
+            futures.add(executor.submit(() -> {
+                for (int i = thread; i < usernames.length; i += threads) {
+                    for (int c = 0; c < initialCredentials; c++) {
+                        register(usernames[i], sessions.open(usernames[i], 0, false), false);
+                    }
+                }
+                return null;
+            }));
+        }
+        for (var future : futures) {
+            future.get();
+        }
+    }
+
+    /**
+     * 通し番号が end になるまでセレモニーを繰り返す。
+     * 同じユーザーのセレモニーが同時に走らないよう、ユーザーはスレッドごとに分ける（同じブラウザからの同時操作はない）。
+     */
+    private void run(ExecutorService executor, long end) throws Exception {
+        long expireEvery = Math.max(1, EXPIRE_INTERVAL_MILLIS / virtualMillisPerCeremony);
+        List<Future<?>> futures = new ArrayList<>();
+        for (int t = 0; t < threads; t++) {
+            int thread = t;
+            futures.add(executor.submit(() -> {
+                ThreadLocalRandom random = ThreadLocalRandom.current();
+                long n;
+                while ((n = next.getAndIncrement()) < end) {
+                    long now = virtualNow(n);
+                    if (n % expireEvery == 0) {
+                        sessions.expire(now);
+                    }
+                    int index = thread + threads * random.nextInt((usernames.length - thread + threads - 1) / threads);
+                    ceremony(usernames[index], now, random);
+                }
+            }));
+        }
+        for (var future : futures) {
+            future.get();
+        }
+        next.set(end);  // 各スレッドが1つずつ進めすぎた分を戻す（次の区間の開始位置）
+    }
+
+    private void ceremony(String username, long now, ThreadLocalRandom random) {
+        Session session = sessions.open(username, now, random.nextDouble() < newSessionRatio);
+        boolean abandon = random.nextDouble() < abandonRatio;
+        double operation = random.nextDouble();
+        try {
+            List<byte[]> credentialIds = backend.findCredentialIdsByUsername(username);
+            if (operation < deleteRatio && !credentialIds.isEmpty()) {
+                delete(username, credentialIds.get(random.nextInt(credentialIds.size())));
+            } else if (operation < deleteRatio + registerRatio || credentialIds.isEmpty()) {
+                if (credentialIds.size() >= maxCredentials) {
+                    delete(username, credentialIds.get(0));  // 上限に達していれば最も古い認証器を削除してから登録する
+                }
+                register(username, session, abandon);
+            } else {
+                authenticate(username, session, abandon);
+            }
+        } catch (Exception e) {
+            errors.computeIfAbsent(e.getClass().getSimpleName(), k -> new LongAdder()).increment();
+        }
+    }
+
+    private void register(String username, Session session, boolean abandon) throws Exception {
+        PublicKeyCredentialCreationOptions options = service.startRegistration(username);
+        session.attributes.put(REGISTRATION_REQUEST_KEY, options);
+        if (abandon) {
+            abandoned.increment();
+            return;
+        }
+        service.finishRegistration(username, options,
+                PublicKeyCredential.parseRegistrationResponseJson(mapper.writeValueAsString(authenticator.create(options))),
+                "soak");
+        session.attributes.remove(REGISTRATION_REQUEST_KEY);
+        registrations.increment();
+    }
+
+    private void authenticate(String username, Session session, boolean abandon) throws Exception {
+        AssertionRequest request = service.startAuthentication(username);
+        session.attributes.put(ASSERTION_REQUEST_KEY, request);
+        if (abandon) {
+            abandoned.increment();
+            return;
+        }
+        String authenticated = service.finishAuthentication(request,
+                PublicKeyCredential.parseAssertionResponseJson(mapper.writeValueAsString(authenticator.get(request))));
+        session.attributes.remove(ASSERTION_REQUEST_KEY);
+        session.attributes.put(SESSION_USERNAME_KEY, authenticated);
+        authentications.increment();
+    }
+
+    private void delete(String username, byte[] credentialId) {
+        if (backend.deleteAuthenticator(username, credentialId)) {
+            authenticator.forget(credentialId);
+            deletes.increment();
+        }
+    }
+
+    private long virtualNow(long ceremony) {
+        return ceremony * virtualMillisPerCeremony;
+    }
+
+    private void printSummary() {
+        System.out.printf("%n== Ceremonies ==%nregistrations %d, authentications %d, abandoned %d, deletes %d%n",
+                registrations.sum(), authentications.sum(), abandoned.sum(), deletes.sum());
+        if (!errors.isEmpty()) {
+            System.out.println("errors:");
+            errors.forEach((type, count) -> System.out.printf("  %-40s %d%n", type, count.sum()));
+        }
+    }
+
+    private static Map<String, String> parse(String[] args) {
+        Map<String, String> options = new LinkedHashMap<>();
+        for (String arg : args) {
+            int eq = arg.indexOf('=');
+            if (eq <= 0) {
+                System.err.println("usage: SoakRunner [key=value ...] (ceremonies, users, threads, register-ratio, "
+                        + "delete-ratio, abandon-ratio, new-session-ratio, max-credentials, initial-credentials, "
+                        + "virtual-ms-per-ceremony, session-timeout-minutes, change-log-retention, sample-every, "
+                        + "warmup-samples, max-slope-mb, histogram-top)");
+                System.exit(2);
+            }
+            options.put(arg.substring(0, eq), arg.substring(eq + 1));
+        }
+        return options;
+    }
+
+    /**
+     * HttpSession の代わり: ユーザーのブラウザごとのセッションと、仮想の時計による有効期限。
+     */
+    static final class SessionStore {
+
+        private final long timeoutMillis;
+        private final AtomicLong ids = new AtomicLong();
+        private final Map<Long, Session> sessions = new ConcurrentHashMap<>();  // key: セッションid
+        private final Map<String, Long> browsers = new ConcurrentHashMap<>();  // key: username → そのブラウザのセッションid（Cookie）
+
+        SessionStore(long timeoutMillis) {
+            this.timeoutMillis = timeoutMillis;
+        }
+
+        /**
+         * ユーザーのセッションを返す（newBrowser の場合、または期限切れの場合は新しいセッション）。
+         */
+        Session open(String username, long now, boolean newBrowser) {
+            Long id = newBrowser ? null : browsers.get(username);
+            Session session = id != null ? sessions.get(id) : null;
+            if (session == null) {
+                id = ids.incrementAndGet();
+                session = new Session();
+                sessions.put(id, session);
+                browsers.put(username, id);
+            }
+            session.lastAccessedAt = now;
+            return session;
+        }
+
+        void expire(long now) {
+            sessions.values().removeIf(session -> now - session.lastAccessedAt > timeoutMillis);
+        }
+
+        int size() {
+            return sessions.size();
+        }
+
+        /**
+         * 完了していないセレモニーのリクエストを保持しているセッションの数。
+         */
+        long pending() {
+            return sessions.values().stream()
+                    .filter(session -> session.attributes.containsKey(REGISTRATION_REQUEST_KEY)
+                            || session.attributes.containsKey(ASSERTION_REQUEST_KEY))
+                    .count();
+        }
+    }
+
+    static final class Session {
+
+        final Map<String, Object> attributes = new ConcurrentHashMap<>();
+        volatile long lastAccessedAt;
+    }
+}
@@ -0,0 +1,181 @@
+package com.example.demo.loadtest;
+
+import com.example.demo.backend.AuthenticatorInfo;
+import com.example.demo.backend.CredentialStore;
+import com.example.demo.backend.UserInfo;
+import com.example.demo.backend.WebAuthnBackend;
+import com.example.demo.tiered.TieredCredentialStore;
+import org.HdrHistogram.Histogram;
+
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.SplittableRandom;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * 利用者数を増やしたときのヒープ使用量と検索のレイテンシを、{@link TieredCredentialStore}と WebAuthnBackend（全てヒープ）で比べる。
+ *
+ * <p>【使い方】
+ * <pre>
+ * mvn -q exec:java -Dexec.mainClass=com.example.demo.loadtest.TieredStoreBenchmark \
+ *     -Dexec.args="store=tiered users=1000000 hot-capacity=50000 p99-budget-us=200"
+ * </pre>
+ * <ul>
+ *   <li>store: tiered または heap</li>
+ *   <li>users: 登録するユーザー数（1ユーザーに認証器1つ）</li>
+ *   <li>lookups: 計測する findCredentialDataByCredentialId の回数（その前に lookups/5 回で温める）</li>
+ *   <li>hot-capacity, memtable-mb, block-cache-mb, directory: TieredCredentialStore の設定（directory の既定は一時ディレクトリ）</li>
+ *   <li>p99-budget-us: p99 の上限（TieredCredentialStore の lookupBudgetNanos にも使う）。超えたら FAIL と表示し、終了コード 1 で終わる</li>
+ * </ul>
+ *
+ * <p>登録の 1/4 ごとに GC 後のヒープ使用量を表示する（tiered はユーザー数によらずほぼ一定になる）。
+ * credentialId などはユーザーの番号から決まる値にし、ベンチマーク自身はユーザーごとの状態を持たない。
+ * 検索するユーザーは順位 r の確率が 1/(r+1) に比例する分布（Zipf, s=1 の近似）で選ぶ。順位とユーザーの番号は混ぜて対応づける
+ * （よく使われるユーザーが同じブロックに集まらないように）。
+ */
+public class TieredStoreBenchmark {
+
+    public static void main(String[] args) throws Exception {
+        Map<String, String> options = parse(args);
+        String storeType = options.getOrDefault("store", "tiered");
+        int users = Integer.parseInt(options.getOrDefault("users", "1000000"));
+        int lookups = Integer.parseInt(options.getOrDefault("lookups", "1000000"));
+        long p99BudgetMicros = Long.parseLong(options.getOrDefault("p99-budget-us", "200"));
+
+        TieredCredentialStore.Settings defaults = TieredCredentialStore.Settings.defaults();
+        TieredCredentialStore.Settings settings = new TieredCredentialStore.Settings(
+                Integer.parseInt(options.getOrDefault("hot-capacity", "50000")),
+                Long.parseLong(options.getOrDefault("memtable-mb", "8")) << 20,
+                defaults.blockSize(),
+                Long.parseLong(options.getOrDefault("block-cache-mb", "16")) << 20,
+                defaults.maxSegments(),
+                TimeUnit.MICROSECONDS.toNanos(p99BudgetMicros));
+        Path directory = options.containsKey("directory")
+                ? Path.of(options.get("directory")) : Files.createTempDirectory("tiered-bench");
+
+        HeapMonitor heap = new HeapMonitor();
+        long baseline = heap.usedAfterGc();
+        CredentialStore store = storeType.equals("heap")
+                ? new WebAuthnBackend() : new TieredCredentialStore(directory, settings);
+        System.out.printf("store %s, users %d, lookups %d, settings %s%n", storeType, users, lookups, settings);
+
+        System.out.printf("%n%10s %12s %10s%n", "users", "heap MB", "load s");
+        long start = System.nanoTime();
+        for (int i = 0; i < users; i++) {
+            String username = "bench-" + i;
+            store.saveUser(new UserInfo(username, bytes(i, 1, 32)));
+            store.saveAuthenticator(new AuthenticatorInfo(bytes(i, 2, 32), bytes(i, 3, 77), new byte[16], username, null));
+            if ((i + 1) % Math.max(1, users / 4) == 0) {
+                System.out.printf("%10d %12.1f %10.1f%n", i + 1, megabytes(heap.usedAfterGc() - baseline),
+                        (System.nanoTime() - start) / 1e9);
+            }
+        }
+
+        lookup(store, users, lookups / 5);
+        if (store instanceof TieredCredentialStore tiered) {
+            // 温めた分を除いて数える
+            System.out.printf("%nafter warmup: hot %d entries, %d segments, %.1f MB on disk, %d indexed blocks%n",
+                    tiered.getHotSize(), tiered.getSegmentCount(), megabytes(tiered.getDiskBytes()),
+                    tiered.getIndexedBlocks());
+        }
+        Counts before = Counts.of(store);
+        Histogram histogram = lookup(store, users, lookups);
+        Counts after = Counts.of(store);
+
+        System.out.printf("%nlookups %d: p50 %.1f us, p99 %.1f us, p99.9 %.1f us, max %.1f us%n",
+                histogram.getTotalCount(), micros(histogram.getValueAtPercentile(50)),
+                micros(histogram.getValueAtPercentile(99)), micros(histogram.getValueAtPercentile(99.9)),
+                micros(histogram.getMaxValue()));
+        if (store instanceof TieredCredentialStore tiered) {
+            long total = Math.max(1, after.total() - before.total());
+            System.out.printf("hot %.1f%%, write buffer %.1f%%, segments %.1f%% (block cache hits %d, block reads %d), "
+                            + "misses %d%n",
+                    100.0 * (after.hot - before.hot) / total, 100.0 * (after.memtable - before.memtable) / total,
+                    100.0 * (after.segments - before.segments) / total,
+                    after.blockCacheHits - before.blockCacheHits, after.blockReads - before.blockReads,
+                    after.misses - before.misses);
+            System.out.printf("store: %d of %d record lookups over budget (since start)%n",
+                    tiered.getLookupsOverBudget(), tiered.getLookups());
+        }
+        System.out.printf("heap after lookups %.1f MB%n", megabytes(heap.usedAfterGc() - baseline));
+
+        if (store instanceof TieredCredentialStore tiered) {
+            tiered.close();
+        }
+        boolean pass = micros(histogram.getValueAtPercentile(99)) <= p99BudgetMicros;
+        System.out.printf("%s: p99 %.1f us (budget %d us)%n", pass ? "PASS" : "FAIL",
+                micros(histogram.getValueAtPercentile(99)), p99BudgetMicros);
+        System.exit(pass ? 0 : 1);
+    }
+
+    /**
+     * Zipf に近い分布で選んだユーザーの認証器を count 回検索する。
+     */
+    private static Histogram lookup(CredentialStore store, int users, int count) {
+        Histogram histogram = new Histogram(3);
+        ThreadLocalRandom random = ThreadLocalRandom.current();
+        double logUsers = Math.log(users + 1.0);
+        for (int i = 0; i < count; i++) {
+            // 順位 r を [0, users) から P(r) ∝ 1/(r+1) で選ぶ（log(r+1) が一様）
+            int rank = Math.min(users - 1, (int) Math.exp(random.nextDouble() * logUsers) - 1);
+            int user = (int) Math.floorMod(rank * 0x9e3779b97f4a7c15L, (long) users);
+            byte[] credentialId = bytes(user, 2, 32);
+            long start = System.nanoTime();
+            boolean found = store.findCredentialDataByCredentialId(credentialId).isPresent();
+            histogram.recordValue(System.nanoTime() - start);
+            if (!found) {
+                throw new IllegalStateException("Credential of user " + user + " not found");
+            }
+        }
+        return histogram;
+    }
+
+    /**
+     * ユーザーの番号と用途から決まるバイト列。
+     */
+    private static byte[] bytes(int user, int purpose, int length) {
+        byte[] bytes = new byte[length];
+        new SplittableRandom(((long) user << 8) | purpose).nextBytes(bytes);
+        return bytes;
+    }
+
+    private static double megabytes(long bytes) {
+        return bytes / (1024.0 * 1024.0);
+    }
+
+    private static double micros(long nanos) {
+        return nanos / (double) TimeUnit.MICROSECONDS.toNanos(1);
+    }
+
+    private static Map<String, String> parse(String[] args) {
+        Map<String, String> options = new LinkedHashMap<>();
+        for (String arg : args) {
+            int eq = arg.indexOf('=');
+            if (eq <= 0) {
+                System.err.println("usage: TieredStoreBenchmark [key=value ...] (store, users, lookups, hot-capacity, "
+                        + "memtable-mb, block-cache-mb, directory, p99-budget-us)");
+                System.exit(2);
+            }
+            options.put(arg.substring(0, eq), arg.substring(eq + 1));
+        }
+        return options;
+    }
+
+    private record Counts(long hot, long memtable, long segments, long misses, long blockCacheHits, long blockReads) {
+
+        static Counts of(CredentialStore store) {
+            if (store instanceof TieredCredentialStore tiered) {
+                return new Counts(tiered.getHotHits(), tiered.getMemtableHits(), tiered.getSegmentHits(),
+                        tiered.getMisses(), tiered.getBlockCacheHits(), tiered.getBlockReads());
+            }
+            return new Counts(0, 0, 0, 0, 0, 0);
+        }
+
+        long total() {
+            return hot + memtable + segments + misses;
+        }
+    }
+}
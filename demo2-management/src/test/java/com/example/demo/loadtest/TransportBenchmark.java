@@ -0,0 +1,180 @@
+package com.example.demo.loadtest;
+
+import com.example.demo.backend.AuthenticatorInfo;
+import com.example.demo.backend.UserInfo;
+import com.example.demo.backend.WebAuthnBackend;
+import com.example.demo.remote.AsyncCredentialLookup;
+import com.example.demo.remote.BinaryBackendClient;
+import com.example.demo.remote.BinaryBackendServer;
+import com.example.demo.remote.RemoteLookupClient;
+import com.example.demo.remote.RemoteLookupServer;
+import org.HdrHistogram.ConcurrentHistogram;
+import org.HdrHistogram.Histogram;
+
+import java.util.ArrayList;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.function.Supplier;
+
+/**
+ * バックエンドへの検索の往復のコストを、HTTP/JSON（{@link RemoteLookupServer}）とバイナリプロトコル（{@link BinaryBackendServer}）で比べる。
+ *
+ * <p>【使い方】
+ * <pre>
+ * mvn -q exec:java -Dexec.mainClass=com.example.demo.loadtest.TransportBenchmark \
+ *     -Dexec.args="users=10000 requests=50000 concurrency=64 batch=16"
+ * </pre>
+ *
+ * <p>同じJVMのループバックで、同じWebAuthnBackendを両方のサーバーで公開し、findCredentialDataByCredentialId を繰り返す。
+ * <ul>
+ *   <li>sequential: 1件ずつ応答を待ってから次を送る（1往復のレイテンシ）</li>
+ *   <li>concurrent: concurrency 件を同時に送り続ける（バイナリは接続あたり複数の要求を続けて送る）</li>
+ *   <li>batch: バイナリの multi-get で batch 件を1回の要求で取得する（スループットは取得した件数で数える）</li>
+ * </ul>
+ * 計測の前に warmup 件を送り、JITと接続を温める。
+ */
+public class TransportBenchmark {
+
+    public static void main(String[] args) throws Exception {
+        Map<String, String> options = parse(args);
+        int users = Integer.parseInt(options.getOrDefault("users", "10000"));
+        int requests = Integer.parseInt(options.getOrDefault("requests", "50000"));
+        int warmup = Integer.parseInt(options.getOrDefault("warmup", "20000"));
+        int concurrency = Integer.parseInt(options.getOrDefault("concurrency", "64"));
+        int batch = Integer.parseInt(options.getOrDefault("batch", "16"));
+        int connections = Integer.parseInt(options.getOrDefault("connections", "2"));
+
+        WebAuthnBackend backend = new WebAuthnBackend();
+        List<byte[]> credentialIds = populate(backend, users);
+        System.out.printf("users %d, requests %d, warmup %d, concurrency %d, batch %d, connections %d%n",
+                users, requests, warmup, concurrency, batch, connections);
+
+        try (RemoteLookupServer httpServer = new RemoteLookupServer(backend, 0);
+             BinaryBackendServer binaryServer = new BinaryBackendServer(backend, 0)) {
+            httpServer.start();
+            binaryServer.start();
+            try (RemoteLookupClient http = new RemoteLookupClient("http://localhost:" + httpServer.getPort(), 10_000);
+                 BinaryBackendClient binary = new BinaryBackendClient("localhost:" + binaryServer.getPort(),
+                         connections, 10_000)) {
+                System.out.println();
+                System.out.printf("%-8s %-11s %9s %10s %9s %9s %9s %9s%n",
+                        "protocol", "mode", "lookups", "per sec", "p50 us", "p99 us", "p99.9 us", "max us");
+                Map<String, AsyncCredentialLookup> protocols = new LinkedHashMap<>();
+                protocols.put("http", http);
+                protocols.put("binary", binary);
+                for (Map.Entry<String, AsyncCredentialLookup> entry : protocols.entrySet()) {
+                    AsyncCredentialLookup lookup = entry.getValue();
+                    Supplier<CompletableFuture<?>> single = () -> lookup.findCredentialDataByCredentialId(
+                            credentialIds.get(ThreadLocalRandom.current().nextInt(credentialIds.size())));
+                    run(single, warmup, concurrency);
+                    print(entry.getKey(), "sequential", run(single, requests / 10, 1), 1);
+                    print(entry.getKey(), "concurrent", run(single, requests, concurrency), 1);
+                }
+
+                Supplier<CompletableFuture<?>> multiGet = () -> {
+                    List<byte[]> ids = new ArrayList<>(batch);
+                    for (int i = 0; i < batch; i++) {
+                        ids.add(credentialIds.get(ThreadLocalRandom.current().nextInt(credentialIds.size())));
+                    }
+                    return binary.findCredentialDataBatch(ids);
+                };
+                run(multiGet, warmup / batch, concurrency);
+                print("binary", "batch", run(multiGet, requests / batch, concurrency), batch);
+            }
+        }
+    }
+
+    /**
+     * operation を count 回、同時に concurrency 件ずつ実行する（1件が終わるたびに次を送る）。
+     */
+    private static Result run(Supplier<CompletableFuture<?>> operation, int count, int concurrency)
+            throws InterruptedException {
+        Histogram histogram = new ConcurrentHistogram(3);
+        AtomicInteger remaining = new AtomicInteger(count);
+        AtomicLong failures = new AtomicLong();
+        CountDownLatch done = new CountDownLatch(concurrency);
+        long start = System.nanoTime();
+        for (int i = 0; i < concurrency; i++) {
+            next(operation, remaining, histogram, failures, done);
+        }
+        done.await();
+        long elapsed = System.nanoTime() - start;
+        if (failures.get() > 0) {
+            System.err.println(failures.get() + " lookups failed");
+        }
+        return new Result(histogram, elapsed);
+    }
+
+    private static void next(Supplier<CompletableFuture<?>> operation, AtomicInteger remaining, Histogram histogram,
+                             AtomicLong failures, CountDownLatch done) {
+        if (remaining.getAndDecrement() <= 0) {
+            done.countDown();
+            return;
+        }
+        long start = System.nanoTime();
+        operation.get().whenComplete((result, e) -> {
+            if (e != null) {
+                failures.incrementAndGet();
+            } else {
+                histogram.recordValue(System.nanoTime() - start);
+            }
+            // 応答を受け取ったスレッドで次を送る（HTTPのクライアントは仮想スレッド、バイナリは読み取りスレッド）
+            next(operation, remaining, histogram, failures, done);
+        });
+    }
+
+    private static void print(String protocol, String mode, Result result, int lookupsPerRequest) {
+        Histogram h = result.histogram();
+        long lookups = h.getTotalCount() * lookupsPerRequest;
+        System.out.printf("%-8s %-11s %9d %10.0f %9.1f %9.1f %9.1f %9.1f%n",
+                protocol, mode, lookups, lookups / (result.elapsedNanos() / 1e9),
+                micros(h.getValueAtPercentile(50)), micros(h.getValueAtPercentile(99)),
+                micros(h.getValueAtPercentile(99.9)), micros(h.getMaxValue()));
+    }
+
+    private static List<byte[]> populate(WebAuthnBackend backend, int users) {
+        List<byte[]> credentialIds = new ArrayList<>(users);
+        ThreadLocalRandom random = ThreadLocalRandom.current();
+        for (int i = 0; i < users; i++) {
+            String username = "bench-" + i;
+            byte[] userHandle = new byte[32];
+            byte[] credentialId = new byte[32];
+            byte[] publicKey = new byte[77];  // ES256 の COSE 公開鍵と同程度
+            random.nextBytes(userHandle);
+            random.nextBytes(credentialId);
+            random.nextBytes(publicKey);
+            backend.saveUser(new UserInfo(username, userHandle));
+            backend.saveAuthenticator(new AuthenticatorInfo(credentialId, publicKey, new byte[16], username, null));
+            credentialIds.add(credentialId);
+        }
+        return credentialIds;
+    }
+
+    private static double micros(long nanos) {
+        return nanos / (double) TimeUnit.MICROSECONDS.toNanos(1);
+    }
+
+    private static Map<String, String> parse(String[] args) {
+        Map<String, String> options = new LinkedHashMap<>();
+        for (String arg : args) {
+            int eq = arg.indexOf('=');
+            if (eq <= 0) {
+                System.err.println("usage: TransportBenchmark [key=value ...] (users, requests, warmup, concurrency, "
+                        + "batch, connections)");
+                System.exit(2);
+            }
+            options.put(arg.substring(0, eq), arg.substring(eq + 1));
+        }
+        return options;
+    }
+
+    private record Result(Histogram histogram, long elapsedNanos) {
+    }
+}
@@ -0,0 +1,136 @@
+package com.example.demo.remote;
+
+import com.example.demo.backend.WebAuthnBackend;
+import com.example.demo.tenant.TenantConfig;
+import com.example.demo.token.LoginTokenService;
+import com.example.demo.warmup.SoftwareAuthenticator;
+import com.fasterxml.jackson.databind.JsonNode;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.yubico.webauthn.AssertionRequest;
+import com.yubico.webauthn.data.PublicKeyCredentialCreationOptions;
+import jakarta.servlet.http.Cookie;
+import org.junit.jupiter.api.AfterAll;
+import org.junit.jupiter.api.Test;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.boot.test.autoconfigure.web.servlet.AutoConfigureMockMvc;
+import org.springframework.boot.test.context.SpringBootTest;
+import org.springframework.http.MediaType;
+import org.springframework.mock.web.MockHttpSession;
+import org.springframework.test.context.DynamicPropertyRegistry;
+import org.springframework.test.context.DynamicPropertySource;
+import org.springframework.test.web.servlet.MockMvc;
+import org.springframework.test.web.servlet.MvcResult;
+
+import java.io.IOException;
+import java.util.Map;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+import static org.springframework.test.web.servlet.request.MockMvcRequestBuilders.get;
+import static org.springframework.test.web.servlet.request.MockMvcRequestBuilders.post;
+import static org.springframework.test.web.servlet.result.MockMvcResultMatchers.jsonPath;
+import static org.springframework.test.web.servlet.result.MockMvcResultMatchers.status;
+
+/**
+ * webauthn.remote-lookup.url=backend:// で、登録・認証・一覧・表示名の変更・削除とログイントークンの確認が
+ * 全てバックエンドサービスのデータを対象にする（このノードの WebAuthnBackend には何も残らない）ことの確認。
+ */
+@SpringBootTest(properties = {"webauthn.warmup.iterations=0", "webauthn.token.enabled=true"})
+@AutoConfigureMockMvc
+class BackendModeFlowTest {
+
+    private static final WebAuthnBackend SERVICE_BACKEND = new WebAuthnBackend();
+    private static final BinaryBackendServer SERVER = startServer();
+
+    private final ObjectMapper mapper = new ObjectMapper();
+
+    @Autowired
+    private MockMvc mvc;
+
+    @Autowired
+    private WebAuthnBackend localBackend;
+
+    @DynamicPropertySource
+    static void backendUrl(DynamicPropertyRegistry registry) {
+        registry.add("webauthn.remote-lookup.url", () -> "backend://localhost:" + SERVER.getPort());
+    }
+
+    @AfterAll
+    static void stopServer() throws Exception {
+        SERVER.close();
+    }
+
+    @Test
+    void fullFlowUsesTheBackendService() throws Exception {
+        SoftwareAuthenticator authenticator = new SoftwareAuthenticator(TenantConfig.DEFAULT.origins().iterator().next());
+        MockHttpSession session = new MockHttpSession();
+
+        MvcResult start = mvc.perform(post("/api/webauthn/register/start").session(session)
+                        .contentType(MediaType.APPLICATION_JSON).content("{\"username\": \"remote-user\"}"))
+                .andExpect(status().isOk())
+                .andReturn();
+        PublicKeyCredentialCreationOptions options =
+                PublicKeyCredentialCreationOptions.fromJson(start.getResponse().getContentAsString());
+        Map<String, Object> credential = authenticator.create(options);
+        mvc.perform(post("/api/webauthn/register/finish").session(session)
+                        .contentType(MediaType.APPLICATION_JSON)
+                        .content(mapper.writeValueAsString(Map.of(
+                                "username", "remote-user", "credential", credential, "nickname", "first"))))
+                .andExpect(status().isOk());
+        assertEquals(1, SERVICE_BACKEND.findCredentialIdsByUsername("remote-user").size());
+        assertTrue(localBackend.findUserByUsername("remote-user").isEmpty());
+
+        MvcResult assertionStart = mvc.perform(post("/api/webauthn/authenticate/start").session(session)
+                        .contentType(MediaType.APPLICATION_JSON).content("{\"username\": \"remote-user\"}"))
+                .andExpect(status().isOk())
+                .andReturn();
+        AssertionRequest assertionRequest = AssertionRequest.fromJson(assertionStart.getResponse().getContentAsString());
+        MvcResult login = mvc.perform(post("/api/webauthn/authenticate/finish").session(session)
+                        .contentType(MediaType.APPLICATION_JSON)
+                        .content(mapper.writeValueAsString(Map.of(
+                                "username", "remote-user", "credential", authenticator.get(assertionRequest)))))
+                .andExpect(status().isOk())
+                .andReturn();
+        Cookie token = new Cookie(LoginTokenService.COOKIE_NAME,
+                mapper.readTree(login.getResponse().getContentAsString()).get("token").asText());
+        String credentialId = (String) credential.get("id");
+
+        // 一覧と表示名の変更はバックエンドサービスのデータ（トークンの確認もバックエンドサービスで行う）
+        mvc.perform(get("/api/authenticators").cookie(token))
+                .andExpect(status().isOk())
+                .andExpect(jsonPath("$.items[0].credentialIdBase64").value(credentialId))
+                .andExpect(jsonPath("$.items[0].nickname").value("first"));
+        mvc.perform(post("/api/authenticators/rename").cookie(token)
+                        .contentType(MediaType.APPLICATION_JSON)
+                        .content("{\"items\": [{\"credentialId\": \"%s\", \"nickname\": \"renamed\"}]}".formatted(credentialId)))
+                .andExpect(status().isOk())
+                .andExpect(jsonPath("$.results[0].success").value(true));
+        MvcResult list = mvc.perform(get("/api/authenticators").cookie(token))
+                .andExpect(status().isOk())
+                .andReturn();
+        JsonNode items = mapper.readTree(list.getResponse().getContentAsString()).get("items");
+        assertEquals("renamed", items.get(0).get("nickname").asText());
+        assertEquals("renamed", SERVICE_BACKEND.findAuthenticatorPage("remote-user", 0, 10).items().get(0)
+                .authenticator().getNickname());
+
+        // バックエンドサービスで削除すると、トークンは使えなくなる
+        mvc.perform(post("/api/authenticators/delete").cookie(token)
+                        .contentType(MediaType.APPLICATION_JSON)
+                        .content("{\"credentialIds\": [\"%s\"]}".formatted(credentialId)))
+                .andExpect(status().isOk())
+                .andExpect(jsonPath("$.results[0].success").value(true));
+        assertTrue(SERVICE_BACKEND.findCredentialIdsByUsername("remote-user").isEmpty());
+        mvc.perform(get("/api/authenticators").cookie(token))
+                .andExpect(status().isUnauthorized());
+    }
+
+    private static BinaryBackendServer startServer() {
+        try {
+            BinaryBackendServer server = new BinaryBackendServer(SERVICE_BACKEND, 0);
+            server.start();
+            return server;
+        } catch (IOException e) {
+            throw new IllegalStateException(e);
+        }
+    }
+}
@@ -0,0 +1,250 @@
+package com.example.demo.remote;
+
+import com.example.demo.backend.AuthenticatorInfo;
+import com.example.demo.backend.AuthenticatorRemovalListener;
+import com.example.demo.backend.UserInfo;
+import com.example.demo.backend.WebAuthnBackend;
+import com.example.demo.backend.WebAuthnBackend.CredentialData;
+import com.example.demo.remote.BackendProtocol.FrameWriter;
+import com.example.demo.remote.BackendProtocol.Operation;
+import com.example.demo.service.WebAuthnService;
+import com.example.demo.tenant.TenantConfig;
+import com.example.demo.warmup.SoftwareAuthenticator;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.yubico.webauthn.AssertionRequest;
+import com.yubico.webauthn.data.PublicKeyCredential;
+import com.yubico.webauthn.data.PublicKeyCredentialCreationOptions;
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+
+import java.net.InetSocketAddress;
+import java.nio.ByteBuffer;
+import java.nio.channels.SocketChannel;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Optional;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.ThreadLocalRandom;
+
+import static org.junit.jupiter.api.Assertions.assertArrayEquals;
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertInstanceOf;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+/**
+ * バックエンドサービス（{@link BinaryBackendServer}）とクライアントの、パイプライン・multi-get・更新・接続の切断・共有の秘密の確認。
+ * backend:// のときに、登録・認証の更新がバックエンドサービスに届くこと（{@link RemoteCredentialStore}）も確認する。
+ */
+class BinaryBackendClientTest {
+
+    private static final int USERS = 200;
+
+    private final WebAuthnBackend backend = new WebAuthnBackend();
+    private BinaryBackendServer server;
+    private BinaryBackendClient client;
+
+    @BeforeEach
+    void startServer() throws Exception {
+        for (int i = 0; i < USERS; i++) {
+            backend.saveUser(new UserInfo("user" + i, new byte[]{(byte) i, 1}));
+            backend.saveAuthenticator(new AuthenticatorInfo(credentialId(i), new byte[]{2, (byte) i}, new byte[16], "user" + i, "key"));
+        }
+        server = new BinaryBackendServer(backend, 0);
+        server.start();
+        client = new BinaryBackendClient("localhost:" + server.getPort(), 2, 5000);
+    }
+
+    @AfterEach
+    void stopServer() throws Exception {
+        client.close();
+        server.close();
+    }
+
+    @Test
+    void pipelinedLookupsReturnTheirOwnResponses() {
+        // 応答を待たずに続けて送り、応答を要求idで正しい要求に対応付けること
+        List<Integer> requested = new ArrayList<>();
+        List<CompletableFuture<Optional<CredentialData>>> futures = new ArrayList<>();
+        for (int n = 0; n < 5000; n++) {
+            int i = ThreadLocalRandom.current().nextInt(USERS);
+            requested.add(i);
+            futures.add(client.findCredentialDataByCredentialId(credentialId(i)));
+        }
+        for (int n = 0; n < futures.size(); n++) {
+            CredentialData data = futures.get(n).join().orElseThrow();
+            assertArrayEquals(credentialId(requested.get(n)), data.credentialId);
+            assertArrayEquals(new byte[]{2, (byte) (int) requested.get(n)}, data.publicKey);
+        }
+
+        assertArrayEquals(new byte[]{7, 1}, client.findUserHandleByUsername("user7").join().orElseThrow());
+        assertEquals("user7", client.findUsernameByUserHandle(new byte[]{7, 1}).join().orElseThrow());
+        assertEquals(1, client.findCredentialIdsByUsername("user7").join().size());
+        assertTrue(client.findCredentialData(credentialId(7), new byte[]{8, 1}).join().isEmpty());
+        assertTrue(client.findUserHandleByUsername("nobody").join().isEmpty());
+
+        List<Optional<CredentialData>> batch = client.findCredentialDataBatch(
+                List.of(credentialId(3), new byte[]{9, 9, 9}, credentialId(5))).join();
+        assertEquals(3, batch.size());
+        assertArrayEquals(credentialId(3), batch.get(0).orElseThrow().credentialId);
+        assertTrue(batch.get(1).isEmpty());
+        assertArrayEquals(credentialId(5), batch.get(2).orElseThrow().credentialId);
+    }
+
+    @Test
+    void writesAreAppliedOnTheBackend() {
+        client.saveUser(new UserInfo("carol", new byte[]{42})).join();
+        client.saveAuthenticator(new AuthenticatorInfo(new byte[]{4, 2}, new byte[]{5}, null, "carol", null, 1000)).join();
+        client.recordUse(new byte[]{4, 2}, System.currentTimeMillis()).join();
+
+        AuthenticatorInfo saved = backend.findAuthenticatorByCredentialId(new byte[]{4, 2}).orElseThrow();
+        assertEquals("carol", saved.getUsername());
+        assertTrue(saved.getLastUsedAt() > 1000);
+        assertArrayEquals(new byte[]{42}, backend.findUserHandleByUsername("carol").orElseThrow());
+
+        assertTrue(client.deleteAuthenticator("carol", new byte[]{4, 2}).join());
+        assertFalse(client.deleteAuthenticator("carol", new byte[]{4, 2}).join());
+        assertTrue(backend.findAuthenticatorByCredentialId(new byte[]{4, 2}).isEmpty());
+    }
+
+    @Test
+    void registerAuthenticatorKeepsTheFirstUserHandle() {
+        AuthenticatorInfo first = new AuthenticatorInfo(new byte[]{6, 1}, new byte[]{5}, null, "dave", null, 0);
+        AuthenticatorInfo second = new AuthenticatorInfo(new byte[]{6, 2}, new byte[]{5}, null, "dave", null, 0);
+
+        assertTrue(client.registerAuthenticator(new byte[]{61}, first).join());
+        assertFalse(client.registerAuthenticator(new byte[]{62}, second).join());  // 別のuserHandleで登録済み
+
+        assertArrayEquals(new byte[]{61}, backend.findUserHandleByUsername("dave").orElseThrow());
+        assertEquals(1, backend.findCredentialIdsByUsername("dave").size());
+        assertTrue(backend.findAuthenticatorByCredentialId(new byte[]{6, 2}).isEmpty());
+    }
+
+    @Test
+    void sharedSecretIsRequiredBeforeAnyRequest() throws Exception {
+        try (BinaryBackendServer secured = new BinaryBackendServer(backend, null, 0, "s3cret")) {
+            secured.start();
+            String address = "localhost:" + secured.getPort();
+            try (BinaryBackendClient authorized = new BinaryBackendClient(address, 1, 5000, "s3cret");
+                 BinaryBackendClient anonymous = new BinaryBackendClient(address, 1, 5000);
+                 BinaryBackendClient wrong = new BinaryBackendClient(address, 1, 5000, "guess")) {
+                assertTrue(authorized.findUserHandleByUsername("user1").join().isPresent());
+                for (BinaryBackendClient rejected : List.of(anonymous, wrong)) {
+                    CompletionException failure = assertThrows(CompletionException.class,
+                            () -> rejected.findUserHandleByUsername("user1").join());
+                    assertInstanceOf(BackendUnavailableException.class, failure.getCause());
+                }
+            }
+        }
+    }
+
+    @Test
+    void serversRefuseToListenBeyondLoopbackWithoutASecret() {
+        assertThrows(IllegalArgumentException.class, () -> new BinaryBackendServer(backend, "0.0.0.0", 0, null));
+        assertThrows(IllegalArgumentException.class, () -> new RemoteLookupServer(backend, "0.0.0.0", 0, ""));
+    }
+
+    @Test
+    void lookupServerRejectsRequestsWithoutTheSecret() throws Exception {
+        try (RemoteLookupServer secured = new RemoteLookupServer(backend, null, 0, "s3cret");
+             RemoteLookupClient authorized = new RemoteLookupClient("http://localhost:" + secured.getPort(), 5000, "s3cret");
+             RemoteLookupClient anonymous = new RemoteLookupClient("http://localhost:" + secured.getPort(), 5000)) {
+            secured.start();
+            assertTrue(authorized.findUserHandleByUsername("user1").join().isPresent());
+            CompletionException failure = assertThrows(CompletionException.class,
+                    () -> anonymous.findUserHandleByUsername("user1").join());
+            assertInstanceOf(BackendUnavailableException.class, failure.getCause());
+        }
+    }
+
+    @Test
+    void ceremoniesWriteThroughTheBackendService() throws Exception {
+        ResilientCredentialLookup lookup = new ResilientCredentialLookup(client, new ResilientCredentialLookup.Settings(
+                5000, 20, 1, 0, 10, 5, 0.5, 1000, 16, 16), new SimpleMeterRegistry());
+        RemoteCredentialStore store = new RemoteCredentialStore(client, lookup);
+        List<String> removed = new CopyOnWriteArrayList<>();
+        store.setRemovalListener((username, credentialId, reason) -> removed.add(username + ":" + reason));
+        WebAuthnService service = new WebAuthnService(store, TenantConfig.DEFAULT, lookup);
+        SoftwareAuthenticator authenticator = new SoftwareAuthenticator(TenantConfig.DEFAULT.origins().iterator().next());
+        ObjectMapper mapper = new ObjectMapper();
+
+        PublicKeyCredentialCreationOptions options = service.startRegistration("erin");
+        service.finishRegistration("erin", options,
+                PublicKeyCredential.parseRegistrationResponseJson(mapper.writeValueAsString(authenticator.create(options))),
+                "key");
+        byte[] credentialId = backend.findCredentialIdsByUsername("erin").get(0);  // バックエンドサービスに保存された
+        long usesBefore = uses();
+
+        AssertionRequest request = service.startAuthentication("erin");
+        assertEquals("erin", service.finishAuthentication(request,
+                PublicKeyCredential.parseAssertionResponseJson(mapper.writeValueAsString(authenticator.get(request)))));
+        // 最終使用時刻の更新は応答を待たずに送る（登録直後のため、バックエンドでは間隔内としてまとめられる）
+        long deadline = System.currentTimeMillis() + 5000;
+        while (uses() == usesBefore) {
+            assertTrue(System.currentTimeMillis() < deadline, "last use was not recorded on the backend");
+            Thread.sleep(10);
+        }
+
+        assertEquals(List.of(true, false), service.deleteAuthenticators("erin", List.of(credentialId, new byte[]{9})));
+        assertTrue(backend.findCredentialIdsByUsername("erin").isEmpty());
+        assertEquals(List.of("erin:" + AuthenticatorRemovalListener.Reason.DELETED), removed);
+    }
+
+    @Test
+    void serverReassemblesSplitFramesAndDropsMalformedConnections() throws Exception {
+        FrameWriter frame = new FrameWriter(64);
+        frame.begin(99, Operation.USERNAME.code).putBytes(new byte[]{7, 1}).end();
+        byte[] request = frame.toByteArray();
+
+        try (SocketChannel channel = SocketChannel.open(new InetSocketAddress("localhost", server.getPort()))) {
+            // 1バイトずつ送っても1つの要求として処理する
+            for (byte b : request) {
+                channel.write(ByteBuffer.wrap(new byte[]{b}));
+                Thread.sleep(1);
+            }
+            ByteBuffer response = ByteBuffer.allocate(64);
+            while (response.position() < 4 || response.position() < 4 + response.getInt(0)) {
+                channel.read(response);
+            }
+            response.flip().getInt();
+            assertEquals(99, response.getLong());
+            assertEquals(BackendProtocol.OK, response.get());
+            assertEquals("user7", BackendProtocol.getString(response));
+
+            // 範囲外の長さを送ると、その接続だけ閉じる
+            channel.write(ByteBuffer.allocate(4).putInt(0, BackendProtocol.MAX_FRAME_LENGTH + 1));
+            assertEquals(-1, channel.read(ByteBuffer.allocate(16)));
+        }
+        assertTrue(client.findUserHandleByUsername("user1").join().isPresent());
+    }
+
+    @Test
+    void lostConnectionFailsPendingRequestsAndReconnects() throws Exception {
+        assertTrue(client.findUserHandleByUsername("user1").join().isPresent());
+        int port = server.getPort();
+        server.close();
+
+        CompletionException failure = assertThrows(CompletionException.class,
+                () -> client.findUserHandleByUsername("user1").join());
+        assertInstanceOf(BackendUnavailableException.class, failure.getCause());
+
+        // 同じポートでサーバーが戻れば、次の要求で接続し直す
+        server = new BinaryBackendServer(backend, port);
+        server.start();
+        assertTrue(client.findUserHandleByUsername("user1").join().isPresent());
+        assertTrue(client.findUserHandleByUsername("user2").join().isPresent());
+    }
+
+    private long uses() {
+        return backend.getStatistics().getLastUseRecorded() + backend.getStatistics().getLastUseCoalesced();
+    }
+
+    private static byte[] credentialId(int i) {
+        return new byte[]{1, (byte) i, (byte) (i >> 8)};
+    }
+}
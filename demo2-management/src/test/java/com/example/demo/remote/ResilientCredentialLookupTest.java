@@ -0,0 +1,216 @@
+package com.example.demo.remote;
+
+import com.example.demo.backend.AuthenticatorInfo;
+import com.example.demo.backend.UserInfo;
+import com.example.demo.backend.WebAuthnBackend;
+import com.example.demo.service.WebAuthnService;
+import com.example.demo.tenant.TenantConfig;
+import com.example.demo.warmup.SoftwareAuthenticator;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.yubico.webauthn.AssertionRequest;
+import com.yubico.webauthn.data.PublicKeyCredential;
+import com.yubico.webauthn.data.PublicKeyCredentialCreationOptions;
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicReference;
+
+import static org.junit.jupiter.api.Assertions.assertArrayEquals;
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+/**
+ * 遅延・失敗を再現する検索サーバー（{@link RemoteLookupServer}）に対して、ヘッジ・サーキットブレーカー・バルクヘッドを確認する。
+ */
+class ResilientCredentialLookupTest {
+
+    private static final long OPEN_MILLIS = 200;
+
+    private final WebAuthnBackend backend = new WebAuthnBackend();
+    private final AtomicLong calls = new AtomicLong();
+    private volatile boolean failing;
+    private volatile long slowMillis;
+    private volatile int slowEvery;  // n回に1回、slowMillis 遅らせる（0なら遅らせない）
+
+    private RemoteLookupServer server;
+    private RemoteLookupClient client;
+
+    @BeforeEach
+    void startServer() throws Exception {
+        for (int i = 0; i < 10; i++) {
+            backend.saveUser(new UserInfo("user" + i, new byte[]{(byte) i}));
+            backend.saveAuthenticator(new AuthenticatorInfo(new byte[]{1, (byte) i}, new byte[]{2}, new byte[16], "user" + i, "key"));
+        }
+        backend.setDelay(operation -> {
+            long n = calls.incrementAndGet();
+            if (failing) {
+                throw new IllegalStateException("injected failure");
+            }
+            long delay = 1;
+            if (slowEvery > 0 && n % slowEvery == 0) {
+                delay = slowMillis;
+            }
+            sleep(delay);
+        });
+        server = new RemoteLookupServer(backend, 0);
+        server.start();
+        client = new RemoteLookupClient("http://localhost:" + server.getPort(), 2000);
+    }
+
+    @AfterEach
+    void stopServer() {
+        client.close();
+        server.close();
+    }
+
+    @Test
+    void hedgingCutsTheTailLatency() {
+        // 25回に1回（4%）だけ300ms遅い: p95は速い側にあり、遅い呼び出しはヘッジが先に返る
+        slowEvery = 25;
+        slowMillis = 300;
+        ResilientCredentialLookup lookup = lookup(16, 16, 16);
+
+        long[] latencies = new long[300];
+        for (int i = 0; i < latencies.length; i++) {
+            long start = System.nanoTime();
+            assertEquals(1, lookup.findCredentialIdsByUsername("user" + (i % 10)).size());
+            latencies[i] = System.nanoTime() - start;
+        }
+        Arrays.sort(latencies);
+        long p99Millis = TimeUnit.NANOSECONDS.toMillis(latencies[(int) (latencies.length * 0.99) - 1]);
+
+        assertTrue(p99Millis < 150, "p99 with hedging: " + p99Millis + " ms");
+        assertTrue(lookup.getHedgesWon() > 0, "hedges won: " + lookup.getHedgesWon());
+        // ヘッジは遅い呼び出し（とp95を超えた呼び出し）だけに送る
+        assertTrue(lookup.getHedgesSent() < latencies.length / 5, "hedges sent: " + lookup.getHedgesSent());
+    }
+
+    @Test
+    void openCircuitFailsFastUntilTheBackendRecovers() throws Exception {
+        ResilientCredentialLookup lookup = lookup(16, 16, 16);
+        failing = true;
+        for (int i = 0; i < 5; i++) {
+            assertThrows(BackendUnavailableException.class, () -> lookup.findUserHandleByUsername("user1"));
+        }
+        assertEquals(CircuitBreaker.State.OPEN, lookup.circuitState(LookupEndpoint.USER_HANDLE));
+
+        // 開いている間はサーバーを呼ばない
+        long before = calls.get();
+        assertThrows(BackendUnavailableException.class, () -> lookup.findUserHandleByUsername("user1"));
+        assertEquals(before, calls.get());
+        // 他のエンドポイントは別のサーキットブレーカー
+        assertEquals(CircuitBreaker.State.CLOSED, lookup.circuitState(LookupEndpoint.USERNAME));
+
+        failing = false;
+        Thread.sleep(OPEN_MILLIS + 50);
+        assertArrayEquals(new byte[]{1}, lookup.findUserHandleByUsername("user1").orElseThrow());
+        assertEquals(CircuitBreaker.State.CLOSED, lookup.circuitState(LookupEndpoint.USER_HANDLE));
+    }
+
+    @Test
+    void interruptedLookupsNeitherOpenTheCircuitNorLeakPermits() throws Exception {
+        slowEvery = 1;
+        slowMillis = 500;
+        ResilientCredentialLookup lookup = lookup(0, 1, 1);
+
+        // 中断を失敗率の判定に必要な件数より多く繰り返す（枠が1つなので、返されなければ2回目から拒否される）
+        for (int i = 0; i < 10; i++) {
+            CountDownLatch started = new CountDownLatch(1);
+            AtomicReference<Throwable> thrown = new AtomicReference<>();
+            Thread caller = Thread.ofVirtual().start(() -> {
+                started.countDown();
+                try {
+                    lookup.findUserHandleByUsername("user1");
+                } catch (RuntimeException e) {
+                    thrown.set(e);
+                }
+            });
+            assertTrue(started.await(5, TimeUnit.SECONDS));
+            Thread.sleep(20);
+            caller.interrupt();
+            caller.join();
+            assertTrue(thrown.get() instanceof BackendUnavailableException
+                    && thrown.get().getCause() instanceof InterruptedException, String.valueOf(thrown.get()));
+        }
+        assertEquals(CircuitBreaker.State.CLOSED, lookup.circuitState(LookupEndpoint.USER_HANDLE));
+
+        slowEvery = 0;
+        assertArrayEquals(new byte[]{1}, lookup.findUserHandleByUsername("user1").orElseThrow());
+    }
+
+    @Test
+    void registrationBacklogDoesNotBlockAuthentication() throws Exception {
+        // バックエンドが遅い間に登録の枠が埋まっても、認証の検索は別の枠で通る
+        slowEvery = 1;
+        slowMillis = 500;
+        ResilientCredentialLookup lookup = lookup(0, 2, 2);
+
+        CountDownLatch started = new CountDownLatch(2);
+        List<Thread> registrations = new ArrayList<>();
+        for (int i = 0; i < 2; i++) {
+            registrations.add(Thread.ofVirtual().start(() -> {
+                try (TrafficClass.Scope ignored = TrafficClass.REGISTRATION.enter()) {
+                    started.countDown();
+                    lookup.findCredentialIdsByUsername("user1");
+                }
+            }));
+        }
+        assertTrue(started.await(5, TimeUnit.SECONDS));
+        Thread.sleep(100);  // 2件とも枠を取り、バックエンドで待っている
+
+        try (TrafficClass.Scope ignored = TrafficClass.REGISTRATION.enter()) {
+            long start = System.nanoTime();
+            assertThrows(BackendUnavailableException.class, () -> lookup.findCredentialIdsByUsername("user2"));
+            assertTrue(System.nanoTime() - start < TimeUnit.MILLISECONDS.toNanos(50), "rejected without waiting");
+        }
+
+        slowEvery = 0;
+        try (TrafficClass.Scope ignored = TrafficClass.AUTHENTICATION.enter()) {
+            assertEquals(1, lookup.findCredentialIdsByUsername("user3").size());
+        }
+        for (Thread registration : registrations) {
+            registration.join();
+        }
+    }
+
+    @Test
+    void ceremoniesSucceedThroughRemoteLookups() throws Exception {
+        ResilientCredentialLookup lookup = lookup(16, 16, 16);
+        WebAuthnService service = new WebAuthnService(backend, TenantConfig.DEFAULT, lookup);
+        SoftwareAuthenticator authenticator = new SoftwareAuthenticator(TenantConfig.DEFAULT.origins().iterator().next());
+        ObjectMapper mapper = new ObjectMapper();
+
+        PublicKeyCredentialCreationOptions options = service.startRegistration("alice");
+        service.finishRegistration("alice", options,
+                PublicKeyCredential.parseRegistrationResponseJson(mapper.writeValueAsString(authenticator.create(options))),
+                "key");
+
+        AssertionRequest request = service.startAuthentication("alice");
+        String username = service.finishAuthentication(request,
+                PublicKeyCredential.parseAssertionResponseJson(mapper.writeValueAsString(authenticator.get(request))));
+        assertEquals("alice", username);
+    }
+
+    private ResilientCredentialLookup lookup(int maxOutstandingHedges, int registration, int authentication) {
+        return new ResilientCredentialLookup(client, new ResilientCredentialLookup.Settings(
+                2000, 20, 1, maxOutstandingHedges, 10, 5, 0.5, OPEN_MILLIS, registration, authentication),
+                new SimpleMeterRegistry());
+    }
+
+    private static void sleep(long millis) {
+        try {
+            Thread.sleep(millis);
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+    }
+}
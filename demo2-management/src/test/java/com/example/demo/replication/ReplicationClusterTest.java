@@ -0,0 +1,202 @@
+package com.example.demo.replication;
+
+import com.example.demo.backend.AuthenticatorInfo;
+import com.example.demo.backend.ReadOnlyReplicaException;
+import com.example.demo.backend.UserInfo;
+import com.example.demo.backend.WebAuthnBackend;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertNull;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+/**
+ * 1つのJVM内でリーダー1台・リードレプリカ2台を起動し、更新が反映されることを確認する。
+ */
+class ReplicationClusterTest {
+
+    private final WebAuthnBackend leader = new WebAuthnBackend(1000);
+    private final List<WebAuthnBackend> followers = List.of(new WebAuthnBackend(), new WebAuthnBackend());
+    private final List<ReplicationClient> clients = new ArrayList<>();
+    private ReplicationServer server;
+
+    @BeforeEach
+    void startCluster() throws Exception {
+        server = new ReplicationServer(leader, 0);
+        server.start();
+        for (WebAuthnBackend follower : followers) {
+            ReplicationClient client = new ReplicationClient(follower, "localhost", server.getPort());
+            client.start();
+            clients.add(client);
+        }
+    }
+
+    @AfterEach
+    void stopCluster() throws Exception {
+        for (ReplicationClient client : clients) {
+            client.close();
+        }
+        server.close();
+    }
+
+    @Test
+    void followersSeeLeaderWrites() throws Exception {
+        for (int i = 0; i < 100; i++) {
+            leader.saveUser(new UserInfo("user" + i, new byte[]{(byte) i}));
+            leader.saveAuthenticator(new AuthenticatorInfo(
+                    new byte[]{1, (byte) i}, new byte[]{2}, new byte[16], "user" + i, "key" + i));
+        }
+        leader.deleteAuthenticator("user0", new byte[]{1, 0});
+        long token = leader.getLastPosition();
+
+        for (int i = 0; i < followers.size(); i++) {
+            WebAuthnBackend follower = followers.get(i);
+            assertTrue(follower.awaitPosition(token, 10, TimeUnit.SECONDS));
+            assertEquals("user42", follower.findUsernameByUserHandle(new byte[]{42}).orElseThrow());
+            assertTrue(follower.findAuthenticatorByCredentialId(new byte[]{1, 42}).isPresent());
+            assertFalse(follower.findAuthenticatorByCredentialId(new byte[]{1, 0}).isPresent());
+            assertEquals(List.of(), follower.findCredentialIdsByUsername("user0"));
+        }
+
+        // ハートビートでリーダーの最新positionを受け取り、遅延が0になる
+        Thread.sleep(ReplicationServer.HEARTBEAT_MILLIS * 2);
+        for (ReplicationClient client : clients) {
+            assertEquals(0, client.getLagEntries());
+        }
+    }
+
+    @Test
+    void followersRejectWritesAndKeepTheirChangeLogEmpty() throws Exception {
+        WebAuthnBackend follower = followers.get(0);
+        assertThrows(ReadOnlyReplicaException.class,
+                () -> follower.saveUser(new UserInfo("local", new byte[]{1})));
+        assertThrows(ReadOnlyReplicaException.class, () -> follower.registerAuthenticator(new byte[]{1},
+                new AuthenticatorInfo(new byte[]{9}, new byte[]{2}, new byte[16], "local", null)));
+        assertThrows(ReadOnlyReplicaException.class,
+                () -> follower.deleteAuthenticators("local", List.of(new byte[]{9})));
+        assertNull(follower.getChangeLog());
+
+        // リーダーのpositionは、リーダーから反映済みのpositionと比べる
+        leader.saveUser(new UserInfo("user", new byte[]{1}));
+        long token = leader.getLastPosition();
+        assertTrue(follower.awaitPosition(token, 10, TimeUnit.SECONDS));
+        assertFalse(follower.awaitPosition(token + 1, 50, TimeUnit.MILLISECONDS));
+        assertTrue(leader.awaitPosition(token, 0, TimeUnit.MILLISECONDS));
+    }
+
+    @Test
+    void lastUseOnFollowerIsRecordedByLeader() throws Exception {
+        leader.saveUser(new UserInfo("user", new byte[]{1}));
+        leader.saveAuthenticator(new AuthenticatorInfo(new byte[]{7}, new byte[]{2}, new byte[16], "user", null, 0));
+        long registered = leader.getLastPosition();
+        WebAuthnBackend follower = followers.get(0);
+        assertTrue(follower.awaitPosition(registered, 10, TimeUnit.SECONDS));
+
+        long now = System.currentTimeMillis();
+        follower.recordUse(new byte[]{7}, now);
+        assertEquals(0, follower.getLastPosition());  // リードレプリカは変更ログを持たない
+
+        // リーダーが記録し、変更ログ経由でもう1台のリードレプリカにも反映される
+        assertTrue(followers.get(1).awaitPosition(registered + 1, 10, TimeUnit.SECONDS));
+        assertEquals(now, leader.findAuthenticatorByCredentialId(new byte[]{7}).orElseThrow().getLastUsedAt());
+        assertEquals(now, followers.get(1).findAuthenticatorByCredentialId(new byte[]{7}).orElseThrow().getLastUsedAt());
+    }
+
+    @Test
+    void awaitPositionTimesOutWhenReplicaIsBehind() throws Exception {
+        WebAuthnBackend isolated = new WebAuthnBackend();
+
+        assertFalse(isolated.awaitPosition(1, 50, TimeUnit.MILLISECONDS));
+    }
+
+    @Test
+    void followerBehindTheChangeLogCatchesUpFromASnapshot() throws Exception {
+        WebAuthnBackend smallLeader = new WebAuthnBackend(10);
+        for (int i = 0; i < 50; i++) {
+            smallLeader.saveUser(new UserInfo("user" + i, new byte[]{(byte) i}));
+            smallLeader.saveAuthenticator(new AuthenticatorInfo(
+                    new byte[]{1, (byte) i}, new byte[]{2}, new byte[16], "user" + i, "key" + i));
+        }
+        smallLeader.deleteAuthenticator("user0", new byte[]{1, 0});
+        // リーダーにない古いデータを持ったリードレプリカ（以前のリーダーのデータなど）
+        WebAuthnBackend stale = new WebAuthnBackend();
+        stale.saveUser(new UserInfo("gone", new byte[]{(byte) 200}));
+        stale.saveAuthenticator(new AuthenticatorInfo(new byte[]{9, 9}, new byte[]{2}, new byte[16], "gone", null));
+        stale.saveAuthenticator(new AuthenticatorInfo(new byte[]{1, 0}, new byte[]{2}, new byte[16], "user0", null));
+
+        try (ReplicationServer smallServer = new ReplicationServer(smallLeader, 0);
+             ReplicationClient client = new ReplicationClient(stale, "localhost", smallServer.getPort())) {
+            smallServer.start();
+            client.start();
+            long token = smallLeader.getLastPosition();
+            assertTrue(stale.awaitPosition(token, 10, TimeUnit.SECONDS));
+
+            assertEquals(1, smallServer.getSnapshotsSent());
+            assertEquals(1, client.getSnapshotsReceived());
+            assertEquals("user42", stale.findUsernameByUserHandle(new byte[]{42}).orElseThrow());
+            assertTrue(stale.findAuthenticatorByCredentialId(new byte[]{1, 49}).isPresent());
+            assertFalse(stale.findAuthenticatorByCredentialId(new byte[]{1, 0}).isPresent());
+            assertFalse(stale.findAuthenticatorByCredentialId(new byte[]{9, 9}).isPresent());
+            assertTrue(stale.findUsernameByUserHandle(new byte[]{(byte) 200}).isEmpty());
+
+            // スナップショットの後は差分で追従する
+            smallLeader.saveUser(new UserInfo("late", new byte[]{(byte) 201}));
+            assertTrue(stale.awaitPosition(smallLeader.getLastPosition(), 10, TimeUnit.SECONDS));
+            assertEquals("late", stale.findUsernameByUserHandle(new byte[]{(byte) 201}).orElseThrow());
+            assertEquals(1, smallServer.getSnapshotsSent());
+        }
+    }
+
+    @Test
+    void followerWithAWrongSecretReceivesNothing() throws Exception {
+        WebAuthnBackend secured = new WebAuthnBackend(100);
+        secured.saveUser(new UserInfo("user", new byte[]{1}));
+        WebAuthnBackend wrong = new WebAuthnBackend();
+        WebAuthnBackend right = new WebAuthnBackend();
+
+        try (ReplicationServer securedServer = new ReplicationServer(secured, null, 0, "s3cret");
+             ReplicationClient wrongClient = new ReplicationClient(wrong, "localhost", securedServer.getPort(), "guess");
+             ReplicationClient noSecretClient = new ReplicationClient(new WebAuthnBackend(), "localhost", securedServer.getPort());
+             ReplicationClient rightClient = new ReplicationClient(right, "localhost", securedServer.getPort(), "s3cret")) {
+            securedServer.start();
+            wrongClient.start();
+            noSecretClient.start();
+            rightClient.start();
+
+            long token = secured.getLastPosition();
+            assertTrue(right.awaitPosition(token, 10, TimeUnit.SECONDS));
+            assertFalse(wrong.awaitPosition(token, 500, TimeUnit.MILLISECONDS));
+            assertTrue(wrong.findUsernameByUserHandle(new byte[]{1}).isEmpty());
+        }
+    }
+
+    @Test
+    void nonLoopbackBindRequiresASecret() {
+        assertThrows(IllegalArgumentException.class, () -> new ReplicationServer(leader, "0.0.0.0", 0, null));
+        assertThrows(IllegalArgumentException.class, () -> new ReplicationServer(leader, "0.0.0.0", 0, ""));
+        assertThrows(IllegalStateException.class, () -> new ReplicationServer(new WebAuthnBackend(), 0));
+    }
+
+    @Test
+    void futureUseTimestampsAreClampedToTheLeaderClock() throws Exception {
+        leader.saveUser(new UserInfo("user", new byte[]{1}));
+        leader.saveAuthenticator(new AuthenticatorInfo(new byte[]{7}, new byte[]{2}, new byte[16], "user", null, 0));
+        long registered = leader.getLastPosition();
+        WebAuthnBackend follower = followers.get(0);
+        assertTrue(follower.awaitPosition(registered, 10, TimeUnit.SECONDS));
+
+        follower.recordUse(new byte[]{7}, System.currentTimeMillis() + TimeUnit.DAYS.toMillis(365));
+
+        assertTrue(followers.get(1).awaitPosition(registered + 1, 10, TimeUnit.SECONDS));
+        long recorded = leader.findAuthenticatorByCredentialId(new byte[]{7}).orElseThrow().getLastUsedAt();
+        assertTrue(recorded <= System.currentTimeMillis());
+    }
+}
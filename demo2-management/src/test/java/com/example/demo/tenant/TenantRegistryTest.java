@@ -0,0 +1,52 @@
+package com.example.demo.tenant;
+
+import com.example.demo.audit.AuditLog;
+import com.example.demo.backend.WebAuthnBackend;
+import com.example.demo.service.WebAuthnService;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+import org.springframework.util.unit.DataSize;
+
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.Locale;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertNotNull;
+import static org.junit.jupiter.api.Assertions.assertNull;
+
+/**
+ * ホスト名の照合が既定のロケールによらないこと、レプリケーションしないテナントが変更ログを持たないことの確認。
+ */
+class TenantRegistryTest {
+
+    @Test
+    void hostsMatchUnderTurkishLocaleAndOnlyTheDefaultTenantKeepsAChangeLog(@TempDir Path directory) throws Exception {
+        Locale original = Locale.getDefault();
+        Locale.setDefault(Locale.forLanguageTag("tr-TR"));
+        try {
+            Path file = directory.resolve("tenants.json");
+            Files.writeString(file, """
+                    [{"id": "login", "host": "LOGIN.EXAMPLE", "rpId": "login.example", "rpName": "Login",
+                      "origins": ["https://login.example"]}]
+                    """);
+            WebAuthnBackend defaultBackend = new WebAuthnBackend(100);
+            AuditLog audit = new AuditLog(new SimpleMeterRegistry(), false, directory.toString(),
+                    16, "drop", 1, 100, -1, DataSize.ofMegabytes(1));
+            try (TenantRegistry tenants = new TenantRegistry(new WebAuthnService(defaultBackend, TenantConfig.DEFAULT),
+                    defaultBackend, audit, new ObjectMapper(), file.toString(), 60_000)) {
+                // トルコ語のロケールでは "I".toLowerCase() が点のない ı になり、照合できなくなる
+                Tenant tenant = tenants.resolve("LOGIN.example");
+                assertEquals("login", tenant.config().id());
+                assertEquals("login.example", tenant.config().host());
+
+                assertNull(tenant.backend().getChangeLog());
+                assertNotNull(tenants.resolve("localhost").backend().getChangeLog());
+            }
+        } finally {
+            Locale.setDefault(original);
+        }
+    }
+}
@@ -0,0 +1,243 @@
+package com.example.demo.tiered;
+
+import com.example.demo.backend.AuthenticatorInfo;
+import com.example.demo.backend.AuthenticatorPage;
+import com.example.demo.backend.UserInfo;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Optional;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+
+import static org.junit.jupiter.api.Assertions.assertArrayEquals;
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertNull;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+/**
+ * 層をまたいだ検索（書き出し・コンパクションの前後）、削除の印、昇格・追い出し、並行の検索とレイテンシの目標、開き直しの確認。
+ */
+class TieredCredentialStoreTest {
+
+    private static final int USERS = 2000;
+
+    // 小さいバッファ・ブロック・ヒープの層で、書き出しとコンパクションを何度も起こす
+    private static final TieredCredentialStore.Settings SETTINGS =
+            new TieredCredentialStore.Settings(100, 32 * 1024, 512, 16 * 1024, 3, Long.MAX_VALUE);
+
+    @TempDir
+    Path directory;
+
+    private TieredCredentialStore store;
+
+    @AfterEach
+    void close() throws Exception {
+        if (store != null) {
+            store.close();
+        }
+    }
+
+    @Test
+    void lookupsSurviveFlushAndCompaction() throws Exception {
+        store = new TieredCredentialStore(directory, SETTINGS);
+        register(store, USERS);
+        store.flush();
+
+        assertTrue(store.getSegmentCount() <= SETTINGS.maxSegments());
+        for (int i = 0; i < USERS; i++) {
+            assertArrayEquals(userHandle(i), store.findUserHandleByUsername("user" + i).orElseThrow());
+            assertEquals(Optional.of("user" + i), store.findUsernameByUserHandle(userHandle(i)));
+            assertArrayEquals(publicKey(i), store.findCredentialData(credentialId(i), userHandle(i)).orElseThrow().publicKey);
+        }
+        assertTrue(store.getSegmentHits() > 0);
+        assertFalse(store.findUserHandleByUsername("nobody").isPresent());
+        assertTrue(store.findCredentialData(credentialId(0), userHandle(1)).isEmpty());
+    }
+
+    @Test
+    void deleteHidesOlderValuesInSegments() throws Exception {
+        store = new TieredCredentialStore(directory, SETTINGS);
+        register(store, USERS);
+        store.flush();
+
+        // 古い値はセグメントにあり、削除の印は書き込みバッファにある
+        assertFalse(store.deleteAuthenticator("user1", credentialId(0)));
+        assertTrue(store.deleteAuthenticator("user0", credentialId(0)));
+        assertTrue(store.findCredentialDataByCredentialId(credentialId(0)).isEmpty());
+        assertEquals(List.of(), store.findCredentialIdsByUsername("user0"));
+
+        // 書き出し・コンパクションで削除の印を捨てた後も、古い値は戻らない
+        for (int round = 0; round == 0 || store.getSegmentCount() > 1; round++) {
+            store.recordUse(credentialId(round + 1), System.currentTimeMillis() + 2 * 60 * 60 * 1000L);
+            store.flush();
+        }
+        assertTrue(store.findCredentialDataByCredentialId(credentialId(0)).isEmpty());
+        assertTrue(store.findCredentialDataByCredentialId(credentialId(1)).isPresent());
+    }
+
+    @Test
+    void registerAuthenticatorCreatesTheUserOnceAndKeepsItsUserHandle() throws Exception {
+        store = new TieredCredentialStore(directory, SETTINGS);
+        AuthenticatorInfo first = new AuthenticatorInfo(new byte[]{9, 1}, new byte[]{5}, null, "frank", null, 0);
+        AuthenticatorInfo second = new AuthenticatorInfo(new byte[]{9, 2}, new byte[]{5}, null, "frank", null, 0);
+        AuthenticatorInfo other = new AuthenticatorInfo(new byte[]{9, 3}, new byte[]{5}, null, "frank", null, 0);
+
+        assertTrue(store.registerAuthenticator(new byte[]{1}, first));
+        store.flush();
+        assertTrue(store.registerAuthenticator(new byte[]{1}, second));
+        assertFalse(store.registerAuthenticator(new byte[]{2}, other));  // 別のuserHandleで登録済み
+
+        assertEquals(Optional.of("frank"), store.findUsernameByUserHandle(new byte[]{1}));
+        assertTrue(store.findUsernameByUserHandle(new byte[]{2}).isEmpty());
+        assertEquals(2, store.findCredentialIdsByUsername("frank").size());
+        assertArrayEquals(new byte[]{1}, store.findCredentialDataByCredentialId(new byte[]{9, 2}).orElseThrow().userHandle);
+        assertTrue(store.findCredentialDataByCredentialId(new byte[]{9, 3}).isEmpty());
+    }
+
+    @Test
+    void pagesFollowRegistrationOrderAndRenameOnlyTouchesOwnCredentials() throws Exception {
+        store = new TieredCredentialStore(directory, SETTINGS);
+        for (int i = 1; i <= 5; i++) {
+            store.registerAuthenticator(new byte[]{1},
+                    new AuthenticatorInfo(new byte[]{8, (byte) i}, new byte[]{5}, null, "grace", "key" + i, 0));
+        }
+        store.registerAuthenticator(new byte[]{2},
+                new AuthenticatorInfo(new byte[]{8, 9}, new byte[]{5}, null, "heidi", "other", 0));
+        store.flush();
+
+        AuthenticatorPage first = store.findAuthenticatorPage("grace", 0, 3);
+        assertEquals(List.of("key1", "key2", "key3"), nicknames(first));
+        AuthenticatorPage second = store.findAuthenticatorPage("grace", first.nextCursor(), 3);
+        assertEquals(List.of("key4", "key5"), nicknames(second));
+        assertNull(second.nextCursor());
+
+        assertEquals(List.of(true, false), store.renameAuthenticators("grace",
+                List.of(new byte[]{8, 2}, new byte[]{8, 9}), List.of("phone", "stolen")));
+        assertEquals(List.of("key1", "phone", "key3"), nicknames(store.findAuthenticatorPage("grace", 0, 3)));
+        assertEquals("other", store.findAuthenticatorByCredentialId(new byte[]{8, 9}).orElseThrow().getNickname());
+    }
+
+    private static List<String> nicknames(AuthenticatorPage page) {
+        return page.items().stream().map(entry -> entry.authenticator().getNickname()).toList();
+    }
+
+    @Test
+    void frequentlyUsedCredentialsStayInHeap() throws Exception {
+        store = new TieredCredentialStore(directory, SETTINGS);
+        register(store, USERS);
+        store.flush();
+
+        // 10件を繰り返し使いながら、1回だけの検索を多数混ぜる
+        for (int round = 0; round < 20; round++) {
+            for (int i = 0; i < 10; i++) {
+                store.findCredentialDataByCredentialId(credentialId(i));
+            }
+            for (int i = 0; i < 100; i++) {
+                store.findCredentialDataByCredentialId(credentialId(10 + (round * 100 + i) % (USERS - 10)));
+            }
+        }
+
+        long hotHits = store.getHotHits();
+        for (int i = 0; i < 10; i++) {
+            store.findCredentialDataByCredentialId(credentialId(i));
+        }
+        assertEquals(hotHits + 10, store.getHotHits());
+        assertTrue(store.getHotSize() <= SETTINGS.hotCapacity());
+    }
+
+    @Test
+    void stripedHotTierServesConcurrentLookupsWithinCapacity() throws Exception {
+        TieredCredentialStore.Settings striped = new TieredCredentialStore.Settings(1024, 32 * 1024, 512, 16 * 1024, 3, 0);
+        assertEquals(4, new HotTier(striped.hotCapacity()).stripeCount());
+        store = new TieredCredentialStore(directory, striped);
+        register(store, USERS);
+        store.flush();
+
+        int threads = 8;
+        List<Future<Integer>> found = new ArrayList<>();
+        try (ExecutorService executor = Executors.newFixedThreadPool(threads)) {
+            for (int t = 0; t < threads; t++) {
+                found.add(executor.submit(() -> {
+                    int count = 0;
+                    for (int round = 0; round < 5; round++) {
+                        for (int i = 0; i < USERS; i += 3) {
+                            count += store.findCredentialDataByCredentialId(credentialId(i)).isPresent() ? 1 : 0;
+                        }
+                    }
+                    return count;
+                }));
+            }
+            for (Future<Integer> f : found) {
+                assertEquals(5 * ((USERS + 2) / 3), f.get());
+            }
+        }
+        assertTrue(store.getHotHits() > 0);
+        assertTrue(store.getHotSize() <= striped.hotCapacity());
+
+        // 目標 0ns: （時計の分解能で0と測れたものを除いて）検索が目標を超える
+        assertTrue(store.getLookupsOverBudget() > store.getLookups() / 2);
+        assertFalse(store.isWithinLookupBudget());
+    }
+
+    @Test
+    void lookupsWithinBudgetAreNotCounted() throws Exception {
+        store = new TieredCredentialStore(directory, SETTINGS);
+        register(store, 10);
+        store.findCredentialIdsByUsername("user0");
+
+        assertTrue(store.getLookups() > 0);
+        assertEquals(0, store.getLookupsOverBudget());
+        assertTrue(store.isWithinLookupBudget());
+    }
+
+    @Test
+    void updateReplacesPromotedValue() throws Exception {
+        store = new TieredCredentialStore(directory, SETTINGS);
+        register(store, 10);
+        store.flush();
+        store.findCredentialIdsByUsername("user0");  // ヒープの層に昇格させる
+
+        store.saveAuthenticator(new AuthenticatorInfo(new byte[]{9, 9}, new byte[]{1}, null, "user0", null));
+        assertEquals(2, store.findCredentialIdsByUsername("user0").size());
+        assertTrue(store.findCredentialData(new byte[]{9, 9}, userHandle(0)).isPresent());
+    }
+
+    @Test
+    void reopenedStoreReadsExistingSegments() throws Exception {
+        store = new TieredCredentialStore(directory, SETTINGS);
+        register(store, USERS);
+        store.deleteAuthenticator("user5", credentialId(5));
+        store.close();
+
+        store = new TieredCredentialStore(directory, SETTINGS);
+        assertArrayEquals(userHandle(USERS - 1), store.findUserHandleByUsername("user" + (USERS - 1)).orElseThrow());
+        assertEquals("user7", store.findAuthenticatorByCredentialId(credentialId(7)).orElseThrow().getUsername());
+        assertTrue(store.findCredentialDataByCredentialId(credentialId(5)).isEmpty());
+    }
+
+    private static void register(TieredCredentialStore store, int users) {
+        for (int i = 0; i < users; i++) {
+            store.saveUser(new UserInfo("user" + i, userHandle(i)));
+            store.saveAuthenticator(new AuthenticatorInfo(credentialId(i), publicKey(i), new byte[16], "user" + i, "key"));
+        }
+    }
+
+    private static byte[] userHandle(int i) {
+        return new byte[]{'h', (byte) (i >> 8), (byte) i};
+    }
+
+    private static byte[] credentialId(int i) {
+        return new byte[]{'c', (byte) (i >> 8), (byte) i};
+    }
+
+    private static byte[] publicKey(int i) {
+        return new byte[]{'k', (byte) (i >> 8), (byte) i, 0, 0, 0, 0, 0, 0, 0, 0, 0, 0, 0, 0, 0};
+    }
+}
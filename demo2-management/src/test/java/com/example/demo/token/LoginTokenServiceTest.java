@@ -0,0 +1,73 @@
+package com.example.demo.token;
+
+import org.junit.jupiter.api.Test;
+
+import java.util.Base64;
+
+import static org.junit.jupiter.api.Assertions.assertArrayEquals;
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertNotNull;
+import static org.junit.jupiter.api.Assertions.assertNull;
+
+/**
+ * ログイントークンの発行・検証と、鍵のローテーションの確認。
+ */
+class LoginTokenServiceTest {
+
+    private static final String KEY1 = "k1:" + Base64.getEncoder().encodeToString(new byte[32]);
+    private static final String KEY2 = "k2:" + Base64.getEncoder().encodeToString(new byte[]{
+            1, 2, 3, 4, 5, 6, 7, 8, 9, 10, 11, 12, 13, 14, 15, 16,
+            17, 18, 19, 20, 21, 22, 23, 24, 25, 26, 27, 28, 29, 30, 31, 32});
+    private static final byte[] CREDENTIAL_ID = {9, 8, 7, 6};
+
+    @Test
+    void verifiesIssuedTokenUntilItExpires() {
+        LoginTokenService service = new LoginTokenService(true, 900, KEY1, 60, 100);
+        String token = service.issue("default", "alice", CREDENTIAL_ID);
+        long now = System.currentTimeMillis() / 1000;
+
+        LoginToken verified = service.verify(token, now);
+        assertNotNull(verified);
+        assertEquals("default", verified.tenant());
+        assertEquals("alice", verified.username());
+        assertArrayEquals(CREDENTIAL_ID, verified.credentialId());
+
+        // キャッシュから返す場合も有効期限を確認する
+        assertNotNull(service.verify(token, now));
+        assertNull(service.verify(token, now + 901));
+    }
+
+    @Test
+    void rejectsTamperedTokens() {
+        LoginTokenService service = new LoginTokenService(true, 900, KEY1, 60, 100);
+        String token = service.issue("default", "alice", CREDENTIAL_ID);
+        long now = System.currentTimeMillis() / 1000;
+        String[] parts = token.split("\\.");
+
+        // 別のユーザーの内容に、aliceの署名を付ける
+        String bob = service.issue("default", "bob", CREDENTIAL_ID).split("\\.")[1];
+        assertNull(service.verify(parts[0] + "." + bob + "." + parts[2], now));
+        assertNull(service.verify("unknown." + parts[1] + "." + parts[2], now));
+        assertNull(service.verify(parts[0] + "." + parts[1], now));
+        assertNull(service.verify(parts[0] + ".!!." + parts[2], now));
+    }
+
+    @Test
+    void oldKeyStillVerifiesAfterRotation() {
+        LoginTokenService before = new LoginTokenService(true, 900, KEY1, 60, 100);
+        String oldToken = before.issue("default", "alice", CREDENTIAL_ID);
+        long now = System.currentTimeMillis() / 1000;
+
+        // 新しい鍵を先頭に追加: 新しい鍵で署名し、古い鍵のトークンも検証できる
+        LoginTokenService rotated = new LoginTokenService(true, 900, KEY2 + "," + KEY1, 60, 100);
+        String newToken = rotated.issue("default", "alice", CREDENTIAL_ID);
+        assertEquals("k2", newToken.substring(0, newToken.indexOf('.')));
+        assertNotNull(rotated.verify(oldToken, now));
+        assertNotNull(rotated.verify(newToken, now));
+
+        // 古い鍵を外すと、古い鍵のトークンは無効
+        LoginTokenService retired = new LoginTokenService(true, 900, KEY2, 60, 100);
+        assertNull(retired.verify(oldToken, now));
+        assertNotNull(retired.verify(newToken, now));
+    }
+}
@@ -0,0 +1,194 @@
+package com.example.demo.web;
+
+import org.junit.jupiter.api.Test;
+
+import java.util.ArrayList;
+import java.util.Iterator;
+import java.util.List;
+
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+/**
+ * 処理能力の3倍のリクエストが到着し続ける過負荷シナリオのシミュレーション。
+ *
+ * <p>サーバーは10並列分の処理能力を持ち、同時実行数が増えると処理時間が比例して延びる（プロセッサ共有）。
+ * リミッターがなければ受け付けたリクエストが全て遅延するが、
+ * リミッターがあれば超過分を拒否し、処理能力に近いgoodput（SLA内に完了した件数）を維持できることを確認する。
+ * 重さと優先度の違うエンドポイントを混ぜた場合に、優先度の低いものから拒否されることも確認する。
+ */
+class AdaptiveConcurrencyLimitTest {
+
+    private static final int WORKERS = 10;           // 1ミリ秒あたりに処理できる仕事量
+    private static final int WORK_PER_REQUEST = 10;  // 1リクエストの仕事量（負荷がなければ10ミリ秒で完了）
+    private static final int ARRIVALS_PER_TICK = 3;  // 処理能力（1リクエスト/ミリ秒）の3倍
+    private static final int SLA_TICKS = 100;
+    private static final int TICKS = 20_000;
+
+    // エンドポイントを混ぜたシミュレーション（添字はエンドポイントの種類）
+    private static final int REGISTER_START = 0;
+    private static final int AUTHENTICATE_START = 1;
+    private static final int AUTHENTICATE_FINISH = 2;
+    private static final double[] SHARES = {0.7, 0.85, 1.0};
+    private static final int[] WORK = {1, 1, 10};      // 開始は軽く、完了は署名の検証で重い
+    private static final int[] ARRIVALS = {4, 2, 1};   // 1ミリ秒あたり（仕事量 16 = 処理能力の1.6倍）
+    private static final int REJECTED_PER_TICK = 5;    // レート制限で即座に返る（計測しない）リクエスト
+    private static final int MIN_LIMIT = 4;
+
+    @Test
+    void goodputStaysNearCapacityAtThreeTimesOverload() {
+        double goodput = simulate(new AdaptiveConcurrencyLimit(20, 4, 200));
+
+        // 処理能力は 1リクエスト/ミリ秒
+        assertTrue(goodput > 0.9, "goodput with limiter: " + goodput);
+    }
+
+    @Test
+    void goodputCollapsesWithoutLimiter() {
+        double goodput = simulate(new AdaptiveConcurrencyLimit(Integer.MAX_VALUE, Integer.MAX_VALUE, Integer.MAX_VALUE));
+
+        assertTrue(goodput < 0.1, "goodput without limiter: " + goodput);
+    }
+
+    @Test
+    void startShareIsShedBeforeFinishShareWithMixedLatencies() {
+        Mixed mixed = simulateMixed(true);
+
+        // 登録開始（0.7）は認証完了（1.0）より先に拒否され、認証完了はほぼ全てSLA内に完了する
+        assertTrue(mixed.acceptedRatio(REGISTER_START) < mixed.acceptedRatio(AUTHENTICATE_FINISH),
+                "register start " + mixed.acceptedRatio(REGISTER_START)
+                        + ", authenticate finish " + mixed.acceptedRatio(AUTHENTICATE_FINISH));
+        assertTrue(mixed.goodRatio(AUTHENTICATE_FINISH) > 0.9, "authenticate finish goodput " + mixed.goodRatio(AUTHENTICATE_FINISH));
+        assertTrue(mixed.averageLimit > MIN_LIMIT * 2, "limit " + mixed.averageLimit);
+    }
+
+    @Test
+    void sharedBaselineCollapsesLimitWithMixedLatencies() {
+        Mixed shared = simulateMixed(false);
+        Mixed separate = simulateMixed(true);
+
+        // 軽い開始の最小値を基準にすると、完了が待たされていると誤認して上限が下がる
+        assertTrue(shared.averageLimit < separate.averageLimit / 2,
+                "shared " + shared.averageLimit + ", separate " + separate.averageLimit);
+    }
+
+    /**
+     * 重さと優先度が違うエンドポイントを混ぜた過負荷のシミュレーション。
+     *
+     * @param separateBaselines エンドポイントごとに rttNoLoad を持つか（false なら全て同じ種類として計測する）
+     */
+    private Mixed simulateMixed(boolean separateBaselines) {
+        AdaptiveConcurrencyLimit limit = new AdaptiveConcurrencyLimit(20, MIN_LIMIT, 200, SHARES.length);
+        List<Request> running = new ArrayList<>();
+        int measureFrom = TICKS / 2;
+        Mixed result = new Mixed();
+        long limitSum = 0;
+
+        for (int tick = 0; tick < TICKS; tick++) {
+            for (int i = 0; i < REJECTED_PER_TICK; i++) {
+                if (limit.tryAcquire(SHARES[AUTHENTICATE_START])) {
+                    limit.release(AUTHENTICATE_START, 1_000, false);
+                }
+            }
+            for (int c = 0; c < SHARES.length; c++) {
+                for (int i = 0; i < ARRIVALS[c]; i++) {
+                    boolean acquired = limit.tryAcquire(SHARES[c]);
+                    if (tick >= measureFrom) {
+                        result.arrived[c]++;
+                        result.accepted[c] += acquired ? 1 : 0;
+                    }
+                    if (acquired) {
+                        running.add(new Request(tick, c));
+                    }
+                }
+            }
+
+            double share = (double) WORKERS / Math.max(WORKERS, running.size());
+            Iterator<Request> it = running.iterator();
+            while (it.hasNext()) {
+                Request request = it.next();
+                request.remaining -= share;
+                if (request.remaining <= 0) {
+                    it.remove();
+                    int latency = tick + 1 - request.startTick;
+                    limit.release(separateBaselines ? request.endpointClass : 0, latency * 1_000_000L, true);
+                    if (tick >= measureFrom && latency <= SLA_TICKS) {
+                        result.good[request.endpointClass]++;
+                    }
+                }
+            }
+            if (tick >= measureFrom) {
+                limitSum += limit.getLimit();
+            }
+        }
+        result.averageLimit = (double) limitSum / (TICKS - measureFrom);
+        return result;
+    }
+
+    private static class Mixed {
+        final int[] arrived = new int[SHARES.length];
+        final int[] accepted = new int[SHARES.length];
+        final int[] good = new int[SHARES.length];
+        double averageLimit;
+
+        double acceptedRatio(int endpointClass) {
+            return (double) accepted[endpointClass] / arrived[endpointClass];
+        }
+
+        double goodRatio(int endpointClass) {
+            return (double) good[endpointClass] / arrived[endpointClass];
+        }
+    }
+
+    /**
+     * @return 後半の計測区間における1ミリ秒あたりのgoodput
+     */
+    private double simulate(AdaptiveConcurrencyLimit limit) {
+        List<Request> running = new ArrayList<>();
+        int measureFrom = TICKS / 2;
+        int good = 0;
+
+        for (int tick = 0; tick < TICKS; tick++) {
+            for (int i = 0; i < ARRIVALS_PER_TICK; i++) {
+                if (limit.tryAcquire(1.0)) {
+                    running.add(new Request(tick));
+                }
+            }
+
+            double share = (double) WORKERS / Math.max(WORKERS, running.size());
+            Iterator<Request> it = running.iterator();
+            while (it.hasNext()) {
+                Request request = it.next();
+                request.remaining -= share;
+                if (request.remaining <= 0) {
+                    it.remove();
+                    int latency = tick + 1 - request.startTick;
+                    limit.release(latency * 1_000_000L, true);
+                    if (tick >= measureFrom && latency <= SLA_TICKS) {
+                        good++;
+                    }
+                }
+            }
+        }
+        return (double) good / (TICKS - measureFrom);
+    }
+
+    private static class Request {
+        final int startTick;
+        final int endpointClass;
+        double remaining;
+
+        Request(int startTick) {
+            this(startTick, 0, WORK_PER_REQUEST);
+        }
+
+        Request(int startTick, int endpointClass) {
+            this(startTick, endpointClass, WORK[endpointClass]);
+        }
+
+        private Request(int startTick, int endpointClass, double work) {
+            this.startTick = startTick;
+            this.endpointClass = endpointClass;
+            this.remaining = work;
+        }
+    }
+}
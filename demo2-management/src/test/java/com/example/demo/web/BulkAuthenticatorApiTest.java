@@ -0,0 +1,110 @@
+package com.example.demo.web;
+
+import com.example.demo.backend.AuthenticatorInfo;
+import com.example.demo.backend.UserInfo;
+import com.example.demo.backend.WebAuthnBackend;
+import org.junit.jupiter.api.Test;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.boot.test.autoconfigure.web.servlet.AutoConfigureMockMvc;
+import org.springframework.boot.test.context.SpringBootTest;
+import org.springframework.http.MediaType;
+import org.springframework.mock.web.MockHttpSession;
+import org.springframework.test.web.servlet.MockMvc;
+
+import java.util.Base64;
+import java.util.List;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertNotSame;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+import static org.springframework.test.web.servlet.request.MockMvcRequestBuilders.post;
+import static org.springframework.test.web.servlet.result.MockMvcResultMatchers.jsonPath;
+import static org.springframework.test.web.servlet.result.MockMvcResultMatchers.status;
+
+/**
+ * 認証器の一括削除・一括名前変更の結果（一部の失敗・不正なID・他のユーザーの認証器）の確認。
+ */
+@SpringBootTest(properties = "webauthn.warmup.iterations=0")
+@AutoConfigureMockMvc
+class BulkAuthenticatorApiTest {
+
+    @Autowired
+    private MockMvc mvc;
+
+    @Autowired
+    private WebAuthnBackend backend;
+
+    private final MockHttpSession session = new MockHttpSession();
+
+    @Test
+    void deleteReportsEachCredential() throws Exception {
+        save("bulk-alice", 11, 12, 13);
+        save("bulk-bob", 21);
+        session.setAttribute("username", "bulk-alice");
+
+        mvc.perform(post("/api/authenticators/delete").session(session)
+                        .contentType(MediaType.APPLICATION_JSON)
+                        .content("{\"credentialIds\": [\"%s\", \"not base64!\", \"%s\", \"%s\"]}"
+                                .formatted(id(11), id(21), id(99))))
+                .andExpect(status().isOk())
+                .andExpect(jsonPath("$.results[0].success").value(true))
+                .andExpect(jsonPath("$.results[1].success").value(false))
+                .andExpect(jsonPath("$.results[1].error").value("Invalid credentialId"))
+                .andExpect(jsonPath("$.results[2].error").value("Authenticator not found"))
+                .andExpect(jsonPath("$.results[3].error").value("Authenticator not found"));
+
+        assertTrue(backend.findAuthenticatorByCredentialId(new byte[]{11}).isEmpty());
+        assertTrue(backend.findAuthenticatorByCredentialId(new byte[]{12}).isPresent());
+        assertTrue(backend.findAuthenticatorByCredentialId(new byte[]{21}).isPresent());  // 他のユーザーの認証器は残る
+        assertEquals(2, backend.findUserByUsername("bulk-alice").orElseThrow().getAuthenticators().size());
+    }
+
+    @Test
+    void renameReplacesOnlyOwnCredentials() throws Exception {
+        save("bulk-carol", 31, 32, 33);
+        save("bulk-dave", 41);
+        session.setAttribute("username", "bulk-carol");
+        AuthenticatorInfo before = backend.findAuthenticatorByCredentialId(new byte[]{32}).orElseThrow();
+
+        mvc.perform(post("/api/authenticators/rename").session(session)
+                        .contentType(MediaType.APPLICATION_JSON)
+                        .content(("{\"items\": [{\"credentialId\": \"%s\", \"nickname\": \"phone\"},"
+                                + " {\"credentialId\": \"***\", \"nickname\": \"x\"},"
+                                + " {\"credentialId\": \"%s\", \"nickname\": \"stolen\"}]}")
+                                .formatted(id(32), id(41))))
+                .andExpect(status().isOk())
+                .andExpect(jsonPath("$.results[0].success").value(true))
+                .andExpect(jsonPath("$.results[1].error").value("Invalid credentialId"))
+                .andExpect(jsonPath("$.results[2].error").value("Authenticator not found"));
+
+        // 読み出し済みのインスタンスは変わらず、認証器の表・ユーザーの一覧・登録順のインデックスが新しいインスタンスを指す
+        AuthenticatorInfo after = backend.findAuthenticatorByCredentialId(new byte[]{32}).orElseThrow();
+        assertNotSame(before, after);
+        assertEquals("key32", before.getNickname());
+        assertEquals("phone", after.getNickname());
+        assertTrue(backend.findUserByUsername("bulk-carol").orElseThrow().getAuthenticators().contains(after));
+        assertEquals(List.of("key31", "phone", "key33"), backend.findAuthenticatorPage("bulk-carol", 0, 10).items()
+                .stream().map(entry -> entry.authenticator().getNickname()).toList());
+        assertEquals("key41", backend.findAuthenticatorByCredentialId(new byte[]{41}).orElseThrow().getNickname());
+    }
+
+    @Test
+    void requiresLogin() throws Exception {
+        mvc.perform(post("/api/authenticators/delete")
+                        .contentType(MediaType.APPLICATION_JSON)
+                        .content("{\"credentialIds\": [\"%s\"]}".formatted(id(11))))
+                .andExpect(status().isUnauthorized());
+    }
+
+    private void save(String username, int... ids) {
+        backend.saveUser(new UserInfo(username, username.getBytes()));
+        for (int id : ids) {
+            backend.saveAuthenticator(new AuthenticatorInfo(
+                    new byte[]{(byte) id}, new byte[]{2}, new byte[16], username, "key" + id));
+        }
+    }
+
+    private static String id(int id) {
+        return Base64.getUrlEncoder().withoutPadding().encodeToString(new byte[]{(byte) id});
+    }
+}
@@ -0,0 +1,49 @@
+package com.example.demo.web;
+
+import com.fasterxml.jackson.core.JsonProcessingException;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.fasterxml.jackson.databind.module.SimpleModule;
+import com.fasterxml.jackson.dataformat.cbor.databind.CBORMapper;
+import com.yubico.webauthn.data.ByteArray;
+import org.junit.jupiter.api.Test;
+
+import java.util.Map;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+
+/**
+ * ByteArray の読み込み（パディングなしの base64url 文字列・CBORのバイト列）の確認。
+ */
+class ByteArrayDeserializerTest {
+
+    private static final SimpleModule MODULE =
+            new SimpleModule().addDeserializer(ByteArray.class, new ByteArrayDeserializer());
+
+    private final ObjectMapper json = new ObjectMapper().registerModule(MODULE);
+
+    @Test
+    void readsUnpaddedBase64Url() throws Exception {
+        assertEquals(new ByteArray(new byte[]{(byte) 0xfb, (byte) 0xff}), json.readValue("\"-_8\"", ByteArray.class));
+        assertEquals(new ByteArray(new byte[0]), json.readValue("\"\"", ByteArray.class));
+    }
+
+    @Test
+    void rejectsPaddingAndStandardAlphabet() {
+        assertThrows(JsonProcessingException.class, () -> json.readValue("\"-_8=\"", ByteArray.class));
+        assertThrows(JsonProcessingException.class, () -> json.readValue("\"+/8\"", ByteArray.class));
+        assertThrows(JsonProcessingException.class, () -> json.readValue("123", ByteArray.class));
+    }
+
+    @Test
+    void readsCborByteString() throws Exception {
+        CBORMapper cbor = CBORMapper.builder().addModule(MODULE).build();
+        byte[] body = cbor.writeValueAsBytes(Map.of("value", new byte[]{1, 2, 3}));
+        Holder holder = cbor.readValue(body, Holder.class);
+        assertEquals(new ByteArray(new byte[]{1, 2, 3}), holder.value);
+    }
+
+    static class Holder {
+        public ByteArray value;
+    }
+}
@@ -0,0 +1,104 @@
+package com.example.demo.web;
+
+import com.example.demo.tenant.TenantConfig;
+import com.example.demo.warmup.SoftwareAuthenticator;
+import com.fasterxml.jackson.databind.JsonNode;
+import com.fasterxml.jackson.dataformat.cbor.databind.CBORMapper;
+import com.yubico.webauthn.AssertionRequest;
+import com.yubico.webauthn.data.PublicKeyCredentialCreationOptions;
+import org.junit.jupiter.api.Test;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.boot.test.autoconfigure.web.servlet.AutoConfigureMockMvc;
+import org.springframework.boot.test.context.SpringBootTest;
+import org.springframework.http.MediaType;
+import org.springframework.http.converter.cbor.MappingJackson2CborHttpMessageConverter;
+import org.springframework.mock.web.MockHttpSession;
+import org.springframework.test.web.servlet.MockMvc;
+import org.springframework.test.web.servlet.MvcResult;
+
+import java.util.Base64;
+import java.util.LinkedHashMap;
+import java.util.Map;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+import static org.springframework.test.web.servlet.request.MockMvcRequestBuilders.post;
+import static org.springframework.test.web.servlet.result.MockMvcResultMatchers.content;
+import static org.springframework.test.web.servlet.result.MockMvcResultMatchers.status;
+
+/**
+ * application/cbor での登録・認証の往復（開始のオプションをCBORで受け取り、完了をCBORのバイト列で送る）の確認。
+ */
+@SpringBootTest(properties = "webauthn.warmup.iterations=0")
+@AutoConfigureMockMvc
+class CborTransportTest {
+
+    private static final MediaType CBOR = MediaType.parseMediaType("application/cbor");
+
+    @Autowired
+    private MockMvc mvc;
+
+    @Autowired
+    private MappingJackson2CborHttpMessageConverter cborConverter;
+
+    @Test
+    void registerAndAuthenticateOverCbor() throws Exception {
+        CBORMapper mapper = (CBORMapper) cborConverter.getObjectMapper();
+        SoftwareAuthenticator authenticator = new SoftwareAuthenticator(TenantConfig.DEFAULT.origins().iterator().next());
+        MockHttpSession session = new MockHttpSession();
+
+        // 開始のオプション: ByteArray（challenge・user.id）は base64url 文字列ではなくCBORのバイト列
+        MvcResult start = mvc.perform(post("/api/webauthn/register/start").session(session)
+                        .contentType(CBOR).accept(CBOR)
+                        .content(mapper.writeValueAsBytes(Map.of("username", "cbor-user"))))
+                .andExpect(status().isOk())
+                .andExpect(content().contentTypeCompatibleWith(CBOR))
+                .andReturn();
+        byte[] startBody = start.getResponse().getContentAsByteArray();
+        assertTrue(mapper.readTree(startBody).get("challenge").isBinary());
+        PublicKeyCredentialCreationOptions options = mapper.readValue(startBody, PublicKeyCredentialCreationOptions.class);
+
+        mvc.perform(post("/api/webauthn/register/finish").session(session)
+                        .contentType(CBOR).accept(CBOR)
+                        .content(mapper.writeValueAsBytes(Map.of(
+                                "username", "cbor-user",
+                                "credential", binary(authenticator.create(options)),
+                                "nickname", "cbor"))))
+                .andExpect(status().isOk());
+
+        MvcResult assertionStart = mvc.perform(post("/api/webauthn/authenticate/start").session(session)
+                        .contentType(CBOR).accept(CBOR)
+                        .content(mapper.writeValueAsBytes(Map.of("username", "cbor-user"))))
+                .andExpect(status().isOk())
+                .andReturn();
+        AssertionRequest assertionRequest =
+                mapper.readValue(assertionStart.getResponse().getContentAsByteArray(), AssertionRequest.class);
+
+        MvcResult finish = mvc.perform(post("/api/webauthn/authenticate/finish").session(session)
+                        .contentType(CBOR).accept(CBOR)
+                        .content(mapper.writeValueAsBytes(Map.of(
+                                "username", "cbor-user",
+                                "credential", binary(authenticator.get(assertionRequest))))))
+                .andExpect(status().isOk())
+                .andReturn();
+        JsonNode result = mapper.readTree(finish.getResponse().getContentAsByteArray());
+        assertEquals(true, result.get("success").asBoolean());
+    }
+
+    /**
+     * ブラウザの USE_CBOR と同じく、id 以外のバイナリ（rawId・response の各値）をバイト列にする。
+     */
+    @SuppressWarnings("unchecked")
+    private static Map<String, Object> binary(Map<String, Object> credential) {
+        Map<String, Object> converted = new LinkedHashMap<>(credential);
+        converted.put("rawId", decode(credential.get("rawId")));
+        Map<String, Object> response = new LinkedHashMap<>();
+        ((Map<String, Object>) credential.get("response")).forEach((key, value) -> response.put(key, decode(value)));
+        converted.put("response", response);
+        return converted;
+    }
+
+    private static byte[] decode(Object base64Url) {
+        return Base64.getUrlDecoder().decode((String) base64Url);
+    }
+}
@@ -0,0 +1,110 @@
+package com.example.demo.web;
+
+import org.junit.jupiter.api.Test;
+
+import java.util.concurrent.TimeUnit;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+/**
+ * トークンバケット（バースト・補充・キーごとの独立）と、開始APIの制限の単位・再試行までの秒数の確認。
+ */
+class CeremonyRateLimiterTest {
+
+    private static final long SECOND = TimeUnit.SECONDS.toNanos(1);
+
+    @Test
+    void burstIsAllowedThenRefillsOnePermitPerInterval() {
+        StripedRateLimiter limiter = new StripedRateLimiter(60, 5, 1000);  // 1秒に1個、バースト5
+        long now = 1_000 * SECOND;
+        for (int i = 0; i < 5; i++) {
+            assertTrue(limiter.tryAcquire("a", now));
+        }
+        assertFalse(limiter.tryAcquire("a", now));
+
+        // 1個分の補充までの時間を返し、補充されたら1回だけ許可する
+        assertEquals(SECOND, limiter.acquire("a", now));
+        assertEquals(SECOND / 2, limiter.acquire("a", now + SECOND / 2));
+        assertTrue(limiter.tryAcquire("a", now + SECOND));
+        assertFalse(limiter.tryAcquire("a", now + SECOND));
+
+        // 使わずにいた間に補充されるのはバースト分まで
+        long later = now + 100 * SECOND;
+        for (int i = 0; i < 5; i++) {
+            assertTrue(limiter.tryAcquire("a", later));
+        }
+        assertFalse(limiter.tryAcquire("a", later));
+    }
+
+    @Test
+    void keysHaveIndependentBucketsAndAreBounded() {
+        StripedRateLimiter limiter = new StripedRateLimiter(60, 1, 640);
+        long now = 1_000 * SECOND;
+        assertTrue(limiter.tryAcquire("a", now));
+        assertFalse(limiter.tryAcquire("a", now));
+        assertTrue(limiter.tryAcquire("b", now));
+
+        for (int i = 0; i < 10_000; i++) {
+            limiter.tryAcquire("key" + i, now);
+        }
+        assertTrue(limiter.size() <= 640);
+    }
+
+    @Test
+    void millionsOfKeysFillEveryStripeButStayWithinMaxKeys() {
+        int maxKeys = 64 * 100;
+        StripedRateLimiter limiter = new StripedRateLimiter(60, 1, maxKeys);
+        long now = 1_000 * SECOND;
+
+        // 全てのストライプの上限を何度も超える数の異なるキー（送信元とusernameの組）
+        for (int i = 0; i < 2_000_000; i++) {
+            limiter.acquire("10." + (i >>> 16) + '.' + ((i >>> 8) & 0xff) + '.' + (i & 0xff) + " user" + i, now);
+            if (i % 100_000 == 0) {
+                assertTrue(limiter.size() <= maxKeys, "size " + limiter.size());
+            }
+        }
+        // 全てのストライプが上限まで埋まり、それ以上は増えない
+        assertEquals(maxKeys, limiter.size());
+
+        // 使い続けているキーは追い出されず、制限されたままになる
+        assertTrue(limiter.tryAcquire("hot", now));
+        for (int i = 0; i < 100_000; i++) {
+            limiter.acquire("cold" + i, now);
+            if (i % 50 == 0) {
+                assertFalse(limiter.tryAcquire("hot", now));
+            }
+        }
+        assertEquals(maxKeys, limiter.size());
+    }
+
+    @Test
+    void otherClientsCannotExhaustVictimsUsername() {
+        CeremonyRateLimiter limiter = new CeremonyRateLimiter(60, 10, 5, 1000);
+        long now = 1_000 * SECOND;
+
+        // 多数の送信元から同じusernameで呼び続けても、本人の送信元の枠は残る
+        for (int i = 0; i < 100; i++) {
+            limiter.acquire("10.0.0." + i, "victim", now);
+        }
+        assertEquals(0, limiter.acquire("192.0.2.1", "victim", now));
+
+        // 1つの送信元からは、IPの上限（1秒に1個）より低いusernameごとの上限（6秒に1個）で止まる
+        for (int i = 0; i < 4; i++) {
+            assertEquals(0, limiter.acquire("192.0.2.1", "victim", now));
+        }
+        assertEquals(4, limiter.acquire("192.0.2.1", "victim", now + 2 * SECOND));
+        assertEquals(0, limiter.acquire("192.0.2.1", "other", now + 2 * SECOND));
+    }
+
+    @Test
+    void retryAfterReflectsPerClientRefill() {
+        CeremonyRateLimiter limiter = new CeremonyRateLimiter(60, 10, 1, 1000);
+        long now = 1_000 * SECOND;
+        assertEquals(0, limiter.acquire("192.0.2.1", null, now));
+        assertEquals(1, limiter.acquire("192.0.2.1", null, now));
+        assertEquals(1, limiter.acquire("192.0.2.1", null, now + SECOND / 10));  // 切り上げ
+        assertEquals(0, limiter.acquire("192.0.2.1", null, now + SECOND));
+    }
+}
@@ -0,0 +1,113 @@
+package com.example.demo.web;
+
+import com.example.demo.audit.AuditLog;
+import com.example.demo.backend.BackendChange;
+import com.example.demo.backend.UserInfo;
+import com.example.demo.backend.WebAuthnBackend;
+import com.example.demo.service.WebAuthnService;
+import com.example.demo.tenant.TenantConfig;
+import com.example.demo.tenant.TenantRegistry;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+import org.springframework.beans.factory.support.DefaultListableBeanFactory;
+import org.springframework.mock.web.MockHttpServletRequest;
+import org.springframework.mock.web.MockHttpServletResponse;
+import org.springframework.util.unit.DataSize;
+
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+/**
+ * X-Replication-Position をリクエストのテナントで判定すること（レプリケーションの対象でないテナントでは無視する）、
+ * リーダーでは待たずに判定し、リードレプリカだけが待つことの確認。
+ */
+class ReplicationPositionInterceptorTest {
+
+    private final WebAuthnBackend defaultBackend = new WebAuthnBackend(100);  // リーダー（変更ログを持つ）
+    private final List<TenantRegistry> registries = new ArrayList<>();
+    private ReplicationPositionInterceptor interceptor;
+
+    @TempDir
+    Path directory;
+
+    @BeforeEach
+    void createTenants() throws Exception {
+        interceptor = interceptorFor(defaultBackend);
+    }
+
+    private ReplicationPositionInterceptor interceptorFor(WebAuthnBackend defaultBackend) throws Exception {
+        Path file = directory.resolve("tenants.json");
+        Files.writeString(file, """
+                [{"id": "other", "host": "other.example", "rpId": "other.example", "rpName": "Other",
+                  "origins": ["https://other.example"]}]
+                """);
+        AuditLog audit = new AuditLog(new SimpleMeterRegistry(), false, directory.toString(),
+                16, "drop", 1, 100, -1, DataSize.ofMegabytes(1));
+        TenantRegistry tenants = new TenantRegistry(new WebAuthnService(defaultBackend, TenantConfig.DEFAULT),
+                defaultBackend, audit, new ObjectMapper(), file.toString(), 60_000);
+        registries.add(tenants);
+        DefaultListableBeanFactory beans = new DefaultListableBeanFactory();
+        beans.registerSingleton("tenants", tenants);
+        return new ReplicationPositionInterceptor(beans.getBeanProvider(TenantRegistry.class));
+    }
+
+    @AfterEach
+    void closeTenants() {
+        registries.forEach(TenantRegistry::close);
+    }
+
+    @Test
+    void leaderAcceptsIssuedPositionsAndRejectsLaterOnesWithoutWaiting() throws Exception {
+        defaultBackend.saveUser(new UserInfo("alice", new byte[]{1}));
+        long position = defaultBackend.getLastPosition();
+
+        assertTrue(interceptor.preHandle(request("localhost", position), new MockHttpServletResponse(), null));
+
+        // 発行していないpositionは待たずに 400（スレッドを待たせ続けられない）
+        MockHttpServletResponse response = new MockHttpServletResponse();
+        long start = System.nanoTime();
+        assertFalse(interceptor.preHandle(request("localhost", Long.MAX_VALUE), response, null));
+        assertEquals(400, response.getStatus());
+        assertTrue(System.nanoTime() - start < TimeUnit.MILLISECONDS.toNanos(500));
+    }
+
+    @Test
+    void followerWaitsForTheLeaderPosition() throws Exception {
+        WebAuthnBackend follower = new WebAuthnBackend();
+        follower.startFollowing((credentialId, timestamp) -> { });
+        ReplicationPositionInterceptor followerInterceptor = interceptorFor(follower);
+
+        MockHttpServletResponse response = new MockHttpServletResponse();
+        assertFalse(followerInterceptor.preHandle(request("localhost", 1), response, null));
+        assertEquals(503, response.getStatus());
+
+        follower.apply(new BackendChange(1, System.currentTimeMillis(), BackendChange.Type.SAVE_USER, "alice",
+                new byte[]{1}, null, null, null, null, 0));
+        assertTrue(followerInterceptor.preHandle(request("localhost", 1), new MockHttpServletResponse(), null));
+    }
+
+    @Test
+    void tenantsThatAreNotReplicatedIgnoreTheHeader() throws Exception {
+        MockHttpServletResponse response = new MockHttpServletResponse();
+        assertTrue(interceptor.preHandle(request("other.example", 1_000), response, null));
+        assertEquals(200, response.getStatus());
+    }
+
+    private static MockHttpServletRequest request(String host, long position) {
+        MockHttpServletRequest request = new MockHttpServletRequest("GET", "/");
+        request.setServerName(host);
+        request.addHeader(ReplicationPositionInterceptor.HEADER, String.valueOf(position));
+        return request;
+    }
+}
@@ -0,0 +1,92 @@
+package com.example.demo.web;
+
+import jakarta.servlet.FilterChain;
+import jakarta.servlet.http.HttpServletRequest;
+import org.junit.jupiter.api.Test;
+import org.springframework.mock.web.MockFilterChain;
+import org.springframework.mock.web.MockHttpServletRequest;
+import org.springframework.mock.web.MockHttpServletResponse;
+
+import java.io.BufferedReader;
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.charset.StandardCharsets;
+import java.util.Map;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+
+/**
+ * ボディサイズの上限（Content-Length・chunked のストリームとリーダー・パスごとの上限）の確認。
+ */
+class RequestSizeLimitFilterTest {
+
+    private final RequestSizeLimitFilter filter =
+            new RequestSizeLimitFilter(16, Map.of("/api/authenticators/delete", 64L));
+
+    @Test
+    void rejectsDeclaredContentLengthOverLimit() throws Exception {
+        MockHttpServletResponse response = new MockHttpServletResponse();
+        MockFilterChain chain = new MockFilterChain();
+        filter.doFilter(request("/api/webauthn/register/start", 17, false), response, chain);
+        assertEquals(413, response.getStatus());
+        assertEquals(null, chain.getRequest());
+
+        response = new MockHttpServletResponse();
+        filter.doFilter(request("/api/webauthn/register/start", 16, false), response, new MockFilterChain());
+        assertEquals(200, response.getStatus());
+    }
+
+    @Test
+    void capsChunkedBodyReadThroughStreamOrReader() throws Exception {
+        assertThrows(IOException.class, () -> readThroughFilter(request("/api/x", 17, true), false));
+        assertThrows(IOException.class, () -> readThroughFilter(request("/api/x", 17, true), true));
+        assertEquals(16, readThroughFilter(request("/api/x", 16, true), false));
+        assertEquals(16, readThroughFilter(request("/api/x", 16, true), true));
+    }
+
+    @Test
+    void bulkPathHasItsOwnLimit() throws Exception {
+        MockHttpServletResponse response = new MockHttpServletResponse();
+        filter.doFilter(request("/api/authenticators/delete", 64, false), response, new MockFilterChain());
+        assertEquals(200, response.getStatus());
+        assertEquals(64, readThroughFilter(request("/api/authenticators/delete", 64, true), true));
+
+        response = new MockHttpServletResponse();
+        filter.doFilter(request("/api/authenticators/delete", 65, false), response, new MockFilterChain());
+        assertEquals(413, response.getStatus());
+    }
+
+    /**
+     * フィルターを通したリクエストのボディを最後まで読み、読めた長さを返す。
+     */
+    private int readThroughFilter(MockHttpServletRequest request, boolean useReader) throws Exception {
+        int[] length = new int[1];
+        FilterChain chain = (req, res) -> {
+            HttpServletRequest wrapped = (HttpServletRequest) req;
+            if (useReader) {
+                BufferedReader reader = wrapped.getReader();
+                while (reader.read() >= 0) {
+                    length[0]++;
+                }
+            } else {
+                InputStream in = wrapped.getInputStream();
+                length[0] = in.readAllBytes().length;
+            }
+        };
+        filter.doFilter(request, new MockHttpServletResponse(), chain);
+        return length[0];
+    }
+
+    private static MockHttpServletRequest request(String path, int length, boolean chunked) {
+        MockHttpServletRequest request = chunked ? new MockHttpServletRequest("POST", path) {
+            @Override
+            public long getContentLengthLong() {
+                return -1;
+            }
+        } : new MockHttpServletRequest("POST", path);
+        request.setCharacterEncoding(StandardCharsets.UTF_8.name());
+        request.setContent("a".repeat(length).getBytes(StandardCharsets.UTF_8));
+        return request;
+    }
+}
@@ -0,0 +1,54 @@
+package com.example.demo.web;
+
+import org.junit.jupiter.api.Test;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.boot.test.autoconfigure.web.servlet.AutoConfigureMockMvc;
+import org.springframework.boot.test.context.SpringBootTest;
+import org.springframework.test.web.servlet.MockMvc;
+import org.springframework.web.servlet.resource.ResourceUrlProvider;
+
+import static org.junit.jupiter.api.Assertions.assertTrue;
+import static org.springframework.test.web.servlet.request.MockMvcRequestBuilders.get;
+import static org.springframework.test.web.servlet.result.MockMvcResultMatchers.header;
+import static org.springframework.test.web.servlet.result.MockMvcResultMatchers.status;
+
+/**
+ * JS・CSSのキャッシュ設定（ハッシュ付きのURLだけを immutable にする）の確認。
+ */
+@SpringBootTest(properties = "webauthn.warmup.iterations=0")
+@AutoConfigureMockMvc
+class StaticResourceCacheTest {
+
+    @Autowired
+    private MockMvc mvc;
+
+    @Autowired
+    private ResourceUrlProvider resourceUrlProvider;
+
+    @Test
+    void versionedUrlsAreImmutable() throws Exception {
+        for (String path : new String[]{"/webauthn.js", "/style.css"}) {
+            String versioned = resourceUrlProvider.getForLookupPath(path);
+            assertTrue(versioned.matches("/[a-z]+-[0-9a-f]{32}\\.(js|css)"), versioned);
+
+            mvc.perform(get(versioned))
+                    .andExpect(status().isOk())
+                    .andExpect(header().string("Cache-Control", "max-age=31536000, public, immutable"));
+        }
+    }
+
+    @Test
+    void unversionedUrlsAreRevalidated() throws Exception {
+        for (String path : new String[]{"/webauthn.js", "/style.css"}) {
+            mvc.perform(get(path))
+                    .andExpect(status().isOk())
+                    .andExpect(header().string("Cache-Control", "no-cache"));
+        }
+    }
+
+    @Test
+    void templateLinksToVersionedUrls() throws Exception {
+        String html = mvc.perform(get("/")).andReturn().getResponse().getContentAsString();
+        assertTrue(html.matches("(?s).*/webauthn-[0-9a-f]{32}\\.js.*"), "no versioned script in index");
+    }
+}